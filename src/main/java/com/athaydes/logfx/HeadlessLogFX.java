@@ -0,0 +1,360 @@
+package com.athaydes.logfx;
+
+import com.athaydes.logfx.config.HighlightConfig;
+import com.athaydes.logfx.config.Properties;
+import com.athaydes.logfx.file.FileEncoding;
+import com.athaydes.logfx.file.FileStreamer;
+import com.athaydes.logfx.file.LineHandle;
+import com.athaydes.logfx.text.DateTimeFormatGuess;
+import com.athaydes.logfx.text.DateTimeFormatGuesser;
+import com.athaydes.logfx.text.HighlightExpression;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.Paint;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * LogFX without a GUI, for servers without a display.
+ * <p>
+ * Writes the lines of a log file, and of the files rotated from it, to the standard output, applying the
+ * highlight expressions of the LogFX config as ANSI colors and, if enabled, its filters. The lines can be
+ * restricted to a range of date-times, and the log file can be followed, as with {@code tail -f}.
+ * <p>
+ * This class never initializes the JavaFX toolkit.
+ */
+public final class HeadlessLogFX {
+
+    static final String USAGE = "Usage: java -jar logfx.jar --headless [options] <file>\n" +
+            "\n" +
+            "Writes the lines of a log file, and of the files rotated from it, to the standard output,\n" +
+            "using the highlight expressions and filters of the LogFX config.\n" +
+            "\n" +
+            "Options:\n" +
+            "  --since <date-time>  only lines logged at or after the given date-time\n" +
+            "  --until <date-time>  only lines logged at or before the given date-time\n" +
+            "  -f, --follow         keep writing the lines appended to the file until interrupted\n" +
+            "  --color <when>       color lines with the highlight expressions: always, never or auto\n" +
+            "                       (the default, colors lines only if the output is a terminal)\n" +
+            "  --no-filter          write all lines, even if filters are enabled in the config\n" +
+            "  --config <file>      the LogFX config file to use (default: ~/.logfx/config)\n" +
+            "  -h, --help           show this message\n" +
+            "\n" +
+            "Date-times are given as in 2017-09-11 18:13:57[.483][ +02:00], or in ISO-8601 format.\n" +
+            "Date-times without a time-zone are in UTC, as are the date-times of log lines without one.";
+
+    // time between checks for new lines when following a file
+    static final long FOLLOW_POLL_INTERVAL = 250L;
+
+    // number of lines at the top of a file used to guess the format of its date-times
+    private static final int DATE_GUESS_LINES = 100;
+
+    private static final DateTimeFormatter DATE_TIME_FORMAT = new DateTimeFormatterBuilder()
+            .append( DateTimeFormatter.ISO_LOCAL_DATE )
+            .optionalStart().appendLiteral( 'T' ).optionalEnd()
+            .optionalStart().appendLiteral( ' ' ).optionalEnd()
+            .append( DateTimeFormatter.ISO_LOCAL_TIME )
+            .optionalStart().appendLiteral( ' ' ).optionalEnd()
+            .optionalStart().appendZoneOrOffsetId().optionalEnd()
+            .toFormatter();
+
+    enum ColorMode {
+        ALWAYS, NEVER, AUTO
+    }
+
+    /**
+     * The command-line options.
+     */
+    static final class Options {
+        File file;
+        ZonedDateTime since;
+        ZonedDateTime until;
+        boolean follow;
+        ColorMode colorMode = ColorMode.AUTO;
+        boolean noFilter;
+        Path config = Properties.LOGFX_DIR.resolve( "config" );
+        boolean help;
+    }
+
+    private final Options options;
+    private final HighlightConfig config;
+    private final FileStreamer streamer;
+
+    HeadlessLogFX( Options options, HighlightConfig config ) {
+        this.options = options;
+        this.config = config;
+        this.streamer = new FileStreamer( options.file, Properties.isReadRotatedFiles() );
+    }
+
+    public static void main( String[] args ) {
+        Options options;
+        try {
+            options = parseOptions( args );
+        } catch ( IllegalArgumentException e ) {
+            System.err.println( e.getMessage() );
+            System.err.println();
+            System.err.println( USAGE );
+            System.exit( 2 );
+            return;
+        }
+
+        if ( options.help ) {
+            System.out.println( USAGE );
+            return;
+        }
+
+        HighlightConfig config;
+        try {
+            config = HighlightConfig.read( options.config );
+        } catch ( IOException e ) {
+            System.err.println( "Could not read config file " + options.config + ": " + e );
+            System.exit( 2 );
+            return;
+        }
+
+        if ( options.colorMode == ColorMode.AUTO ) {
+            options.colorMode = System.console() == null ? ColorMode.NEVER : ColorMode.ALWAYS;
+        }
+
+        // write to the file descriptor directly, as large batches of bytes are written at once
+        WritableByteChannel out = new FileOutputStream( FileDescriptor.out ).getChannel();
+
+        System.exit( new HeadlessLogFX( options, config ).run( out, System.err ) );
+    }
+
+    /**
+     * Write the lines of the file to the given output.
+     *
+     * @param out output for the lines of the file
+     * @param err output for errors
+     * @return the exit code
+     */
+    int run( WritableByteChannel out, PrintStream err ) {
+        if ( !options.file.isFile() ) {
+            err.println( "File does not exist: " + options.file );
+            return 2;
+        }
+
+        if ( !options.noFilter ) {
+            config.getLineFilter().ifPresent( streamer::setLineFilter );
+        }
+
+        if ( options.colorMode == ColorMode.ALWAYS ) {
+            streamer.setDecorator( new AnsiColorDecorator( config.getExpressions() ) );
+        }
+
+        try {
+            if ( options.since != null || options.until != null ) {
+                Optional<DateTimeFormatGuess> guess = guessDateTimeFormat( streamer.getFiles() );
+                if ( !guess.isPresent() ) {
+                    err.println( "Unable to guess the date-time format of file " + options.file );
+                    return 2;
+                }
+                streamer.setTimeRange( options.since, options.until, guess.get()::convert );
+            }
+
+            if ( options.follow ) {
+                streamer.follow( out, FOLLOW_POLL_INTERVAL );
+            } else {
+                streamer.stream( out );
+            }
+            return 0;
+        } catch ( IOException e ) {
+            err.println( "Error reading file " + options.file + ": " + e );
+            return 1;
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+    }
+
+    /**
+     * Stop writing lines, which is only needed when following a file.
+     * <p>
+     * This method may be called from any Thread.
+     */
+    void stop() {
+        streamer.stop();
+    }
+
+    static Options parseOptions( String[] args ) {
+        Options options = new Options();
+
+        for ( int i = 0; i < args.length; i++ ) {
+            String arg = args[ i ];
+            String name = arg;
+            String value = null;
+
+            int equalsIndex = arg.indexOf( '=' );
+            if ( arg.startsWith( "--" ) && equalsIndex > 0 ) {
+                name = arg.substring( 0, equalsIndex );
+                value = arg.substring( equalsIndex + 1 );
+            }
+
+            switch ( name ) {
+                case "--since":
+                case "--until":
+                case "--color":
+                case "--config":
+                    if ( value == null ) {
+                        if ( i + 1 >= args.length ) {
+                            throw new IllegalArgumentException( "Missing value for option " + name );
+                        }
+                        value = args[ ++i ];
+                    }
+                    break;
+                default:
+                    if ( value != null ) {
+                        throw new IllegalArgumentException( "Option does not take a value: " + name );
+                    }
+            }
+
+            switch ( name ) {
+                case "--since":
+                    options.since = parseDateTime( value );
+                    break;
+                case "--until":
+                    options.until = parseDateTime( value );
+                    break;
+                case "--color":
+                    try {
+                        options.colorMode = ColorMode.valueOf( value.toUpperCase() );
+                    } catch ( IllegalArgumentException e ) {
+                        throw new IllegalArgumentException( "Invalid value for --color: " + value );
+                    }
+                    break;
+                case "--config":
+                    options.config = Paths.get( value );
+                    break;
+                case "-f":
+                case "--follow":
+                    options.follow = true;
+                    break;
+                case "--no-filter":
+                    options.noFilter = true;
+                    break;
+                case "-h":
+                case "--help":
+                    options.help = true;
+                    return options;
+                default:
+                    if ( arg.startsWith( "-" ) ) {
+                        throw new IllegalArgumentException( "Unknown option: " + arg );
+                    }
+                    if ( options.file != null ) {
+                        throw new IllegalArgumentException( "Only one file can be given" );
+                    }
+                    options.file = new File( arg );
+            }
+        }
+
+        if ( options.file == null ) {
+            throw new IllegalArgumentException( "No file was given" );
+        }
+        if ( options.since != null && options.until != null && options.until.isBefore( options.since ) ) {
+            throw new IllegalArgumentException( "The --until date-time is before the --since date-time" );
+        }
+
+        return options;
+    }
+
+    private static ZonedDateTime parseDateTime( String text ) {
+        try {
+            TemporalAccessor dateTime = DATE_TIME_FORMAT.parseBest( text.trim(),
+                    ZonedDateTime::from, LocalDateTime::from );
+            return dateTime instanceof ZonedDateTime ?
+                    ( ZonedDateTime ) dateTime :
+                    ( ( LocalDateTime ) dateTime ).atZone( ZoneOffset.UTC );
+        } catch ( DateTimeParseException e ) {
+            throw new IllegalArgumentException( "Invalid date-time: " + text );
+        }
+    }
+
+    /**
+     * Guess the format of the date-times of the files, looking at the newest files first.
+     */
+    private static Optional<DateTimeFormatGuess> guessDateTimeFormat( List<File> files ) throws IOException {
+        DateTimeFormatGuesser guesser = DateTimeFormatGuesser.standard();
+        for ( int i = files.size() - 1; i >= 0; i-- ) {
+            File file = files.get( i );
+            if ( !file.isFile() ) {
+                continue;
+            }
+            Optional<DateTimeFormatGuess> guess = guesser.guessDateTimeFormats(
+                    FileEncoding.readFirstLines( file, DATE_GUESS_LINES ) );
+            if ( guess.isPresent() ) {
+                return guess;
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Colors lines with the colors of the first highlight expression matching them, using ANSI escape codes.
+     * <p>
+     * Lines not matched by any expression are not colored, so they are shown with the colors of the terminal.
+     */
+    static final class AnsiColorDecorator implements FileStreamer.LineDecorator {
+
+        private static final byte[] RESET = "\u001B[0m".getBytes( StandardCharsets.US_ASCII );
+
+        private final List<HighlightExpression> expressions;
+        private final List<byte[]> prefixes;
+
+        AnsiColorDecorator( List<HighlightExpression> expressions ) {
+            this.expressions = expressions;
+            this.prefixes = new ArrayList<>( expressions.size() );
+            for ( HighlightExpression expression : expressions ) {
+                prefixes.add( ( ansiColor( 38, expression.getFillColor() ) +
+                        ansiColor( 48, expression.getBkgColor() ) ).getBytes( StandardCharsets.US_ASCII ) );
+            }
+        }
+
+        @Override
+        public byte[] prefixOf( LineHandle line ) {
+            for ( int i = 0; i < expressions.size(); i++ ) {
+                if ( expressions.get( i ).matches( line ) ) {
+                    return prefixes.get( i );
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public byte[] suffix() {
+            return RESET;
+        }
+
+        /**
+         * @param code 38 for the foreground color, 48 for the background color
+         * @return the escape code to use the given 24-bit color, or an empty String if it is not a simple color
+         */
+        private static String ansiColor( int code, Paint paint ) {
+            if ( !( paint instanceof Color ) ) {
+                return "";
+            }
+            Color color = ( Color ) paint;
+            return String.format( "\u001B[%d;2;%d;%d;%dm", code,
+                    Math.round( color.getRed() * 255 ),
+                    Math.round( color.getGreen() * 255 ),
+                    Math.round( color.getBlue() * 255 ) );
+        }
+    }
+}
@@ -4,8 +4,17 @@ import com.athaydes.logfx.concurrency.TaskRunner;
 import com.athaydes.logfx.config.Config;
 import com.athaydes.logfx.config.Properties;
 import com.athaydes.logfx.file.FileContentReader;
+import com.athaydes.logfx.file.FileEncoding;
 import com.athaydes.logfx.file.FileReader;
+import com.athaydes.logfx.file.GzipFileReader;
+import com.athaydes.logfx.file.ListenerEndpoint;
+import com.athaydes.logfx.file.MappedFileReader;
+import com.athaydes.logfx.file.MergedFileReader;
+import com.athaydes.logfx.file.RotatedFileChainReader;
+import com.athaydes.logfx.file.StreamReader;
 import com.athaydes.logfx.log.LogFXLogFactory;
+import com.athaydes.logfx.text.DateTimeFormatGuess;
+import com.athaydes.logfx.text.DateTimeFormatGuesser;
 import com.athaydes.logfx.ui.AboutLogFXView;
 import com.athaydes.logfx.ui.BottomMessagePane;
 import com.athaydes.logfx.ui.Dialog;
@@ -38,11 +47,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -60,6 +71,12 @@ public class LogFX extends Application {
 
     private static final String TITLE = "LogFX";
 
+    // command-line argument used to read the standard input, e.g. kubectl logs -f my-pod | logfx -
+    private static final String STANDARD_INPUT_ARG = "-";
+
+    // command-line option used to listen for log lines, e.g. --listen syslog-udp:5514
+    private static final String LISTEN_OPTION = "--listen";
+
     private Stage stage;
     private final Pane root = new Pane();
     private final Rectangle overlay = new Rectangle( 0, 0 );
@@ -121,6 +138,21 @@ public class LogFX extends Application {
         primaryStage.setTitle( TITLE );
         primaryStage.show();
 
+        List<String> args = getParameters().getRaw();
+
+        if ( args.contains( STANDARD_INPUT_ARG ) ) {
+            Platform.runLater( () -> openStream( "stdin", System.in ) );
+        }
+
+        try {
+            List<ListenerEndpoint> endpoints = listenerEndpointsIn( args );
+            if ( !endpoints.isEmpty() ) {
+                Platform.runLater( () -> openListener( endpoints ) );
+            }
+        } catch ( IllegalArgumentException e ) {
+            Dialog.showMessage( e.getMessage(), Dialog.MessageLevel.ERROR );
+        }
+
         primaryStage.setOnHidden( event -> {
             logsPane.close();
             taskRunner.shutdown();
@@ -172,6 +204,11 @@ public class LogFX extends Application {
         open.setMnemonicParsing( true );
         open.setOnAction( ( event ) -> new FileOpener( stage, this::open ) );
 
+        MenuItem openMerged = new MenuItem( "Open _Merged Timeline" );
+        openMerged.setMnemonicParsing( true );
+        openMerged.setOnAction( ( event ) ->
+                FileOpener.openFiles( stage, "Select the files to merge", this::openMerged ) );
+
         MenuItem showLogFxLog = new MenuItem( "Open LogFX Log" );
         showLogFxLog.setAccelerator( new KeyCodeCombination( KeyCode.O,
                 KeyCombination.SHORTCUT_DOWN, KeyCombination.SHIFT_DOWN ) );
@@ -183,7 +220,7 @@ public class LogFX extends Application {
                 KeyCombination.SHIFT_DOWN, KeyCombination.SHORTCUT_DOWN ) );
         close.setMnemonicParsing( true );
         close.setOnAction( ( event ) -> stage.close() );
-        menu.getItems().addAll( open, showLogFxLog, close );
+        menu.getItems().addAll( open, openMerged, showLogFxLog, close );
 
         return menu;
     }
@@ -237,7 +274,7 @@ public class LogFX extends Application {
 
         FileContentReader fileReader;
         try {
-            fileReader = new FileReader( file, LogView.MAX_LINES );
+            fileReader = createFileReader( file );
         } catch ( IllegalStateException e ) {
             Dialog.showMessage( e.getMessage(), Dialog.MessageLevel.ERROR );
             return false;
@@ -268,6 +305,156 @@ public class LogFX extends Application {
         return true;
     }
 
+    /**
+     * Open a view showing the lines of the given files interleaved by date-time.
+     * <p>
+     * The format of the date-times of each file is guessed from its first lines in the background, then the view
+     * is opened on the JavaFX Thread.
+     * <p>
+     * Merged views are not remembered when LogFX is restarted.
+     */
+    @MustCallOnJavaFXThread
+    private void openMerged( List<File> files ) {
+        if ( files.size() < 2 ) {
+            Dialog.showMessage( "Select at least two files to merge", Dialog.MessageLevel.INFO );
+            return;
+        }
+
+        taskRunner.runAsync( () -> {
+            DateTimeFormatGuesser guesser = DateTimeFormatGuesser.standard();
+            List<MergedFileReader.Source> sources = new ArrayList<>( files.size() );
+            List<String> filesWithoutDates = new ArrayList<>();
+
+            for ( File file : files ) {
+                Optional<DateTimeFormatGuess> guess;
+                try {
+                    guess = guesser.guessDateTimeFormats( FileEncoding.readFirstLines( file, LogView.MAX_LINES ) );
+                } catch ( IOException e ) {
+                    log.warn( "Error reading file [{}]: {}", file, e );
+                    Dialog.showMessage( "Unable to read " + file.getName() + ": " + e, Dialog.MessageLevel.ERROR );
+                    return;
+                }
+                if ( guess.isPresent() ) {
+                    sources.add( new MergedFileReader.Source( file, guess.get()::convert ) );
+                } else {
+                    filesWithoutDates.add( file.getName() );
+                }
+            }
+
+            if ( !filesWithoutDates.isEmpty() ) {
+                Dialog.showMessage( "Unable to merge files as the format of their date-times could not be guessed:\n" +
+                        String.join( "\n", filesWithoutDates ), Dialog.MessageLevel.WARNING );
+                return;
+            }
+
+            Platform.runLater( () -> openMergedView( files, sources ) );
+        } );
+    }
+
+    @MustCallOnJavaFXThread
+    private void openMergedView( List<File> files, List<MergedFileReader.Source> sources ) {
+        log.debug( "Creating merged view for files {}", files );
+
+        MergedFileReader fileReader;
+        try {
+            fileReader = new MergedFileReader( sources, LogView.MAX_LINES );
+        } catch ( IllegalStateException e ) {
+            Dialog.showMessage( e.getMessage(), Dialog.MessageLevel.ERROR );
+            return;
+        }
+
+        LogView view = new LogView( config.fontProperty(), root.widthProperty(),
+                highlightOptions, fileReader, taskRunner );
+
+        logsPane.add( view, () -> {
+        }, -1 );
+    }
+
+    /**
+     * Open a view showing the lines of a stream, which is kept on disk while the view is open.
+     * <p>
+     * Streams are not remembered when LogFX is restarted.
+     */
+    @MustCallOnJavaFXThread
+    private void openStream( String name, InputStream input ) {
+        StreamReader streamReader;
+        try {
+            streamReader = new StreamReader( name, input, LogView.MAX_LINES );
+        } catch ( IOException e ) {
+            log.warn( "Unable to read stream " + name, e );
+            Dialog.showMessage( "Unable to read " + name + ": " + e, Dialog.MessageLevel.ERROR );
+            return;
+        }
+
+        openStreamView( streamReader );
+    }
+
+    /**
+     * Open a view showing the lines received on the given endpoints, which are kept on disk while the view is open.
+     * <p>
+     * Listeners are not remembered when LogFX is restarted.
+     */
+    @MustCallOnJavaFXThread
+    private void openListener( List<ListenerEndpoint> endpoints ) {
+        StreamReader streamReader;
+        try {
+            streamReader = StreamReader.listeningOn( endpoints, LogView.MAX_LINES );
+        } catch ( IOException e ) {
+            log.warn( "Unable to listen on " + endpoints, e );
+            Dialog.showMessage( e.getMessage(), Dialog.MessageLevel.ERROR );
+            return;
+        }
+
+        openStreamView( streamReader );
+    }
+
+    @MustCallOnJavaFXThread
+    private void openStreamView( StreamReader streamReader ) {
+        log.debug( "Creating view for stream {}", streamReader );
+
+        LogView view = new LogView( config.fontProperty(), root.widthProperty(),
+                highlightOptions, streamReader, taskRunner );
+
+        logsPane.add( view, () -> {
+        }, -1 );
+    }
+
+    /**
+     * @param args command-line arguments
+     * @return the endpoints given with the {@code --listen} option
+     * @throws IllegalArgumentException if an endpoint is missing or invalid
+     */
+    static List<ListenerEndpoint> listenerEndpointsIn( List<String> args ) {
+        List<ListenerEndpoint> endpoints = new ArrayList<>();
+        for ( int i = 0; i < args.size(); i++ ) {
+            String arg = args.get( i );
+            if ( arg.equals( LISTEN_OPTION ) ) {
+                if ( i + 1 == args.size() ) {
+                    throw new IllegalArgumentException( "Missing value for option " + LISTEN_OPTION );
+                }
+                endpoints.add( ListenerEndpoint.parse( args.get( ++i ) ) );
+            } else if ( arg.startsWith( LISTEN_OPTION + "=" ) ) {
+                endpoints.add( ListenerEndpoint.parse( arg.substring( LISTEN_OPTION.length() + 1 ) ) );
+            }
+        }
+        return endpoints;
+    }
+
+    private static FileContentReader createFileReader( File file ) {
+        if ( Properties.isReadRotatedFiles() && RotatedFileChainReader.hasRotatedFiles( file ) ) {
+            return new RotatedFileChainReader( file, LogView.MAX_LINES );
+        }
+        if ( GzipFileReader.isGzipFile( file ) ) {
+            return new GzipFileReader( file, LogView.MAX_LINES );
+        }
+        long mmapThreshold = Properties.getMmapThreshold();
+        if ( mmapThreshold >= 0L && file.length() >= mmapThreshold ) {
+            return new MappedFileReader( file, LogView.MAX_LINES );
+        } else {
+            return new FileReader( file, LogView.MAX_LINES );
+        }
+    }
+
     @MustCallOnJavaFXThread
     private Menu viewMenu() {
         Menu menu = new Menu( "_View" );
@@ -329,6 +516,11 @@ public class LogFX extends Application {
     }
 
     public static void main( String[] args ) {
+        if ( args.length > 0 && args[ 0 ].equals( "--headless" ) ) {
+            HeadlessLogFX.main( Arrays.copyOfRange( args, 1, args.length ) );
+            return;
+        }
+
         if ( FxUtils.isMac() ) {
             SetupMacTrayIcon.run();
         }
@@ -45,7 +45,7 @@ public class Config {
         if ( path.toFile().exists() ) {
             readConfigFile( path );
         } else {
-            properties.observableExpressions.add( new HighlightExpression( "WARN", Color.YELLOW, Color.RED, false ) );
+            properties.observableExpressions.add( defaultHighlightExpression() );
         }
 
         // make this a singleton object so that it can be remembered when we try to run it many times below
@@ -65,6 +65,13 @@ public class Config {
         properties.enableFilters.addListener( listener );
     }
 
+    /**
+     * @return the highlight expression used when there is no config file yet
+     */
+    static HighlightExpression defaultHighlightExpression() {
+        return new HighlightExpression( "WARN", Color.YELLOW, Color.RED, false );
+    }
+
     public SimpleObjectProperty<LogLineColors> standardLogColorsProperty() {
         return properties.standardLogColors;
     }
@@ -30,10 +30,21 @@ final class ConfigParser {
     private static final Logger log = LoggerFactory.getLogger( ConfigParser.class );
 
     private final ConfigProperties properties;
+    private final boolean headless;
     private ConfigVersion version = ConfigVersion.V1;
 
     ConfigParser( ConfigProperties properties ) {
+        this( properties, false );
+    }
+
+    /**
+     * @param properties the properties to set
+     * @param headless   whether the config is being read without the JavaFX toolkit, in which case
+     *                   the font is not read
+     */
+    ConfigParser( ConfigProperties properties, boolean headless ) {
         this.properties = properties;
+        this.headless = headless;
     }
 
     void parseConfigFile( String currentLine, Iterator<String> lines ) {
@@ -180,6 +191,9 @@ final class ConfigParser {
                         }
                         break;
                     case "font":
+                        if ( headless ) {
+                            break;
+                        }
                         if ( parts.length < 3 ) {
                             logInvalidProperty( "gui", "font", line,
                                     "Expected 3 or more parts, got " + parts.length );
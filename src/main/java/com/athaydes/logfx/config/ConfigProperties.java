@@ -27,12 +27,20 @@ final class ConfigProperties {
     final BooleanProperty enableFilters;
 
     ConfigProperties() {
+        this( Font.font( FxUtils.isMac() ? "Monaco" : "Courier New" ) );
+    }
+
+    /**
+     * @param font the initial font, which may be null when the properties are used without a GUI,
+     *             as fonts cannot be created without the JavaFX toolkit
+     */
+    ConfigProperties( Font font ) {
         standardLogColors = new SimpleObjectProperty<>( new LogLineColors( Color.BLACK, Color.LIGHTGREY ) );
         observableExpressions = FXCollections.observableArrayList();
         observableFiles = FXCollections.observableSet( new LinkedHashSet<>( 4 ) );
         panesOrientation = new SimpleObjectProperty<>( Orientation.HORIZONTAL );
         paneDividerPositions = FXCollections.observableArrayList();
-        font = new BindableValue<>( Font.font( FxUtils.isMac() ? "Monaco" : "Courier New" ) );
+        this.font = new BindableValue<>( font );
         enableFilters = new SimpleBooleanProperty( false );
     }
 }
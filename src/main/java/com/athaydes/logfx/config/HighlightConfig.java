@@ -0,0 +1,91 @@
+package com.athaydes.logfx.config;
+
+import com.athaydes.logfx.data.LogLineColors;
+import com.athaydes.logfx.file.LineFilter;
+import com.athaydes.logfx.text.HighlightExpression;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * The highlight expressions and filters of a LogFX config file.
+ * <p>
+ * Unlike {@link Config}, this type can be used without the JavaFX toolkit (e.g. on servers without a display),
+ * and never writes to the config file.
+ */
+public final class HighlightConfig {
+
+    private final LogLineColors standardLogColors;
+    private final List<HighlightExpression> expressions;
+    private final boolean filtersEnabled;
+
+    private HighlightConfig( LogLineColors standardLogColors,
+                             List<HighlightExpression> expressions,
+                             boolean filtersEnabled ) {
+        this.standardLogColors = standardLogColors;
+        this.expressions = Collections.unmodifiableList( expressions );
+        this.filtersEnabled = filtersEnabled;
+    }
+
+    /**
+     * Read the given config file.
+     * <p>
+     * If the file does not exist, the same defaults as in {@link Config} are used.
+     *
+     * @param path the config file
+     * @return the highlight config
+     * @throws IOException if the config file cannot be read
+     */
+    public static HighlightConfig read( Path path ) throws IOException {
+        ConfigProperties properties = new ConfigProperties( null );
+
+        if ( path.toFile().exists() ) {
+            try ( Stream<String> lines = Files.lines( path ) ) {
+                new ConfigParser( properties, true ).parseConfigFile( null, lines.iterator() );
+            }
+        } else {
+            properties.observableExpressions.add( Config.defaultHighlightExpression() );
+        }
+
+        return new HighlightConfig( properties.standardLogColors.get(),
+                new ArrayList<>( properties.observableExpressions ),
+                properties.enableFilters.get() );
+    }
+
+    /**
+     * @return the colors of lines not matched by any highlight expression
+     */
+    public LogLineColors getStandardLogColors() {
+        return standardLogColors;
+    }
+
+    /**
+     * @return the highlight expressions, in order of priority
+     */
+    public List<HighlightExpression> getExpressions() {
+        return expressions;
+    }
+
+    /**
+     * @return whether filters are enabled
+     */
+    public boolean isFiltersEnabled() {
+        return filtersEnabled;
+    }
+
+    /**
+     * @return the filter accepting the lines matched by the filtered highlight expressions,
+     * if filters are enabled
+     */
+    public Optional<LineFilter> getLineFilter() {
+        return filtersEnabled ?
+                Optional.of( HighlightExpression.filterOf( expressions ) ) :
+                Optional.empty();
+    }
+}
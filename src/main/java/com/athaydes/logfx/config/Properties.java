@@ -6,6 +6,10 @@ import com.athaydes.logfx.log.LogTarget;
 import java.io.File;
 import java.nio.file.Path;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * LogFX System Properties.
@@ -14,10 +18,58 @@ public class Properties {
 
     public static final Path LOGFX_DIR;
 
+    /**
+     * Default minimum size of a file for it to be read using memory-mapped segments.
+     */
+    public static final long DEFAULT_MMAP_THRESHOLD = 100L * 1024L * 1024L;
+
+    /**
+     * Default maximum number of bytes of a single log line that are kept for display.
+     */
+    public static final int DEFAULT_MAX_LINE_LENGTH = 1024 * 1024;
+
+    /**
+     * Default fraction of the time of one CPU core that may be used to count the lines of files by time.
+     */
+    public static final double DEFAULT_HISTOGRAM_CPU_BUDGET = 0.25;
+
+    /**
+     * Default minimum size of a file for it to have a search index (negative, i.e. files are not indexed by default).
+     */
+    public static final long DEFAULT_SEARCH_INDEX_THRESHOLD = -1L;
+
+    /**
+     * Default maximum number of bytes of memory used to build the search index of a file.
+     */
+    public static final long DEFAULT_SEARCH_INDEX_MEMORY = 64L * 1024L * 1024L;
+
+    /**
+     * Minimum number of bytes of memory that may be used to build the search index of a file.
+     */
+    public static final long MIN_SEARCH_INDEX_MEMORY = 8L * 1024L * 1024L;
+
+    /**
+     * Default maximum number of bytes of a stream (e.g. the standard input) kept on disk.
+     */
+    public static final long DEFAULT_STREAM_MAX_SIZE = 256L * 1024L * 1024L;
+
+    /**
+     * Minimum number of bytes of a stream that may be kept on disk.
+     */
+    public static final long MIN_STREAM_MAX_SIZE = 1024L * 1024L;
+
     private static volatile LogLevel logLevel = null;
     private static volatile LogTarget logTarget = null;
     private static final boolean refreshStylesheet;
     private static final String customStylesheet;
+    private static final long mmapThreshold;
+    private static final int maxLineLength;
+    private static final boolean readRotatedFiles;
+    private static final double histogramCpuBudget;
+    private static final Pattern recordContinuationPattern;
+    private static final long searchIndexThreshold;
+    private static final long searchIndexMemory;
+    private static final long streamMaxSize;
 
     static {
         String customHome = System.getProperty( "logfx.home" );
@@ -76,6 +128,83 @@ public class Properties {
 
         customStylesheet = System.getProperty( "logfx.stylesheet.file" );
         refreshStylesheet = System.getProperty( "logfx.stylesheet.norefresh" ) == null;
+
+        mmapThreshold = longProperty( "logfx.mmap.threshold", DEFAULT_MMAP_THRESHOLD, Long.MIN_VALUE,
+                "a number of bytes (use a negative number to disable)" );
+
+        maxLineLength = intProperty( "logfx.max.line.length", DEFAULT_MAX_LINE_LENGTH, 1,
+                "a positive number of bytes" );
+
+        readRotatedFiles = System.getProperty( "logfx.rotated.files" ) != null;
+
+        histogramCpuBudget = numberProperty( "logfx.histogram.cpu", DEFAULT_HISTOGRAM_CPU_BUDGET,
+                Double::parseDouble, value -> value > 0.0 && value <= 1.0,
+                "a number greater than 0 and at most 1" );
+
+        String recordContinuationValue = System.getProperty( "logfx.record.continuation" );
+        Pattern recordContinuation = null;
+
+        if ( recordContinuationValue != null && !recordContinuationValue.isEmpty() ) {
+            try {
+                recordContinuation = Pattern.compile( recordContinuationValue );
+            } catch ( PatternSyntaxException e ) {
+                System.err.println( "Invalid value for 'logfx.record.continuation' system property: " + recordContinuationValue );
+                System.err.println( "The value of 'logfx.record.continuation' must be a regular expression: " + e.getDescription() );
+            }
+        }
+
+        recordContinuationPattern = recordContinuation;
+
+        searchIndexThreshold = longProperty( "logfx.search.index.threshold", DEFAULT_SEARCH_INDEX_THRESHOLD,
+                Long.MIN_VALUE, "a number of bytes (use a negative number to disable)" );
+
+        searchIndexMemory = longProperty( "logfx.search.index.memory", DEFAULT_SEARCH_INDEX_MEMORY,
+                MIN_SEARCH_INDEX_MEMORY, "a number of bytes, at least " + MIN_SEARCH_INDEX_MEMORY );
+
+        streamMaxSize = longProperty( "logfx.stream.max.size", DEFAULT_STREAM_MAX_SIZE,
+                MIN_STREAM_MAX_SIZE, "a number of bytes, at least " + MIN_STREAM_MAX_SIZE );
+    }
+
+    private static long longProperty( String name, long defaultValue, long minValue, String expectedValue ) {
+        return numberProperty( name, defaultValue, Long::parseLong, value -> value >= minValue, expectedValue );
+    }
+
+    private static int intProperty( String name, int defaultValue, int minValue, String expectedValue ) {
+        return numberProperty( name, defaultValue, Integer::parseInt, value -> value >= minValue, expectedValue );
+    }
+
+    /**
+     * Read a numeric system property.
+     *
+     * @param name          name of the property
+     * @param defaultValue  value used if the property is not set, or its value is invalid
+     * @param parser        parses the value of the property
+     * @param isValid       whether a parsed value is valid
+     * @param expectedValue description of the valid values, shown if the property has an invalid value
+     * @return the value of the property
+     */
+    private static <N extends Number> N numberProperty( String name, N defaultValue,
+                                                        Function<String, N> parser,
+                                                        Predicate<N> isValid,
+                                                        String expectedValue ) {
+        String value = System.getProperty( name );
+
+        if ( value == null || value.trim().isEmpty() ) {
+            return defaultValue;
+        }
+
+        try {
+            N result = parser.apply( value.trim() );
+            if ( isValid.test( result ) ) {
+                return result;
+            }
+        } catch ( NumberFormatException e ) {
+            // reported below
+        }
+
+        System.err.println( "Invalid value for '" + name + "' system property: " + value );
+        System.err.println( "The value of '" + name + "' must be " + expectedValue );
+        return defaultValue;
     }
 
     public static Optional<LogLevel> getLogLevel() {
@@ -93,4 +222,67 @@ public class Properties {
     public static boolean isRefreshStylesheet() {
         return refreshStylesheet;
     }
+
+    /**
+     * @return the minimum size, in bytes, of a file for it to be read using memory-mapped segments,
+     * or a negative number if memory-mapped files should not be used.
+     */
+    public static long getMmapThreshold() {
+        return mmapThreshold;
+    }
+
+    /**
+     * @return the maximum number of bytes of a single log line that are kept for display.
+     * Longer lines are truncated.
+     */
+    public static int getMaxLineLength() {
+        return maxLineLength;
+    }
+
+    /**
+     * @return whether a log file and the files rotated from it (e.g. {@code app.log.1}, {@code app.log.2})
+     * should be displayed as if they were a single file.
+     */
+    public static boolean isReadRotatedFiles() {
+        return readRotatedFiles;
+    }
+
+    /**
+     * @return the fraction of the time of one CPU core (greater than 0, and at most 1) that may be used
+     * to count the lines of files by time, in the background.
+     */
+    public static double getHistogramCpuBudget() {
+        return histogramCpuBudget;
+    }
+
+    /**
+     * @return the pattern matching the start of lines that belong to the same record as the line before them,
+     * if a custom one was given.
+     */
+    public static Optional<Pattern> getRecordContinuationPattern() {
+        return Optional.ofNullable( recordContinuationPattern );
+    }
+
+    /**
+     * @return the minimum size, in bytes, of a file for a search index of it to be built in the background,
+     * or a negative number if files should not be indexed.
+     */
+    public static long getSearchIndexThreshold() {
+        return searchIndexThreshold;
+    }
+
+    /**
+     * @return the maximum number of bytes of memory that may be used to build the search index of a file.
+     */
+    public static long getSearchIndexMemory() {
+        return searchIndexMemory;
+    }
+
+    /**
+     * @return the maximum number of bytes of a stream that are kept on disk while it is displayed.
+     * The oldest parts of a stream are deleted when it grows larger.
+     */
+    public static long getStreamMaxSize() {
+        return streamMaxSize;
+    }
 }
@@ -0,0 +1,85 @@
+package com.athaydes.logfx.file;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of direct {@link ByteBuffer}s.
+ * <p>
+ * Direct buffers are expensive to allocate, so file readers borrow them from a pool for the duration of
+ * each read operation, then give them back. Only a limited number of buffers of each capacity is retained
+ * by the pool.
+ * <p>
+ * This class is thread-safe.
+ */
+final class ByteBufferPool {
+
+    private static final Logger log = LoggerFactory.getLogger( ByteBufferPool.class );
+
+    private static final ByteBufferPool globalInstance = new ByteBufferPool( 8 );
+
+    private final int maxBuffersPerCapacity;
+    private final Map<Integer, Queue<ByteBuffer>> buffersByCapacity = new ConcurrentHashMap<>( 4 );
+    private final AtomicInteger allocationCount = new AtomicInteger( 0 );
+
+    ByteBufferPool( int maxBuffersPerCapacity ) {
+        this.maxBuffersPerCapacity = maxBuffersPerCapacity;
+    }
+
+    /**
+     * @return the global instance of {@link ByteBufferPool}, shared by all file readers.
+     */
+    static ByteBufferPool getGlobalInstance() {
+        return globalInstance;
+    }
+
+    /**
+     * Borrow a buffer from this pool.
+     *
+     * @param capacity of the buffer
+     * @return a cleared buffer with the given capacity
+     */
+    ByteBuffer acquire( int capacity ) {
+        ByteBuffer buffer = buffersFor( capacity ).poll();
+        if ( buffer == null ) {
+            log.trace( "Allocating new direct buffer with capacity {}", capacity );
+            allocationCount.incrementAndGet();
+            buffer = ByteBuffer.allocateDirect( capacity );
+        }
+        return buffer;
+    }
+
+    /**
+     * Give back a buffer that was borrowed from this pool.
+     *
+     * @param buffer to return to the pool. Must not be used after being released.
+     */
+    void release( ByteBuffer buffer ) {
+        // cast needed so that the code also runs on Java 8, where Buffer methods do not return ByteBuffer
+        ( ( Buffer ) buffer ).clear();
+        Queue<ByteBuffer> buffers = buffersFor( buffer.capacity() );
+        if ( buffers.size() < maxBuffersPerCapacity ) {
+            buffers.offer( buffer );
+        }
+    }
+
+    /**
+     * @return how many buffers this pool has allocated so far.
+     */
+    int getAllocationCount() {
+        return allocationCount.get();
+    }
+
+    private Queue<ByteBuffer> buffersFor( int capacity ) {
+        return buffersByCapacity.computeIfAbsent( capacity, ( ignore ) -> new ConcurrentLinkedQueue<>() );
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.athaydes.logfx.file;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * {@link FileChunks} implementation that reads the file through a {@link FileChannel}
+ * into a direct buffer borrowed from a {@link ByteBufferPool}.
+ * <p>
+ * Instances of this class are obtained from a {@link SharedFileChannel}. Closing an instance gives the buffer
+ * back to the pool and tells the {@link SharedFileChannel} that the read operation is done, but does not close
+ * the channel.
+ */
+final class ChannelFileChunks implements FileChunks {
+
+    private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate( 0 );
+
+    private final FileChannel channel;
+    private final long length;
+    private final ByteBufferPool bufferPool;
+    private final Runnable onClose;
+
+    private ByteBuffer buffer;
+
+    ChannelFileChunks( FileChannel channel, long length, ByteBufferPool bufferPool, ByteBuffer buffer,
+                       Runnable onClose ) {
+        this.channel = channel;
+        this.length = length;
+        this.bufferPool = bufferPool;
+        this.buffer = buffer;
+        this.onClose = onClose;
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public ByteBuffer chunkFrom( long start, int maxBytes ) throws IOException {
+        if ( start >= length ) {
+            return EMPTY_BUFFER;
+        }
+        int byteCount = ( int ) Math.min( Math.min( maxBytes, buffer.capacity() ), length - start );
+        return read( start, byteCount );
+    }
+
+    @Override
+    public ByteBuffer chunkBefore( long end, int maxBytes ) throws IOException {
+        end = Math.min( end, length );
+        if ( end <= 0L ) {
+            return EMPTY_BUFFER;
+        }
+        long start = Math.max( 0L, end - Math.min( maxBytes, buffer.capacity() ) );
+        return read( start, ( int ) ( end - start ) );
+    }
+
+    private ByteBuffer read( long start, int byteCount ) throws IOException {
+        // casts needed so that the code also runs on Java 8, where Buffer methods do not return ByteBuffer
+        ( ( Buffer ) buffer ).clear();
+        ( ( Buffer ) buffer ).limit( byteCount );
+        while ( buffer.hasRemaining() ) {
+            int bytesRead = channel.read( buffer, start + buffer.position() );
+            if ( bytesRead < 0 ) {
+                break;
+            }
+        }
+        ( ( Buffer ) buffer ).flip();
+        return buffer;
+    }
+
+    /**
+     * Gives the buffer back to the pool.
+     * <p>
+     * The file channel remains open, unless the {@link SharedFileChannel} was closed while this read operation was
+     * in progress.
+     */
+    @Override
+    public void close() {
+        if ( buffer != null ) {
+            bufferPool.release( buffer );
+            buffer = null;
+            onClose.run();
+        }
+    }
+
+}
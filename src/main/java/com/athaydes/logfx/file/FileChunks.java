@@ -0,0 +1,64 @@
+package com.athaydes.logfx.file;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Provides the contents of a file in chunks of bytes.
+ * <p>
+ * A {@link FileReader} opens an instance of this type for each read operation it performs,
+ * and closes it when the operation is done. Implementations may keep the file open between operations.
+ * <p>
+ * The buffers returned by this type are only valid until the next call to one of its methods,
+ * and must not be modified by callers. Their position is always 0 and their limit is the number
+ * of bytes available.
+ */
+interface FileChunks extends Closeable {
+
+    /**
+     * @return the current length of the file, in bytes.
+     * @throws IOException if the file cannot be accessed
+     */
+    long length() throws IOException;
+
+    /**
+     * Get the bytes of the file starting at the given position.
+     *
+     * @param start    position of the first byte to return
+     * @param maxBytes maximum number of bytes to return
+     * @return a buffer containing at least one byte, unless start is at or after the end of the file,
+     * in which case the buffer is empty.
+     * @throws IOException if the file cannot be read
+     */
+    ByteBuffer chunkFrom( long start, int maxBytes ) throws IOException;
+
+    /**
+     * Get the bytes of the file immediately before the given position.
+     * <p>
+     * If the given position is after the end of the file, the end of the file is used instead.
+     *
+     * @param end      position after the last byte to return
+     * @param maxBytes maximum number of bytes to return
+     * @return a buffer containing at least one byte, unless end is 0, in which case the buffer is empty.
+     * The position of the first byte in the file is {@code min(end, length()) - buffer.limit()}.
+     * @throws IOException if the file cannot be read
+     */
+    ByteBuffer chunkBefore( long end, int maxBytes ) throws IOException;
+
+    /**
+     * A source of {@link FileChunks}.
+     */
+    interface Source {
+
+        /**
+         * Open the file for reading.
+         *
+         * @param bufferSize the preferred size of the chunks to be read
+         * @return the contents of the file
+         * @throws IOException if the file cannot be opened
+         */
+        FileChunks open( int bufferSize ) throws IOException;
+    }
+
+}
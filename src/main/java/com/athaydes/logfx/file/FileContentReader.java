@@ -1,6 +1,7 @@
 package com.athaydes.logfx.file;
 
 import java.io.File;
+import java.nio.charset.Charset;
 import java.time.ZonedDateTime;
 import java.util.List;
 import java.util.Optional;
@@ -30,6 +31,39 @@ public interface FileContentReader {
      */
     void setLineFilter( Predicate<String> lineFilter );
 
+    /**
+     * Set the charset used to decode the contents of the file.
+     * <p>
+     * If the given charset is null, the charset is detected from the contents of the file.
+     * <p>
+     * The change takes effect on the next read operation, so the file window should be refreshed after calling
+     * this method.
+     *
+     * @param charset the charset of the file, or null to detect it automatically
+     */
+    void setCharset( Charset charset );
+
+    /**
+     * This method may be called from any Thread.
+     *
+     * @return the charset that was set with {@link #setCharset(Charset)}, or nothing if the charset of the file
+     * is detected automatically.
+     */
+    Optional<Charset> getCharset();
+
+    /**
+     * Set how lines are grouped into multi-line records.
+     * <p>
+     * In record mode, each line returned by this reader is a whole record, with the lines of the record
+     * separated by new-lines, and line numbers refer to the first line of each record.
+     * <p>
+     * The change takes effect on the next read operation, so the file window should be refreshed after calling
+     * this method.
+     *
+     * @param recordMode how to group lines into records, or null to read single lines
+     */
+    void setRecordMode( RecordMode recordMode );
+
     /**
      * Request the given number of lines above the current file window, moving
      * the file window accordingly.
@@ -48,6 +82,17 @@ public interface FileContentReader {
      */
     Optional<? extends List<String>> moveDown( int lines );
 
+    /**
+     * Cancel the {@link #moveUp(int)} or {@link #moveDown(int)} operation in progress, if any.
+     * <p>
+     * Moving through a file with a filter that rejects most lines may require reading a large part of the file,
+     * so this allows the operation to be abandoned, for example, when the user starts moving in the
+     * other direction. A cancelled operation returns the lines it found before it was cancelled.
+     * <p>
+     * Differently from other methods of this interface, this method may be called from any Thread.
+     */
+    void cancelCurrentRead();
+
     /**
      * Moves the file window so that the first line is the first line immediately at or before
      * the given dateTime, so that the next line must be after the given dateTime.
@@ -69,6 +114,21 @@ public interface FileContentReader {
     FileQueryResult moveTo( ZonedDateTime dateTime,
                             Function<String, Optional<ZonedDateTime>> dateExtractor );
 
+    /**
+     * Moves the file window so that the first line is the line with the given number, or as close to it
+     * as possible if the line is near the end of the file.
+     * <p>
+     * Lines are numbered from the top of the file, starting at 1. Lines that are not accepted by the current
+     * line filter still count towards the line numbers.
+     *
+     * @param lineNumber number of the line to move to
+     * @return a successful result with the position of the line in the file window,
+     * a result before the range if the line number is smaller than 1,
+     * a result after the range if the file does not have as many lines (the file window is moved to the tail),
+     * or an unsuccessful result if the file could not be read.
+     */
+    FileQueryResult moveToLine( long lineNumber );
+
     /**
      * Move the file window to the top of the file.
      */
@@ -96,11 +156,52 @@ public interface FileContentReader {
      */
     Optional<? extends List<String>> refresh();
 
+    /**
+     * Same as {@link #refresh()}, but returning lines that are only decoded when their text is requested.
+     * <p>
+     * Callers that may not need the text of every line, or that can work with the bytes of the lines,
+     * should prefer this method.
+     *
+     * @return the current file window, or nothing if the file does not exist
+     */
+    Optional<? extends List<LineHandle>> refreshLines();
+
+    /**
+     * Follow the tail of the file.
+     * <p>
+     * If the file window is already at the end of the file, only the bytes appended to the file since it was
+     * last read are read, and the lines they contain are added to the bottom of the file window.
+     * Otherwise, or if the file has shrunk, this has the same effect as calling {@link #tail()} followed
+     * by {@link #refresh()}.
+     *
+     * @return the changes to the file window, or nothing if the file does not exist
+     */
+    Optional<TailUpdate> refreshTail();
+
+    /**
+     * Get the line numbers of the lines in the current file window.
+     * <p>
+     * The file window is set by {@link #refresh()}, and shifted by {@link #moveUp(int)} and
+     * {@link #moveDown(int)} by as many lines as they return.
+     *
+     * @return array with the same length as the file window, containing the number of each line in the
+     * file window, or 0 where the line number is not known (either because the file window is not full or
+     * because the file has not been indexed up to that line yet).
+     */
+    long[] getLineNumbers();
+
     /**
      * @return the file associated with this instance.
      */
     File getFile();
 
+    /**
+     * Release any resources held by this reader, such as open files.
+     * <p>
+     * This reader should not be used after being closed.
+     */
+    void close();
+
     /**
      * Result of performing a query into the file contents.
      */
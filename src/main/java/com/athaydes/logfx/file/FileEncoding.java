@@ -0,0 +1,386 @@
+package com.athaydes.logfx.file;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The character encoding of a file, and how new-lines are represented in it.
+ * <p>
+ * In encodings that are compatible with ASCII (e.g. UTF-8 and ISO-8859-1), a new-line is the single byte
+ * {@code '\n'}, which never appears as part of another character. In UTF-16, a new-line takes two bytes, and
+ * the byte {@code '\n'} may be part of another character, so new-lines can only be found by looking at whole
+ * code units. To make that possible, chunks of a UTF-16 file are always aligned to code units
+ * (see {@link #align(FileChunks)}).
+ * <p>
+ * New-lines are always identified by the position of their last byte, so the next line starts immediately
+ * after that position regardless of the encoding.
+ */
+public final class FileEncoding {
+
+    private static final Logger log = LoggerFactory.getLogger( FileEncoding.class );
+
+    /**
+     * Number of bytes at the start of a file used to detect its encoding.
+     */
+    static final int DETECTION_SAMPLE_SIZE = 4 * 1024;
+
+    static final FileEncoding UTF_8 = new FileEncoding( StandardCharsets.UTF_8, 1, ( byte ) 0, true );
+
+    private static final Charset FALLBACK_CHARSET = Charset.isSupported( "windows-1252" ) ?
+            Charset.forName( "windows-1252" ) :
+            StandardCharsets.ISO_8859_1;
+
+    private final Charset charset;
+    private final int codeUnitSize;
+
+    // the first byte of the new-line code unit, only used for 2-byte code units
+    private final byte newLineFirstByte;
+    private final byte newLineLastByte;
+    private final boolean asciiCompatible;
+
+    private FileEncoding( Charset charset, int codeUnitSize, byte newLineFirstByte, boolean asciiCompatible ) {
+        this.charset = charset;
+        this.codeUnitSize = codeUnitSize;
+        this.newLineFirstByte = newLineFirstByte;
+        this.newLineLastByte = codeUnitSize == 1 || newLineFirstByte == 0 ? ( byte ) '\n' : 0;
+        this.asciiCompatible = asciiCompatible;
+    }
+
+    /**
+     * @param charset a charset
+     * @return the encoding of files using the given charset
+     */
+    static FileEncoding of( Charset charset ) {
+        if ( charset.equals( StandardCharsets.UTF_8 ) ) {
+            return UTF_8;
+        }
+        if ( charset.equals( StandardCharsets.UTF_16LE ) ) {
+            return new FileEncoding( charset, 2, ( byte ) '\n', false );
+        }
+        if ( charset.equals( StandardCharsets.UTF_16BE ) || charset.equals( StandardCharsets.UTF_16 ) ) {
+            // without a byte-order mark, UTF-16 is big-endian
+            return new FileEncoding( charset, 2, ( byte ) 0, false );
+        }
+        return new FileEncoding( charset, 1, ( byte ) 0, isAsciiCompatible( charset ) );
+    }
+
+    /**
+     * Detect the encoding of a file from its first bytes.
+     * <p>
+     * A byte-order mark identifies UTF-8 and UTF-16 files. Otherwise, a file where most characters have a zero
+     * high or low byte is considered to be UTF-16, and a file that is not valid UTF-8 is considered to use
+     * a single-byte Latin encoding.
+     *
+     * @param chunks the contents of the file
+     * @return the encoding of the file
+     * @throws IOException if the file cannot be read
+     */
+    static FileEncoding detect( FileChunks chunks ) throws IOException {
+        return detect( chunks.chunkFrom( 0L, DETECTION_SAMPLE_SIZE ) );
+    }
+
+    /**
+     * Detect the charset of the contents of a stream from its first bytes, in the same way as the encoding of
+     * files is detected by {@link FileReader}.
+     * <p>
+     * The first bytes of the stream are read, then the stream is reset to its start, so it must support marks.
+     *
+     * @param stream the contents of a file, from its start
+     * @return the charset of the contents
+     * @throws IOException if the stream cannot be read
+     */
+    public static Charset detectCharset( InputStream stream ) throws IOException {
+        if ( !stream.markSupported() ) {
+            throw new IllegalArgumentException( "Stream does not support marks" );
+        }
+        byte[] sample = new byte[ DETECTION_SAMPLE_SIZE ];
+        int length = 0;
+        stream.mark( DETECTION_SAMPLE_SIZE );
+        try {
+            int bytesRead = 0;
+            while ( length < sample.length && bytesRead >= 0 ) {
+                bytesRead = stream.read( sample, length, sample.length - length );
+                length += Math.max( 0, bytesRead );
+            }
+        } finally {
+            stream.reset();
+        }
+        return detect( ByteBuffer.wrap( sample, 0, length ).slice() ).getCharset();
+    }
+
+    /**
+     * Read the first lines of a file directly, rather than with a {@link FileReader}, which would start indexing
+     * the file in the background.
+     * <p>
+     * Gzip-compressed files are decompressed, and the charset of the file is detected as a {@link FileReader}
+     * would. The byte-order mark, if any, is not part of the first line.
+     *
+     * @param file     to read
+     * @param maxLines maximum number of lines to read
+     * @return the first lines of the file
+     * @throws IOException if the file cannot be read
+     */
+    public static List<String> readFirstLines( File file, int maxLines ) throws IOException {
+        InputStream stream = new FileInputStream( file );
+        if ( GzipFileReader.isGzipFile( file ) ) {
+            stream = new GZIPInputStream( stream );
+        }
+        stream = new BufferedInputStream( stream );
+        List<String> lines = new ArrayList<>( maxLines );
+        try ( BufferedReader reader = new BufferedReader(
+                new InputStreamReader( stream, detectCharset( stream ) ) ) ) {
+            String line;
+            while ( lines.size() < maxLines && ( line = reader.readLine() ) != null ) {
+                lines.add( lines.isEmpty() && line.startsWith( "\uFEFF" ) ? line.substring( 1 ) : line );
+            }
+        }
+        return lines;
+    }
+
+    private static FileEncoding detect( ByteBuffer sample ) {
+        int length = sample.limit();
+
+        FileEncoding result;
+
+        if ( length >= 3 && ( sample.get( 0 ) & 0xFF ) == 0xEF &&
+                ( sample.get( 1 ) & 0xFF ) == 0xBB && ( sample.get( 2 ) & 0xFF ) == 0xBF ) {
+            result = UTF_8;
+        } else if ( length >= 2 && ( sample.get( 0 ) & 0xFF ) == 0xFF && ( sample.get( 1 ) & 0xFF ) == 0xFE ) {
+            result = of( StandardCharsets.UTF_16LE );
+        } else if ( length >= 2 && ( sample.get( 0 ) & 0xFF ) == 0xFE && ( sample.get( 1 ) & 0xFF ) == 0xFF ) {
+            result = of( StandardCharsets.UTF_16BE );
+        } else {
+            result = detectWithoutByteOrderMark( sample );
+        }
+
+        log.debug( "Detected encoding: {}", result );
+
+        return result;
+    }
+
+    private static FileEncoding detectWithoutByteOrderMark( ByteBuffer sample ) {
+        int pairs = sample.limit() / 2;
+        int evenZeros = 0;
+        int oddZeros = 0;
+        for ( int i = 0; i < pairs * 2; i += 2 ) {
+            if ( sample.get( i ) == 0 ) {
+                evenZeros++;
+            }
+            if ( sample.get( i + 1 ) == 0 ) {
+                oddZeros++;
+            }
+        }
+
+        // in text files, zero bytes only appear in UTF-16 (or UTF-32) encoded characters
+        if ( pairs > 0 ) {
+            if ( oddZeros > pairs / 4 && evenZeros < pairs / 20 + 1 ) {
+                return of( StandardCharsets.UTF_16LE );
+            }
+            if ( evenZeros > pairs / 4 && oddZeros < pairs / 20 + 1 ) {
+                return of( StandardCharsets.UTF_16BE );
+            }
+        }
+
+        return isValidUtf8( sample ) ? UTF_8 : of( FALLBACK_CHARSET );
+    }
+
+    private static boolean isValidUtf8( ByteBuffer sample ) {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput( CodingErrorAction.REPORT )
+                .onUnmappableCharacter( CodingErrorAction.REPORT );
+        CharBuffer chars = CharBuffer.allocate( sample.limit() );
+
+        // the sample may end in the middle of a character, so don't treat it as the end of the input
+        return !decoder.decode( sample.duplicate(), chars, false ).isError();
+    }
+
+    private static boolean isAsciiCompatible( Charset charset ) {
+        byte[] ascii = new byte[ 128 ];
+        for ( int i = 0; i < ascii.length; i++ ) {
+            ascii[ i ] = ( byte ) i;
+        }
+        try {
+            CharBuffer chars = charset.newDecoder()
+                    .onMalformedInput( CodingErrorAction.REPORT )
+                    .onUnmappableCharacter( CodingErrorAction.REPORT )
+                    .decode( ByteBuffer.wrap( ascii ) );
+            if ( chars.remaining() != ascii.length ) {
+                return false;
+            }
+            for ( int i = 0; i < ascii.length; i++ ) {
+                if ( chars.get( i ) != i ) {
+                    return false;
+                }
+            }
+            return true;
+        } catch ( CharacterCodingException | UnsupportedOperationException e ) {
+            return false;
+        }
+    }
+
+    Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * @return the size of a new-line, in bytes
+     */
+    int getNewLineSize() {
+        return codeUnitSize;
+    }
+
+    /**
+     * @return the bytes of a new-line in this encoding
+     */
+    byte[] newLineBytes() {
+        return codeUnitSize == 1 ?
+                new byte[]{ '\n' } :
+                new byte[]{ newLineFirstByte, newLineLastByte };
+    }
+
+    /**
+     * @return true if ASCII characters are encoded as single bytes, as in ASCII
+     */
+    boolean isAsciiCompatible() {
+        return asciiCompatible;
+    }
+
+    /**
+     * Check whether the byte at the given index of a buffer is the last byte of a new-line.
+     * <p>
+     * The buffer must have been obtained from chunks aligned with {@link #align(FileChunks)}.
+     *
+     * @param buffer the buffer
+     * @param index  index in the buffer
+     * @return true if the byte is the last byte of a new-line
+     */
+    boolean isNewLine( ByteBuffer buffer, int index ) {
+        if ( codeUnitSize == 1 ) {
+            return buffer.get( index ) == '\n';
+        }
+        return ( index & 1 ) == 1 &&
+                buffer.get( index ) == newLineLastByte &&
+                buffer.get( index - 1 ) == newLineFirstByte;
+    }
+
+    /**
+     * Make sure that the chunks returned by the given instance are aligned to code units, i.e. given a
+     * position that is the start of a code unit, the returned buffers start at the start of a code unit.
+     * Also, buffers returned by {@link FileChunks#chunkFrom(long, int)} always end at the end of a code unit.
+     *
+     * @param chunks file chunks
+     * @return chunks aligned to code units
+     */
+    FileChunks align( FileChunks chunks ) {
+        return codeUnitSize == 1 ? chunks : new CodeUnitAlignedChunks( chunks );
+    }
+
+    /**
+     * @return a new decoder for lines of text in this encoding. Decoders are not thread-safe.
+     */
+    LineDecoder newDecoder() {
+        return new LineDecoder( charset, asciiCompatible, codeUnitSize > 1 );
+    }
+
+    @Override
+    public boolean equals( Object other ) {
+        if ( this == other ) return true;
+        if ( other == null || getClass() != other.getClass() ) return false;
+        FileEncoding that = ( FileEncoding ) other;
+        return codeUnitSize == that.codeUnitSize &&
+                newLineFirstByte == that.newLineFirstByte &&
+                charset.equals( that.charset );
+    }
+
+    @Override
+    public int hashCode() {
+        return charset.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "FileEncoding{" + charset + '}';
+    }
+
+    private static final class CodeUnitAlignedChunks implements FileChunks {
+
+        private final FileChunks delegate;
+
+        CodeUnitAlignedChunks( FileChunks delegate ) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public long length() throws IOException {
+            return delegate.length();
+        }
+
+        @Override
+        public ByteBuffer chunkFrom( long start, int maxBytes ) throws IOException {
+            ByteBuffer buffer = delegate.chunkFrom( start, Math.max( 2, maxBytes ) );
+            int limit = buffer.limit();
+            if ( ( limit & 1 ) == 0 || start + limit >= delegate.length() ) {
+                return buffer;
+            }
+            if ( limit > 1 ) {
+                ByteBuffer result = buffer.duplicate();
+                ( ( Buffer ) result ).limit( limit - 1 );
+                return result.slice();
+            }
+
+            // a single byte of a code unit, the next byte must be read separately
+            byte first = buffer.get( 0 );
+            ByteBuffer next = delegate.chunkFrom( start + 1, 1 );
+            return next.limit() == 0 ?
+                    ByteBuffer.wrap( new byte[]{ first } ) :
+                    ByteBuffer.wrap( new byte[]{ first, next.get( 0 ) } );
+        }
+
+        @Override
+        public ByteBuffer chunkBefore( long end, int maxBytes ) throws IOException {
+            long actualEnd = Math.min( end, delegate.length() );
+            ByteBuffer buffer = delegate.chunkBefore( end, Math.max( 2, maxBytes ) );
+            int limit = buffer.limit();
+            long bufferStart = actualEnd - limit;
+            if ( ( bufferStart & 1L ) == 0L ) {
+                return buffer;
+            }
+            if ( limit > 1 ) {
+                ByteBuffer result = buffer.duplicate();
+                ( ( Buffer ) result ).position( 1 );
+                return result.slice();
+            }
+
+            // a single byte of a code unit, the previous byte must be read separately
+            byte last = buffer.get( 0 );
+            ByteBuffer previous = delegate.chunkBefore( bufferStart, 1 );
+            return previous.limit() == 0 ?
+                    ByteBuffer.wrap( new byte[]{ last } ) :
+                    ByteBuffer.wrap( new byte[]{ previous.get( 0 ), last } );
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+}
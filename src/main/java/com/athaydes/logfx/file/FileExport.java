@@ -0,0 +1,640 @@
+package com.athaydes.logfx.file;
+
+import com.athaydes.logfx.config.Properties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.ZonedDateTime;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exports the lines of a file within a range of bytes or of date-times to another file, in the background.
+ * <p>
+ * When all lines of the range are exported, they are copied with {@link FileChannel#transferTo(long, long,
+ * WritableByteChannel)}, so the bytes of the file are never copied to the heap (unless the file is compressed,
+ * or the export is compressed).
+ * <p>
+ * When only the lines accepted by a filter are exported, the range is scanned with a {@link ParallelLineScanner},
+ * and the lines found are copied in large batches, with the lines next to each other copied together.
+ * <p>
+ * The progress of an export is reported regularly, and an export can be cancelled at any time, in which case
+ * the file it was writing is deleted. Starting a new export cancels the export in progress, if any.
+ */
+public final class FileExport {
+
+    private static final Logger log = LoggerFactory.getLogger( FileExport.class );
+
+    // number of bytes written at once when exporting the lines accepted by a filter
+    private static final int DEFAULT_BATCH_SIZE = 1024 * 1024;
+
+    // maximum number of bytes copied at once, so that progress is reported regularly
+    private static final long DEFAULT_TRANSFER_SIZE = 64L * 1024L * 1024L;
+
+    private static final int BUFFER_SIZE = 4096;
+
+    private static final ExecutorService backgroundExporter = Executors.newSingleThreadExecutor( ( runnable ) -> {
+        Thread thread = new Thread( runnable, "logfx-file-export" );
+        thread.setDaemon( true );
+        return thread;
+    } );
+
+    /**
+     * The progress of an export.
+     */
+    public static final class Progress {
+        private final long exportedBytes;
+        private final long processedBytes;
+        private final long totalBytes;
+        private final boolean done;
+        private final String error;
+
+        Progress( long exportedBytes, long processedBytes, long totalBytes, boolean done, String error ) {
+            this.exportedBytes = exportedBytes;
+            this.processedBytes = processedBytes;
+            this.totalBytes = totalBytes;
+            this.done = done;
+            this.error = error;
+        }
+
+        /**
+         * @return the number of bytes of the file exported so far (before compression)
+         */
+        public long getExportedBytes() {
+            return exportedBytes;
+        }
+
+        /**
+         * @return the number of bytes of the range that have been processed so far
+         */
+        public long getProcessedBytes() {
+            return processedBytes;
+        }
+
+        /**
+         * @return the number of bytes of the range being exported, or 0 if not known yet
+         */
+        public long getTotalBytes() {
+            return totalBytes;
+        }
+
+        /**
+         * @return true if the export has finished (successfully, if there is no error)
+         */
+        public boolean isDone() {
+            return done;
+        }
+
+        /**
+         * @return the error that stopped the export, if any
+         */
+        public Optional<String> getError() {
+            return Optional.ofNullable( error );
+        }
+
+        @Override
+        public String toString() {
+            return "Progress{" +
+                    "exportedBytes=" + exportedBytes +
+                    ", processedBytes=" + processedBytes +
+                    ", totalBytes=" + totalBytes +
+                    ", done=" + done +
+                    ", error='" + error + '\'' +
+                    '}';
+        }
+    }
+
+    private final FileReader reader;
+    private final int maxLineLength;
+    private final int regionSize;
+    private final long stepSize;
+    private final int batchSize;
+    private final long transferSize;
+    private final Executor executor;
+
+    // the export in progress, or the last one that ran
+    private Export export;
+
+    FileExport( FileReader reader,
+                int maxLineLength,
+                int regionSize,
+                long stepSize,
+                int batchSize,
+                long transferSize,
+                Executor executor ) {
+        this.reader = reader;
+        this.maxLineLength = maxLineLength;
+        this.regionSize = regionSize;
+        this.stepSize = stepSize;
+        this.batchSize = batchSize;
+        this.transferSize = transferSize;
+        this.executor = executor;
+    }
+
+    /**
+     * Create an export of the file read by the given reader.
+     * <p>
+     * Only readers of a single file are supported.
+     *
+     * @param reader reader of a file
+     * @return an export of the file, if the reader is supported
+     */
+    public static Optional<FileExport> forReader( FileContentReader reader ) {
+        if ( !( reader instanceof FileReader ) ) {
+            return Optional.empty();
+        }
+        return Optional.of( new FileExport( ( FileReader ) reader, Properties.getMaxLineLength(),
+                ParallelLineScanner.DEFAULT_REGION_SIZE, ParallelLineScanner.DEFAULT_STEP_SIZE, DEFAULT_BATCH_SIZE,
+                DEFAULT_TRANSFER_SIZE, backgroundExporter ) );
+    }
+
+    /**
+     * Start exporting the lines starting within the given range of bytes, cancelling the export in progress, if any.
+     * <p>
+     * This method may be called from any Thread.
+     *
+     * @param start      start of the range (inclusive)
+     * @param end        end of the range (exclusive)
+     * @param filter     filter accepting the lines to export, which must be thread-safe, or null to export all lines
+     * @param target     file to write the lines to, which is replaced if it exists
+     * @param gzip       whether to compress the exported lines with gzip
+     * @param onProgress called from a background Thread as the export progresses, but not after it is cancelled
+     */
+    public void exportBytes( long start, long end, Predicate<String> filter,
+                             File target, boolean gzip, Consumer<Progress> onProgress ) {
+        start( new Export( new ByteRange( start, end ), filter, target, gzip, onProgress ) );
+    }
+
+    /**
+     * Start exporting the lines logged within the given range of date-times, cancelling the export in progress,
+     * if any.
+     * <p>
+     * The range starts at the first line dated at or after the start date-time, and ends before the first line
+     * dated after the end date-time, so that lines without a date-time (e.g. the lines of stack-traces) are exported
+     * together with the dated line before them. The lines of the file must be sorted by date-time.
+     * <p>
+     * This method must be called from the Thread that uses the reader, as it bisects the file (or uses its
+     * timestamp index) to find where the range is, in order to avoid scanning the whole file for it.
+     *
+     * @param from          start date-time of the range (inclusive)
+     * @param until         end date-time of the range (inclusive)
+     * @param dateExtractor function to extract the date-time of the lines of the file, which must be thread-safe
+     * @param filter        filter accepting the lines to export, which must be thread-safe, or null to export
+     *                      all lines
+     * @param target        file to write the lines to, which is replaced if it exists
+     * @param gzip          whether to compress the exported lines with gzip
+     * @param onProgress    called from a background Thread as the export progresses, but not after it is cancelled
+     */
+    public void exportTimeRange( ZonedDateTime from, ZonedDateTime until,
+                                 Function<String, Optional<ZonedDateTime>> dateExtractor,
+                                 Predicate<String> filter, File target, boolean gzip,
+                                 Consumer<Progress> onProgress ) {
+        Optional<TimestampIndex> index = reader.getCompleteTimestampIndex( dateExtractor );
+        TimeRange range = new TimeRange( from, until, dateExtractor,
+                lineStartCloseToDate( from, dateExtractor ),
+                index.flatMap( i -> toOptional( i.offsetAfter( from ) ) ).orElse( Long.MAX_VALUE ),
+                // bisecting for the instant after the end of the range gets closer to the first line after it
+                // when many lines have the same date-time
+                lineStartCloseToDate( until.plusNanos( 1L ), dateExtractor ),
+                index.flatMap( i -> toOptional( i.offsetAfter( until ) ) ).orElse( Long.MAX_VALUE ) );
+        start( new Export( range, filter, target, gzip, onProgress ) );
+    }
+
+    /**
+     * Cancel the export in progress, if any, deleting the file it was writing.
+     * <p>
+     * This method may be called from any Thread.
+     */
+    public synchronized void cancel() {
+        if ( export != null ) {
+            export.cancelled = true;
+        }
+    }
+
+    private void start( Export newExport ) {
+        synchronized ( this ) {
+            cancel();
+            export = newExport;
+        }
+        executor.execute( newExport::run );
+    }
+
+    /**
+     * @return the start of a line dated before the given date-time, but close to it, or the start of the file
+     * if it cannot be read
+     * @see FileReader#lineStartCloseToDate(ZonedDateTime, Function)
+     */
+    private long lineStartCloseToDate( ZonedDateTime dateTime,
+                                       Function<String, Optional<ZonedDateTime>> dateExtractor ) {
+        try {
+            return reader.lineStartCloseToDate( dateTime, dateExtractor );
+        } catch ( IOException e ) {
+            log.warn( "Error reading file [{}]: {}", reader.getFile(), e );
+            return 0L;
+        }
+    }
+
+    private static Optional<Long> toOptional( OptionalLong value ) {
+        return value.isPresent() ? Optional.of( value.getAsLong() ) : Optional.empty();
+    }
+
+    /**
+     * A range of the file to export, resolved to the positions of its first line and of the line after its last line
+     * when the export runs.
+     */
+    private interface Range {
+        long[] resolve( Export export, FileChunks chunks ) throws IOException;
+    }
+
+    private static final class ByteRange implements Range {
+        private final long start;
+        private final long end;
+
+        ByteRange( long start, long end ) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public long[] resolve( Export export, FileChunks chunks ) throws IOException {
+            long rangeStart = export.lineStartFrom( Math.max( 0L, start ), chunks );
+            long rangeEnd = export.lineStartFrom( Math.max( rangeStart, end ), chunks );
+            return new long[]{ rangeStart, rangeEnd };
+        }
+    }
+
+    private static final class TimeRange implements Range {
+        private final ZonedDateTime from;
+        private final ZonedDateTime until;
+        private final Function<String, Optional<ZonedDateTime>> dateExtractor;
+
+        // bounds of the positions of the first line of the range and of the line after its last line
+        private final long fromLow;
+        private final long fromHigh;
+        private final long untilLow;
+        private final long untilHigh;
+
+        TimeRange( ZonedDateTime from, ZonedDateTime until,
+                   Function<String, Optional<ZonedDateTime>> dateExtractor,
+                   long fromLow, long fromHigh, long untilLow, long untilHigh ) {
+            this.from = from;
+            this.until = until;
+            this.dateExtractor = dateExtractor;
+            this.fromLow = fromLow;
+            this.fromHigh = fromHigh;
+            this.untilLow = untilLow;
+            this.untilHigh = untilHigh;
+        }
+
+        @Override
+        public long[] resolve( Export export, FileChunks chunks ) throws IOException {
+            long length = chunks.length();
+            long rangeStart = export.newScanner( ParallelLineScanner.dateTimeFilter( dateExtractor,
+                    dateTime -> !dateTime.isBefore( from ) ) )
+                    .firstMatchStart( Math.min( fromLow, length ), Math.min( fromHigh, length ) );
+            long rangeEnd = export.newScanner( ParallelLineScanner.dateTimeFilter( dateExtractor,
+                    dateTime -> dateTime.isAfter( until ) ) )
+                    .firstMatchStart( Math.max( rangeStart, Math.min( untilLow, length ) ),
+                            Math.max( rangeStart, Math.min( untilHigh, length ) ) );
+            return new long[]{ rangeStart, rangeEnd };
+        }
+    }
+
+    private final class Export {
+
+        private final Range range;
+        private final Predicate<String> filter;
+        private final File target;
+        private final boolean gzip;
+        private final Consumer<Progress> onProgress;
+
+        private volatile boolean cancelled = false;
+
+        private FileEncoding encoding;
+        private long exportedBytes = 0L;
+        private long processedBytes = 0L;
+        private long totalBytes = 0L;
+
+        Export( Range range, Predicate<String> filter, File target, boolean gzip, Consumer<Progress> onProgress ) {
+            this.range = range;
+            this.filter = filter;
+            this.target = target;
+            this.gzip = gzip;
+            this.onProgress = onProgress;
+        }
+
+        void run() {
+            if ( cancelled ) {
+                return;
+            }
+
+            long startTime = System.nanoTime();
+            String error = null;
+
+            report( false, null );
+
+            Charset charset = reader.getCharset().orElse( null );
+
+            try ( FileChunks chunks = reader.openIndexChunks( BUFFER_SIZE ) ) {
+                encoding = charset == null ? FileEncoding.detect( chunks ) : FileEncoding.of( charset );
+                FileChunks alignedChunks = encoding.align( chunks );
+
+                long[] positions = range.resolve( this, alignedChunks );
+                long start = positions[ 0 ];
+                long end = positions[ 1 ];
+                totalBytes = end - start;
+
+                try ( ByteSource source = openSource();
+                      WritableByteChannel out = openTarget() ) {
+                    if ( filter == null ) {
+                        copy( source, start, end, out );
+                    } else {
+                        exportFiltered( source, start, end, out );
+                    }
+                }
+            } catch ( IOException | RuntimeException e ) {
+                log.warn( "Error exporting file [{}] to [{}]: {}", reader.getFile(), target, e );
+                error = e.toString();
+            }
+
+            if ( cancelled || error != null ) {
+                deleteTarget();
+            }
+
+            if ( log.isDebugEnabled() ) {
+                log.debug( "Exported {} of {} bytes of file {} to {} in {} ms (cancelled={})",
+                        exportedBytes, totalBytes, reader.getFile(), target,
+                        TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - startTime ), cancelled );
+            }
+
+            report( true, error );
+        }
+
+        ParallelLineScanner newScanner( Predicate<LineHandle> lineFilter ) {
+            return new ParallelLineScanner( reader::openIndexChunks, encoding, maxLineLength, lineFilter,
+                    () -> cancelled, regionSize, ParallelLineScanner.BACKGROUND_POOL );
+        }
+
+        /**
+         * @return the start of the first line starting at or after the given position, or the file length
+         * if there is none
+         */
+        long lineStartFrom( long position, FileChunks chunks ) throws IOException {
+            long length = chunks.length();
+            if ( position <= 0L || position >= length ) {
+                return Math.min( Math.max( 0L, position ), length );
+            }
+            ByteBuffer previous = chunks.chunkBefore( position, encoding.getNewLineSize() );
+            if ( previous.limit() > 0 && encoding.isNewLine( previous, previous.limit() - 1 ) ) {
+                return position;
+            }
+            while ( position < length && !cancelled ) {
+                ByteBuffer buffer = chunks.chunkFrom( position, BUFFER_SIZE );
+                int bytesRead = buffer.limit();
+                if ( bytesRead == 0 ) {
+                    break;
+                }
+                for ( int i = 0; i < bytesRead; i++ ) {
+                    if ( encoding.isNewLine( buffer, i ) ) {
+                        return position + i + 1;
+                    }
+                }
+                position += bytesRead;
+            }
+            return length;
+        }
+
+        private ByteSource openSource() throws IOException {
+            // compressed files must be read through the reader to get their uncompressed contents
+            if ( reader instanceof GzipFileReader ) {
+                return new ChunksSource( reader.openIndexChunks( batchSize ) );
+            }
+            return new ChannelSource( FileChannel.open( reader.getFile().toPath(), StandardOpenOption.READ ) );
+        }
+
+        private WritableByteChannel openTarget() throws IOException {
+            FileChannel channel = FileChannel.open( target.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE );
+            if ( !gzip ) {
+                return channel;
+            }
+            try {
+                return Channels.newChannel( new GZIPOutputStream( Channels.newOutputStream( channel ), batchSize ) );
+            } catch ( IOException | RuntimeException e ) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        private void deleteTarget() {
+            try {
+                Files.deleteIfExists( target.toPath() );
+            } catch ( IOException e ) {
+                log.warn( "Unable to delete file [{}] after export was stopped: {}", target, e );
+            }
+        }
+
+        /**
+         * Copy all bytes between the given positions.
+         */
+        private void copy( ByteSource source, long start, long end, WritableByteChannel out ) throws IOException {
+            long position = start;
+            while ( position < end && !cancelled ) {
+                long transferred = source.transferTo( position, Math.min( transferSize, end - position ), out );
+                if ( transferred <= 0L ) {
+                    // the file was truncated
+                    break;
+                }
+                position += transferred;
+                exportedBytes += transferred;
+                processedBytes += transferred;
+                report( false, null );
+            }
+        }
+
+        /**
+         * Copy the lines between the given positions accepted by the filter, in steps.
+         */
+        private void exportFiltered( ByteSource source, long start, long end, WritableByteChannel out )
+                throws IOException {
+            ParallelLineScanner scanner = newScanner( this::accept );
+            ByteBuffer batch = ByteBufferPool.getGlobalInstance().acquire( batchSize );
+            try {
+                scanner.scanInSteps( start, end, stepSize, ( stepStart, scannedTo, matches ) -> {
+                    // lines next to each other are copied together
+                    long runStart = -1L;
+                    long runEnd = -1L;
+                    for ( ParallelLineScanner.Match match : matches ) {
+                        if ( match.start != runEnd ) {
+                            write( source, runStart, runEnd, batch, out );
+                            runStart = match.start;
+                        }
+                        runEnd = match.end;
+                    }
+                    write( source, runStart, runEnd, batch, out );
+
+                    processedBytes += Math.max( 0L, scannedTo - stepStart );
+                    report( false, null );
+                    return true;
+                } );
+
+                flush( batch, out );
+            } finally {
+                ByteBufferPool.getGlobalInstance().release( batch );
+            }
+        }
+
+        /**
+         * Write the bytes between the given positions, adding them to the batch if they fit in it.
+         */
+        private void write( ByteSource source, long start, long end, ByteBuffer batch, WritableByteChannel out )
+                throws IOException {
+            if ( start < 0L || end <= start ) {
+                return;
+            }
+            long count = end - start;
+            if ( count > batch.remaining() ) {
+                flush( batch, out );
+            }
+            if ( count >= batch.capacity() ) {
+                long position = start;
+                while ( position < end ) {
+                    long transferred = source.transferTo( position, end - position, out );
+                    if ( transferred <= 0L ) {
+                        break;
+                    }
+                    position += transferred;
+                }
+            } else {
+                int limit = batch.limit();
+                batch.limit( batch.position() + ( int ) count );
+                source.read( batch, start );
+                batch.limit( limit );
+            }
+            exportedBytes += count;
+        }
+
+        private void flush( ByteBuffer batch, WritableByteChannel out ) throws IOException {
+            batch.flip();
+            while ( batch.hasRemaining() ) {
+                out.write( batch );
+            }
+            batch.clear();
+        }
+
+        private boolean accept( LineHandle line ) {
+            if ( filter instanceof LineFilter ) {
+                return ( ( LineFilter ) filter ).test( line );
+            }
+            return filter.test( line.getText() );
+        }
+
+        private void report( boolean done, String error ) {
+            if ( !cancelled ) {
+                onProgress.accept( new Progress( exportedBytes, processedBytes, totalBytes, done, error ) );
+            }
+        }
+    }
+
+    /**
+     * The bytes of the file being exported.
+     */
+    private interface ByteSource extends AutoCloseable {
+
+        /**
+         * Copy up to the given number of bytes, starting at the given position, to the given channel.
+         *
+         * @return the number of bytes copied, which is 0 at the end of the file
+         */
+        long transferTo( long position, long count, WritableByteChannel out ) throws IOException;
+
+        /**
+         * Read bytes starting at the given position until the buffer is full, or the end of the file.
+         */
+        void read( ByteBuffer buffer, long position ) throws IOException;
+
+        @Override
+        void close() throws IOException;
+    }
+
+    private static final class ChannelSource implements ByteSource {
+        private final FileChannel channel;
+
+        ChannelSource( FileChannel channel ) {
+            this.channel = channel;
+        }
+
+        @Override
+        public long transferTo( long position, long count, WritableByteChannel out ) throws IOException {
+            return channel.transferTo( position, count, out );
+        }
+
+        @Override
+        public void read( ByteBuffer buffer, long position ) throws IOException {
+            while ( buffer.hasRemaining() ) {
+                int bytesRead = channel.read( buffer, position );
+                if ( bytesRead <= 0 ) {
+                    break;
+                }
+                position += bytesRead;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private static final class ChunksSource implements ByteSource {
+        private final FileChunks chunks;
+
+        ChunksSource( FileChunks chunks ) {
+            this.chunks = chunks;
+        }
+
+        @Override
+        public long transferTo( long position, long count, WritableByteChannel out ) throws IOException {
+            ByteBuffer chunk = chunks.chunkFrom( position, ( int ) Math.min( count, Integer.MAX_VALUE ) );
+            int bytesRead = chunk.remaining();
+            while ( chunk.hasRemaining() ) {
+                out.write( chunk );
+            }
+            return bytesRead;
+        }
+
+        @Override
+        public void read( ByteBuffer buffer, long position ) throws IOException {
+            while ( buffer.hasRemaining() ) {
+                ByteBuffer chunk = chunks.chunkFrom( position, buffer.remaining() );
+                if ( !chunk.hasRemaining() ) {
+                    break;
+                }
+                position += chunk.remaining();
+                buffer.put( chunk );
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            chunks.close();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.athaydes.logfx.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+/**
+ * Identity of a file at a certain point in time.
+ * <p>
+ * Comparing the identities of the file at a certain path at different times allows detecting when it is
+ * truncated (as done by {@code logrotate}'s {@code copytruncate} option) or replaced by a different file
+ * (as done when a log file is rotated by moving it and creating a new file at the same path).
+ * <p>
+ * Besides the file key (the inode on Unix) and creation time, the first bytes of the file are kept,
+ * so that a file that was truncated and then written to again, growing bigger than it was before,
+ * can still be told apart from a file that was only appended to.
+ */
+final class FileIdentity {
+
+    static final int HEAD_SIZE = 1024;
+
+    enum Change {
+        NONE, TRUNCATED, REPLACED
+    }
+
+    private final Object fileKey;
+    private final FileTime creationTime;
+    private final long size;
+    private final byte[] head;
+
+    private FileIdentity( Object fileKey, FileTime creationTime, long size, byte[] head ) {
+        this.fileKey = fileKey;
+        this.creationTime = creationTime;
+        this.size = size;
+        this.head = head;
+    }
+
+    /**
+     * Get the current identity of a file.
+     *
+     * @param file   the file
+     * @param chunks the contents of the file
+     * @return the identity of the file
+     * @throws IOException if the file cannot be read
+     */
+    static FileIdentity of( File file, FileChunks chunks ) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes( file.toPath(), BasicFileAttributes.class );
+        long size = chunks.length();
+        byte[] head = new byte[ ( int ) Math.min( HEAD_SIZE, size ) ];
+        int headLength = 0;
+        while ( headLength < head.length ) {
+            ByteBuffer buffer = chunks.chunkFrom( headLength, head.length - headLength );
+            int bytesRead = buffer.limit();
+            if ( bytesRead == 0 ) {
+                break;
+            }
+            for ( int i = 0; i < bytesRead; i++ ) {
+                head[ headLength + i ] = buffer.get( i );
+            }
+            headLength += bytesRead;
+        }
+        return new FileIdentity( attributes.fileKey(), attributes.creationTime(), size, head );
+    }
+
+    /**
+     * @param previous identity of the same file at an earlier time
+     * @return how the file has changed since then
+     */
+    Change changeSince( FileIdentity previous ) {
+        if ( !isSameFile( previous ) ) {
+            return Change.REPLACED;
+        }
+        if ( size < previous.size ) {
+            return Change.TRUNCATED;
+        }
+        int commonHeadLength = Math.min( head.length, previous.head.length );
+        for ( int i = 0; i < commonHeadLength; i++ ) {
+            if ( head[ i ] != previous.head[ i ] ) {
+                return Change.TRUNCATED;
+            }
+        }
+        return Change.NONE;
+    }
+
+    private boolean isSameFile( FileIdentity other ) {
+        // not all file systems support file keys, so fallback to the creation time
+        if ( fileKey != null || other.fileKey != null ) {
+            return Objects.equals( fileKey, other.fileKey );
+        }
+        return Objects.equals( creationTime, other.creationTime );
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the file key as text, which is stable across runs of the application (unlike the key itself)
+     */
+    String getFileKeyText() {
+        return String.valueOf( fileKey );
+    }
+
+    long getCreationTimeMillis() {
+        return creationTime == null ? 0L : creationTime.toMillis();
+    }
+
+    int getHeadLength() {
+        return head.length;
+    }
+
+    /**
+     * @param length number of bytes at the start of the file to include, at most {@link #getHeadLength()}
+     * @return checksum of the first bytes of the file
+     */
+    long headChecksum( int length ) {
+        CRC32 crc = new CRC32();
+        crc.update( head, 0, Math.min( length, head.length ) );
+        return crc.getValue();
+    }
+
+    @Override
+    public String toString() {
+        return "FileIdentity{" +
+                "fileKey=" + fileKey +
+                ", creationTime=" + creationTime +
+                ", size=" + size +
+                '}';
+    }
+}
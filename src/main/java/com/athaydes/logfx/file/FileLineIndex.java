@@ -0,0 +1,335 @@
+package com.athaydes.logfx.file;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.OptionalLong;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sparse index of the lines of a file.
+ * <p>
+ * The position of the start of every {@code checkpointInterval}-th line of the file is recorded in a table
+ * of checkpoints, so that the number of the line at any position, or the position of any line,
+ * can be found by scanning at most one checkpoint interval from the nearest checkpoint.
+ * <p>
+ * The index is built in the background, and extended incrementally as the file grows.
+ * <p>
+ * This class is thread-safe.
+ */
+final class FileLineIndex {
+
+    private static final Logger log = LoggerFactory.getLogger( FileLineIndex.class );
+
+    static final int DEFAULT_CHECKPOINT_INTERVAL = 1000;
+
+    // how many bytes are scanned at a time
+    private static final int SCAN_SIZE = 64 * 1024;
+
+    // small gaps between the end of the index and a requested position are indexed immediately,
+    // which is the common case when tailing a file
+    private static final long MAX_IMMEDIATE_INDEX_BYTES = 1024 * 1024;
+
+    private static final ExecutorService backgroundIndexer = Executors.newSingleThreadExecutor( ( runnable ) -> {
+        Thread thread = new Thread( runnable, "logfx-line-indexer" );
+        thread.setDaemon( true );
+        return thread;
+    } );
+
+    private final File file;
+    private final FileChunks.Source chunksSource;
+    private final int checkpointInterval;
+    private final Executor executor;
+    private final AtomicBoolean indexing = new AtomicBoolean( false );
+    private boolean closed = false;
+    private FileEncoding encoding = FileEncoding.UTF_8;
+
+    // checkpoints[ k ] is the position of the start of the line with index (k * checkpointInterval)
+    private long[] checkpoints = new long[ 64 ];
+    private int checkpointCount = 1;
+
+    // the bytes between 0 and indexedLength have been indexed, and contain newLineCount new-line characters
+    private long indexedLength = 0L;
+    private long newLineCount = 0L;
+
+    FileLineIndex( File file, FileChunks.Source chunksSource ) {
+        this( file, chunksSource, DEFAULT_CHECKPOINT_INTERVAL, backgroundIndexer );
+    }
+
+    FileLineIndex( File file, FileChunks.Source chunksSource, int checkpointInterval, Executor executor ) {
+        if ( checkpointInterval < 1 ) {
+            throw new IllegalArgumentException( "Checkpoint interval must be positive" );
+        }
+        this.file = file;
+        this.chunksSource = chunksSource;
+        this.checkpointInterval = checkpointInterval;
+        this.executor = executor;
+    }
+
+    /**
+     * Extend the index in the background to cover the whole file, unless that is already being done.
+     */
+    void update() {
+        if ( !isClosed() && indexing.compareAndSet( false, true ) ) {
+            executor.execute( this::indexInBackground );
+        }
+    }
+
+    /**
+     * @return true if the index is currently being extended in the background.
+     */
+    boolean isIndexing() {
+        return indexing.get();
+    }
+
+    /**
+     * Stop indexing the file.
+     * <p>
+     * Once this method returns, the index will not read the file anymore.
+     */
+    synchronized void close() {
+        closed = true;
+    }
+
+    /**
+     * Discard the index, so that the file is indexed again from the start on the next update.
+     * <p>
+     * This must be called when the file is found to have been truncated or replaced.
+     */
+    synchronized void invalidate() {
+        reset();
+    }
+
+    /**
+     * Set the encoding of the file.
+     * <p>
+     * If the encoding changes, the index is discarded, as new-lines may be found in different positions.
+     *
+     * @param encoding of the file
+     */
+    synchronized void setEncoding( FileEncoding encoding ) {
+        if ( !encoding.equals( this.encoding ) ) {
+            this.encoding = encoding;
+            reset();
+        }
+    }
+
+    private synchronized boolean isClosed() {
+        return closed;
+    }
+
+    private void indexInBackground() {
+        try {
+            long startTime = System.currentTimeMillis();
+            boolean hasMore = true;
+            while ( hasMore ) {
+                hasMore = indexNextChunk();
+            }
+            if ( log.isDebugEnabled() ) {
+                log.debug( "Indexed file {} up to byte {} in {} ms", file, getIndexedLength(),
+                        System.currentTimeMillis() - startTime );
+            }
+        } catch ( IOException e ) {
+            log.debug( "Unable to index file [{}]: {}", file, e );
+        } finally {
+            indexing.set( false );
+        }
+    }
+
+    /**
+     * Index the next chunk of the file, if there is any.
+     *
+     * @return true if there is more to index, false otherwise
+     */
+    private synchronized boolean indexNextChunk() throws IOException {
+        if ( closed ) {
+            return false;
+        }
+        try ( FileChunks chunks = openChunks() ) {
+            return indexNextChunk( chunks );
+        }
+    }
+
+    private FileChunks openChunks() throws IOException {
+        return encoding.align( chunksSource.open( SCAN_SIZE ) );
+    }
+
+    private boolean indexNextChunk( FileChunks chunks ) throws IOException {
+        long length = chunks.length();
+
+        if ( length < indexedLength ) {
+            log.debug( "File has been truncated, resetting line index: {}", file );
+            reset();
+        }
+
+        if ( indexedLength >= length ) {
+            return false;
+        }
+
+        ByteBuffer buffer = chunks.chunkFrom( indexedLength, SCAN_SIZE );
+
+        // an incomplete new-line at the end of the file is only indexed once it's complete
+        int bytesRead = buffer.limit() - buffer.limit() % encoding.getNewLineSize();
+
+        for ( int i = 0; i < bytesRead; i++ ) {
+            if ( encoding.isNewLine( buffer, i ) ) {
+                newLineCount++;
+                if ( newLineCount % checkpointInterval == 0L ) {
+                    addCheckpoint( indexedLength + i + 1 );
+                }
+            }
+        }
+
+        indexedLength += bytesRead;
+
+        return bytesRead > 0 && indexedLength < length;
+    }
+
+    /**
+     * Get the number of the line at the given position of the file.
+     * <p>
+     * If the index does not cover the given position yet, the result is empty, unless the position is close enough
+     * to the indexed part of the file that it can be indexed immediately.
+     *
+     * @param position in the file
+     * @return the number of the line containing the given position, the first line being line 1,
+     * or empty if it is not known
+     * @throws IOException if the file cannot be read
+     */
+    synchronized OptionalLong lineNumberAt( long position ) throws IOException {
+        if ( closed || position < 0L ) {
+            return OptionalLong.empty();
+        }
+
+        try ( FileChunks chunks = openChunks() ) {
+            if ( position > indexedLength && position - indexedLength <= MAX_IMMEDIATE_INDEX_BYTES ) {
+                boolean hasMore = true;
+                while ( hasMore && position > indexedLength ) {
+                    hasMore = indexNextChunk( chunks );
+                }
+            }
+
+            if ( position > indexedLength ) {
+                return OptionalLong.empty();
+            }
+
+            int checkpoint = checkpointAtOrBefore( position );
+            long newLines = countNewLines( chunks, encoding, checkpoints[ checkpoint ], position );
+
+            return OptionalLong.of( checkpoint * ( long ) checkpointInterval + newLines + 1L );
+        }
+    }
+
+    /**
+     * Get the position of the start of the given line.
+     * <p>
+     * If the index does not cover the given line yet, the file is indexed up to it immediately.
+     *
+     * @param lineNumber the number of the line, the first line being line 1
+     * @return the position of the start of the line, or empty if the file does not contain the line
+     * @throws IOException if the file cannot be read
+     */
+    synchronized OptionalLong lineStart( long lineNumber ) throws IOException {
+        if ( closed || lineNumber < 1L ) {
+            return OptionalLong.empty();
+        }
+
+        final long lineIndex = lineNumber - 1L;
+
+        try ( FileChunks chunks = openChunks() ) {
+            boolean hasMore = true;
+            while ( hasMore && newLineCount < lineIndex ) {
+                hasMore = indexNextChunk( chunks );
+            }
+
+            if ( newLineCount < lineIndex ) {
+                return OptionalLong.empty();
+            }
+
+            int checkpoint = ( int ) ( lineIndex / checkpointInterval );
+            long position = skipLines( chunks, encoding, checkpoints[ checkpoint ], lineIndex % checkpointInterval );
+
+            if ( position >= chunks.length() ) {
+                return OptionalLong.empty();
+            }
+
+            return OptionalLong.of( position );
+        }
+    }
+
+    synchronized long getIndexedLength() {
+        return indexedLength;
+    }
+
+    synchronized int getCheckpointCount() {
+        return checkpointCount;
+    }
+
+    private void reset() {
+        checkpointCount = 1;
+        indexedLength = 0L;
+        newLineCount = 0L;
+    }
+
+    private void addCheckpoint( long position ) {
+        if ( checkpointCount == checkpoints.length ) {
+            checkpoints = Arrays.copyOf( checkpoints, checkpoints.length * 2 );
+        }
+        checkpoints[ checkpointCount++ ] = position;
+    }
+
+    private int checkpointAtOrBefore( long position ) {
+        int index = Arrays.binarySearch( checkpoints, 0, checkpointCount, position );
+        return index >= 0 ? index : -index - 2;
+    }
+
+    private static long countNewLines( FileChunks chunks, FileEncoding encoding, long from, long to ) throws IOException {
+        long count = 0L;
+        long position = from;
+        while ( position < to ) {
+            ByteBuffer buffer = chunks.chunkFrom( position, ( int ) Math.min( SCAN_SIZE, to - position ) );
+            int bytesRead = buffer.limit();
+            if ( bytesRead == 0 ) {
+                break;
+            }
+            for ( int i = 0; i < bytesRead; i++ ) {
+                if ( encoding.isNewLine( buffer, i ) ) {
+                    count++;
+                }
+            }
+            position += bytesRead;
+        }
+        return count;
+    }
+
+    /**
+     * @return the position immediately after the given number of new-line characters starting from the given
+     * position, or the file length if the file does not have as many lines
+     */
+    private static long skipLines( FileChunks chunks, FileEncoding encoding, long from, long lines ) throws IOException {
+        long position = from;
+        long remaining = lines;
+        while ( remaining > 0L ) {
+            ByteBuffer buffer = chunks.chunkFrom( position, SCAN_SIZE );
+            int bytesRead = buffer.limit();
+            if ( bytesRead == 0 ) {
+                break;
+            }
+            for ( int i = 0; i < bytesRead; i++ ) {
+                if ( encoding.isNewLine( buffer, i ) && --remaining == 0L ) {
+                    return position + i + 1;
+                }
+            }
+            position += bytesRead;
+        }
+        return position;
+    }
+
+}
@@ -1,66 +1,169 @@
 package com.athaydes.logfx.file;
 
-import java.util.TreeSet;
-
 /**
- * Representation of a file line start indexes.
+ * Representation of the byte ranges of the lines in a file window.
+ * <p>
+ * The ranges are kept in a ring buffer of primitive values, so adding lines at either end of the window,
+ * and dropping lines from the opposite end once the window is full, are constant-time operations
+ * which do not allocate any memory.
+ * <p>
+ * When the window has no lines, it is positioned at the file position given to {@link #reset(long)}.
  */
 class FileLineStarts {
 
     private final int size;
-    private final TreeSet<Long> indexes = new TreeSet<>();
+
+    // for the line at ring index i, its bytes are within starts[i]..ends[i] (exclusive),
+    // including the line terminator, so ends[i] is the start of the next line in the file
+    private final long[] starts;
+    private final long[] ends;
+
+    private int head = 0;
+    private int count = 0;
+    private long position = 0L;
 
     FileLineStarts( int size ) {
         if ( size < 1L ) {
             throw new IllegalArgumentException( "Size must be positive" );
         }
         this.size = size;
+        this.starts = new long[ size ];
+        this.ends = new long[ size ];
     }
 
-    void addFirst( long index ) {
-        indexes.add( index );
-        trim( false );
+    /**
+     * Add a line before the first line in the window, dropping the last line if the window is full.
+     *
+     * @param start position of the first byte of the line
+     * @param end   position after the last byte of the line, including its terminator
+     */
+    void addFirst( long start, long end ) {
+        if ( count == size ) {
+            count--;
+        }
+        head = ( head == 0 ? size : head ) - 1;
+        starts[ head ] = start;
+        ends[ head ] = end;
+        count++;
     }
 
-    void addLast( long index ) {
-        indexes.add( index );
-        trim( true );
+    /**
+     * Add a line after the last line in the window, dropping the first line if the window is full.
+     *
+     * @param start position of the first byte of the line
+     * @param end   position after the last byte of the line, including its terminator
+     */
+    void addLast( long start, long end ) {
+        if ( count == size ) {
+            head = ringIndex( 1 );
+            count--;
+        }
+        int index = ringIndex( count );
+        starts[ index ] = start;
+        ends[ index ] = end;
+        count++;
     }
 
-    void clear() {
-        indexes.clear();
+    /**
+     * Remove the last line from the window, if any.
+     * <p>
+     * If this leaves the window empty, it is positioned at the start of the removed line.
+     */
+    void removeLast() {
+        if ( count > 0 ) {
+            count--;
+            if ( count == 0 ) {
+                position = starts[ head ];
+            }
+        }
+    }
+
+    /**
+     * Remove all lines from the window, positioning it at the given file position.
+     *
+     * @param position the window is positioned at
+     */
+    void reset( long position ) {
+        this.head = 0;
+        this.count = 0;
+        this.position = position;
     }
 
+    /**
+     * @return the start of the first line in the window, or the window position if it has no lines.
+     */
     long getFirst() {
-        if ( indexes.isEmpty() ) {
-            return 0L;
+        if ( count == 0 ) {
+            return position;
         } else {
-            return indexes.first();
+            return starts[ head ];
         }
     }
 
+    /**
+     * @return the end of the last line in the window, which is where the next line starts,
+     * or the window position if it has no lines.
+     */
     long getLast() {
-        if ( indexes.isEmpty() ) {
-            return 0L;
+        if ( count == 0 ) {
+            return position;
         } else {
-            return indexes.last();
+            return ends[ ringIndex( count - 1 ) ];
         }
     }
 
-    private void trim( boolean fromBeginning ) {
-        Runnable remove = fromBeginning ?
-                () -> indexes.remove( getFirst() ) :
-                () -> indexes.remove( getLast() );
+    /**
+     * @return number of lines in the window
+     */
+    int lineCount() {
+        return count;
+    }
 
-        while ( indexes.size() > size ) {
-            remove.run();
+    /**
+     * @param index of the line in the window
+     * @return the position of the first byte of the line
+     */
+    long lineStart( int index ) {
+        return starts[ checkedRingIndex( index ) ];
+    }
+
+    /**
+     * @param index of the line in the window
+     * @return the number of bytes in the line, including its terminator
+     */
+    long lineLength( int index ) {
+        int ringIndex = checkedRingIndex( index );
+        return ends[ ringIndex ] - starts[ ringIndex ];
+    }
+
+    private int checkedRingIndex( int index ) {
+        if ( index < 0 || index >= count ) {
+            throw new IndexOutOfBoundsException( "Index: " + index + ", line count: " + count );
         }
+        return ringIndex( index );
+    }
+
+    private int ringIndex( int index ) {
+        int result = head + index;
+        return result >= size ? result - size : result;
     }
 
     @Override
     public String toString() {
-        return "FileLineStarts{" +
-                "indexes=" + indexes +
-                '}';
+        StringBuilder builder = new StringBuilder( "FileLineStarts{" );
+        if ( count == 0 ) {
+            builder.append( "position=" ).append( position );
+        } else {
+            builder.append( "lines=[" );
+            for ( int i = 0; i < count; i++ ) {
+                int index = ringIndex( i );
+                if ( i > 0 ) {
+                    builder.append( ", " );
+                }
+                builder.append( starts[ index ] ).append( ".." ).append( ends[ index ] );
+            }
+            builder.append( ']' );
+        }
+        return builder.append( '}' ).toString();
     }
 }
@@ -6,17 +6,26 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 
+import static com.athaydes.logfx.file.FileReader.LoadMode.APPEND;
 import static com.athaydes.logfx.file.FileReader.LoadMode.MOVE;
 import static com.athaydes.logfx.file.FileReader.LoadMode.REFRESH;
 
@@ -29,8 +38,21 @@ public class FileReader implements FileContentReader {
 
     private static final Predicate<String> NO_FILTER = ( line ) -> true;
 
+    private static final BooleanSupplier NOT_CANCELLED = () -> false;
+
+    // how many filters to remember the matching blocks of
+    private static final int MAX_FILTER_SUMMARIES = 8;
+
+    // when moving to a date-time, the file is bisected until the date-time is known to be within this many bytes
+    static final long LINEAR_DATE_SEARCH_BYTES = 8 * 1024;
+
+    // when the buffer size is not given explicitly, it is chosen based on the length of the lines read so far
+    static final int ADAPTIVE_BUFFER_SIZE = -1;
+    private static final int MIN_BUFFER_SIZE = 4 * 1024;
+    private static final int MAX_BUFFER_SIZE = 1024 * 1024;
+
     enum LoadMode {
-        MOVE, REFRESH
+        MOVE, REFRESH, APPEND
     }
 
     private enum SearchDirection {
@@ -47,6 +69,16 @@ public class FileReader implements FileContentReader {
         }
     }
 
+    private static class DatedLine {
+        private final long start;
+        private final ZonedDateTime dateTime;
+
+        DatedLine( long start, ZonedDateTime dateTime ) {
+            this.start = start;
+            this.dateTime = dateTime;
+        }
+    }
+
     private static class EarlyExitFromFileWindow {
         private final FileQueryResult fileQueryResult;
         private final boolean skipWindow;
@@ -75,9 +107,74 @@ public class FileReader implements FileContentReader {
     private final int bufferSize;
     private final FileLineStarts lineStarts;
     private final int maxLineParseFailuresAllowed;
+    private final int maxLineLength;
+    private final FileLineIndex lineIndex;
+
+    // sampled date-times of the lines of the file, used to narrow down the search when moving to a date-time
+    private TimestampIndexer timestampIndexer;
+
+    // blocks where each trigram of the file is found, used to skip the blocks that cannot contain any lines
+    // accepted by a filter
+    private TrigramIndexer trigramIndexer;
+
+    // line numbers of the lines in the current file window (0 where not known)
+    private final long[] windowLineNumbers;
+
+    // line numbers of the lines loaded by the last read operation
+    private final LinkedList<Long> loadedLineNumbers = new LinkedList<>();
 
     private Predicate<String> lineFilter = NO_FILTER;
 
+    // the blocks containing lines accepted by recently used filters, by filter fingerprint, so that
+    // moving through the file can skip blocks without matches (see LineFilter#getFingerprint())
+    private final Map<Object, FilterBlockSummary> filterBlockSummaries =
+            new LinkedHashMap<Object, FilterBlockSummary>( 16, 0.75f, true ) {
+                @Override
+                protected boolean removeEldestEntry( Map.Entry<Object, FilterBlockSummary> eldest ) {
+                    return size() > MAX_FILTER_SUMMARIES;
+                }
+            };
+
+    // summary for the current filter, or null if it has no fingerprint
+    private FilterBlockSummary filterBlockSummary;
+
+    // how lines are grouped into records, or null if each line is read on its own
+    private RecordMode recordMode;
+
+    // kept open until this reader is closed
+    private final SharedFileChannel fileChannel;
+    private long averageLineLength = 0L;
+
+    // when the file window reaches the end of the file, the file length at that time, and the end of the
+    // last line in the window then, so that only the bytes appended to the file later need to be read
+    private long tailFileLength = -1L;
+    private long tailWindowEnd = -1L;
+
+    // whether the last read of appended bytes started by reading the last line of the window again
+    private boolean lastLineReread = false;
+
+    // identity of the file when it was last read, used to detect when it is truncated or replaced
+    private FileIdentity fileIdentity;
+
+    // the charset set explicitly, or null if it should be detected from the file contents
+    // (volatile as it may be read from any Thread)
+    private volatile Charset charset;
+    private FileEncoding encoding = FileEncoding.UTF_8;
+    private LineDecoder lineDecoder = encoding.newDecoder();
+
+    // the encoding is detected again until enough of the file is available to be sure about it
+    private boolean encodingKnown = false;
+
+    // incremented on each call to cancelCurrentRead(), which may be made from any Thread
+    private final AtomicLong cancelRequests = new AtomicLong();
+
+    // whether the read in progress has been cancelled (never, unless it's a move operation)
+    private BooleanSupplier readCancelled = NOT_CANCELLED;
+    private boolean lastReadCancelled = false;
+
+    // when a filter rejects all lines in this many bytes, the rest of the file is scanned in parallel
+    private int parallelScanRegionSize = ParallelLineScanner.DEFAULT_REGION_SIZE;
+
     // state to avoid reading a file when it is not required...
     // e.g. moving down when the last moveDown returned no lines and:
     //   the file has not been refreshed and
@@ -86,13 +183,18 @@ public class FileReader implements FileContentReader {
     private boolean noLinesDown = true;
 
     public FileReader( File file, int fileWindowSize ) {
-        this( file, fileWindowSize, 4096 );
+        this( file, fileWindowSize, ADAPTIVE_BUFFER_SIZE );
     }
 
     FileReader( File file, int fileWindowSize, int bufferSize ) {
+        this( file, fileWindowSize, bufferSize, Properties.getMaxLineLength() );
+    }
+
+    FileReader( File file, int fileWindowSize, int bufferSize, int maxLineLength ) {
         this.file = file;
         this.fileWindowSize = fileWindowSize;
         this.bufferSize = bufferSize;
+        this.maxLineLength = maxLineLength;
         this.maxLineParseFailuresAllowed = Math.min( 50, fileWindowSize );
 
         if ( log.isDebugEnabled() ) {
@@ -105,21 +207,64 @@ public class FileReader implements FileContentReader {
             }
         }
 
-        // 1 extra line is needed because we need to know the boundaries between lines
-        this.lineStarts = new FileLineStarts( fileWindowSize + 1 );
+        this.lineStarts = new FileLineStarts( fileWindowSize );
+        this.fileChannel = new SharedFileChannel( file, ByteBufferPool.getGlobalInstance() );
+        this.lineIndex = new FileLineIndex( file, this::openIndexChunks );
+        this.timestampIndexer = new TimestampIndexer( file, this::openIndexChunks,
+                Properties.LOGFX_DIR.resolve( "index" ), maxLineLength );
+        this.trigramIndexer = new TrigramIndexer( file, this::openIndexChunks,
+                Properties.LOGFX_DIR.resolve( "index" ),
+                Properties.getSearchIndexThreshold(), Properties.getSearchIndexMemory() );
+        this.windowLineNumbers = new long[ fileWindowSize ];
     }
 
     @Override
     public void setLineFilter( Predicate<String> lineFilter ) {
-        if ( lineFilter == null ) {
-            this.lineFilter = NO_FILTER;
-        } else {
-            this.lineFilter = lineFilter;
+        Predicate<String> newFilter = lineFilter == null ? NO_FILTER : lineFilter;
+        if ( newFilter != this.lineFilter ) {
+            this.lineFilter = newFilter;
+            this.filterBlockSummary = newFilter instanceof LineFilter ?
+                    ( ( LineFilter ) newFilter ).getFingerprint()
+                            .map( fingerprint -> filterBlockSummaries.computeIfAbsent(
+                                    fingerprint, ignore -> new FilterBlockSummary() ) )
+                            .orElse( null ) :
+                    null;
+
+            // lines at the end of the file which were filtered out may now be accepted
+            tailFileLength = -1L;
+        }
+    }
+
+    @Override
+    public void setCharset( Charset charset ) {
+        this.charset = charset;
+        this.encodingKnown = false;
+    }
+
+    @Override
+    public Optional<Charset> getCharset() {
+        return Optional.ofNullable( charset );
+    }
+
+    @Override
+    public void setRecordMode( RecordMode recordMode ) {
+        if ( recordMode != this.recordMode ) {
+            this.recordMode = recordMode;
+
+            // lines at the end of the file may now belong to a different record
+            tailFileLength = -1L;
         }
     }
 
     @Override
     public Optional<LinkedList<String>> moveUp( int lines ) {
+        return moveUpLines( lines ).map( LineHandle::textOf );
+    }
+
+    /**
+     * Same as {@link #moveUp(int)}, but returning lines that are only decoded when needed.
+     */
+    Optional<LinkedList<LineHandle>> moveUpLines( int lines ) {
         log.trace( "Moving up {} lines", lines );
         if ( lines < 1 ) {
             return Optional.of( new LinkedList<>() );
@@ -131,17 +276,27 @@ public class FileReader implements FileContentReader {
             return Optional.of( new LinkedList<>() );
         }
 
-        Optional<LinkedList<String>> result = loadFromBottom( lineStarts.getFirst() - 1L, lines, MOVE );
+        Optional<LinkedList<LineHandle>> result = cancellable(
+                () -> loadFromBottom( lineStarts.getFirst() - 1L, lines, MOVE ) );
 
-        if ( result.isPresent() && result.get().isEmpty() ) {
+        if ( result.isPresent() && result.get().isEmpty() && !lastReadCancelled ) {
             noLinesUp = true;
         }
 
+        result.ifPresent( ignore -> prependToWindowLineNumbers( loadedLineNumbers ) );
+
         return result;
     }
 
     @Override
     public Optional<LinkedList<String>> moveDown( int lines ) {
+        return moveDownLines( lines ).map( LineHandle::textOf );
+    }
+
+    /**
+     * Same as {@link #moveDown(int)}, but returning lines that are only decoded when needed.
+     */
+    Optional<LinkedList<LineHandle>> moveDownLines( int lines ) {
         log.trace( "Moving down {} lines", lines );
 
         if ( lines < 1 ) {
@@ -154,20 +309,72 @@ public class FileReader implements FileContentReader {
             return Optional.of( new LinkedList<>() );
         }
 
-        Optional<LinkedList<String>> result = loadFromTop( lineStarts.getLast(), lines, MOVE );
+        Optional<LinkedList<LineHandle>> result = cancellable(
+                () -> loadFromTop( lineStarts.getLast(), lines, MOVE ) );
 
-        if ( result.isPresent() && result.get().isEmpty() ) {
+        if ( result.isPresent() && result.get().isEmpty() && !lastReadCancelled ) {
             noLinesDown = true;
         }
 
+        result.ifPresent( ignore -> appendToWindowLineNumbers( loadedLineNumbers ) );
+
         return result;
     }
 
+    @Override
+    public void cancelCurrentRead() {
+        cancelRequests.incrementAndGet();
+    }
+
+    /**
+     * Run a read operation that stops early, returning the lines found so far, if
+     * {@link #cancelCurrentRead()} is called while it runs.
+     */
+    private Optional<LinkedList<LineHandle>> cancellable( Supplier<Optional<LinkedList<LineHandle>>> read ) {
+        long requests = cancelRequests.get();
+        readCancelled = () -> cancelRequests.get() != requests;
+        lastReadCancelled = false;
+        try {
+            return read.get();
+        } finally {
+            readCancelled = NOT_CANCELLED;
+        }
+    }
+
+    /**
+     * Check whether the read in progress has been cancelled, remembering it if so.
+     */
+    private boolean isReadCancelled() {
+        if ( readCancelled.getAsBoolean() ) {
+            lastReadCancelled = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Set the size of the regions of the file scanned in parallel when a filter rejects most lines.
+     * <p>
+     * A file is only scanned in parallel after a filter has rejected all lines found in a region of this size.
+     */
+    void setParallelScanRegionSize( int parallelScanRegionSize ) {
+        this.parallelScanRegionSize = parallelScanRegionSize;
+    }
+
+    /**
+     * @return whether parts of this file can be read concurrently and efficiently, so that filters can be
+     * evaluated in parallel over different regions of the file
+     */
+    boolean isParallelScanSupported() {
+        return true;
+    }
+
     @SuppressWarnings( { "UnnecessaryLabelOnBreakStatement", "UnusedLabel", "UnnecessaryLabelOnContinueStatement" } )
     @Override
     public FileQueryResult moveTo( ZonedDateTime dateTime,
                                    Function<String, Optional<ZonedDateTime>> dateExtractor ) {
         log.trace( "Moving to date: {}", dateTime );
+        moveCloseToDate( dateTime, dateExtractor );
         Optional<LinkedList<String>> maybeLines = refresh();
         SearchDirection direction = SearchDirection.ANY;
 
@@ -291,6 +498,205 @@ public class FileReader implements FileContentReader {
         return UnsuccessfulQueryResult.INSTANCE;
     }
 
+    /**
+     * Move the file window to a line before the given date-time, but close enough to it that only a few KB
+     * must be searched linearly to find the first line at or after it.
+     * <p>
+     * Small files are searched linearly from the current file window.
+     *
+     * @see #lineStartCloseToDate(ZonedDateTime, Function)
+     */
+    private void moveCloseToDate( ZonedDateTime dateTime,
+                                  Function<String, Optional<ZonedDateTime>> dateExtractor ) {
+        if ( !file.isFile() || fileLength() <= LINEAR_DATE_SEARCH_BYTES ) {
+            return;
+        }
+
+        try {
+            long low = lineStartCloseToDate( dateTime, dateExtractor );
+            noLinesDown = false;
+            noLinesUp = false;
+            tailFileLength = -1L;
+            lineStarts.reset( low );
+        } catch ( IOException e ) {
+            log.warn( "Error reading file [{}]: {}", file, e );
+        }
+    }
+
+    /**
+     * Find the start of a line before the given date-time, but close enough to it that only a few KB
+     * must be searched linearly to find the first line at or after it, without moving the file window.
+     * <p>
+     * This is done by bisecting the file: the date-time of the first line with a date after each probed position
+     * tells whether the given date-time is in the first or in the second half of the remaining range of bytes.
+     * This assumes that the lines in the file are sorted by date-time, as in any log file.
+     * If no dates are found, the start of the file is returned.
+     *
+     * @param dateTime      date-time to look for
+     * @param dateExtractor function to extract the date-time of the lines of the file
+     * @return the start of the first line of the file, or of a line dated before the given date-time
+     * @throws IOException if the file cannot be read
+     */
+    long lineStartCloseToDate( ZonedDateTime dateTime,
+                               Function<String, Optional<ZonedDateTime>> dateExtractor ) throws IOException {
+        discardFileChanges();
+
+        final int bufferSize = nextBufferSize();
+
+        try ( FileChunks chunks = openFile( bufferSize ) ) {
+            // low is always the start of the file or of a line dated before the date-time being searched
+            long low = 0L;
+            long high = chunks.length();
+            int probes = 0;
+
+            Optional<TimestampIndex> timestampIndex = fileIdentity == null ?
+                    Optional.empty() :
+                    timestampIndexer.indexFor( fileIdentity, dateExtractor );
+
+            if ( timestampIndex.isPresent() ) {
+                low = timestampIndex.get().offsetBefore( dateTime ).orElse( low );
+                high = timestampIndex.get().offsetAfter( dateTime ).orElse( high );
+            }
+
+            while ( high - low > LINEAR_DATE_SEARCH_BYTES ) {
+                long lineStart = seekLineStartBefore( low + ( high - low ) / 2, chunks, bufferSize );
+                if ( lineStart <= low ) {
+                    // the rest of the range is a single line
+                    break;
+                }
+
+                probes++;
+                Optional<DatedLine> datedLine = findDatedLine( lineStart, high, chunks, bufferSize, dateExtractor );
+
+                if ( datedLine.isPresent() && datedLine.get().dateTime.isBefore( dateTime ) ) {
+                    low = datedLine.get().start;
+                } else {
+                    // either the first dated line is not before the date-time, or the lines in the rest of
+                    // the range have no dates, so the date-time can only be found before
+                    high = lineStart;
+                }
+            }
+
+            log.info( "Bisected file {} ({} bytes{}) with {} probes to find date {}, searching linearly from {}",
+                    file, chunks.length(), timestampIndex.isPresent() ? ", using timestamp index" : "",
+                    probes, dateTime, low );
+
+            return low;
+        }
+    }
+
+    /**
+     * Find the date-time of the first line with a date in the file, skipping lines without dates but only up to
+     * as many lines as {@link #moveTo(ZonedDateTime, Function)} allows, without moving the file window.
+     * <p>
+     * The line filter and the record mode are ignored, so the result does not depend on them.
+     *
+     * @param dateExtractor function to extract the date-time of the lines of the file
+     * @return the date-time of the first dated line, if any
+     * @throws IOException if the file cannot be read
+     */
+    Optional<ZonedDateTime> firstDateTime( Function<String, Optional<ZonedDateTime>> dateExtractor )
+            throws IOException {
+        discardFileChanges();
+
+        final int bufferSize = nextBufferSize();
+
+        try ( FileChunks chunks = openFile( bufferSize ) ) {
+            return findDatedLine( 0L, chunks.length(), chunks, bufferSize, dateExtractor )
+                    .map( datedLine -> datedLine.dateTime );
+        }
+    }
+
+    /**
+     * Find the date-time of the last line with a date in the file, skipping lines without dates but only up to
+     * as many lines as {@link #moveTo(ZonedDateTime, Function)} allows, without moving the file window.
+     * <p>
+     * The line filter and the record mode are ignored, so the result does not depend on them.
+     *
+     * @param dateExtractor function to extract the date-time of the lines of the file
+     * @return the date-time of the last dated line, if any
+     * @throws IOException if the file cannot be read
+     */
+    Optional<ZonedDateTime> lastDateTime( Function<String, Optional<ZonedDateTime>> dateExtractor )
+            throws IOException {
+        discardFileChanges();
+
+        final int bufferSize = nextBufferSize();
+        final int newLineSize = encoding.getNewLineSize();
+
+        try ( FileChunks chunks = openFile( bufferSize ) ) {
+            long lineEnd = chunks.length();
+
+            for ( int failedLines = 0; lineEnd > 0L && failedLines < maxLineParseFailuresAllowed; failedLines++ ) {
+                long lineStart = seekLineStartBefore( lineEnd - newLineSize, chunks, bufferSize );
+                Optional<ZonedDateTime> dateTime = dateExtractor.apply( lineTextAt( lineStart, chunks, bufferSize ) );
+                if ( dateTime.isPresent() ) {
+                    return dateTime;
+                }
+                lineEnd = lineStart;
+            }
+
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Find the first line with a date, starting at the given line start and skipping lines without dates
+     * (e.g. the lines of stack-traces), but only up to as many lines as {@link #moveTo(ZonedDateTime, Function)}
+     * allows, and only lines starting before the given limit.
+     */
+    private Optional<DatedLine> findDatedLine( long lineStart,
+                                               long limit,
+                                               FileChunks chunks,
+                                               int bufferSize,
+                                               Function<String, Optional<ZonedDateTime>> dateExtractor )
+            throws IOException {
+        final int newLineSize = encoding.getNewLineSize();
+        final LineBytes lineBytes = new LineBytes( maxLineLength );
+        final LineHandle lineHandle = LineHandle.reusable( lineDecoder );
+        final long length = chunks.length();
+
+        long position = lineStart;
+        int failedLines = 0;
+
+        while ( position < length ) {
+            ByteBuffer buffer = chunks.chunkFrom( position, bufferSize );
+            int bytesRead = buffer.limit();
+            if ( bytesRead == 0 ) {
+                break;
+            }
+            int lineStartIndex = 0;
+
+            for ( int i = 0; i < bytesRead; i++ ) {
+                boolean isNewLine = encoding.isNewLine( buffer, i );
+                if ( isNewLine || position + i == length - 1 ) {
+                    int lineEndIndex = isNewLine ? i + 1 - newLineSize : i + 1;
+                    lineBytes.append( buffer, lineStartIndex, lineEndIndex - lineStartIndex );
+
+                    String line = nextLine( lineHandle, lineBytes, lineStart, isNewLine ).getText();
+                    Optional<ZonedDateTime> lineDateTime = dateExtractor.apply( line );
+                    if ( lineDateTime.isPresent() ) {
+                        return Optional.of( new DatedLine( lineStart, lineDateTime.get() ) );
+                    }
+
+                    failedLines++;
+                    lineStart = position + i + 1;
+                    if ( failedLines >= maxLineParseFailuresAllowed || lineStart >= limit ) {
+                        return Optional.empty();
+                    }
+
+                    lineBytes.clear();
+                    lineStartIndex = i + 1;
+                }
+            }
+
+            lineBytes.append( buffer, lineStartIndex, bytesRead - lineStartIndex );
+            position += bytesRead;
+        }
+
+        return Optional.empty();
+    }
+
     private EarlyExitFromFileWindow checkLastValidLine( List<String> nextLines,
                                                         ZonedDateTime dateTime,
                                                         Function<String, Optional<ZonedDateTime>> dateExtractor,
@@ -362,236 +768,1018 @@ public class FileReader implements FileContentReader {
     public void top() {
         noLinesDown = false;
         noLinesUp = true;
-        lineStarts.clear();
-        lineStarts.addFirst( 0L );
+        tailFileLength = -1L;
+        lineStarts.reset( 0L );
+        discardFileChanges();
     }
 
     @Override
     public void tail() {
         noLinesDown = true;
         noLinesUp = false;
-        lineStarts.clear();
+        tailFileLength = -1L;
+        discardFileChanges();
         // FIXME if filter is enabled, we need to find the last line that's filtered
-        lineStarts.addFirst( file.length() + 1 );
+        lineStarts.reset( fileLength() + 1 );
     }
 
     @Override
     public Optional<LinkedList<String>> refresh() {
+        return refreshLines().map( LineHandle::textOf );
+    }
+
+    @Override
+    public Optional<LinkedList<LineHandle>> refreshLines() {
         noLinesDown = false;
         noLinesUp = false;
 
+        if ( checkFileChange() != FileIdentity.Change.NONE ) {
+            // the file window refers to contents that no longer exist, so start again from the top
+            releaseFile();
+            tailFileLength = -1L;
+            lineStarts.reset( 0L );
+        }
+
+        lineIndex.update();
+
         long initialLine = lineStarts.getFirst();
         log.debug( "Refreshing file from line {}", initialLine );
-        Optional<LinkedList<String>> fromTop = loadFromTop( initialLine, fileWindowSize, REFRESH );
+        Optional<LinkedList<LineHandle>> fromTop = loadFromTop( initialLine, fileWindowSize, REFRESH );
         if ( fromTop.isPresent() ) {
-            LinkedList<String> topList = fromTop.get();
+            LinkedList<LineHandle> topList = fromTop.get();
+            LinkedList<Long> lineNumbers = new LinkedList<>( loadedLineNumbers );
 
             if ( topList.size() < fileWindowSize ) {
                 log.trace( "Trying to get more lines after a refresh from the top did not give enough lines" );
-                loadFromBottom( initialLine - 1L, fileWindowSize - topList.size(), MOVE )
-                        .ifPresent( extraLines -> topList.addAll( 0, extraLines ) );
+                // in record mode, the window may start before the initial line, at the start of its record
+                long bottomLine = recordMode == null ? initialLine : lineStarts.getFirst();
+                loadFromBottom( bottomLine - 1L, fileWindowSize - topList.size(), MOVE )
+                        .ifPresent( extraLines -> {
+                            topList.addAll( 0, extraLines );
+                            lineNumbers.addAll( 0, loadedLineNumbers );
+                        } );
             }
+
+            setWindowLineNumbers( lineNumbers );
         }
         return fromTop;
     }
 
+    @Override
+    public Optional<TailUpdate> refreshTail() {
+        if ( !file.isFile() ) {
+            releaseFile();
+            return Optional.empty();
+        }
+
+        FileIdentity.Change change = checkFileChange();
+
+        if ( change != FileIdentity.Change.NONE ) {
+            releaseFile();
+            tail();
+            return refresh().map( TailUpdate::fullWindow );
+        }
+
+        long length = fileLength();
+
+        if ( !isWindowAtEndOfFile() || length < tailFileLength ||
+                ( lineFilter == NO_FILTER && length - tailFileLength > nextBufferSize() ) ) {
+            // reading the whole window from the bottom is cheaper than reading everything that was appended,
+            // unless lines must be filtered, in which case reading the window may require reading much more
+            log.debug( "Reading tail of file {} (length {}, previous length {})", file, length, tailFileLength );
+            tail();
+            return refresh().map( TailUpdate::fullWindow );
+        }
+
+        noLinesDown = false;
+        noLinesUp = false;
+
+        if ( length == tailFileLength ) {
+            log.trace( "No bytes appended to file {}", file );
+            return Optional.of( TailUpdate.appended( 0, lineStarts.lineCount(), new LinkedList<>() ) );
+        }
+
+        if ( recordMode != null ) {
+            // the appended lines may belong to the last record in the file window
+            log.debug( "Reading tail of file {} in record mode (length {})", file, length );
+            tail();
+            return refresh().map( TailUpdate::fullWindow );
+        }
+
+        lineIndex.update();
+        timestampIndexer.update( length );
+        trigramIndexer.update( length );
+
+        log.debug( "Reading bytes appended to file {}, {}..{}", file, tailFileLength, length );
+
+        int previousLineCount = lineStarts.lineCount();
+        lastLineReread = false;
+
+        Optional<LinkedList<LineHandle>> result = loadFromTop( tailFileLength, Integer.MAX_VALUE, APPEND );
+
+        if ( !result.isPresent() ) {
+            return Optional.empty();
+        }
+
+        LinkedList<String> lines = LineHandle.textOf( result.get() );
+        int lineCount = lineStarts.lineCount();
+
+        if ( lastLineReread && lines.isEmpty() ) {
+            log.debug( "The last line in the file window is no longer accepted, reading the whole window again" );
+            tail();
+            return refresh().map( TailUpdate::fullWindow );
+        }
+
+        int keptLineCount = lastLineReread ? previousLineCount - 1 : previousLineCount;
+        int droppedLines = Math.min( keptLineCount, keptLineCount + lines.size() - lineCount );
+
+        while ( lines.size() > lineCount ) {
+            lines.removeFirst();
+            loadedLineNumbers.removeFirst();
+        }
+
+        shiftWindowLineNumbers( droppedLines );
+        copyLineNumbers( loadedLineNumbers, lineCount - lines.size() );
+
+        return Optional.of( TailUpdate.appended( droppedLines, lineCount, lines ) );
+    }
+
+    @Override
+    public FileQueryResult moveToLine( long lineNumber ) {
+        log.trace( "Moving to line {}", lineNumber );
+
+        if ( lineNumber < 1L ) {
+            top();
+            return OutsideRangeQueryResult.BEFORE;
+        }
+
+        if ( !file.isFile() ) {
+            releaseFile();
+            return UnsuccessfulQueryResult.INSTANCE;
+        }
+
+        discardFileChanges();
+
+        OptionalLong lineStart;
+
+        try {
+            lineStart = lineIndex.lineStart( lineNumber );
+        } catch ( IOException e ) {
+            log.warn( "Error reading file [{}]: {}", file, e );
+            return UnsuccessfulQueryResult.INSTANCE;
+        }
+
+        if ( !lineStart.isPresent() ) {
+            log.debug( "Line {} is after the end of the file", lineNumber );
+            tail();
+            return OutsideRangeQueryResult.AFTER;
+        }
+
+        tailFileLength = -1L;
+        lineStarts.reset( lineStart.getAsLong() );
+
+        if ( !refresh().isPresent() ) {
+            return UnsuccessfulQueryResult.INSTANCE;
+        }
+
+        // the line may not be the first one in the window if it's close to the end of the file,
+        // and it may not be in the window at all if it's filtered out
+        for ( int i = 0; i < windowLineNumbers.length; i++ ) {
+            if ( windowLineNumbers[ i ] >= lineNumber ) {
+                // in record mode, the line may be one of the lines of the previous record
+                boolean inPreviousRecord = recordMode != null && i > 0 &&
+                        windowLineNumbers[ i ] > lineNumber && windowLineNumbers[ i - 1 ] > 0L;
+                return new SuccessfulQueryResult( inPreviousRecord ? i : i + 1 );
+            }
+        }
+
+        return new SuccessfulQueryResult( 1 );
+    }
+
+    /**
+     * Moves the file window so that the first line is the line starting at the given position, or as close to it
+     * as possible if the line is near the end of the file.
+     *
+     * @param lineStart position of the start of a line
+     * @return a successful result with the position of the line in the file window (or of the line before it,
+     * if it's not accepted by the current filter), a result after the range if the position is at or after the end of
+     * the file (the file window is moved to the tail), or an unsuccessful result if the file could not be read.
+     */
+    FileQueryResult moveToLineStart( long lineStart ) {
+        log.trace( "Moving to line starting at {}", lineStart );
+
+        if ( !file.isFile() ) {
+            releaseFile();
+            return UnsuccessfulQueryResult.INSTANCE;
+        }
+
+        discardFileChanges();
+
+        if ( lineStart >= fileLength() ) {
+            log.debug( "Line start {} is after the end of the file", lineStart );
+            tail();
+            return OutsideRangeQueryResult.AFTER;
+        }
+
+        positionAt( lineStart );
+
+        if ( !refresh().isPresent() ) {
+            return UnsuccessfulQueryResult.INSTANCE;
+        }
+
+        // the window may start before the line if it's close to the end of the file, or in record mode
+        int index = 0;
+        for ( int i = 1; i < lineStarts.lineCount() && lineStarts.lineStart( i ) <= lineStart; i++ ) {
+            index = i;
+        }
+
+        return new SuccessfulQueryResult( index + 1 );
+    }
+
+    @Override
+    public long[] getLineNumbers() {
+        return windowLineNumbers.clone();
+    }
+
     @Override
     public File getFile() {
         return file;
     }
 
-    private Optional<LinkedList<String>> loadFromTop( Long firstLineStartIndex,
-                                                      final int lines,
-                                                      final LoadMode mode ) {
+    @Override
+    public void close() {
+        lineIndex.close();
+        timestampIndexer.close();
+        trigramIndexer.close();
+        releaseFile();
+    }
+
+    FileLineIndex getLineIndex() {
+        return lineIndex;
+    }
+
+    TimestampIndexer getTimestampIndexer() {
+        return timestampIndexer;
+    }
+
+    /**
+     * Replace the timestamp indexer of this reader, which by default only indexes large files.
+     */
+    void setTimestampIndexer( TimestampIndexer timestampIndexer ) {
+        this.timestampIndexer.close();
+        this.timestampIndexer = timestampIndexer;
+        timestampIndexer.setEncoding( encoding );
+    }
+
+    TrigramIndexer getTrigramIndexer() {
+        return trigramIndexer;
+    }
+
+    /**
+     * Replace the trigram indexer of this reader, which by default only indexes files larger than
+     * {@link Properties#getSearchIndexThreshold()}.
+     */
+    void setTrigramIndexer( TrigramIndexer trigramIndexer ) {
+        this.trigramIndexer.close();
+        this.trigramIndexer = trigramIndexer;
+        trigramIndexer.setEncoding( encoding );
+    }
+
+    /**
+     * Get the timestamp index of the file, which gives the date-times of its first and last lines without
+     * reading them, if it has one that covers the whole file.
+     * <p>
+     * If not, the index is built or extended in the background, so it may be available later.
+     *
+     * @param dateExtractor function to extract the date-time of the lines of the file
+     * @return the timestamp index of the file, if it covers the whole file
+     */
+    Optional<TimestampIndex> getCompleteTimestampIndex( Function<String, Optional<ZonedDateTime>> dateExtractor ) {
+        discardFileChanges();
+        if ( fileIdentity == null ) {
+            return Optional.empty();
+        }
+        return timestampIndexer.indexFor( fileIdentity, dateExtractor )
+                .filter( index -> index.getLength() == fileIdentity.getSize() );
+    }
+
+    /**
+     * Empty the file window, positioning it at the given position of the file.
+     * <p>
+     * Moving up or down from there reads the lines immediately before or after the position.
+     *
+     * @param position in the file
+     */
+    void positionAt( long position ) {
+        noLinesDown = false;
+        noLinesUp = false;
+        tailFileLength = -1L;
+        lineStarts.reset( position );
+    }
+
+    /**
+     * Empty the file window, positioning it at the end of the file.
+     * <p>
+     * Differently from {@link #tail()}, if the file ends with a new-line, moving up from there does not
+     * return an empty line first.
+     */
+    void positionAtEnd() {
+        long position;
+        try ( FileChunks chunks = openFile( MIN_BUFFER_SIZE ) ) {
+            long length = chunks.length();
+            position = isLineStart( length, chunks ) ? length : length + 1L;
+        } catch ( IOException e ) {
+            log.debug( "Unable to read end of file [{}]: {}", file, e );
+            position = file.length() + 1L;
+        }
+        positionAt( position );
+    }
+
+    /**
+     * @return the line numbers of the lines read by the last operation (0 where not known)
+     */
+    List<Long> getLoadedLineNumbers() {
+        return loadedLineNumbers;
+    }
+
+    /**
+     * @return the byte ranges of the lines in the current file window
+     */
+    FileLineStarts getLineStarts() {
+        return lineStarts;
+    }
+
+    /**
+     * @return the length of the contents of the file when it was last checked for changes.
+     * This may differ from the size of the file itself, e.g. if it is compressed.
+     */
+    private long fileLength() {
+        return fileIdentity == null ? file.length() : fileIdentity.getSize();
+    }
+
+    /**
+     * Check whether the file was truncated or replaced since it was last read.
+     * <p>
+     * If it was, the line index is discarded. The caller must discard the file window and any other state
+     * derived from the previous contents of the file.
+     *
+     * @return how the file has changed since it was last read
+     */
+    private FileIdentity.Change checkFileChange() {
+        FileIdentity currentIdentity;
+        try ( FileChunks chunks = openChunks( nextBufferSize() ) ) {
+            currentIdentity = FileIdentity.of( file, chunks );
+        } catch ( IOException e ) {
+            log.debug( "Unable to check identity of file [{}]: {}", file, e );
+            return FileIdentity.Change.NONE;
+        }
+
+        FileIdentity previousIdentity = fileIdentity;
+        fileIdentity = currentIdentity;
+
+        if ( previousIdentity == null ) {
+            return FileIdentity.Change.NONE;
+        }
+
+        FileIdentity.Change change = currentIdentity.changeSince( previousIdentity );
+
+        if ( change != FileIdentity.Change.NONE ) {
+            log.info( "File {} was {} ({} -> {})", file,
+                    change == FileIdentity.Change.REPLACED ? "replaced" : "truncated",
+                    previousIdentity, currentIdentity );
+            lineIndex.invalidate();
+            timestampIndexer.invalidate();
+            trigramIndexer.invalidate();
+            encodingKnown = false;
+            clearFilterBlockSummaries();
+        }
+
+        return change;
+    }
+
+    /**
+     * Check whether the file was truncated or replaced, discarding anything kept from its previous contents.
+     * <p>
+     * This is done when the file window is about to be moved to an absolute position, so nothing else needs
+     * to be done.
+     */
+    private void discardFileChanges() {
+        if ( checkFileChange() != FileIdentity.Change.NONE ) {
+            releaseFile();
+        }
+    }
+
+    /**
+     * Remember that every line between the end of the file window and the end of the file has been read
+     * (and rejected by the line filter, if any).
+     */
+    private void markEndOfFileReached( long fileLength ) {
+        tailFileLength = fileLength;
+        tailWindowEnd = lineStarts.getLast();
+    }
+
+    private boolean isWindowAtEndOfFile() {
+        return tailFileLength >= 0L && lineStarts.getLast() == tailWindowEnd;
+    }
+
+    private void setWindowLineNumbers( List<Long> lineNumbers ) {
+        Arrays.fill( windowLineNumbers, 0L );
+        copyLineNumbers( lineNumbers, 0 );
+    }
+
+    private void appendToWindowLineNumbers( List<Long> lineNumbers ) {
+        int size = windowLineNumbers.length;
+        int count = Math.min( lineNumbers.size(), size );
+        System.arraycopy( windowLineNumbers, count, windowLineNumbers, 0, size - count );
+        copyLineNumbers( lineNumbers.subList( lineNumbers.size() - count, lineNumbers.size() ), size - count );
+    }
+
+    private void prependToWindowLineNumbers( List<Long> lineNumbers ) {
+        int size = windowLineNumbers.length;
+        int count = Math.min( lineNumbers.size(), size );
+        System.arraycopy( windowLineNumbers, 0, windowLineNumbers, count, size - count );
+        copyLineNumbers( lineNumbers.subList( 0, count ), 0 );
+    }
+
+    private void shiftWindowLineNumbers( int lines ) {
+        int size = windowLineNumbers.length;
+        int count = Math.min( lines, size );
+        System.arraycopy( windowLineNumbers, count, windowLineNumbers, 0, size - count );
+        Arrays.fill( windowLineNumbers, size - count, size, 0L );
+    }
+
+    private void copyLineNumbers( List<Long> lineNumbers, int startIndex ) {
+        int index = startIndex;
+        for ( Long lineNumber : lineNumbers ) {
+            if ( index >= windowLineNumbers.length ) {
+                break;
+            }
+            windowLineNumbers[ index++ ] = lineNumber;
+        }
+    }
+
+    /**
+     * Open the file for reading.
+     * <p>
+     * This method is called once for each read operation, and the returned instance is closed
+     * when the operation completes.
+     *
+     * @param bufferSize the preferred size of the chunks to be read during the operation
+     * @return the contents of the file
+     * @throws IOException if the file cannot be opened
+     */
+    FileChunks openChunks( int bufferSize ) throws IOException {
+        return fileChannel.open( bufferSize );
+    }
+
+    /**
+     * Open the file for indexing its lines.
+     * <p>
+     * Differently from {@link #openChunks(int)}, this is called from the background thread that indexes
+     * the lines of the file, so implementations must be thread-safe.
+     *
+     * @param bufferSize the preferred size of the chunks to be read
+     * @return the contents of the file
+     * @throws IOException if the file cannot be opened
+     */
+    FileChunks openIndexChunks( int bufferSize ) throws IOException {
+        return fileChannel.open( bufferSize );
+    }
+
+    /**
+     * Open the file for reading its lines, detecting its encoding if necessary.
+     *
+     * @param bufferSize the preferred size of the chunks to be read during the operation
+     * @return the contents of the file, aligned to the code units of its encoding
+     * @throws IOException if the file cannot be opened
+     */
+    private FileChunks openFile( int bufferSize ) throws IOException {
+        FileChunks chunks = openChunks( bufferSize );
+        if ( !encodingKnown ) {
+            try {
+                updateEncoding( chunks );
+            } catch ( IOException | RuntimeException e ) {
+                chunks.close();
+                throw e;
+            }
+        }
+        return encoding.align( chunks );
+    }
+
+    private void updateEncoding( FileChunks chunks ) throws IOException {
+        FileEncoding newEncoding;
+        if ( charset == null ) {
+            newEncoding = FileEncoding.detect( chunks );
+            encodingKnown = chunks.length() >= FileEncoding.DETECTION_SAMPLE_SIZE;
+        } else {
+            newEncoding = FileEncoding.of( charset );
+            encodingKnown = true;
+        }
+
+        if ( !newEncoding.equals( encoding ) ) {
+            log.debug( "Using encoding {} for file {}", newEncoding, file );
+            encoding = newEncoding;
+            lineDecoder = newEncoding.newDecoder();
+            lineIndex.setEncoding( newEncoding );
+            timestampIndexer.setEncoding( newEncoding );
+            trigramIndexer.setEncoding( newEncoding );
+            clearFilterBlockSummaries();
+        }
+    }
+
+    /**
+     * Forget which blocks of the file contain lines accepted by any filter, as the lines in the file
+     * can no longer be read as before.
+     */
+    private void clearFilterBlockSummaries() {
+        for ( FilterBlockSummary summary : filterBlockSummaries.values() ) {
+            summary.clear();
+        }
+    }
+
+    /**
+     * Release any resources associated with the file.
+     * <p>
+     * This is called when the reader is closed, and also when the file is found to no longer exist,
+     * so that a deleted file is not kept open. The file is opened again if it is needed later.
+     */
+    void releaseFile() {
+        fileChannel.close();
+    }
+
+    /**
+     * @return the size of the chunks to read in the next operation.
+     * If not given explicitly, this is enough to fit a full file window of lines of average length.
+     */
+    private int nextBufferSize() {
+        if ( bufferSize != ADAPTIVE_BUFFER_SIZE ) {
+            return bufferSize;
+        }
+        long windowBytes = averageLineLength * fileWindowSize;
+        int size = ( int ) Math.max( MIN_BUFFER_SIZE, Math.min( MAX_BUFFER_SIZE, windowBytes ) );
+
+        // use powers of two only, so there's just a few different sizes of buffers in the pool
+        int powerOfTwo = Integer.highestOneBit( size );
+        return powerOfTwo == size ? size : powerOfTwo << 1;
+    }
+
+    private Optional<LinkedList<LineHandle>> loadFromTop( Long firstLineStartIndex,
+                                                          final int lines,
+                                                          final LoadMode mode ) {
         if ( !file.isFile() ) {
+            releaseFile();
             return Optional.empty();
         }
 
+        final int bufferSize = nextBufferSize();
+
+        try ( FileChunks chunks = openFile( bufferSize ) ) {
+            return Optional.of( loadFromTop( chunks, bufferSize, firstLineStartIndex, lines, mode ) );
+        } catch ( IOException e ) {
+            log.warn( "Error reading file [{}]: {}", file, e );
+            return Optional.empty();
+        }
+    }
+
+    private LinkedList<LineHandle> loadFromTop( final FileChunks chunks,
+                                                final int bufferSize,
+                                                Long firstLineStartIndex,
+                                                final int lines,
+                                                final LoadMode mode ) throws IOException {
         log.trace( "Loading {} lines from the top, file: {}", lines, file );
 
-        if ( firstLineStartIndex >= file.length() - 1 ) {
+        loadedLineNumbers.clear();
+        LinkedList<LineHandle> result = new LinkedList<>();
+        LineBytes lineBytes = new LineBytes( maxLineLength );
+        LineHandle lineHandle = LineHandle.reusable( lineDecoder );
+
+        final long lastIndex = chunks.length() - 1;
+        final int newLineSize = encoding.getNewLineSize();
+
+        if ( mode != APPEND && firstLineStartIndex >= lastIndex ) {
             log.trace( "Already at the top of the file, nothing to return" );
-            return Optional.of( new LinkedList<>() );
+            return result;
         }
 
-        byte[] buffer = new byte[ bufferSize ];
-        LinkedList<String> result = new LinkedList<>();
-        byte[] topBytes = new byte[ 0 ];
+        if ( mode == LoadMode.REFRESH ) {
+            firstLineStartIndex = seekLineStartBefore( firstLineStartIndex, chunks, bufferSize );
+            if ( recordMode != null ) {
+                firstLineStartIndex = seekRecordStartBefore( firstLineStartIndex, chunks, bufferSize );
+            }
+            lineStarts.reset( firstLineStartIndex );
+        } else if ( mode == APPEND ) {
+            firstLineStartIndex = seekLineStartBefore( firstLineStartIndex, chunks, bufferSize );
+            int lastLine = lineStarts.lineCount() - 1;
+
+            // if the last line of the window was not terminated, it must be read again
+            lastLineReread = lastLine >= 0 && lineStarts.lineStart( lastLine ) == firstLineStartIndex;
+            if ( lastLineReread ) {
+                lineStarts.removeLast();
+            }
+        }
 
-        try ( RandomAccessFile reader = new RandomAccessFile( file, "r" ) ) {
-            if ( mode == LoadMode.REFRESH ) {
-                lineStarts.clear();
-                firstLineStartIndex = seekLineStartBefore( firstLineStartIndex, reader );
+        long startIndex = firstLineStartIndex;
+        long lineStartPosition = firstLineStartIndex;
+        long lineNumber = lineIndex.lineNumberAt( firstLineStartIndex ).orElse( 0L );
+
+        // if the last line was read before it was terminated, it may have grown since then,
+        // so the rest of it must be skipped
+        boolean skipFirstLine = mode == MOVE && !isLineStart( firstLineStartIndex, chunks );
+
+        // in record mode, lines are only complete once the first line of the next record is found
+        final RecordBuilder record = recordMode == null ?
+                null :
+                new RecordBuilder( recordMode, encoding, lineDecoder, maxLineLength );
+
+        // filters accept whole records, so lines cannot be tested on their own in record mode
+        final boolean parallelScanAllowed = mode != APPEND && lineFilter != NO_FILTER &&
+                record == null && isParallelScanSupported();
+        long scannedBytes = 0L;
+
+        // appended bytes have never been scanned, so no blocks can be skipped when reading them
+        final FilterBlockSummary summary = mode == APPEND || record != null ? null : filterBlockSummary;
+        if ( summary != null ) {
+            applyTrigramIndex( summary );
+        }
+
+        // all lines starting within scannedFrom..scannedTo have been tested by the filter (-1 if none)
+        long scannedFrom = skipFirstLine ? -1L : firstLineStartIndex;
+        long scannedTo = scannedFrom;
+        long lastCheckedBlock = -1L;
+
+        readerMainLoop:
+        while ( true ) {
+            if ( isReadCancelled() ) {
+                log.debug( "Read cancelled after loading {} lines from file {}", result.size(), file );
+                break;
             }
 
-            lineStarts.addLast( firstLineStartIndex );
+            if ( summary != null && !skipFirstLine && lineStartPosition == startIndex &&
+                    summary.isEmpty( FilterBlockSummary.blockOf( lineStartPosition ) ) ) {
+                long nextLineStart = skipEmptyBlocksDown( summary, lineStartPosition, chunks, bufferSize );
+                if ( nextLineStart != lineStartPosition ) {
+                    log.trace( "Skipping blocks without lines accepted by the filter: {}..{}",
+                            lineStartPosition, nextLineStart );
+                    startIndex = nextLineStart;
+                    lineStartPosition = nextLineStart;
+                    scannedTo = nextLineStart;
+                    lineNumber = lineIndex.lineNumberAt( nextLineStart ).orElse( 0L );
+                    continue;
+                }
+            }
 
-            log.trace( "Seeking position {}", firstLineStartIndex );
-            reader.seek( firstLineStartIndex );
+            if ( parallelScanAllowed && !skipFirstLine && scannedBytes >= parallelScanRegionSize &&
+                    ( summary == null || lineStartPosition >= summary.getSearchIndexLength() ) ) {
+                // the filter is rejecting most lines, so the rest of the file is scanned in parallel,
+                // starting again from the line being read (unless the trigram index tells which blocks to read)
+                scannedTo = scanInParallel( chunks, summary, lineStartPosition,
+                        lines - result.size(), lineNumber, result );
+                break;
+            }
 
-            readerMainLoop:
-            while ( true ) {
-                final long startIndex = reader.getFilePointer();
-                final long lastIndex = reader.length() - 1;
-                long fileIndex = startIndex;
+            long fileIndex = startIndex;
 
-                log.trace( "Reading chunk {}..{}",
-                        startIndex, startIndex + bufferSize );
+            log.trace( "Reading chunk {}..{}",
+                    startIndex, startIndex + bufferSize );
 
-                final int bytesRead = reader.read( buffer );
-                int lineStartIndex = 0;
+            final ByteBuffer buffer = chunks.chunkFrom( startIndex, bufferSize );
+            final int bytesRead = buffer.limit();
+            int lineStartIndex = 0;
 
-                if ( log.isTraceEnabled() && bytesRead > 0 && bytesRead < bufferSize ) {
-                    log.trace( "Did not read full buffer, chunk that got read is {}..{}", startIndex, startIndex + bytesRead );
+            if ( bytesRead == 0 ) {
+                log.trace( "Reached file end, breaking out of reader loop" );
+                if ( record != null ) {
+                    // the last record ends at the end of the file
+                    addLastRecord( record, result );
                 }
+                markEndOfFileReached( chunks.length() );
+                break;
+            }
 
-                for ( int i = 0; i < bytesRead; i++ ) {
-                    byte b = buffer[ i ];
-                    boolean isNewLine = ( b == '\n' );
-                    boolean isLastByte = ( fileIndex == lastIndex );
+            if ( log.isTraceEnabled() && bytesRead < bufferSize ) {
+                log.trace( "Did not read full buffer, chunk that got read is {}..{}", startIndex, startIndex + bytesRead );
+            }
 
-                    if ( isNewLine || isLastByte ) {
-                        // if the byte is a new line, don't include it in the result
-                        int lineEndIndex = isNewLine ? i - 1 : i;
+            for ( int i = 0; i < bytesRead; i++ ) {
+                boolean isNewLine = encoding.isNewLine( buffer, i );
+                boolean isLastByte = ( fileIndex == lastIndex );
 
-                        if ( isNewLine && i > 0 && buffer[ i - 1 ] == '\r' ) {
-                            // do not include the return character in the line
-                            lineEndIndex--;
-                        }
+                if ( isNewLine || isLastByte ) {
+                    // if the byte ends a new line, don't include the new line in the result
+                    int lineEndIndex = isNewLine ? i + 1 - newLineSize : i + 1;
 
-                        int lineLength = lineEndIndex - lineStartIndex + 1;
+                    log.trace( "Found line, adding [{}:{}] bytes from buffer to {} previous bytes",
+                            lineStartIndex, lineEndIndex, lineBytes.length() );
 
-                        byte[] lineBytes = new byte[ lineLength + topBytes.length ];
-                        log.trace( "Found line, copying [{}:{}] bytes from buffer + {} from top",
-                                lineStartIndex, lineLength, topBytes.length );
-                        System.arraycopy( topBytes, 0, lineBytes, 0, topBytes.length );
-                        System.arraycopy( buffer, lineStartIndex, lineBytes, topBytes.length, lineLength );
+                    lineBytes.append( buffer, lineStartIndex, lineEndIndex - lineStartIndex );
 
-                        String line = new String( lineBytes, StandardCharsets.UTF_8 );
+                    LineHandle line = nextLine( lineHandle, lineBytes, lineStartPosition, isNewLine );
 
-                        if ( lineFilter.test( line ) ) {
-                            lineStarts.addLast( startIndex + i + 1 );
-                            result.addLast( line );
+                    if ( skipFirstLine ) {
+                        log.trace( "Skipping rest of line that was not terminated: {}", line );
+                        skipFirstLine = false;
+                        if ( isNewLine ) {
+                            scannedFrom = startIndex + i + 1;
+                            scannedTo = scannedFrom;
+                        }
+                    } else if ( record != null ) {
+                        if ( record.continuesWith( line ) ) {
+                            record.append( line, startIndex + i + 1 );
+                        } else {
+                            // this line starts a new record, so the previous one is complete
+                            if ( addLastRecord( record, result ) && result.size() >= lines ) {
+                                log.trace( "Got enough records, breaking out of reader loop" );
+                                break readerMainLoop;
+                            }
+                            record.startWith( line, lineStartPosition, startIndex + i + 1, lineNumber );
+                        }
+                    } else {
+                        boolean accepted = accept( line );
+
+                        // only terminated lines count as scanned, as others may still grow
+                        if ( isNewLine && scannedFrom >= 0L ) {
+                            scannedTo = startIndex + i + 1;
+                        }
+
+                        if ( accepted ) {
+                            if ( summary != null ) {
+                                summary.markMatch( lineStartPosition );
+                            }
+                            lineStarts.addLast( lineStartPosition, startIndex + i + 1 );
+                            result.addLast( line.detach() );
+                            loadedLineNumbers.addLast( lineNumber );
                             log.trace( "Added line: {}", line );
                             if ( result.size() >= lines ) {
                                 log.trace( "Got enough lines, breaking out of reader loop" );
                                 break readerMainLoop;
                             }
                         }
+                    }
 
-                        topBytes = new byte[ 0 ];
-                        lineStartIndex = isNewLine ? i + 1 : i;
+                    lineBytes.clear();
+                    lineStartIndex = isNewLine ? i + 1 : i;
+                    lineStartPosition = startIndex + i + 1;
+                    if ( lineNumber > 0L ) {
+                        lineNumber++;
                     }
 
-                    fileIndex++;
+                    if ( summary != null && !skipFirstLine &&
+                            FilterBlockSummary.blockOf( lineStartPosition ) != lastCheckedBlock ) {
+                        lastCheckedBlock = FilterBlockSummary.blockOf( lineStartPosition );
+                        if ( summary.isEmpty( lastCheckedBlock ) ) {
+                            // the main loop skips the blocks without matches starting from the next line
+                            scannedBytes += lineStartPosition - startIndex;
+                            startIndex = lineStartPosition;
+                            continue readerMainLoop;
+                        }
+                    }
                 }
 
-                if ( bytesRead < 0L ) {
-                    log.trace( "Reached file end, breaking out of reader loop" );
-                    break;
-                }
+                fileIndex++;
+            }
 
-                // remember the current buffer bytes as the next top bytes
-                int bytesToCopy = bufferSize - lineStartIndex;
-                byte[] newTop = new byte[ topBytes.length + bytesToCopy ];
-                System.arraycopy( buffer, lineStartIndex, newTop, 0, bytesToCopy );
-                System.arraycopy( topBytes, 0, newTop, bytesToCopy, topBytes.length );
-                log.trace( "Updated top bytes, now top has {} bytes", newTop.length );
-                topBytes = newTop;
+            // remember the remaining buffer bytes as the start of the next line
+            lineBytes.append( buffer, lineStartIndex, bytesRead - lineStartIndex );
+            log.trace( "Line being read now has {} bytes", lineBytes.length() );
+
+            startIndex += bytesRead;
+            scannedBytes += bytesRead;
+        }
+
+        if ( summary != null && scannedFrom >= 0L ) {
+            summary.markScanned( scannedFrom, scannedTo );
+        }
+
+        log.debug( "Loaded {} lines from file {}", result.size(), file );
+        log.trace( "Line starts: {}", lineStarts );
+        return result;
+    }
+
+    /**
+     * Add the record being built to the end of the file window, if it's accepted by the current filter.
+     *
+     * @return true if the record was added
+     */
+    private boolean addLastRecord( RecordBuilder record, LinkedList<LineHandle> result ) {
+        if ( record.isEmpty() ) {
+            return false;
+        }
+        LineHandle line = record.getRecord();
+        boolean accepted = accept( line );
+        if ( accepted ) {
+            lineStarts.addLast( record.getStart(), record.getEnd() );
+            result.addLast( line.detach() );
+            loadedLineNumbers.addLast( record.getLineNumber() );
+            log.trace( "Added record: {}", line );
+        }
+        record.clear();
+        return accepted;
+    }
+
+    /**
+     * Scan the file from the given position for lines accepted by the current filter, using several Threads,
+     * adding the lines found to the file window and to the given result.
+     *
+     * @return the position up to which all lines were tested by the filter
+     */
+    private long scanInParallel( FileChunks chunks,
+                                 FilterBlockSummary summary,
+                                 long lineStartPosition,
+                                 int lines,
+                                 long lineNumber,
+                                 LinkedList<LineHandle> result ) throws IOException {
+        final long length = chunks.length();
+        log.debug( "Scanning file {} in parallel from position {} to {}", file, lineStartPosition, length );
+
+        List<String> requiredTexts = lineFilter instanceof LineFilter ?
+                ( ( LineFilter ) lineFilter ).getRequiredTexts().orElse( null ) :
+                null;
+
+        ParallelLineScanner scanner = new ParallelLineScanner( this::openIndexChunks, encoding, maxLineLength,
+                this::accept, requiredTexts, readCancelled, parallelScanRegionSize );
+
+        ParallelLineScanner.Result scanResult = scanner.scan( lineStartPosition, length, lines, lineNumber );
+
+        for ( ParallelLineScanner.Match match : scanResult.matches ) {
+            if ( summary != null ) {
+                summary.markMatch( match.start );
             }
+            lineStarts.addLast( match.start, match.end );
+            result.addLast( match.line );
+            loadedLineNumbers.addLast( match.lineNumber );
+        }
 
-            log.debug( "Loaded {} lines from file {}", result.size(), file );
-            log.trace( "Line starts: {}", lineStarts );
-            return Optional.of( result );
-        } catch ( IOException e ) {
-            log.warn( "Error reading file [{}]: {}", file, e );
-            return Optional.empty();
+        if ( scanResult.cancelled ) {
+            lastReadCancelled = true;
+            log.debug( "Parallel scan cancelled after loading {} lines from file {}", result.size(), file );
+        } else if ( scanResult.reachedEnd ) {
+            markEndOfFileReached( length );
         }
+
+        return scanResult.scannedTo;
     }
 
-    private Optional<LinkedList<String>> loadFromBottom( final Long firstLineStartIndex,
-                                                         final int lines,
-                                                         final LoadMode mode ) {
+    private Optional<LinkedList<LineHandle>> loadFromBottom( final Long firstLineStartIndex,
+                                                             final int lines,
+                                                             final LoadMode mode ) {
         if ( !file.isFile() ) {
+            releaseFile();
             return Optional.empty();
         }
 
         log.trace( "Loading {} lines from the bottom of chunk, file: {}", lines, file );
 
+        loadedLineNumbers.clear();
+
         if ( firstLineStartIndex <= 0L ) {
             log.trace( "Already at the bottom of the file, nothing to return" );
             return Optional.of( new LinkedList<>() );
         }
 
-        byte[] buffer = new byte[ bufferSize ];
-        LinkedList<String> result = new LinkedList<>();
-        byte[] tailBytes = new byte[ 0 ];
+        LinkedList<LineHandle> result = new LinkedList<>();
+        LineBytes lineBytes = new LineBytes( maxLineLength );
         long bufferStartIndex = firstLineStartIndex;
 
-        try ( RandomAccessFile reader = new RandomAccessFile( file, "r" ) ) {
+        final int bufferSize = nextBufferSize();
+
+        try ( FileChunks chunks = openFile( bufferSize ) ) {
+            final int newLineSize = encoding.getNewLineSize();
+            final LineHandle lineHandle = LineHandle.reusable( lineDecoder );
+
             if ( mode == LoadMode.REFRESH ) {
-                lineStarts.clear();
-                bufferStartIndex = seekLineStartBefore( firstLineStartIndex, reader );
-                lineStarts.addLast( Math.max( 0L, bufferStartIndex - 1L ) );
+                bufferStartIndex = seekLineStartBefore( firstLineStartIndex, chunks, bufferSize );
+                lineStarts.reset( bufferStartIndex );
             }
 
+            long readStartIndex = Math.min( bufferStartIndex, chunks.length() );
+
+            // the position where reading starts is the last byte of a new-line, so with multi-byte new-lines,
+            // reading must start at the first byte of the new-line instead
+            if ( readStartIndex < chunks.length() && readStartIndex % newLineSize != 0L ) {
+                readStartIndex -= readStartIndex % newLineSize;
+                bufferStartIndex = readStartIndex;
+            }
+
+            // when reading an empty window from the end of the file, all lines after the last one accepted
+            // are known to have been rejected
+            final boolean readingFromEndOfFile = readStartIndex == chunks.length() && lineStarts.lineCount() == 0;
+
+            // the first line found is the one containing the position where reading starts,
+            // which (unless it's the end of the file) is the new-line character that terminates it
+            long lineNumber = lineIndex.lineNumberAt( readStartIndex ).orElse( 0L );
+            long lineEndPosition = readStartIndex < chunks.length() ? readStartIndex + newLineSize : readStartIndex;
+
+            // in record mode, continuation lines are kept until the first line of their record is found
+            final RecordBuilder record = recordMode == null ?
+                    null :
+                    new RecordBuilder( recordMode, encoding, lineDecoder, maxLineLength );
+
+            // filters accept whole records, so lines cannot be tested on their own in record mode
+            final FilterBlockSummary summary = record == null ? filterBlockSummary : null;
+            if ( summary != null ) {
+                applyTrigramIndex( summary );
+            }
+
+            // all lines starting within scannedFrom..scannedTo have been tested by the filter (-1 if none),
+            // which excludes the last line of the file, as it may not be terminated yet
+            long scannedTo = readStartIndex < chunks.length() ? lineEndPosition : -1L;
+            long scannedFrom = scannedTo;
+            long lastCheckedBlock = -1L;
+
             readerMainLoop:
             while ( true ) {
-                long previousStartIndex = bufferStartIndex;
+                if ( isReadCancelled() ) {
+                    log.debug( "Read cancelled after loading {} lines from file {}", result.size(), file );
+                    break;
+                }
 
-                // start reading from the bottom section of the file above the previous position that fits into the buffer
-                bufferStartIndex = Math.max( 0, bufferStartIndex - bufferSize );
+                if ( summary != null && lineBytes.length() == 0L && lineEndPosition > 0L &&
+                        bufferStartIndex == lineEndPosition - newLineSize &&
+                        summary.isEmpty( FilterBlockSummary.blockOf( lineEndPosition - 1L ) ) ) {
+                    long previousBlock = summary.previousNonEmptyBlock(
+                            FilterBlockSummary.blockOf( lineEndPosition - 1L ) );
+                    if ( previousBlock < 0L ) {
+                        log.trace( "No lines before {} are accepted by the filter", lineEndPosition );
+                        if ( scannedTo >= 0L ) {
+                            scannedFrom = 0L;
+                        }
+                        break;
+                    }
+                    long nextLineStart = skipEmptyBlocksUp( previousBlock, chunks, bufferSize );
+                    if ( nextLineStart < lineEndPosition ) {
+                        log.trace( "Skipping blocks without lines accepted by the filter: {}..{}",
+                                nextLineStart, lineEndPosition );
+                        bufferStartIndex = nextLineStart - newLineSize;
+                        lineEndPosition = nextLineStart;
+                        if ( scannedTo >= 0L ) {
+                            scannedFrom = nextLineStart;
+                        }
+                        lineNumber = lineIndex.lineNumberAt( bufferStartIndex ).orElse( 0L );
+                        continue;
+                    }
+                }
 
-                log.trace( "Seeking position {}", bufferStartIndex );
-                reader.seek( bufferStartIndex );
+                long previousStartIndex = Math.min( bufferStartIndex, chunks.length() );
 
-                log.trace( "Reading chunk {}:{}, previous start: {}",
-                        bufferStartIndex, bufferStartIndex + bufferSize, previousStartIndex );
+                // read the bottom section of the file above the previous position that fits into the buffer
+                final ByteBuffer buffer = chunks.chunkBefore( previousStartIndex, bufferSize );
+                final int bytesRead = buffer.limit();
+                bufferStartIndex = previousStartIndex - bytesRead;
 
-                final int bytesRead = bufferStartIndex == 0L && previousStartIndex > 0 ?
-                        reader.read( buffer, 0, ( int ) previousStartIndex ) :
-                        reader.read( buffer );
+                log.trace( "Read chunk {}:{}", bufferStartIndex, previousStartIndex );
 
                 int lastByteIndex = bytesRead - 1;
 
                 for ( int i = lastByteIndex; i >= 0; i-- ) {
-                    byte b = buffer[ i ];
-                    boolean isNewLine = ( b == '\n' );
+                    boolean isNewLine = encoding.isNewLine( buffer, i );
                     boolean firstFileByte = ( bufferStartIndex == 0 && i == 0 );
 
                     if ( isNewLine || firstFileByte ) {
 
-                        // if the byte is a new line, don't include it in the result
+                        // if the byte ends a new line, don't include the new line in the result
                         int lineStartIndex = isNewLine ? i + 1 : i;
-                        int tailBytesLength = tailBytes.length;
-                        int bufferBytesToAdd = lastByteIndex - lineStartIndex + 1;
 
-                        if ( tailBytesLength > 0 ) {
-                            if ( tailBytes[ tailBytesLength - 1 ] == '\r' ) {
-                                // do not include the return character in the line
-                                tailBytesLength--;
+                        log.trace( "Found line, adding [{}:{}] bytes from buffer to {} following bytes",
+                                lineStartIndex, lastByteIndex + 1, lineBytes.length() );
+
+                        lineBytes.prepend( buffer, lineStartIndex, lastByteIndex - lineStartIndex + 1 );
+
+                        // if this is not a new line, it must be the first file byte
+                        long lineStartPosition = isNewLine ? bufferStartIndex + i + 1 : 0L;
+
+                        LineHandle line = nextLine( lineHandle, lineBytes, lineStartPosition, true );
+                        long acceptedLineEnd = lineEndPosition;
+
+                        if ( record != null ) {
+                            if ( lineStartPosition >= chunks.length() ) {
+                                // the file ends with a new-line, which does not start another record
+                                line = null;
+                            } else if ( record.isFirstLine( line, lineStartPosition ) ) {
+                                record.completeWith( line, lineStartPosition, lineEndPosition, lineNumber );
+                                line = record.getRecord();
+                                acceptedLineEnd = record.getEnd();
+                            } else {
+                                // the first line of the record is further up
+                                record.prepend( line, lineEndPosition );
+                                line = null;
                             }
-                        } else if ( buffer[ lastByteIndex ] == '\r' ) {
-                            // no tail, so the return character is removed from the buffer
-                            bufferBytesToAdd--;
                         }
 
-                        byte[] lineBytes = new byte[ bufferBytesToAdd + tailBytesLength ];
-                        log.trace( "Found line, copying {} bytes from buffer + {} from tail", bufferBytesToAdd, tailBytes.length );
-                        System.arraycopy( buffer, lineStartIndex, lineBytes, 0, bufferBytesToAdd );
-                        System.arraycopy( tailBytes, 0, lineBytes, bufferBytesToAdd, tailBytesLength );
+                        boolean accepted = line != null && accept( line );
 
-                        String line = new String( lineBytes, StandardCharsets.UTF_8 );
-
-                        if ( lineFilter.test( line ) ) {
-                            result.addFirst( line );
-                            log.trace( "Added line: {}", line );
+                        if ( scannedTo < 0L ) {
+                            scannedTo = lineStartPosition;
+                        }
+                        scannedFrom = lineStartPosition;
 
-                            if ( isNewLine ) {
-                                lineStarts.addFirst( bufferStartIndex + i + 1 );
-                            } else { // this must be the first file byte, remember it
-                                lineStarts.addFirst( 0 );
+                        if ( accepted ) {
+                            if ( summary != null ) {
+                                summary.markMatch( lineStartPosition );
                             }
+                            result.addFirst( line.detach() );
+                            loadedLineNumbers.addFirst( lineNumber );
+                            lineStarts.addFirst( lineStartPosition, acceptedLineEnd );
+                            log.trace( "Added line: {}", line );
 
                             if ( result.size() >= lines ) {
                                 log.trace( "Got enough lines, breaking out of the reader loop" );
@@ -599,28 +1787,42 @@ public class FileReader implements FileContentReader {
                             }
                         }
 
-                        tailBytes = new byte[ 0 ];
-                        lastByteIndex = i - 1;
+                        lineBytes.clear();
+                        lastByteIndex = isNewLine ? i - newLineSize : i - 1;
+                        lineEndPosition = lineStartPosition;
+                        if ( lineNumber > 0L ) {
+                            lineNumber--;
+                        }
                         log.trace( "Last byte index is now {}", lastByteIndex );
+
+                        if ( summary != null && lineEndPosition > 0L &&
+                                FilterBlockSummary.blockOf( lineEndPosition - 1L ) != lastCheckedBlock ) {
+                            lastCheckedBlock = FilterBlockSummary.blockOf( lineEndPosition - 1L );
+                            if ( summary.isEmpty( lastCheckedBlock ) ) {
+                                // the main loop skips the blocks without matches ending at this line
+                                bufferStartIndex = lineEndPosition - newLineSize;
+                                continue readerMainLoop;
+                            }
+                        }
                     }
                 }
 
-                if ( bufferStartIndex == 0 ) {
+                if ( bufferStartIndex <= 0 ) {
                     log.trace( "Reached file start, breaking out of the reader loop" );
                     break;
                 }
 
-                if ( lastByteIndex < 0 ) {
-                    log.trace( "No bytes were read, skipping copying of tail bytes" );
-                    continue;
-                }
+                // remember the remaining buffer bytes as the end of the next line
+                lineBytes.prepend( buffer, 0, lastByteIndex + 1 );
+                log.trace( "Line being read now has {} bytes", lineBytes.length() );
+            }
+
+            if ( summary != null && scannedTo >= 0L ) {
+                summary.markScanned( scannedFrom, scannedTo );
+            }
 
-                // remember the current buffer bytes as the next tail bytes
-                byte[] newTail = new byte[ tailBytes.length + lastByteIndex + 1 ];
-                System.arraycopy( buffer, 0, newTail, 0, lastByteIndex + 1 );
-                System.arraycopy( tailBytes, 0, newTail, lastByteIndex + 1, tailBytes.length );
-                log.trace( "Updated tail, now tail has {} bytes", newTail.length );
-                tailBytes = newTail;
+            if ( readingFromEndOfFile && !lastReadCancelled ) {
+                markEndOfFileReached( chunks.length() );
             }
 
             log.debug( "Loaded {} lines from file {}", result.size(), file );
@@ -632,34 +1834,224 @@ public class FileReader implements FileContentReader {
         }
     }
 
-    private long seekLineStartBefore( Long firstLineStartIndex, RandomAccessFile reader )
+    /**
+     * Mark the blocks of the file which, according to the trigram index of the file, cannot contain any lines
+     * accepted by the current filter as scanned, so that reads skip them.
+     * <p>
+     * Only the blocks indexed after the summary was last updated by this method are looked up. If the filter
+     * does not tell which texts accepted lines must contain, or there is no index yet, nothing is done,
+     * so the file is scanned as usual.
+     */
+    private void applyTrigramIndex( FilterBlockSummary summary ) {
+        if ( fileIdentity == null || !( lineFilter instanceof LineFilter ) ) {
+            return;
+        }
+        Optional<List<String>> requiredTexts = ( ( LineFilter ) lineFilter ).getRequiredTexts();
+        if ( !requiredTexts.isPresent() ) {
+            return;
+        }
+        Optional<TrigramIndex> index = trigramIndexer.indexFor( fileIdentity );
+        if ( !index.isPresent() || index.get().getIndexedLength() <= summary.getSearchIndexLength() ) {
+            return;
+        }
+
+        long blockSize = index.get().getBlockSize();
+        long fromBlock = summary.getSearchIndexLength() / blockSize;
+        long endBlock = index.get().getBlockCount();
+        Optional<BitSet> candidates;
+        try {
+            candidates = index.get().candidateBlocks( requiredTexts.get(), fromBlock );
+        } catch ( IOException e ) {
+            log.warn( "Unable to read trigram index of file [{}]: {}", file, e );
+            return;
+        }
+
+        if ( candidates.isPresent() ) {
+            int block = candidates.get().nextClearBit( ( int ) fromBlock );
+            while ( block < endBlock ) {
+                int nextCandidate = candidates.get().nextSetBit( block );
+                long rangeEnd = nextCandidate < 0 ? endBlock : Math.min( nextCandidate, endBlock );
+                summary.markScanned( block * blockSize, rangeEnd * blockSize );
+                block = candidates.get().nextClearBit( ( int ) rangeEnd );
+            }
+            summary.setSearchIndexLength( index.get().getIndexedLength() );
+            log.debug( "Trigram index of file {} allows reading only {} of blocks {}..{} for filter",
+                    file, candidates.get().cardinality(), fromBlock, endBlock );
+        }
+    }
+
+    /**
+     * @return the start of the first line, at or after the given line start, which does not start in a block
+     * known to have no lines accepted by the filter
+     */
+    private long skipEmptyBlocksDown( FilterBlockSummary summary, long lineStart,
+                                      FileChunks chunks, int bufferSize ) throws IOException {
+        long nextBlock = summary.nextNonEmptyBlock( FilterBlockSummary.blockOf( lineStart ) );
+        return Math.max( lineStart,
+                firstLineStartFrom( FilterBlockSummary.blockStart( nextBlock ), chunks, bufferSize ) );
+    }
+
+    /**
+     * @return the end of the last line starting in the given block, which is the start of the first line
+     * starting after it
+     */
+    private long skipEmptyBlocksUp( long block, FileChunks chunks, int bufferSize ) throws IOException {
+        return firstLineStartFrom( FilterBlockSummary.blockStart( block + 1L ), chunks, bufferSize );
+    }
+
+    /**
+     * @return the start of the first line starting at or after the given position, or the file length
+     * if there is none
+     */
+    private long firstLineStartFrom( long position, FileChunks chunks, int bufferSize ) throws IOException {
+        final long length = chunks.length();
+        if ( position >= length || isLineStart( position, chunks ) ) {
+            return Math.min( position, length );
+        }
+        while ( position < length ) {
+            ByteBuffer buffer = chunks.chunkFrom( position, bufferSize );
+            int bytesRead = buffer.limit();
+            if ( bytesRead == 0 ) {
+                break;
+            }
+            for ( int i = 0; i < bytesRead; i++ ) {
+                if ( encoding.isNewLine( buffer, i ) ) {
+                    return position + i + 1;
+                }
+            }
+            position += bytesRead;
+        }
+        return length;
+    }
+
+    private boolean isLineStart( long index, FileChunks chunks ) throws IOException {
+        if ( index <= 0L ) {
+            return true;
+        }
+        ByteBuffer buffer = chunks.chunkBefore( index, encoding.getNewLineSize() );
+        return buffer.limit() == 0 || encoding.isNewLine( buffer, buffer.limit() - 1 );
+    }
+
+    private long seekLineStartBefore( Long firstLineStartIndex, FileChunks chunks, int bufferSize )
             throws IOException {
         log.trace( "Seeking line start before or at {}", firstLineStartIndex );
         if ( firstLineStartIndex == 0L ) {
             return 0L;
         }
 
-        if ( firstLineStartIndex >= reader.length() ) {
-            log.trace( "Line start found at EOF, file length = {}", reader.length() );
-            return reader.length();
+        final long length = chunks.length();
+
+        if ( firstLineStartIndex >= length ) {
+            log.trace( "Line start found at EOF, file length = {}", length );
+            return length;
         }
 
-        long index = Math.min( firstLineStartIndex - 1, reader.length() - 1 );
+        long index = Math.min( firstLineStartIndex - 1, length - 1 );
+
+        searchLoop:
         while ( index > 0 ) {
-            reader.seek( index );
-            int c = reader.read();
-            if ( c == '\n' ) {
-                break;
-            } else {
-                index--;
+            ByteBuffer buffer = chunks.chunkBefore( index + 1, bufferSize );
+            long bufferStartIndex = index + 1 - buffer.limit();
+            for ( int i = buffer.limit() - 1; i >= 0; i-- ) {
+                if ( encoding.isNewLine( buffer, i ) ) {
+                    index = bufferStartIndex + i;
+                    break searchLoop;
+                }
             }
+            index = bufferStartIndex - 1;
         }
 
-        long result = index == 0L ? 0L : index + 1L;
+        long result = index <= 0L ? 0L : index + 1L;
 
         log.trace( "Line start before {} found at {}", firstLineStartIndex, result );
 
         return result;
     }
 
+    /**
+     * Find the start of the record containing the line starting at the given position, by reading
+     * the lines before it until one that is not a continuation line is found.
+     *
+     * @return the start of the first line of the record
+     */
+    private long seekRecordStartBefore( long lineStart, FileChunks chunks, int bufferSize ) throws IOException {
+        final int newLineSize = encoding.getNewLineSize();
+        long start = Math.min( lineStart, chunks.length() );
+
+        for ( int lines = 1; lines < RecordMode.MAX_RECORD_LINES && start > 0L; lines++ ) {
+            if ( start == chunks.length() || !recordMode.isContinuation( lineTextAt( start, chunks, bufferSize ) ) ) {
+                break;
+            }
+            start = seekLineStartBefore( start - newLineSize, chunks, bufferSize );
+        }
+
+        log.trace( "Record start before {} found at {}", lineStart, start );
+        return start;
+    }
+
+    /**
+     * @return the text of the line starting at the given position
+     */
+    private String lineTextAt( long lineStart, FileChunks chunks, int bufferSize ) throws IOException {
+        final int newLineSize = encoding.getNewLineSize();
+        final LineBytes lineBytes = new LineBytes( maxLineLength );
+        final long length = chunks.length();
+        long position = lineStart;
+
+        while ( position < length ) {
+            ByteBuffer buffer = chunks.chunkFrom( position, bufferSize );
+            int bytesRead = buffer.limit();
+            if ( bytesRead == 0 ) {
+                break;
+            }
+            for ( int i = 0; i < bytesRead; i++ ) {
+                if ( encoding.isNewLine( buffer, i ) ) {
+                    lineBytes.append( buffer, 0, i + 1 - newLineSize );
+                    return nextLine( LineHandle.reusable( lineDecoder ), lineBytes, lineStart, true ).getText();
+                }
+            }
+            lineBytes.append( buffer, 0, bytesRead );
+            position += bytesRead;
+        }
+
+        return nextLine( LineHandle.reusable( lineDecoder ), lineBytes, lineStart, false ).getText();
+    }
+
+    /**
+     * Point the given line handle to the line whose bytes have just been read.
+     */
+    private LineHandle nextLine( LineHandle lineHandle, LineBytes lineBytes,
+                                 long lineStartPosition, boolean newLineFound ) {
+        boolean singleByteNewLine = encoding.getNewLineSize() == 1;
+
+        if ( newLineFound && singleByteNewLine ) {
+            // do not include the return character in the line
+            lineBytes.removeTrailingReturn();
+        }
+
+        // moving average that favours recent lines
+        averageLineLength = averageLineLength == 0L ?
+                lineBytes.length() + 1L :
+                ( 7L * averageLineLength + lineBytes.length() + 1L ) / 8L;
+
+        if ( lineBytes.isTruncated() && log.isDebugEnabled() ) {
+            log.debug( "Line is too long ({} bytes), keeping only its first {} bytes",
+                    lineBytes.length(), lineBytes.size() );
+        }
+        // with multi-byte new-lines, the decoder removes the return character instead
+        lineHandle.reset( lineBytes, lineStartPosition, newLineFound && !singleByteNewLine );
+        return lineHandle;
+    }
+
+    private boolean accept( LineHandle line ) {
+        if ( lineFilter == NO_FILTER ) {
+            return true;
+        }
+        if ( lineFilter instanceof LineFilter ) {
+            return ( ( LineFilter ) lineFilter ).test( line );
+        }
+        return lineFilter.test( line.getText() );
+    }
+
+
 }
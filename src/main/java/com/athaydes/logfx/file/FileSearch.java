@@ -0,0 +1,654 @@
+package com.athaydes.logfx.file;
+
+import com.athaydes.logfx.config.Properties;
+import com.athaydes.logfx.file.FileContentReader.FileQueryResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Searches a file for the lines matching a filter, in the background.
+ * <p>
+ * A search starts at the first line of the file window of a {@link FileReader} and scans the file down to its end,
+ * then wraps around to scan the file from the top down to where it started, so that the matches closest to what is
+ * being shown are found first. Matches are added to the results as they are found, and the progress of the search is
+ * reported after each step of the scan, so the results can be used while the search runs.
+ * <p>
+ * Starting a new search cancels the search in progress, whose results are discarded.
+ * <p>
+ * Only the position and number of each matching line are kept, up to a maximum number of matches, after which the
+ * search stops. Lines appended to the file after a search starts are not searched.
+ * <p>
+ * Searches of all files run on a small pool of Threads, and their lines are scanned on the
+ * {@link ParallelLineScanner#BACKGROUND_POOL}, so that searching many files at the same time does not delay
+ * the reads of the files being displayed.
+ */
+public final class FileSearch {
+
+    private static final Logger log = LoggerFactory.getLogger( FileSearch.class );
+
+    public static final int DEFAULT_MAX_MATCHES = 1_000_000;
+
+    private static final int BUFFER_SIZE = 4096;
+
+    // maximum number of files searched at the same time
+    private static final int MAX_CONCURRENT_SEARCHES = Math.min( 4, ParallelLineScanner.PARALLELISM );
+
+    private static final AtomicInteger searchThreadCount = new AtomicInteger();
+
+    private static final ExecutorService backgroundSearcher = Executors.newFixedThreadPool( MAX_CONCURRENT_SEARCHES,
+            ( runnable ) -> {
+                Thread thread = new Thread( runnable, "logfx-file-search-" + searchThreadCount.incrementAndGet() );
+                thread.setDaemon( true );
+                return thread;
+            } );
+
+    /**
+     * A line matching the filter of a search.
+     */
+    public static final class Match {
+        private final long start;
+        private final long lineNumber;
+
+        Match( long start, long lineNumber ) {
+            this.start = start;
+            this.lineNumber = lineNumber;
+        }
+
+        /**
+         * @return the position of the start of the line in the file
+         */
+        public long getStart() {
+            return start;
+        }
+
+        /**
+         * @return the number of the line, or 0 if not known
+         */
+        public long getLineNumber() {
+            return lineNumber;
+        }
+
+        @Override
+        public boolean equals( Object other ) {
+            if ( this == other ) return true;
+            if ( other == null || getClass() != other.getClass() ) return false;
+            Match match = ( Match ) other;
+            return start == match.start && lineNumber == match.lineNumber;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Long.hashCode( start ) + Long.hashCode( lineNumber );
+        }
+
+        @Override
+        public String toString() {
+            return "Match{" +
+                    "start=" + start +
+                    ", lineNumber=" + lineNumber +
+                    '}';
+        }
+    }
+
+    /**
+     * The progress of a search.
+     */
+    public static final class Progress {
+        private final int matchCount;
+        private final long scannedBytes;
+        private final long totalBytes;
+        private final boolean done;
+        private final boolean limitReached;
+        private final ZonedDateTime firstDateTime;
+        private final ZonedDateTime lastDateTime;
+
+        Progress( int matchCount, long scannedBytes, long totalBytes, boolean done, boolean limitReached,
+                  ZonedDateTime firstDateTime, ZonedDateTime lastDateTime ) {
+            this.matchCount = matchCount;
+            this.scannedBytes = scannedBytes;
+            this.totalBytes = totalBytes;
+            this.done = done;
+            this.limitReached = limitReached;
+            this.firstDateTime = firstDateTime;
+            this.lastDateTime = lastDateTime;
+        }
+
+        /**
+         * @return the number of matches found so far
+         */
+        public int getMatchCount() {
+            return matchCount;
+        }
+
+        /**
+         * @return the number of bytes of the file scanned so far
+         */
+        public long getScannedBytes() {
+            return scannedBytes;
+        }
+
+        /**
+         * @return the number of bytes of the file to scan
+         */
+        public long getTotalBytes() {
+            return totalBytes;
+        }
+
+        /**
+         * @return true if the search has finished, in which case no more matches will be found
+         */
+        public boolean isDone() {
+            return done;
+        }
+
+        /**
+         * @return true if the search stopped early because the maximum number of matches was found
+         */
+        public boolean isLimitReached() {
+            return limitReached;
+        }
+
+        /**
+         * @return the date-time of the first match found so far in the file which has a date-time, if the search
+         * knows how to extract the date-times of the lines of the file
+         */
+        public Optional<ZonedDateTime> getFirstDateTime() {
+            return Optional.ofNullable( firstDateTime );
+        }
+
+        /**
+         * @return the date-time of the last match found so far in the file which has a date-time, if the search
+         * knows how to extract the date-times of the lines of the file
+         */
+        public Optional<ZonedDateTime> getLastDateTime() {
+            return Optional.ofNullable( lastDateTime );
+        }
+
+        @Override
+        public String toString() {
+            return "Progress{" +
+                    "matchCount=" + matchCount +
+                    ", scannedBytes=" + scannedBytes +
+                    ", totalBytes=" + totalBytes +
+                    ", done=" + done +
+                    ", limitReached=" + limitReached +
+                    ", firstDateTime=" + firstDateTime +
+                    ", lastDateTime=" + lastDateTime +
+                    '}';
+        }
+    }
+
+    private final FileReader reader;
+    private final Function<String, Optional<ZonedDateTime>> dateExtractor;
+    private final int maxLineLength;
+    private final int regionSize;
+    private final long stepSize;
+    private final int maxMatches;
+    private final Executor executor;
+
+    // the search in progress, or the last one that ran
+    private Search search;
+
+    FileSearch( FileReader reader,
+                Function<String, Optional<ZonedDateTime>> dateExtractor,
+                int maxLineLength,
+                int regionSize,
+                long stepSize,
+                int maxMatches,
+                Executor executor ) {
+        this.reader = reader;
+        this.dateExtractor = dateExtractor;
+        this.maxLineLength = maxLineLength;
+        this.regionSize = regionSize;
+        this.stepSize = stepSize;
+        this.maxMatches = maxMatches;
+        this.executor = executor;
+        this.search = noSearch();
+    }
+
+    /**
+     * Create a search of the file read by the given reader.
+     * <p>
+     * Only readers of a single file are supported.
+     *
+     * @param reader reader of a file
+     * @return a search of the file, if the reader is supported
+     */
+    public static Optional<FileSearch> forReader( FileContentReader reader ) {
+        return forReader( reader, null );
+    }
+
+    /**
+     * Create a search of the file read by the given reader, which finds the date-times of the first and last matches.
+     * <p>
+     * Only readers of a single file are supported.
+     *
+     * @param reader        reader of a file
+     * @param dateExtractor function to extract the date-time of the lines of the file, or null if not known
+     * @return a search of the file, if the reader is supported
+     */
+    public static Optional<FileSearch> forReader( FileContentReader reader,
+                                                  Function<String, Optional<ZonedDateTime>> dateExtractor ) {
+        if ( !( reader instanceof FileReader ) ) {
+            return Optional.empty();
+        }
+        return Optional.of( new FileSearch( ( FileReader ) reader, dateExtractor, Properties.getMaxLineLength(),
+                ParallelLineScanner.DEFAULT_REGION_SIZE, ParallelLineScanner.DEFAULT_STEP_SIZE,
+                DEFAULT_MAX_MATCHES, backgroundSearcher ) );
+    }
+
+    /**
+     * Start searching for the lines accepted by the given filter, cancelling the search in progress, if any.
+     * <p>
+     * This method must be called from the Thread that uses the reader, as the search starts from its file window.
+     *
+     * @param filter     filter accepting the lines to find, which must be thread-safe
+     * @param onProgress called from a background Thread after each step of the search, but not after
+     *                   the search is cancelled
+     */
+    public void start( Predicate<String> filter, Consumer<Progress> onProgress ) {
+        start( reader.getLineStarts().getFirst(), filter, onProgress );
+    }
+
+    /**
+     * Start searching the whole file, from the top, for the lines accepted by the given filter, cancelling the
+     * search in progress, if any.
+     * <p>
+     * Differently from {@link #start(Predicate, Consumer)}, this method may be called from any Thread.
+     *
+     * @param filter     filter accepting the lines to find, which must be thread-safe
+     * @param onProgress called from a background Thread after each step of the search, but not after
+     *                   the search is cancelled
+     */
+    public void startFromTop( Predicate<String> filter, Consumer<Progress> onProgress ) {
+        start( 0L, filter, onProgress );
+    }
+
+    private void start( long from, Predicate<String> filter, Consumer<Progress> onProgress ) {
+        Charset charset = reader.getCharset().orElse( null );
+        Search newSearch = new Search( filter, from, charset, onProgress );
+        synchronized ( this ) {
+            search.cancelled = true;
+            search = newSearch;
+        }
+        executor.execute( newSearch::run );
+    }
+
+    /**
+     * Cancel the search in progress, if any, discarding its results.
+     * <p>
+     * This method may be called from any Thread.
+     */
+    public synchronized void cancel() {
+        search.cancelled = true;
+        search = noSearch();
+    }
+
+    /**
+     * @return the matches found by the current search so far, in the order they appear in the file
+     */
+    public List<Match> getMatches() {
+        return currentSearch().getMatches();
+    }
+
+    /**
+     * @return the number of matches found by the current search so far
+     */
+    public int getMatchCount() {
+        return currentSearch().size();
+    }
+
+    /**
+     * Get the next match from the file window of the reader, wrapping around to the first match in the file
+     * if there is none.
+     * <p>
+     * If the file window has not moved since it was moved to a match with {@link #moveTo(Match)}, this is the match
+     * after that one, otherwise, the first match starting at or after the first line of the file window.
+     * <p>
+     * This method must be called from the Thread that uses the reader.
+     *
+     * @return the next match, or empty if nothing has been found
+     */
+    public Optional<Match> next() {
+        return next( currentPosition( true ) );
+    }
+
+    /**
+     * Get the previous match from the file window of the reader, wrapping around to the last match in the file
+     * if there is none.
+     * <p>
+     * If the file window has not moved since it was moved to a match with {@link #moveTo(Match)}, this is the match
+     * before that one, otherwise, the last match starting before the first line of the file window.
+     * <p>
+     * This method must be called from the Thread that uses the reader.
+     *
+     * @return the previous match, or empty if nothing has been found
+     */
+    public Optional<Match> previous() {
+        return previous( currentPosition( false ) );
+    }
+
+    /**
+     * Get the first match after the given position, wrapping around to the first match in the file
+     * if there is none.
+     *
+     * @param position in the file
+     * @return the next match, or empty if nothing has been found
+     */
+    public Optional<Match> next( long position ) {
+        Search current = currentSearch();
+        synchronized ( current ) {
+            int count = current.size();
+            if ( count == 0 ) {
+                return Optional.empty();
+            }
+            int index = current.indexAfter( position );
+            return Optional.of( current.get( index < count ? index : 0 ) );
+        }
+    }
+
+    /**
+     * Get the last match before the given position, wrapping around to the last match in the file
+     * if there is none.
+     *
+     * @param position in the file
+     * @return the previous match, or empty if nothing has been found
+     */
+    public Optional<Match> previous( long position ) {
+        Search current = currentSearch();
+        synchronized ( current ) {
+            int count = current.size();
+            if ( count == 0 ) {
+                return Optional.empty();
+            }
+            int index = current.indexBefore( position );
+            return Optional.of( current.get( index >= 0 ? index : count - 1 ) );
+        }
+    }
+
+    /**
+     * @param match a match of the current search
+     * @return the index of the match within the matches found so far, or -1 if it is not one of them
+     */
+    public int indexOf( Match match ) {
+        Search current = currentSearch();
+        synchronized ( current ) {
+            int index = current.indexAfter( match.getStart() - 1L );
+            return index < current.size() && current.get( index ).equals( match ) ? index : -1;
+        }
+    }
+
+    /**
+     * Move the file window of the reader to the given match.
+     * <p>
+     * This method must be called from the Thread that uses the reader.
+     *
+     * @param match to move to
+     * @return the result of moving the file window, as with {@link FileContentReader#moveToLine(long)}
+     */
+    public FileQueryResult moveTo( Match match ) {
+        FileQueryResult result = reader.moveToLineStart( match.getStart() );
+        if ( result.isSuccess() ) {
+            Search current = currentSearch();
+            current.lastMatch = match;
+            current.windowStartAtLastMatch = reader.getLineStarts().getFirst();
+        }
+        return result;
+    }
+
+    private long currentPosition( boolean forward ) {
+        Search current = currentSearch();
+        long windowStart = reader.getLineStarts().getFirst();
+        if ( current.lastMatch != null && windowStart == current.windowStartAtLastMatch ) {
+            return current.lastMatch.getStart();
+        }
+        return forward ? windowStart - 1L : windowStart;
+    }
+
+    private Search noSearch() {
+        return new Search( line -> false, 0L, null, progress -> {
+        } );
+    }
+
+    private synchronized Search currentSearch() {
+        return search;
+    }
+
+    private final class Search {
+
+        private final Predicate<String> filter;
+        private final long from;
+        private final Charset charset;
+        private final Consumer<Progress> onProgress;
+
+        private volatile boolean cancelled = false;
+
+        // the match the file window was last moved to, and the start of the file window after moving there,
+        // only accessed from the Thread that uses the reader
+        private Match lastMatch;
+        private long windowStartAtLastMatch = -1L;
+
+        // matches at or after the start of the search, then before it, each in the order they appear in the file
+        private final MatchList matchesAfterStart = new MatchList();
+        private final MatchList matchesBeforeStart = new MatchList();
+
+        private long scannedBytes = 0L;
+        private long totalBytes = 0L;
+        private boolean limitReached = false;
+
+        Search( Predicate<String> filter, long from, Charset charset, Consumer<Progress> onProgress ) {
+            this.filter = filter;
+            this.from = from;
+            this.charset = charset;
+            this.onProgress = onProgress;
+        }
+
+        void run() {
+            if ( cancelled ) {
+                return;
+            }
+
+            long startTime = System.nanoTime();
+            boolean complete = false;
+
+            try ( FileChunks chunks = reader.openIndexChunks( BUFFER_SIZE ) ) {
+                FileEncoding encoding = charset == null ? FileEncoding.detect( chunks ) : FileEncoding.of( charset );
+                long length = chunks.length();
+                long start = Math.min( from, length );
+
+                synchronized ( this ) {
+                    totalBytes = length;
+                }
+
+                ParallelLineScanner scanner = new ParallelLineScanner( reader::openIndexChunks, encoding,
+                        maxLineLength, this::accept, () -> cancelled, regionSize,
+                        ParallelLineScanner.BACKGROUND_POOL );
+
+                complete = scan( scanner, start, length, matchesAfterStart ) &&
+                        scan( scanner, 0L, start, matchesBeforeStart );
+            } catch ( IOException e ) {
+                log.warn( "Error searching file [{}]: {}", reader.getFile(), e );
+            }
+
+            if ( log.isDebugEnabled() ) {
+                log.debug( "Searched file {} from {} in {} ms, found {} matches (complete={}, cancelled={})",
+                        reader.getFile(), from, TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - startTime ),
+                        size(), complete, cancelled );
+            }
+
+            report( true );
+        }
+
+        /**
+         * Scan the lines between the given positions, which must be line starts (or the end of the file).
+         *
+         * @return true if all lines were scanned, false if the search was cancelled or found too many matches
+         */
+        private boolean scan( ParallelLineScanner scanner, long start, long end, MatchList matches )
+                throws IOException {
+            long scannedTo = scanner.scanInSteps( start, end, stepSize, new ParallelLineScanner.StepListener() {
+                @Override
+                public boolean onStep( long stepStart, long stepScannedTo, List<ParallelLineScanner.Match> found ) {
+                    synchronized ( Search.this ) {
+                        for ( ParallelLineScanner.Match match : found ) {
+                            matches.add( match.start, match.lineNumber );
+                        }
+                        updateDateTimes( matches, found );
+                        scannedBytes += Math.max( 0L, stepScannedTo - stepStart );
+                        limitReached = size() >= maxMatches;
+                    }
+
+                    if ( limitReached ) {
+                        return false;
+                    }
+
+                    report( false );
+                    return true;
+                }
+
+                @Override
+                public int maxLines() {
+                    return maxMatches - size();
+                }
+
+                @Override
+                public long lineNumberAt( long position ) throws IOException {
+                    return reader.getLineIndex().lineNumberAt( position ).orElse( 0L );
+                }
+            } );
+
+            return scannedTo >= end && !limitReached && !cancelled;
+        }
+
+        /**
+         * Update the date-times of the first and last matches of the given list, which were just added to it.
+         */
+        private void updateDateTimes( MatchList matches, List<ParallelLineScanner.Match> added ) {
+            if ( dateExtractor == null || added.isEmpty() ) {
+                return;
+            }
+            if ( matches.firstDateTime == null ) {
+                for ( ParallelLineScanner.Match match : added ) {
+                    matches.firstDateTime = dateExtractor.apply( match.line.getText() ).orElse( null );
+                    if ( matches.firstDateTime != null ) {
+                        break;
+                    }
+                }
+            }
+            for ( int i = added.size() - 1; i >= 0; i-- ) {
+                Optional<ZonedDateTime> dateTime = dateExtractor.apply( added.get( i ).line.getText() );
+                if ( dateTime.isPresent() ) {
+                    matches.lastDateTime = dateTime.get();
+                    break;
+                }
+            }
+        }
+
+        private boolean accept( LineHandle line ) {
+            if ( filter instanceof LineFilter ) {
+                return ( ( LineFilter ) filter ).test( line );
+            }
+            return filter.test( line.getText() );
+        }
+
+        private void report( boolean done ) {
+            Progress progress;
+            synchronized ( this ) {
+                // the matches before the start of the search come first in the file
+                ZonedDateTime firstDateTime = matchesBeforeStart.firstDateTime != null ?
+                        matchesBeforeStart.firstDateTime : matchesAfterStart.firstDateTime;
+                ZonedDateTime lastDateTime = matchesAfterStart.lastDateTime != null ?
+                        matchesAfterStart.lastDateTime : matchesBeforeStart.lastDateTime;
+                progress = new Progress( size(), scannedBytes, totalBytes, done, limitReached,
+                        firstDateTime, lastDateTime );
+            }
+            if ( !cancelled ) {
+                onProgress.accept( progress );
+            }
+        }
+
+        synchronized int size() {
+            return matchesBeforeStart.size + matchesAfterStart.size;
+        }
+
+        synchronized Match get( int index ) {
+            int beforeCount = matchesBeforeStart.size;
+            return index < beforeCount ?
+                    matchesBeforeStart.get( index ) :
+                    matchesAfterStart.get( index - beforeCount );
+        }
+
+        synchronized List<Match> getMatches() {
+            int count = size();
+            List<Match> result = new ArrayList<>( count );
+            for ( int i = 0; i < count; i++ ) {
+                result.add( get( i ) );
+            }
+            return result;
+        }
+
+        /**
+         * @return the index of the first match starting after the given position, or the number of matches if none
+         */
+        synchronized int indexAfter( long position ) {
+            int low = 0;
+            int high = size();
+            while ( low < high ) {
+                int middle = ( low + high ) >>> 1;
+                if ( get( middle ).getStart() <= position ) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * @return the index of the last match starting before the given position, or -1 if none
+         */
+        synchronized int indexBefore( long position ) {
+            return indexAfter( position - 1L ) - 1;
+        }
+    }
+
+    private static final class MatchList {
+        private long[] starts = new long[ 16 ];
+        private long[] lineNumbers = new long[ 16 ];
+        private int size = 0;
+
+        // date-times of the first and last matches with a date-time
+        private ZonedDateTime firstDateTime;
+        private ZonedDateTime lastDateTime;
+
+        void add( long start, long lineNumber ) {
+            if ( size == starts.length ) {
+                starts = Arrays.copyOf( starts, size * 2 );
+                lineNumbers = Arrays.copyOf( lineNumbers, size * 2 );
+            }
+            starts[ size ] = start;
+            lineNumbers[ size ] = lineNumber;
+            size++;
+        }
+
+        Match get( int index ) {
+            return new Match( starts[ index ], lineNumbers[ index ] );
+        }
+    }
+}
@@ -0,0 +1,449 @@
+package com.athaydes.logfx.file;
+
+import com.athaydes.logfx.config.Properties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Streams the lines of a log file, and of the files rotated from it, to an output, so that log files can be
+ * read without a GUI.
+ * <p>
+ * The lines written can be restricted to a range of date-times, whose bounds are found by bisecting each file
+ * (see {@link FileReader#lineStartCloseToDate(ZonedDateTime, Function)}), and to the lines accepted by a filter,
+ * which are found with a {@link ParallelLineScanner}. Lines are written exactly as they are in the file,
+ * so their bytes are only decoded when the filter or the decorator of the streamer require it.
+ * <p>
+ * Lines may be decorated (e.g. with colors) by writing some bytes before them, and some bytes after them,
+ * but before their new-line.
+ * <p>
+ * When following the log file, the lines appended to it are written until the streamer is stopped.
+ * If the log file is rotated or truncated, it is followed again from its first line.
+ * <p>
+ * This type is not thread-safe, except for {@link #stop()}, which may be called from any Thread.
+ */
+public final class FileStreamer {
+
+    private static final Logger log = LoggerFactory.getLogger( FileStreamer.class );
+
+    // number of bytes written at once
+    private static final int DEFAULT_BATCH_SIZE = 1024 * 1024;
+
+    // the file window of the readers is not used, only their chunks and bisection
+    private static final int FILE_WINDOW_SIZE = 1;
+
+    /**
+     * Decorator of the lines written by a {@link FileStreamer}.
+     * <p>
+     * Implementations must be thread-safe, as lines are checked for decorations in parallel.
+     */
+    public interface LineDecorator {
+
+        /**
+         * @param line a line of the file
+         * @return the bytes to write before the line, or null if the line is not decorated
+         */
+        byte[] prefixOf( LineHandle line );
+
+        /**
+         * @return the bytes to write after a decorated line, before its new-line
+         */
+        byte[] suffix();
+    }
+
+    private final File file;
+    private final List<File> files;
+    private final int maxLineLength;
+    private final int regionSize;
+    private final long stepSize;
+    private final int batchSize;
+
+    private Predicate<String> lineFilter = null;
+    private LineDecorator decorator = null;
+    private ZonedDateTime since = null;
+    private ZonedDateTime until = null;
+    private Function<String, Optional<ZonedDateTime>> dateExtractor = null;
+
+    private volatile boolean stopped = false;
+
+    // whether a line dated after the end of the range of date-times was found, so no more lines may be written
+    private boolean untilReached = false;
+
+    // the reader of the log file being followed, and the position after the last line written from it
+    private FileReader followedReader;
+    private Object followedIdentity;
+    private long followedPosition;
+
+    /**
+     * @param file             the log file
+     * @param readRotatedFiles whether to also stream the files rotated from the log file
+     *                         (see {@link RotatedFileChainReader}), before the log file
+     */
+    public FileStreamer( File file, boolean readRotatedFiles ) {
+        this( file, readRotatedFiles, Properties.getMaxLineLength(), ParallelLineScanner.DEFAULT_REGION_SIZE,
+                ParallelLineScanner.DEFAULT_STEP_SIZE, DEFAULT_BATCH_SIZE );
+    }
+
+    FileStreamer( File file, boolean readRotatedFiles,
+                  int maxLineLength, int regionSize, long stepSize, int batchSize ) {
+        this.file = file;
+        this.files = readRotatedFiles ?
+                RotatedFileChainReader.findFileChain( file ) :
+                Collections.singletonList( file );
+        this.maxLineLength = maxLineLength;
+        this.regionSize = regionSize;
+        this.stepSize = stepSize;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @return the files streamed, from the oldest to the newest, which is always the log file itself
+     */
+    public List<File> getFiles() {
+        return Collections.unmodifiableList( files );
+    }
+
+    /**
+     * @param lineFilter filter accepting the lines to write, which must be thread-safe, or null to write all lines
+     */
+    public void setLineFilter( Predicate<String> lineFilter ) {
+        this.lineFilter = lineFilter;
+    }
+
+    /**
+     * @param decorator decorator of the lines written, or null to write lines as they are
+     */
+    public void setDecorator( LineDecorator decorator ) {
+        this.decorator = decorator;
+    }
+
+    /**
+     * Only write the lines logged within the given range of date-times.
+     * <p>
+     * The range starts at the first line dated at or after the start date-time, and ends before the first line
+     * dated after the end date-time, so that lines without a date-time (e.g. the lines of stack-traces) are written
+     * together with the dated line before them. The lines of the files must be sorted by date-time.
+     *
+     * @param since         start of the range (inclusive), or null to start at the first line
+     * @param until         end of the range (inclusive), or null to end at the last line
+     * @param dateExtractor function to extract the date-time of the lines of the files, which must be thread-safe
+     */
+    public void setTimeRange( ZonedDateTime since, ZonedDateTime until,
+                              Function<String, Optional<ZonedDateTime>> dateExtractor ) {
+        this.since = since;
+        this.until = until;
+        this.dateExtractor = dateExtractor;
+    }
+
+    /**
+     * Write the lines of the files to the given output, then return.
+     *
+     * @param out the output
+     * @throws IOException if a file cannot be read, or the output cannot be written
+     */
+    public void stream( WritableByteChannel out ) throws IOException {
+        streamFiles( out, false );
+    }
+
+    /**
+     * Write the lines of the files to the given output, then keep writing the lines appended to the log file
+     * until this streamer is stopped, or a line dated after the end of the range of date-times is found.
+     * <p>
+     * The last line of the log file is only written once it is complete, i.e. ends with a new-line.
+     *
+     * @param out          the output
+     * @param pollInterval time to wait between checks for new lines in the log file, in milliseconds
+     * @throws IOException          if a file cannot be read, or the output cannot be written
+     * @throws InterruptedException if the current Thread is interrupted while waiting for new lines
+     */
+    public void follow( WritableByteChannel out, long pollInterval ) throws IOException, InterruptedException {
+        try {
+            streamFiles( out, true );
+            while ( !stopped && !untilReached ) {
+                synchronized ( this ) {
+                    if ( !stopped ) {
+                        wait( pollInterval );
+                    }
+                }
+                if ( !stopped ) {
+                    followLogFile( out );
+                }
+            }
+        } finally {
+            if ( followedReader != null ) {
+                followedReader.close();
+                followedReader = null;
+            }
+        }
+    }
+
+    /**
+     * Stop streaming as soon as possible.
+     * <p>
+     * This method may be called from any Thread.
+     */
+    public void stop() {
+        stopped = true;
+        synchronized ( this ) {
+            notifyAll();
+        }
+    }
+
+    private void streamFiles( WritableByteChannel out, boolean follow ) throws IOException {
+        long startTime = System.currentTimeMillis();
+        Output output = new Output( out, batchSize );
+        try {
+            for ( int i = 0; i < files.size() && !stopped && !untilReached; i++ ) {
+                File chainFile = files.get( i );
+                boolean isLogFile = i == files.size() - 1;
+
+                if ( !isLogFile && !chainFile.isFile() ) {
+                    // a rotated file was removed after the chain was found
+                    continue;
+                }
+
+                FileReader reader = readerFor( chainFile );
+                try {
+                    if ( follow && isLogFile ) {
+                        followedIdentity = RotatedFileChainReader.identityOf( file );
+                        followedPosition = streamFile( reader, 0L, true, output, true );
+                        followedReader = reader;
+                        reader = null;
+                    } else {
+                        streamFile( reader, 0L, true, output, false );
+                    }
+                } finally {
+                    if ( reader != null ) {
+                        reader.close();
+                    }
+                }
+            }
+            output.flush();
+        } finally {
+            output.release();
+        }
+
+        log.debug( "Streamed {} files in {} ms", files.size(), System.currentTimeMillis() - startTime );
+    }
+
+    private void followLogFile( WritableByteChannel out ) throws IOException {
+        Object identity = RotatedFileChainReader.identityOf( file );
+        if ( identity == null ) {
+            // the log file does not exist at the moment, but may be created again
+            return;
+        }
+
+        if ( !Objects.equals( identity, followedIdentity ) || file.length() < followedPosition ) {
+            log.debug( "Log file was rotated or truncated, following it from the start: {}", file );
+            if ( followedReader != null ) {
+                followedReader.close();
+            }
+            followedReader = readerFor( file );
+            followedIdentity = identity;
+            followedPosition = 0L;
+        }
+
+        if ( file.length() > followedPosition ) {
+            Output output = new Output( out, batchSize );
+            try {
+                followedPosition = streamFile( followedReader, followedPosition, false, output, true );
+                output.flush();
+            } finally {
+                output.release();
+            }
+        }
+    }
+
+    private FileReader readerFor( File chainFile ) {
+        FileReader reader = GzipFileReader.isGzipFile( chainFile ) ?
+                new GzipFileReader( chainFile, FILE_WINDOW_SIZE ) :
+                new FileReader( chainFile, FILE_WINDOW_SIZE );
+
+        // files are only bisected a couple of times, so building a timestamp index in the background
+        // would only compete with the streaming for the CPU
+        reader.setTimestampIndexer( new TimestampIndexer( chainFile, reader::openIndexChunks,
+                Properties.LOGFX_DIR.resolve( "index" ), maxLineLength,
+                TimestampIndexer.DEFAULT_SAMPLE_INTERVAL, Long.MAX_VALUE, Runnable::run ) );
+
+        return reader;
+    }
+
+    /**
+     * Write the lines of a file, starting at the given position.
+     *
+     * @return the position after the last line written or skipped
+     */
+    private long streamFile( FileReader reader, long start, boolean isFirstRead,
+                             Output output, boolean completeLinesOnly ) throws IOException {
+        try ( FileChunks chunks = reader.openIndexChunks( batchSize ) ) {
+            Charset charset = reader.getCharset().orElse( null );
+            FileEncoding encoding = charset == null ? FileEncoding.detect( chunks ) : FileEncoding.of( charset );
+            FileChunks alignedChunks = encoding.align( chunks );
+
+            long length = alignedChunks.length();
+            long end = length;
+
+            if ( dateExtractor != null ) {
+                // lines appended to a file being followed are never before the start of the range
+                if ( since != null && isFirstRead ) {
+                    start = newScanner( reader, encoding, ParallelLineScanner.dateTimeFilter( dateExtractor,
+                            dateTime -> !dateTime.isBefore( since ) ), null ).firstMatchStart(
+                            Math.max( start, reader.lineStartCloseToDate( since, dateExtractor ) ), length );
+                }
+                if ( until != null ) {
+                    // bisecting for the instant after the end of the range gets closer to the first line after it
+                    // when many lines have the same date-time
+                    long untilStart = isFirstRead ?
+                            Math.max( start, reader.lineStartCloseToDate( until.plusNanos( 1L ), dateExtractor ) ) :
+                            start;
+                    long untilEnd = newScanner( reader, encoding, ParallelLineScanner.dateTimeFilter( dateExtractor,
+                            dateTime -> dateTime.isAfter( until ) ), null ).firstMatchStart( untilStart, length );
+                    if ( untilEnd < length ) {
+                        end = untilEnd;
+                        untilReached = true;
+                    }
+                }
+            }
+
+            return write( reader, encoding, alignedChunks, start, end, output, completeLinesOnly && !untilReached );
+        }
+    }
+
+    /**
+     * Write the lines between the given positions, in steps.
+     *
+     * @return the position after the last line written or skipped
+     */
+    private long write( FileReader reader, FileEncoding encoding, FileChunks chunks, long start, long end,
+                        Output output, boolean completeLinesOnly ) throws IOException {
+        if ( lineFilter == null && decorator == null && !completeLinesOnly ) {
+            output.copy( chunks, start, end );
+            return end;
+        }
+
+        // without a filter, only the decorated lines need to be found, the lines between them are copied as they are
+        ParallelLineScanner scanner = lineFilter == null ?
+                newScanner( reader, encoding, this::isDecorated, null ) :
+                newScanner( reader, encoding, this::accept, lineFilter instanceof LineFilter ?
+                        ( ( LineFilter ) lineFilter ).getRequiredTexts().orElse( null ) :
+                        null );
+
+        return scanner.scanInSteps( start, end, stepSize, completeLinesOnly, ( stepStart, scannedTo, matches ) -> {
+            long copiedTo = stepStart;
+            for ( ParallelLineScanner.Match match : matches ) {
+                if ( lineFilter == null ) {
+                    output.copy( chunks, copiedTo, match.start );
+                }
+                writeLine( chunks, encoding, match, output );
+                copiedTo = match.end;
+            }
+            if ( lineFilter == null ) {
+                output.copy( chunks, copiedTo, scannedTo );
+            }
+            return true;
+        } );
+    }
+
+    private void writeLine( FileChunks chunks, FileEncoding encoding, ParallelLineScanner.Match match,
+                            Output output ) throws IOException {
+        byte[] prefix = decorator == null ? null : decorator.prefixOf( match.line );
+        if ( prefix == null ) {
+            output.copy( chunks, match.start, match.end );
+        } else {
+            long contentEnd = match.endsWithNewLine ? match.end - encoding.getNewLineSize() : match.end;
+            output.write( prefix );
+            output.copy( chunks, match.start, contentEnd );
+            output.write( decorator.suffix() );
+            output.copy( chunks, contentEnd, match.end );
+        }
+    }
+
+    private ParallelLineScanner newScanner( FileReader reader, FileEncoding encoding,
+                                            Predicate<LineHandle> filter, List<String> requiredTexts ) {
+        return new ParallelLineScanner( reader::openIndexChunks, encoding, maxLineLength, filter, requiredTexts,
+                () -> stopped, regionSize );
+    }
+
+    private boolean accept( LineHandle line ) {
+        if ( lineFilter instanceof LineFilter ) {
+            return ( ( LineFilter ) lineFilter ).test( line );
+        }
+        return lineFilter.test( line.getText() );
+    }
+
+    private boolean isDecorated( LineHandle line ) {
+        return decorator.prefixOf( line ) != null;
+    }
+
+    /**
+     * The output of a streamer, where bytes are written in large batches.
+     */
+    private static final class Output {
+        private final WritableByteChannel out;
+        private final ByteBuffer batch;
+
+        Output( WritableByteChannel out, int batchSize ) {
+            this.out = out;
+            this.batch = ByteBufferPool.getGlobalInstance().acquire( batchSize );
+        }
+
+        void write( byte[] bytes ) throws IOException {
+            if ( bytes.length > batch.remaining() ) {
+                flush();
+            }
+            if ( bytes.length > batch.remaining() ) {
+                ByteBuffer buffer = ByteBuffer.wrap( bytes );
+                while ( buffer.hasRemaining() ) {
+                    out.write( buffer );
+                }
+            } else {
+                batch.put( bytes );
+            }
+        }
+
+        /**
+         * Copy the bytes of the file between the given positions.
+         */
+        void copy( FileChunks chunks, long start, long end ) throws IOException {
+            long position = start;
+            while ( position < end ) {
+                if ( !batch.hasRemaining() ) {
+                    flush();
+                }
+                ByteBuffer chunk = chunks.chunkFrom( position, ( int ) Math.min( end - position, batch.remaining() ) );
+                if ( !chunk.hasRemaining() ) {
+                    // the file was truncated
+                    break;
+                }
+                position += chunk.remaining();
+                batch.put( chunk );
+            }
+        }
+
+        void flush() throws IOException {
+            // casts needed so that the code also runs on Java 8, where Buffer methods do not return ByteBuffer
+            ( ( Buffer ) batch ).flip();
+            while ( batch.hasRemaining() ) {
+                out.write( batch );
+            }
+            ( ( Buffer ) batch ).clear();
+        }
+
+        void release() {
+            ByteBufferPool.getGlobalInstance().release( batch );
+        }
+    }
+}
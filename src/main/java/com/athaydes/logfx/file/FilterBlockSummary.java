@@ -0,0 +1,124 @@
+package com.athaydes.logfx.file;
+
+import java.util.BitSet;
+
+/**
+ * Summary of which blocks of a file contain lines accepted by a certain line filter.
+ * <p>
+ * A file is divided into blocks of a fixed size, and each line belongs to the block where it starts.
+ * Once all lines of a block have been tested by the filter, the block is known to either contain
+ * matches or not, so that reads can jump over blocks without matches instead of testing their lines again.
+ * <p>
+ * Only the blocks whose lines have all been tested, and terminated, are ever marked as scanned, so when bytes
+ * are appended to a file, only the last block and the new blocks need to be scanned, while the rest of the
+ * summary remains valid.
+ * <p>
+ * Blocks can also be known to have no matches without being scanned, thanks to a {@link TrigramIndex} of the file,
+ * in which case they are marked as scanned as well.
+ */
+final class FilterBlockSummary {
+
+    static final int BLOCK_SHIFT = 16;
+    static final long BLOCK_SIZE = 1L << BLOCK_SHIFT;
+
+    // blocks whose lines have all been tested by the filter
+    private final BitSet scanned = new BitSet();
+
+    // blocks containing at least one line accepted by the filter
+    private final BitSet matched = new BitSet();
+
+    // length of the start of the file whose blocks were checked against a trigram index
+    private long searchIndexLength = 0L;
+
+    static long blockOf( long position ) {
+        return position >>> BLOCK_SHIFT;
+    }
+
+    static long blockStart( long block ) {
+        return block << BLOCK_SHIFT;
+    }
+
+    /**
+     * Record that the line starting at the given position was accepted by the filter.
+     */
+    void markMatch( long lineStart ) {
+        matched.set( toIndex( blockOf( lineStart ) ) );
+    }
+
+    /**
+     * Record that all lines starting within the given range were tested by the filter, and that all of them are
+     * terminated by a new-line. Only the blocks fully contained in the range are marked as scanned.
+     *
+     * @param from position of the start of the first line tested
+     * @param to   position after the new-line terminating the last line tested
+     */
+    void markScanned( long from, long to ) {
+        long firstBlock = blockOf( from + BLOCK_SIZE - 1L );
+        long endBlock = blockOf( to );
+        if ( firstBlock < endBlock ) {
+            scanned.set( toIndex( firstBlock ), toIndex( endBlock ) );
+        }
+    }
+
+    /**
+     * @param block index of a block
+     * @return true if the block is known not to contain any line accepted by the filter
+     */
+    boolean isEmpty( long block ) {
+        int index = toIndex( block );
+        return scanned.get( index ) && !matched.get( index );
+    }
+
+    /**
+     * @param block index of a block
+     * @return the index of the first block at or after the given one that is not known to be empty
+     */
+    long nextNonEmptyBlock( long block ) {
+        // only blocks that were scanned and have no matches are empty
+        int index = toIndex( block );
+        int nextMatched = matched.nextSetBit( index );
+        int nextNotScanned = scanned.nextClearBit( index );
+        return nextMatched < 0 ? nextNotScanned : Math.min( nextMatched, nextNotScanned );
+    }
+
+    /**
+     * @param block index of a block
+     * @return the index of the last block at or before the given one that is not known to be empty,
+     * or -1 if all of them are known to be empty
+     */
+    long previousNonEmptyBlock( long block ) {
+        int index = toIndex( block );
+        return Math.max( matched.previousSetBit( index ), scanned.previousClearBit( index ) );
+    }
+
+    /**
+     * @return the number of bytes at the start of the file whose blocks without possible matches, according to
+     * a trigram index, have been marked as scanned
+     */
+    long getSearchIndexLength() {
+        return searchIndexLength;
+    }
+
+    void setSearchIndexLength( long searchIndexLength ) {
+        this.searchIndexLength = searchIndexLength;
+    }
+
+    void clear() {
+        scanned.clear();
+        matched.clear();
+        searchIndexLength = 0L;
+    }
+
+    private static int toIndex( long block ) {
+        // with 64KB blocks, this is enough for files of up to 128TB
+        return ( int ) Math.min( block, Integer.MAX_VALUE - 1 );
+    }
+
+    @Override
+    public String toString() {
+        return "FilterBlockSummary{" +
+                "scannedBlocks=" + scanned.cardinality() +
+                ", matchedBlocks=" + matched.cardinality() +
+                '}';
+    }
+}
@@ -0,0 +1,290 @@
+package com.athaydes.logfx.file;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * The uncompressed contents of a gzip file.
+ * <p>
+ * The file is indexed with a {@link GzipIndex} the first time it is opened (or whenever it changes),
+ * unless an up-to-date index was previously stored.
+ * <p>
+ * The uncompressed data between two consecutive checkpoints of the index (a span) is decompressed as a unit,
+ * and the most recently used spans are cached, so reading nearby lines does not require decompressing
+ * the same data again.
+ * <p>
+ * This class is thread-safe.
+ */
+final class GzipFileContents {
+
+    private static final Logger log = LoggerFactory.getLogger( GzipFileContents.class );
+
+    static final long DEFAULT_CHECKPOINT_SPACING = 4 * 1024 * 1024;
+
+    private static final int MAX_CACHED_SPANS = 2;
+    private static final int COMPRESSED_BUFFER_SIZE = 64 * 1024;
+    private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate( 0 );
+
+    private final File file;
+    private final Path indexDir;
+    private final long checkpointSpacing;
+
+    private GzipIndex index;
+
+    // access-ordered, so the least recently used span is evicted first
+    private final Map<Integer, byte[]> spans =
+            new LinkedHashMap<Integer, byte[]>( MAX_CACHED_SPANS + 1, 0.75f, true ) {
+                @Override
+                protected boolean removeEldestEntry( Map.Entry<Integer, byte[]> eldest ) {
+                    return size() > MAX_CACHED_SPANS;
+                }
+            };
+
+    GzipFileContents( File file, Path indexDir, long checkpointSpacing ) {
+        if ( checkpointSpacing < 1 ) {
+            throw new IllegalArgumentException( "Checkpoint spacing must be positive" );
+        }
+        this.file = file;
+        this.indexDir = indexDir;
+        this.checkpointSpacing = checkpointSpacing;
+    }
+
+    /**
+     * Prepare for a new read operation, indexing the file first if necessary.
+     *
+     * @return the uncompressed contents of the file
+     * @throws IOException if the file cannot be read or is not a valid gzip file
+     */
+    synchronized FileChunks open() throws IOException {
+        updateIndex();
+        return new Chunks();
+    }
+
+    /**
+     * Discard the cached spans.
+     */
+    synchronized void clear() {
+        spans.clear();
+    }
+
+    synchronized Optional<GzipIndex> getIndex() {
+        return Optional.ofNullable( index );
+    }
+
+    private void updateIndex() throws IOException {
+        if ( index != null && index.isUpToDate( file ) ) {
+            return;
+        }
+
+        spans.clear();
+        index = null;
+
+        if ( !file.isFile() ) {
+            throw new FileNotFoundException( file.getAbsolutePath() );
+        }
+
+        Path indexPath = GzipIndex.pathFor( indexDir, file );
+        Optional<GzipIndex> storedIndex = GzipIndex.readFrom( indexPath, file );
+
+        if ( storedIndex.isPresent() && storedIndex.get().isUpToDate( file ) ) {
+            log.debug( "Using stored index of gzip file {}: {}", file, storedIndex.get() );
+            index = storedIndex.get();
+            return;
+        }
+
+        long startTime = System.currentTimeMillis();
+        GzipIndex newIndex = GzipIndexBuilder.build( file, checkpointSpacing );
+        log.info( "Indexed gzip file {} in {} ms: {}", file, System.currentTimeMillis() - startTime, newIndex );
+
+        try {
+            newIndex.writeTo( indexPath );
+        } catch ( IOException e ) {
+            log.warn( "Unable to store index of gzip file {} at {}: {}", file, indexPath, e );
+        }
+
+        index = newIndex;
+    }
+
+    private synchronized long length() {
+        return index == null ? 0L : index.getUncompressedLength();
+    }
+
+    /**
+     * @param start    position in the uncompressed data
+     * @param maxBytes maximum number of bytes to return
+     * @return the bytes starting at the given position, up to the end of the span containing it
+     */
+    private synchronized ByteBuffer read( long start, int maxBytes ) throws IOException {
+        if ( index == null || start < 0L || start >= index.getUncompressedLength() || maxBytes < 1 ) {
+            return EMPTY_BUFFER;
+        }
+        int checkpoint = index.checkpointAt( start );
+        byte[] span = span( checkpoint );
+        int offset = ( int ) ( start - index.uncompressedOffset( checkpoint ) );
+        return ByteBuffer.wrap( span, offset, Math.min( maxBytes, span.length - offset ) ).slice();
+    }
+
+    /**
+     * @param end      position in the uncompressed data
+     * @param maxBytes maximum number of bytes to return
+     * @return the bytes before the given position, down to the start of the span containing them
+     */
+    private synchronized ByteBuffer readBefore( long end, int maxBytes ) throws IOException {
+        if ( index == null ) {
+            return EMPTY_BUFFER;
+        }
+        end = Math.min( end, index.getUncompressedLength() );
+        if ( end <= 0L || maxBytes < 1 ) {
+            return EMPTY_BUFFER;
+        }
+        int checkpoint = index.checkpointAt( end - 1L );
+        long spanStart = index.uncompressedOffset( checkpoint );
+        long start = Math.max( spanStart, end - maxBytes );
+        byte[] span = span( checkpoint );
+        return ByteBuffer.wrap( span, ( int ) ( start - spanStart ), ( int ) ( end - start ) ).slice();
+    }
+
+    private byte[] span( int checkpoint ) throws IOException {
+        byte[] span = spans.get( checkpoint );
+        if ( span == null ) {
+            span = inflateSpan( checkpoint );
+            spans.put( checkpoint, span );
+        }
+        return span;
+    }
+
+    private byte[] inflateSpan( int checkpoint ) throws IOException {
+        long spanStart = index.uncompressedOffset( checkpoint );
+        long spanLength = index.uncompressedEnd( checkpoint ) - spanStart;
+        if ( spanLength > Integer.MAX_VALUE - 8 ) {
+            throw new IOException( "Gzip file has too much data between checkpoints: " + spanLength );
+        }
+
+        log.trace( "Inflating span from checkpoint {} of {}, uncompressed bytes {}..{}",
+                checkpoint, file, spanStart, spanStart + spanLength );
+
+        byte[] span = new byte[ ( int ) spanLength ];
+        long bitOffset = index.bitOffset( checkpoint );
+
+        // checkpoints are not necessarily at a byte boundary, so the compressed bytes may need to be shifted
+        int shift = ( int ) ( bitOffset & 7L );
+
+        Inflater inflater = new Inflater( true );
+        try ( FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ ) ) {
+            byte[] window = index.window( checkpoint );
+            if ( window.length > 0 ) {
+                inflater.setDictionary( window );
+            }
+
+            channel.position( bitOffset >>> 3 );
+
+            ByteBuffer compressed = ByteBuffer.allocate( COMPRESSED_BUFFER_SIZE );
+            byte[] input = new byte[ COMPRESSED_BUFFER_SIZE ];
+            int previousByte = -1;
+            boolean endOfFile = false;
+            int spanPosition = 0;
+
+            while ( spanPosition < span.length ) {
+                if ( inflater.needsInput() ) {
+                    if ( endOfFile ) {
+                        throw new EOFException( "Unexpected end of gzip file " + file );
+                    }
+                    compressed.clear();
+                    int bytesRead = channel.read( compressed );
+                    int inputLength;
+                    if ( bytesRead < 0 ) {
+                        endOfFile = true;
+                        if ( previousByte < 0 ) {
+                            throw new EOFException( "Unexpected end of gzip file " + file );
+                        }
+                        input[ 0 ] = ( byte ) ( previousByte >>> shift );
+                        inputLength = 1;
+                    } else if ( shift == 0 ) {
+                        System.arraycopy( compressed.array(), 0, input, 0, bytesRead );
+                        inputLength = bytesRead;
+                    } else {
+                        inputLength = shiftBits( compressed.array(), bytesRead, shift, previousByte, input );
+                        previousByte = compressed.array()[ bytesRead - 1 ] & 0xFF;
+                    }
+                    inflater.setInput( input, 0, inputLength );
+                }
+
+                int inflated = inflater.inflate( span, spanPosition, span.length - spanPosition );
+                if ( inflated == 0 && ( inflater.finished() || inflater.needsDictionary() ) ) {
+                    throw new ZipException( "Gzip file " + file + " ended before expected, " +
+                            "it may have changed while being read" );
+                }
+                spanPosition += inflated;
+            }
+        } catch ( DataFormatException e ) {
+            throw new ZipException( "Invalid gzip data in file " + file + ": " + e.getMessage() );
+        } finally {
+            inflater.end();
+        }
+
+        return span;
+    }
+
+    /**
+     * Shift the bits of the given bytes, so that the byte starting at bit {@code shift} of the first byte
+     * becomes the first byte.
+     *
+     * @param bytes        the bytes to shift
+     * @param count        how many bytes to shift
+     * @param shift        number of bits to shift, between 1 and 7
+     * @param previousByte the last byte of the previous bytes that were shifted, or -1 if none
+     * @param result       where to write the shifted bytes
+     * @return number of shifted bytes written to the result.
+     * The bits of the last given byte are only written on the next call.
+     */
+    private static int shiftBits( byte[] bytes, int count, int shift, int previousByte, byte[] result ) {
+        int resultLength = 0;
+        int previous = previousByte;
+        for ( int i = 0; i < count; i++ ) {
+            int current = bytes[ i ] & 0xFF;
+            if ( previous >= 0 ) {
+                result[ resultLength++ ] = ( byte ) ( ( previous >>> shift ) | ( current << ( 8 - shift ) ) );
+            }
+            previous = current;
+        }
+        return resultLength;
+    }
+
+    private final class Chunks implements FileChunks {
+
+        @Override
+        public long length() {
+            return GzipFileContents.this.length();
+        }
+
+        @Override
+        public ByteBuffer chunkFrom( long start, int maxBytes ) throws IOException {
+            return read( start, maxBytes );
+        }
+
+        @Override
+        public ByteBuffer chunkBefore( long end, int maxBytes ) throws IOException {
+            return readBefore( end, maxBytes );
+        }
+
+        @Override
+        public void close() {
+            // nothing to close, the compressed file is only open while a span is being decompressed
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.athaydes.logfx.file;
+
+import com.athaydes.logfx.config.Properties;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * A {@link FileContentReader} for gzip-compressed files.
+ * <p>
+ * The file is indexed the first time it is read (see {@link GzipIndex}), which requires decompressing it
+ * once. After that, any part of the file can be read by decompressing at most a few MB of data.
+ * The index is stored under {@link Properties#LOGFX_DIR}, so opening the same file again is fast.
+ */
+public class GzipFileReader extends FileReader {
+
+    private final GzipFileContents contents;
+
+    public GzipFileReader( File file, int fileWindowSize ) {
+        super( file, fileWindowSize );
+        this.contents = new GzipFileContents( file, Properties.LOGFX_DIR.resolve( "gzip-index" ),
+                GzipFileContents.DEFAULT_CHECKPOINT_SPACING );
+    }
+
+    GzipFileReader( File file, int fileWindowSize, Path indexDir, long checkpointSpacing, int bufferSize ) {
+        super( file, fileWindowSize, bufferSize );
+        this.contents = new GzipFileContents( file, indexDir, checkpointSpacing );
+    }
+
+    /**
+     * @param file a file
+     * @return true if the file seems to be gzip-compressed, based on its name
+     */
+    public static boolean isGzipFile( File file ) {
+        return file.getName().endsWith( ".gz" );
+    }
+
+    @Override
+    FileChunks openChunks( int bufferSize ) throws IOException {
+        return contents.open();
+    }
+
+    @Override
+    FileChunks openIndexChunks( int bufferSize ) throws IOException {
+        return contents.open();
+    }
+
+    /**
+     * Regions of a compressed file cannot be read concurrently without decompressing them independently,
+     * so filtered reads always scan the file sequentially.
+     */
+    @Override
+    boolean isParallelScanSupported() {
+        return false;
+    }
+
+    @Override
+    void releaseFile() {
+        super.releaseFile();
+        contents.clear();
+    }
+
+    GzipFileContents getContents() {
+        return contents;
+    }
+}
@@ -0,0 +1,232 @@
+package com.athaydes.logfx.file;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Index of a gzip-compressed file, allowing its contents to be read from (almost) any position without
+ * decompressing it from the start.
+ * <p>
+ * This works in the same way as zlib's {@code zran} example: the position of the start of a deflate block
+ * is recorded every few MB of uncompressed data, together with the last 32KB of uncompressed data before it
+ * (the window that back-references within the block may refer to). Decompressing from one of these
+ * checkpoints only requires setting the window as the dictionary of a raw {@link java.util.zip.Inflater}.
+ * <p>
+ * The start of each gzip member is also recorded as a checkpoint (with an empty window), so that files made
+ * of several concatenated gzip members can also be read.
+ * <p>
+ * Indexes are stored in a directory (normally under {@link com.athaydes.logfx.config.Properties#LOGFX_DIR}),
+ * so they only need to be built once for each file.
+ */
+final class GzipIndex {
+
+    private static final Logger log = LoggerFactory.getLogger( GzipIndex.class );
+
+    static final int WINDOW_SIZE = 32 * 1024;
+
+    private static final int MAGIC_NUMBER = 0x4C46475A;
+    private static final int FORMAT_VERSION = 1;
+
+    private final String path;
+    private final long compressedLength;
+    private final long lastModified;
+    private final long uncompressedLength;
+
+    // bitOffsets[ k ] is the position, in bits, of the start of the deflate block at checkpoint k
+    private final long[] bitOffsets;
+    private final long[] uncompressedOffsets;
+    private final byte[][] windows;
+
+    GzipIndex( String path, long compressedLength, long lastModified, long uncompressedLength,
+               long[] bitOffsets, long[] uncompressedOffsets, byte[][] windows ) {
+        if ( bitOffsets.length == 0 ||
+                bitOffsets.length != uncompressedOffsets.length ||
+                bitOffsets.length != windows.length ) {
+            throw new IllegalArgumentException( "Invalid checkpoints" );
+        }
+        this.path = path;
+        this.compressedLength = compressedLength;
+        this.lastModified = lastModified;
+        this.uncompressedLength = uncompressedLength;
+        this.bitOffsets = bitOffsets;
+        this.uncompressedOffsets = uncompressedOffsets;
+        this.windows = windows;
+    }
+
+    /**
+     * @param indexDir directory where indexes are stored
+     * @param file     compressed file
+     * @return the path of the index of the given file
+     */
+    static Path pathFor( Path indexDir, File file ) {
+        String absolutePath = file.getAbsolutePath();
+        return indexDir.resolve( file.getName() + "-" +
+                Integer.toHexString( absolutePath.hashCode() ) + ".idx" );
+    }
+
+    /**
+     * @param file the compressed file
+     * @return true if this index was built from the current contents of the given file
+     */
+    boolean isUpToDate( File file ) {
+        return path.equals( file.getAbsolutePath() ) &&
+                compressedLength == file.length() &&
+                lastModified == file.lastModified();
+    }
+
+    long getUncompressedLength() {
+        return uncompressedLength;
+    }
+
+    int checkpointCount() {
+        return bitOffsets.length;
+    }
+
+    long bitOffset( int checkpoint ) {
+        return bitOffsets[ checkpoint ];
+    }
+
+    long uncompressedOffset( int checkpoint ) {
+        return uncompressedOffsets[ checkpoint ];
+    }
+
+    /**
+     * @param checkpoint index of the checkpoint
+     * @return the position of the end of the uncompressed data that can be read from the given checkpoint
+     * before reaching the next one
+     */
+    long uncompressedEnd( int checkpoint ) {
+        return checkpoint + 1 < uncompressedOffsets.length ?
+                uncompressedOffsets[ checkpoint + 1 ] :
+                uncompressedLength;
+    }
+
+    byte[] window( int checkpoint ) {
+        return windows[ checkpoint ];
+    }
+
+    /**
+     * @param position position in the uncompressed data
+     * @return the index of the last checkpoint at or before the given position
+     */
+    int checkpointAt( long position ) {
+        int low = 0;
+        int high = uncompressedOffsets.length - 1;
+        while ( low < high ) {
+            int middle = ( low + high + 1 ) >>> 1;
+            if ( uncompressedOffsets[ middle ] <= position ) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Write this index to the given file.
+     * <p>
+     * The windows are compressed, so the index is normally much smaller than {@code 32KB} per checkpoint.
+     *
+     * @param indexPath where to write the index
+     * @throws IOException if the index cannot be written
+     */
+    void writeTo( Path indexPath ) throws IOException {
+        Files.createDirectories( indexPath.getParent() );
+        Path tempFile = indexPath.resolveSibling( indexPath.getFileName() + ".tmp" );
+
+        try ( DataOutputStream out = new DataOutputStream( new BufferedOutputStream(
+                new DeflaterOutputStream( Files.newOutputStream( tempFile ) ) ) ) ) {
+            out.writeInt( MAGIC_NUMBER );
+            out.writeInt( FORMAT_VERSION );
+            out.writeUTF( path );
+            out.writeLong( compressedLength );
+            out.writeLong( lastModified );
+            out.writeLong( uncompressedLength );
+            out.writeInt( bitOffsets.length );
+            for ( int i = 0; i < bitOffsets.length; i++ ) {
+                out.writeLong( bitOffsets[ i ] );
+                out.writeLong( uncompressedOffsets[ i ] );
+                out.writeInt( windows[ i ].length );
+                out.write( windows[ i ] );
+            }
+        }
+
+        Files.move( tempFile, indexPath, StandardCopyOption.REPLACE_EXISTING );
+    }
+
+    /**
+     * Read the index of the given file.
+     *
+     * @param indexPath where the index was written to
+     * @param file      the compressed file
+     * @return the index, or nothing if it does not exist, cannot be read, or is not an index of the given file.
+     * Notice that the index may be out-of-date.
+     */
+    static Optional<GzipIndex> readFrom( Path indexPath, File file ) {
+        if ( !Files.isRegularFile( indexPath ) ) {
+            return Optional.empty();
+        }
+
+        try ( DataInputStream in = new DataInputStream( new BufferedInputStream(
+                new InflaterInputStream( Files.newInputStream( indexPath ) ) ) ) ) {
+            if ( in.readInt() != MAGIC_NUMBER || in.readInt() != FORMAT_VERSION ) {
+                log.debug( "Ignoring gzip index with unknown format: {}", indexPath );
+                return Optional.empty();
+            }
+            String path = in.readUTF();
+            if ( !path.equals( file.getAbsolutePath() ) ) {
+                log.debug( "Ignoring gzip index of another file ({}): {}", path, indexPath );
+                return Optional.empty();
+            }
+            long compressedLength = in.readLong();
+            long lastModified = in.readLong();
+            long uncompressedLength = in.readLong();
+            int checkpointCount = in.readInt();
+            if ( checkpointCount < 1 ) {
+                throw new IOException( "Invalid number of checkpoints: " + checkpointCount );
+            }
+            long[] bitOffsets = new long[ checkpointCount ];
+            long[] uncompressedOffsets = new long[ checkpointCount ];
+            byte[][] windows = new byte[ checkpointCount ][];
+            for ( int i = 0; i < checkpointCount; i++ ) {
+                bitOffsets[ i ] = in.readLong();
+                uncompressedOffsets[ i ] = in.readLong();
+                int windowLength = in.readInt();
+                if ( windowLength < 0 || windowLength > WINDOW_SIZE ) {
+                    throw new IOException( "Invalid window length: " + windowLength );
+                }
+                windows[ i ] = new byte[ windowLength ];
+                in.readFully( windows[ i ] );
+            }
+            return Optional.of( new GzipIndex( path, compressedLength, lastModified, uncompressedLength,
+                    bitOffsets, uncompressedOffsets, windows ) );
+        } catch ( IOException e ) {
+            log.debug( "Unable to read gzip index {}: {}", indexPath, e );
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "GzipIndex{" +
+                "path='" + path + '\'' +
+                ", compressedLength=" + compressedLength +
+                ", uncompressedLength=" + uncompressedLength +
+                ", checkpoints=" + bitOffsets.length +
+                '}';
+    }
+}
@@ -0,0 +1,464 @@
+package com.athaydes.logfx.file;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipException;
+
+/**
+ * Builds a {@link GzipIndex} by scanning a gzip file from start to end.
+ * <p>
+ * {@link java.util.zip.Inflater} does not report where deflate blocks start, so the deflate stream is decoded
+ * here (as specified by RFC 1951) only to find the block boundaries and to keep track of the window of
+ * uncompressed data at each checkpoint. Actually reading the file later is done by {@code Inflater}.
+ */
+final class GzipIndexBuilder {
+
+    private static final Logger log = LoggerFactory.getLogger( GzipIndexBuilder.class );
+
+    private static final int WINDOW_MASK = GzipIndex.WINDOW_SIZE - 1;
+
+    private static final int FLAG_HEADER_CRC = 2;
+    private static final int FLAG_EXTRA = 4;
+    private static final int FLAG_NAME = 8;
+    private static final int FLAG_COMMENT = 16;
+
+    private static final int[] LENGTH_BASE = {
+            3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31,
+            35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258 };
+    private static final int[] LENGTH_EXTRA_BITS = {
+            0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2,
+            3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0 };
+    private static final int[] DISTANCE_BASE = {
+            1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193,
+            257, 385, 513, 769, 1025, 1537, 2049, 3073, 4097, 6145, 8193, 12289, 16385, 24577 };
+    private static final int[] DISTANCE_EXTRA_BITS = {
+            0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6,
+            7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13 };
+    private static final int[] CODE_LENGTHS_ORDER = {
+            16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15 };
+
+    private static final HuffmanCode FIXED_LITERALS_CODE;
+    private static final HuffmanCode FIXED_DISTANCES_CODE;
+
+    static {
+        int[] literalLengths = new int[ 288 ];
+        Arrays.fill( literalLengths, 0, 144, 8 );
+        Arrays.fill( literalLengths, 144, 256, 9 );
+        Arrays.fill( literalLengths, 256, 280, 7 );
+        Arrays.fill( literalLengths, 280, 288, 8 );
+        int[] distanceLengths = new int[ 30 ];
+        Arrays.fill( distanceLengths, 5 );
+        try {
+            FIXED_LITERALS_CODE = HuffmanCode.of( literalLengths );
+            FIXED_DISTANCES_CODE = HuffmanCode.of( distanceLengths );
+        } catch ( ZipException e ) {
+            throw new IllegalStateException( e );
+        }
+    }
+
+    private final BitInput in;
+    private final long checkpointSpacing;
+
+    private final byte[] window = new byte[ GzipIndex.WINDOW_SIZE ];
+    private int windowPosition = 0;
+    private long memberOutput = 0L;
+    private long output = 0L;
+
+    private final List<Long> bitOffsets = new ArrayList<>();
+    private final List<Long> uncompressedOffsets = new ArrayList<>();
+    private final List<byte[]> windows = new ArrayList<>();
+
+    private GzipIndexBuilder( InputStream in, long checkpointSpacing ) {
+        this.in = new BitInput( in );
+        this.checkpointSpacing = checkpointSpacing;
+    }
+
+    /**
+     * Build the index of a gzip file.
+     *
+     * @param file              the gzip file
+     * @param checkpointSpacing minimum number of uncompressed bytes between checkpoints
+     * @return the index
+     * @throws IOException if the file cannot be read or is not a valid gzip file
+     */
+    static GzipIndex build( File file, long checkpointSpacing ) throws IOException {
+        long compressedLength = file.length();
+        long lastModified = file.lastModified();
+
+        try ( InputStream in = new BufferedInputStream( Files.newInputStream( file.toPath() ), 64 * 1024 ) ) {
+            GzipIndexBuilder builder = new GzipIndexBuilder( in, checkpointSpacing );
+            builder.readMembers();
+
+            int checkpointCount = builder.bitOffsets.size();
+            long[] bitOffsets = new long[ checkpointCount ];
+            long[] uncompressedOffsets = new long[ checkpointCount ];
+            for ( int i = 0; i < checkpointCount; i++ ) {
+                bitOffsets[ i ] = builder.bitOffsets.get( i );
+                uncompressedOffsets[ i ] = builder.uncompressedOffsets.get( i );
+            }
+
+            return new GzipIndex( file.getAbsolutePath(), compressedLength, lastModified, builder.output,
+                    bitOffsets, uncompressedOffsets, builder.windows.toArray( new byte[ 0 ][] ) );
+        }
+    }
+
+    private void readMembers() throws IOException {
+        boolean isFirstMember = true;
+
+        while ( readHeader( isFirstMember ) ) {
+            isFirstMember = false;
+            memberOutput = 0L;
+            addCheckpoint( new byte[ 0 ] );
+
+            boolean isLastBlock;
+            do {
+                if ( output - uncompressedOffsets.get( uncompressedOffsets.size() - 1 ) >= checkpointSpacing ) {
+                    addCheckpoint( windowContents() );
+                }
+                isLastBlock = in.bits( 1 ) == 1;
+                int blockType = in.bits( 2 );
+                switch ( blockType ) {
+                    case 0:
+                        readStoredBlock();
+                        break;
+                    case 1:
+                        readCompressedBlock( FIXED_LITERALS_CODE, FIXED_DISTANCES_CODE );
+                        break;
+                    case 2:
+                        readDynamicBlock();
+                        break;
+                    default:
+                        throw new ZipException( "Invalid deflate block type" );
+                }
+            } while ( !isLastBlock );
+
+            // skip the CRC-32 and the size of the uncompressed data
+            in.alignToByte();
+            in.skipBytes( 8 );
+        }
+    }
+
+    private void addCheckpoint( byte[] windowContents ) {
+        log.trace( "Checkpoint at bit {}, uncompressed offset {}", in.position(), output );
+        bitOffsets.add( in.position() );
+        uncompressedOffsets.add( output );
+        windows.add( windowContents );
+    }
+
+    private byte[] windowContents() {
+        int size = ( int ) Math.min( GzipIndex.WINDOW_SIZE, memberOutput );
+        byte[] result = new byte[ size ];
+        int start = ( windowPosition - size ) & WINDOW_MASK;
+        int firstPart = Math.min( size, GzipIndex.WINDOW_SIZE - start );
+        System.arraycopy( window, start, result, 0, firstPart );
+        System.arraycopy( window, 0, result, firstPart, size - firstPart );
+        return result;
+    }
+
+    /**
+     * Read the header of a gzip member.
+     *
+     * @param isFirstMember whether the first member is expected
+     * @return true if a member header was read, false if the end of the gzip data was reached
+     */
+    private boolean readHeader( boolean isFirstMember ) throws IOException {
+        int id1 = in.byteOrEndOfInput();
+        int id2 = id1 < 0 ? -1 : in.byteOrEndOfInput();
+
+        if ( id1 != 0x1f || id2 != 0x8b ) {
+            if ( isFirstMember ) {
+                throw new ZipException( "Not in GZIP format" );
+            }
+            if ( id1 >= 0 ) {
+                log.debug( "Ignoring trailing bytes after the last gzip member" );
+            }
+            return false;
+        }
+
+        if ( in.bits( 8 ) != 8 ) {
+            throw new ZipException( "Unsupported compression method" );
+        }
+
+        int flags = in.bits( 8 );
+
+        // modification time, extra flags, operating system
+        in.skipBytes( 6 );
+
+        if ( ( flags & FLAG_EXTRA ) != 0 ) {
+            in.skipBytes( in.bits( 16 ) );
+        }
+        if ( ( flags & FLAG_NAME ) != 0 ) {
+            skipZeroTerminatedString();
+        }
+        if ( ( flags & FLAG_COMMENT ) != 0 ) {
+            skipZeroTerminatedString();
+        }
+        if ( ( flags & FLAG_HEADER_CRC ) != 0 ) {
+            in.skipBytes( 2 );
+        }
+
+        return true;
+    }
+
+    private void skipZeroTerminatedString() throws IOException {
+        //noinspection StatementWithEmptyBody
+        while ( in.bits( 8 ) != 0 ) {
+        }
+    }
+
+    private void readStoredBlock() throws IOException {
+        in.alignToByte();
+        int length = in.bits( 16 );
+        int lengthComplement = in.bits( 16 );
+        if ( length != ( ~lengthComplement & 0xFFFF ) ) {
+            throw new ZipException( "Invalid stored block length" );
+        }
+        for ( int i = 0; i < length; i++ ) {
+            write( ( byte ) in.bits( 8 ) );
+        }
+    }
+
+    private void readDynamicBlock() throws IOException {
+        int literalsCount = in.bits( 5 ) + 257;
+        int distancesCount = in.bits( 5 ) + 1;
+        int codeLengthsCount = in.bits( 4 ) + 4;
+
+        int[] codeLengthLengths = new int[ 19 ];
+        for ( int i = 0; i < codeLengthsCount; i++ ) {
+            codeLengthLengths[ CODE_LENGTHS_ORDER[ i ] ] = in.bits( 3 );
+        }
+        HuffmanCode codeLengthsCode = HuffmanCode.of( codeLengthLengths );
+
+        int[] lengths = new int[ literalsCount + distancesCount ];
+        int index = 0;
+        while ( index < lengths.length ) {
+            int symbol = codeLengthsCode.decode( in );
+            if ( symbol < 16 ) {
+                lengths[ index++ ] = symbol;
+            } else {
+                int value = 0;
+                int repeat;
+                if ( symbol == 16 ) {
+                    if ( index == 0 ) {
+                        throw new ZipException( "Invalid code lengths: nothing to repeat" );
+                    }
+                    value = lengths[ index - 1 ];
+                    repeat = 3 + in.bits( 2 );
+                } else if ( symbol == 17 ) {
+                    repeat = 3 + in.bits( 3 );
+                } else {
+                    repeat = 11 + in.bits( 7 );
+                }
+                if ( index + repeat > lengths.length ) {
+                    throw new ZipException( "Invalid code lengths: too many lengths" );
+                }
+                Arrays.fill( lengths, index, index + repeat, value );
+                index += repeat;
+            }
+        }
+
+        readCompressedBlock(
+                HuffmanCode.of( Arrays.copyOfRange( lengths, 0, literalsCount ) ),
+                HuffmanCode.of( Arrays.copyOfRange( lengths, literalsCount, lengths.length ) ) );
+    }
+
+    private void readCompressedBlock( HuffmanCode literalsCode, HuffmanCode distancesCode ) throws IOException {
+        while ( true ) {
+            int symbol = literalsCode.decode( in );
+            if ( symbol < 256 ) {
+                write( ( byte ) symbol );
+            } else if ( symbol == 256 ) {
+                return;
+            } else {
+                symbol -= 257;
+                if ( symbol >= LENGTH_BASE.length ) {
+                    throw new ZipException( "Invalid literal/length code" );
+                }
+                int length = LENGTH_BASE[ symbol ] + in.bits( LENGTH_EXTRA_BITS[ symbol ] );
+
+                int distanceSymbol = distancesCode.decode( in );
+                if ( distanceSymbol >= DISTANCE_BASE.length ) {
+                    throw new ZipException( "Invalid distance code" );
+                }
+                int distance = DISTANCE_BASE[ distanceSymbol ] + in.bits( DISTANCE_EXTRA_BITS[ distanceSymbol ] );
+                if ( distance > memberOutput ) {
+                    throw new ZipException( "Invalid distance: too far back" );
+                }
+
+                for ( int i = 0; i < length; i++ ) {
+                    write( window[ ( windowPosition - distance ) & WINDOW_MASK ] );
+                }
+            }
+        }
+    }
+
+    private void write( byte b ) {
+        window[ windowPosition ] = b;
+        windowPosition = ( windowPosition + 1 ) & WINDOW_MASK;
+        memberOutput++;
+        output++;
+    }
+
+    /**
+     * A canonical Huffman code, decoded with a single lookup table indexed by the next (bit-reversed) bits.
+     */
+    private static final class HuffmanCode {
+
+        private static final int MAX_BITS = 15;
+
+        // each entry contains the symbol in the high bits, and the length of its code in the lowest 4 bits
+        private final int[] table;
+        private final int maxLength;
+
+        private HuffmanCode( int[] table, int maxLength ) {
+            this.table = table;
+            this.maxLength = maxLength;
+        }
+
+        static HuffmanCode of( int[] lengths ) throws ZipException {
+            int[] lengthCounts = new int[ MAX_BITS + 1 ];
+            int maxLength = 0;
+            for ( int length : lengths ) {
+                lengthCounts[ length ]++;
+                maxLength = Math.max( maxLength, length );
+            }
+            lengthCounts[ 0 ] = 0;
+
+            int left = 1;
+            for ( int length = 1; length <= MAX_BITS; length++ ) {
+                left = ( left << 1 ) - lengthCounts[ length ];
+                if ( left < 0 ) {
+                    throw new ZipException( "Invalid Huffman code: over-subscribed" );
+                }
+            }
+
+            int[] nextCode = new int[ MAX_BITS + 1 ];
+            int code = 0;
+            for ( int length = 1; length <= MAX_BITS; length++ ) {
+                code = ( code + lengthCounts[ length - 1 ] ) << 1;
+                nextCode[ length ] = code;
+            }
+
+            int[] table = new int[ 1 << maxLength ];
+            for ( int symbol = 0; symbol < lengths.length; symbol++ ) {
+                int length = lengths[ symbol ];
+                if ( length > 0 ) {
+                    int reversed = Integer.reverse( nextCode[ length ]++ ) >>> ( 32 - length );
+                    for ( int i = reversed; i < table.length; i += 1 << length ) {
+                        table[ i ] = ( symbol << 4 ) | length;
+                    }
+                }
+            }
+
+            return new HuffmanCode( table, maxLength );
+        }
+
+        int decode( BitInput in ) throws IOException {
+            int entry = table[ in.peek( maxLength ) ];
+            int length = entry & 0xF;
+            if ( length == 0 ) {
+                throw new ZipException( "Invalid Huffman code" );
+            }
+            in.consume( length );
+            return entry >>> 4;
+        }
+    }
+
+    /**
+     * Reads bits from a stream, least-significant bit first, as required by the deflate format.
+     */
+    private static final class BitInput {
+
+        private final InputStream in;
+        private long bitBuffer = 0L;
+        private int bitCount = 0;
+
+        // bytes loaded into the bit buffer, including zeroes added after the end of the input
+        private long loadedBytes = 0L;
+        private long inputBytes = 0L;
+
+        BitInput( InputStream in ) {
+            this.in = in;
+        }
+
+        /**
+         * @return the position, in bits, of the next bit to be read
+         */
+        long position() {
+            return loadedBytes * 8 - bitCount;
+        }
+
+        int peek( int count ) throws IOException {
+            while ( bitCount < count ) {
+                int b = in.read();
+                if ( b < 0 ) {
+                    // Huffman codes may need more bits than are left, so pad the input with zeroes
+                    b = 0;
+                } else {
+                    inputBytes++;
+                }
+                loadedBytes++;
+                bitBuffer |= ( ( long ) b ) << bitCount;
+                bitCount += 8;
+            }
+            return ( int ) ( bitBuffer & ( ( 1L << count ) - 1L ) );
+        }
+
+        void consume( int count ) throws EOFException {
+            bitBuffer >>>= count;
+            bitCount -= count;
+            if ( position() > inputBytes * 8 ) {
+                throw new EOFException( "Unexpected end of gzip data" );
+            }
+        }
+
+        int bits( int count ) throws IOException {
+            int result = peek( count );
+            consume( count );
+            return result;
+        }
+
+        void alignToByte() throws EOFException {
+            consume( bitCount & 7 );
+        }
+
+        void skipBytes( long count ) throws IOException {
+            for ( long i = 0; i < count; i++ ) {
+                bits( 8 );
+            }
+        }
+
+        /**
+         * Read the next byte, which must be aligned to a byte boundary.
+         *
+         * @return the byte, or -1 if the end of the input was reached
+         */
+        int byteOrEndOfInput() throws IOException {
+            if ( position() + 8 > inputBytes * 8 ) {
+                if ( bitCount >= 8 ) {
+                    // only padding left
+                    return -1;
+                }
+                int b = in.read();
+                if ( b < 0 ) {
+                    return -1;
+                }
+                inputBytes++;
+                loadedBytes++;
+                bitBuffer |= ( ( long ) b ) << bitCount;
+                bitCount += 8;
+            }
+            return bits( 8 );
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.athaydes.logfx.file;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link StreamSource} reading an {@link InputStream}, such as the standard input, on a Thread of its own.
+ * <p>
+ * The stream is read as fast as the producer writes to it, so it is never slowed down by the stream being displayed.
+ */
+final class InputStreamSource implements StreamSource {
+
+    private static final Logger log = LoggerFactory.getLogger( InputStreamSource.class );
+
+    private static final AtomicInteger INGEST_THREAD_COUNTER = new AtomicInteger( 0 );
+
+    private static final int INGEST_BUFFER_SIZE = 64 * 1024;
+
+    private final String name;
+    private final InputStream input;
+
+    private volatile Thread ingestThread;
+    private volatile boolean closed = false;
+    private volatile boolean ended = false;
+
+    InputStreamSource( String name, InputStream input ) {
+        this.name = name;
+        this.input = input;
+    }
+
+    @Override
+    public void start( StreamSpill spill ) {
+        Thread thread = new Thread( () -> ingest( spill ), "logfx-stream-ingest-" +
+                INGEST_THREAD_COUNTER.incrementAndGet() );
+        thread.setDaemon( true );
+        this.ingestThread = thread;
+        thread.start();
+    }
+
+    private void ingest( StreamSpill spill ) {
+        log.info( "Reading stream {} into {}", name, spill.getDirectory() );
+        byte[] buffer = new byte[ INGEST_BUFFER_SIZE ];
+        try {
+            int count;
+            while ( !closed && ( count = input.read( buffer ) ) >= 0 ) {
+                spill.append( buffer, 0, count );
+            }
+            log.info( "End of stream {} after {} bytes", name, spill.getBytesWritten() );
+        } catch ( IOException e ) {
+            if ( !closed ) {
+                log.warn( "Error reading stream {}: {}", name, e.toString() );
+            }
+        } finally {
+            ended = true;
+        }
+    }
+
+    @Override
+    public boolean isEnded() {
+        return ended;
+    }
+
+    /**
+     * Stop reading the stream, and close it.
+     */
+    @Override
+    public void close() {
+        if ( closed ) {
+            return;
+        }
+        closed = true;
+
+        Thread thread = ingestThread;
+        if ( thread != null ) {
+            thread.interrupt();
+        }
+
+        try {
+            input.close();
+        } catch ( IOException e ) {
+            log.debug( "Error closing stream {}: {}", name, e.toString() );
+        }
+    }
+}
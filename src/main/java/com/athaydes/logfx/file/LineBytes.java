@@ -0,0 +1,215 @@
+package com.athaydes.logfx.file;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Accumulator of the bytes of a single line, which may be spread over several file chunks.
+ * <p>
+ * Bytes can be added either to the end of the line (when reading a file forwards) or to the
+ * beginning of the line (when reading a file backwards). In both cases, the cost of accumulating a line
+ * is linear in the length of the line, as the internal buffer grows geometrically.
+ * <p>
+ * Only the first {@code maxLength} bytes of a line are kept, but the full length of the line is
+ * still tracked, so callers can know where lines start and end in the file regardless of this limit.
+ */
+final class LineBytes {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final int maxLength;
+
+    private byte[] bytes = new byte[ INITIAL_CAPACITY ];
+
+    // the kept bytes are within bytes[start..end)
+    private int start;
+    private int end;
+
+    // the full length of the line, including bytes that were not kept
+    private long length;
+    private byte lastByte;
+
+    LineBytes( int maxLength ) {
+        if ( maxLength < 1 ) {
+            throw new IllegalArgumentException( "Max line length must be positive" );
+        }
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Add bytes to the end of the line.
+     */
+    void append( ByteBuffer source, int index, int count ) {
+        if ( count <= 0 ) {
+            return;
+        }
+
+        lastByte = source.get( index + count - 1 );
+        length += count;
+
+        int toCopy = Math.min( count, maxLength - size() );
+
+        if ( toCopy > 0 ) {
+            if ( end + toCopy > bytes.length ) {
+                relocate( 0, size() + toCopy );
+            }
+            copy( source, index, bytes, end, toCopy );
+            end += toCopy;
+        }
+    }
+
+    /**
+     * Add the bytes of a whole line to the end of this line, preceded by the given separator unless this
+     * line is empty, so that several lines can be joined into a multi-line record.
+     * <p>
+     * Once any bytes have been dropped due to the maximum length, bytes added later are only counted.
+     *
+     * @param separator bytes to add between the current bytes and the new line
+     * @param source    array holding the kept bytes of the new line
+     * @param index     index of the first kept byte of the new line in the source array
+     * @param count     number of kept bytes of the new line
+     * @param length    full length of the new line, including bytes that were not kept
+     */
+    void appendLine( byte[] separator, byte[] source, int index, int count, long length ) {
+        if ( this.length > 0L ) {
+            appendKept( separator, 0, separator.length, separator.length );
+        }
+        appendKept( source, index, count, length );
+        lastByte = 0;
+    }
+
+    private void appendKept( byte[] source, int index, int count, long fullLength ) {
+        boolean truncated = isTruncated();
+        length += fullLength;
+        int toCopy = truncated ? 0 : Math.min( count, maxLength - size() );
+        if ( toCopy > 0 ) {
+            if ( end + toCopy > bytes.length ) {
+                relocate( 0, size() + toCopy );
+            }
+            System.arraycopy( source, index, bytes, end, toCopy );
+            end += toCopy;
+        }
+    }
+
+    /**
+     * Add bytes to the start of the line.
+     * <p>
+     * If that causes the line to exceed the maximum length, bytes are dropped from the end of the line.
+     */
+    void prepend( ByteBuffer source, int index, int count ) {
+        if ( count <= 0 ) {
+            return;
+        }
+
+        if ( length == 0L ) {
+            lastByte = source.get( index + count - 1 );
+        }
+        length += count;
+
+        if ( count >= maxLength ) {
+            // only the first bytes of the source can be kept
+            start = 0;
+            end = 0;
+            count = maxLength;
+        }
+
+        if ( start < count ) {
+            relocate( count, size() + count );
+        }
+
+        start -= count;
+        copy( source, index, bytes, start, count );
+        end = Math.min( end, start + maxLength );
+    }
+
+    /**
+     * Remove a return character ({@code '\r'}) from the end of the line, if there is one.
+     */
+    void removeTrailingReturn() {
+        if ( length > 0L && lastByte == '\r' ) {
+            if ( size() == length ) {
+                end--;
+            }
+            length--;
+            lastByte = 0;
+        }
+    }
+
+    /**
+     * @return the number of bytes of this line that are currently kept.
+     */
+    int size() {
+        return end - start;
+    }
+
+    /**
+     * @return the full length of this line, including the bytes that were not kept
+     * due to the maximum line length.
+     */
+    long length() {
+        return length;
+    }
+
+    boolean isTruncated() {
+        return size() < length;
+    }
+
+    String decode( Charset charset ) {
+        return new String( bytes, start, size(), charset );
+    }
+
+    /**
+     * @return the array holding the kept bytes of this line, which start at {@link #arrayOffset()}
+     */
+    byte[] array() {
+        return bytes;
+    }
+
+    int arrayOffset() {
+        return start;
+    }
+
+    void clear() {
+        start = 0;
+        end = 0;
+        length = 0L;
+        lastByte = 0;
+    }
+
+    /**
+     * Move the current contents of the line so that there are at least {@code freeBytesBefore} bytes
+     * available before them, growing the internal buffer if needed to fit at least {@code minCapacity} bytes.
+     */
+    private void relocate( int freeBytesBefore, int minCapacity ) {
+        int size = size();
+        byte[] target = bytes;
+        if ( minCapacity > bytes.length || freeBytesBefore + size > bytes.length ) {
+            int newCapacity = Math.max( bytes.length * 2, 2 * minCapacity );
+            target = new byte[ newCapacity ];
+        }
+
+        // when making room at the front, place the contents at the end of the buffer,
+        // so that there's plenty of room for the next prepends
+        int newStart = freeBytesBefore == 0 ? 0 : target.length - size;
+
+        System.arraycopy( bytes, start, target, newStart, size );
+        bytes = target;
+        start = newStart;
+        end = newStart + size;
+    }
+
+    private static void copy( ByteBuffer source, int sourceIndex,
+                              byte[] destination, int destinationIndex, int count ) {
+        if ( source.hasArray() ) {
+            System.arraycopy( source.array(), source.arrayOffset() + sourceIndex,
+                    destination, destinationIndex, count );
+        } else {
+            ByteBuffer view = source.duplicate();
+            // cast needed so that the code also runs on Java 8, where Buffer methods do not return ByteBuffer
+            ( ( Buffer ) view ).position( sourceIndex );
+            view.get( destination, destinationIndex, count );
+        }
+    }
+
+}
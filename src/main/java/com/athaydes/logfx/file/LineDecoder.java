@@ -0,0 +1,105 @@
+package com.athaydes.logfx.file;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decoder of lines of text.
+ * <p>
+ * The same {@link CharsetDecoder} and char buffer are used for every line, so decoding a line only allocates
+ * the resulting String.
+ * <p>
+ * Lines made only of ASCII characters, which are the vast majority of lines in most log files, do not need to
+ * go through the decoder at all if the charset is compatible with ASCII: such lines are turned directly into
+ * Strings via ISO-8859-1, which the JVM can do without decoding each character.
+ * <p>
+ * Instances of this class are not thread-safe.
+ */
+final class LineDecoder {
+
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+    private final CharsetDecoder decoder;
+    private final boolean asciiCompatible;
+    private final int codeUnitSize;
+    private CharBuffer chars = CharBuffer.allocate( 256 );
+
+    LineDecoder( Charset charset, boolean asciiCompatible, boolean twoByteCodeUnits ) {
+        this.decoder = charset.newDecoder()
+                .onMalformedInput( CodingErrorAction.REPLACE )
+                .onUnmappableCharacter( CodingErrorAction.REPLACE );
+        this.asciiCompatible = asciiCompatible;
+        this.codeUnitSize = twoByteCodeUnits ? 2 : 1;
+    }
+
+    boolean isAsciiCompatible() {
+        return asciiCompatible;
+    }
+
+    /**
+     * Decode a line.
+     *
+     * @param bytes                array containing the line
+     * @param offset               start of the line in the array
+     * @param length               number of bytes of the line
+     * @param removeTrailingReturn whether to remove a return character ({@code '\r'}) from the end of the line
+     * @return the line
+     */
+    String decode( byte[] bytes, int offset, int length, boolean removeTrailingReturn ) {
+        // an incomplete code unit can only be the result of truncating the line
+        length -= length % codeUnitSize;
+
+        if ( asciiCompatible && isAscii( bytes, offset, length ) ) {
+            return removeTrailingReturn && length > 0 && bytes[ offset + length - 1 ] == '\r' ?
+                    new String( bytes, offset, length - 1, StandardCharsets.ISO_8859_1 ) :
+                    new String( bytes, offset, length, StandardCharsets.ISO_8859_1 );
+        }
+
+        CharBuffer result = decodeToBuffer( ByteBuffer.wrap( bytes, offset, length ) );
+        int start = 0;
+        int end = result.limit();
+        if ( end > 0 && result.get( 0 ) == BYTE_ORDER_MARK ) {
+            start++;
+        }
+        if ( removeTrailingReturn && end > start && result.get( end - 1 ) == '\r' ) {
+            end--;
+        }
+        return new String( result.array(), result.arrayOffset() + start, end - start );
+    }
+
+    private CharBuffer decodeToBuffer( ByteBuffer input ) {
+        int maxChars = ( int ) Math.ceil( input.remaining() * ( double ) decoder.maxCharsPerByte() );
+        if ( chars.capacity() < maxChars ) {
+            chars = CharBuffer.allocate( Math.max( maxChars, chars.capacity() * 2 ) );
+        }
+
+        // cast needed so that the code also runs on Java 8, where Buffer methods do not return CharBuffer
+        ( ( Buffer ) chars ).clear();
+        decoder.reset();
+
+        // with REPLACE actions, decoding can only stop early if the output buffer is full, which it cannot be
+        CoderResult result = decoder.decode( input, chars, true );
+        if ( !result.isUnderflow() ) {
+            throw new IllegalStateException( "Unexpected decoding result: " + result );
+        }
+        decoder.flush( chars );
+        ( ( Buffer ) chars ).flip();
+
+        return chars;
+    }
+
+    private static boolean isAscii( byte[] bytes, int offset, int length ) {
+        int bits = 0;
+        for ( int i = offset; i < offset + length; i++ ) {
+            bits |= bytes[ i ];
+        }
+        return bits >= 0;
+    }
+
+}
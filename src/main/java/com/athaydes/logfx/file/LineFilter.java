@@ -0,0 +1,62 @@
+package com.athaydes.logfx.file;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+/**
+ * A line filter that may be able to accept or reject lines without decoding them.
+ * <p>
+ * When a {@link FileContentReader} is given a filter of this type via
+ * {@link FileContentReader#setLineFilter(Predicate)}, it calls {@link #test(LineHandle)} instead of
+ * {@link #test(Object)}, so the filter only needs to decode a line (with {@link LineHandle#getText()}) if it
+ * cannot decide whether to accept it by looking at its bytes.
+ */
+public interface LineFilter extends Predicate<String> {
+
+    /**
+     * Test a line of a file.
+     * <p>
+     * The given line is only valid during this call, so it must not be kept after this method returns.
+     * <p>
+     * By default, this method tests the text of the line with {@link #test(Object)}.
+     *
+     * @param line the line to test
+     * @return true if the line is accepted by the filter
+     */
+    default boolean test( LineHandle line ) {
+        return test( line.getText() );
+    }
+
+    /**
+     * Get a value identifying which lines this filter accepts.
+     * <p>
+     * Filters with equal fingerprints must accept exactly the same lines. This allows a reader to remember which
+     * parts of a file contain lines accepted by a filter, and to reuse that information when a filter with the same
+     * fingerprint is set again, even if it's a different instance.
+     * <p>
+     * By default, filters have no fingerprint, so nothing is remembered about them.
+     *
+     * @return the fingerprint of this filter, if any. It must have proper {@code equals} and {@code hashCode}
+     * implementations.
+     */
+    default Optional<Object> getFingerprint() {
+        return Optional.empty();
+    }
+
+    /**
+     * Get texts which lines must contain to be accepted by this filter.
+     * <p>
+     * Every line accepted by this filter must contain at least one of the returned texts, which allows a reader
+     * to use an index of the file to skip the parts of the file that cannot contain any accepted lines.
+     * Only ASCII texts can be looked up in an index.
+     * <p>
+     * By default, no such texts are known, so the whole file must be scanned.
+     *
+     * @return the texts that accepted lines must contain, if known. An empty list means no lines are accepted.
+     */
+    default Optional<List<String>> getRequiredTexts() {
+        return Optional.empty();
+    }
+
+}
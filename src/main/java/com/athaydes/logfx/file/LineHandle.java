@@ -0,0 +1,193 @@
+package com.athaydes.logfx.file;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * A line of a file, represented by the bytes it occupies in the file.
+ * <p>
+ * The text of the line is only decoded when it is first requested via {@link #getText()}, so lines that
+ * are never displayed, or that are rejected by a {@link LineFilter} that only looks at their bytes,
+ * are never decoded.
+ * <p>
+ * Line handles returned by a {@link FileContentReader} own their bytes and can be used from any Thread.
+ * Line handles given to a {@link LineFilter} are only valid during the call to the filter, as their bytes belong
+ * to the reader and are reused for the next line.
+ */
+public final class LineHandle {
+
+    private final LineDecoder decoder;
+    private final boolean owned;
+
+    private byte[] bytes;
+    private int start;
+    private int size;
+    private long offset;
+    private long length;
+    private boolean removeTrailingReturn;
+    private String text;
+
+    private LineHandle( LineDecoder decoder, boolean owned ) {
+        this.decoder = decoder;
+        this.owned = owned;
+    }
+
+    /**
+     * Create a handle that can be reset to point to different lines.
+     */
+    static LineHandle reusable( LineDecoder decoder ) {
+        return new LineHandle( decoder, false );
+    }
+
+    /**
+     * Point this handle to a line.
+     *
+     * @param lineBytes            the bytes of the line
+     * @param offset               position of the start of the line in the file
+     * @param removeTrailingReturn whether the decoded text should not include a trailing return character
+     */
+    void reset( LineBytes lineBytes, long offset, boolean removeTrailingReturn ) {
+        if ( owned ) {
+            throw new IllegalStateException( "Cannot reset a line handle that owns its bytes" );
+        }
+        this.bytes = lineBytes.array();
+        this.start = lineBytes.arrayOffset();
+        this.size = lineBytes.size();
+        this.offset = offset;
+        this.length = lineBytes.length();
+        this.removeTrailingReturn = removeTrailingReturn && !lineBytes.isTruncated();
+        this.text = null;
+    }
+
+    /**
+     * @return a copy of this handle that owns its bytes, so it remains valid after this handle is reset
+     */
+    LineHandle detach() {
+        LineHandle copy = new LineHandle( decoder, true );
+        copy.bytes = Arrays.copyOfRange( bytes, start, start + size );
+        copy.start = 0;
+        copy.size = size;
+        copy.offset = offset;
+        copy.length = length;
+        copy.removeTrailingReturn = removeTrailingReturn;
+        copy.text = text;
+        return copy;
+    }
+
+    /**
+     * Add the bytes of this line to the end of a multi-line record.
+     *
+     * @see LineBytes#appendLine(byte[], byte[], int, int, long)
+     */
+    void appendTo( LineBytes record, byte[] separator ) {
+        record.appendLine( separator, bytes, start, size, length );
+    }
+
+    /**
+     * @return position of the start of the line in the file
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return number of bytes of the line in the file, not including the new-line that terminates it
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return true if the line was too long and only its first bytes are kept
+     */
+    public boolean isTruncated() {
+        return size < length;
+    }
+
+    /**
+     * @return the kept bytes of the line, as a read-only buffer
+     */
+    public ByteBuffer getBytes() {
+        return ByteBuffer.wrap( bytes, start, size ).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * @return true if the line is encoded in a charset where ASCII characters are represented by single bytes,
+     * as in ASCII, so that searching for ASCII text in the bytes of the line gives the same result
+     * as searching in its text.
+     */
+    public boolean isAsciiCompatible() {
+        return decoder.isAsciiCompatible();
+    }
+
+    /**
+     * Check whether the bytes of this line contain the given bytes.
+     *
+     * @param target the bytes to look for
+     * @return true if the bytes are found
+     */
+    public boolean containsBytes( byte[] target ) {
+        if ( target.length == 0 ) {
+            return true;
+        }
+        byte first = target[ 0 ];
+        int lastStart = start + size - target.length;
+
+        searchLoop:
+        for ( int i = start; i <= lastStart; i++ ) {
+            if ( bytes[ i ] != first ) {
+                continue;
+            }
+            for ( int j = 1; j < target.length; j++ ) {
+                if ( bytes[ i + j ] != target[ j ] ) {
+                    continue searchLoop;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the text of the line, decoding it if this is the first time it's requested
+     */
+    public String getText() {
+        if ( text == null ) {
+            // the decoder is shared by all lines read by the same reader, which may be decoding other lines
+            synchronized ( decoder ) {
+                text = decoder.decode( bytes, start, size, removeTrailingReturn );
+            }
+        }
+        return text;
+    }
+
+    /**
+     * @param lines line handles
+     * @return the text of the given lines
+     */
+    static LinkedList<String> textOf( List<LineHandle> lines ) {
+        LinkedList<String> result = new LinkedList<>();
+        for ( LineHandle line : lines ) {
+            result.add( line.getText() );
+        }
+        return result;
+    }
+
+    /**
+     * @return true if the text of the line has been decoded already
+     */
+    boolean isDecoded() {
+        return text != null;
+    }
+
+    @Override
+    public String toString() {
+        return "LineHandle{" +
+                "offset=" + offset +
+                ", length=" + length +
+                ", decoded=" + isDecoded() +
+                '}';
+    }
+}
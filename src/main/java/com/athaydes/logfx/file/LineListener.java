@@ -0,0 +1,519 @@
+package com.athaydes.logfx.file;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link StreamSource} of the log lines received on a number of {@link ListenerEndpoint}s, such as the
+ * syslog messages sent by containers.
+ * <p>
+ * All endpoints and connections are served by a single Thread using a NIO {@link Selector}, which hands the lines it
+ * receives over, in batches, to another Thread that writes them to the spill file. If the disk cannot keep up and
+ * too many batches are waiting to be written, new batches are dropped rather than slowing the senders down, and
+ * counted as dropped lines.
+ * <p>
+ * Syslog messages are written as they are received, one per line. Lines longer than {@link #MAX_LINE_LENGTH} bytes
+ * are split.
+ */
+final class LineListener implements StreamSource {
+
+    private static final Logger log = LoggerFactory.getLogger( LineListener.class );
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger( 0 );
+
+    /**
+     * Maximum number of bytes of a single line, which is also the largest possible UDP datagram.
+     */
+    static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    /**
+     * Default maximum number of batches of lines waiting to be written to disk.
+     */
+    static final int DEFAULT_QUEUE_CAPACITY = 256;
+
+    // always large enough for a line and its new-line
+    private static final int BATCH_SIZE = 2 * MAX_LINE_LENGTH;
+
+    // the socket buffer lets the sender keep going when the Selector Thread is briefly busy
+    private static final int RECEIVE_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    // the longest header of an octet-counted syslog frame, with up to 9 digits and a space
+    private static final int MAX_FRAME_HEADER_LENGTH = 10;
+
+    // channels are read at most this many times each time they are ready, so that a flood of datagrams, or a very
+    // fast sender, does not keep the Selector Thread from serving the other channels
+    private static final int MAX_READS_PER_WAKEUP = 64;
+
+    private static final class Batch {
+        private final byte[] bytes;
+        private final int lines;
+
+        Batch( byte[] bytes, int lines ) {
+            this.bytes = bytes;
+            this.lines = lines;
+        }
+    }
+
+    private interface ChannelHandler {
+        void onReady( SelectionKey key ) throws IOException;
+    }
+
+    private final List<ListenerEndpoint> endpoints;
+    private final List<InetSocketAddress> boundAddresses = new ArrayList<>();
+    private final Selector selector;
+    private final BlockingQueue<Batch> queue;
+
+    // only accessed from the Selector Thread
+    private final ByteBuffer batch = ByteBuffer.allocate( BATCH_SIZE );
+    private int batchLines = 0;
+
+    private volatile Thread selectorThread;
+    private volatile Thread writerThread;
+    private volatile boolean closed = false;
+
+    private volatile long receivedLines = 0L;
+    private final AtomicLong droppedLines = new AtomicLong( 0L );
+
+    /**
+     * Create a listener, binding it to the given endpoints.
+     *
+     * @param endpoints the endpoints to listen on
+     * @throws IOException if any of the endpoints cannot be bound to
+     */
+    LineListener( List<ListenerEndpoint> endpoints ) throws IOException {
+        this( endpoints, DEFAULT_QUEUE_CAPACITY );
+    }
+
+    LineListener( List<ListenerEndpoint> endpoints, int queueCapacity ) throws IOException {
+        this.endpoints = endpoints;
+        this.queue = new ArrayBlockingQueue<>( queueCapacity );
+        this.selector = Selector.open();
+
+        try {
+            for ( ListenerEndpoint endpoint : endpoints ) {
+                bind( endpoint );
+            }
+        } catch ( IOException e ) {
+            closeChannels();
+            throw new IOException( "Unable to listen on " + endpoints + ": " + e.getMessage(), e );
+        }
+    }
+
+    private void bind( ListenerEndpoint endpoint ) throws IOException {
+        boolean udp = endpoint.getProtocol() == ListenerEndpoint.Protocol.SYSLOG_UDP;
+        SelectableChannel channel = udp ? DatagramChannel.open() : ServerSocketChannel.open();
+        InetSocketAddress boundAddress;
+
+        try {
+            if ( udp ) {
+                DatagramChannel datagramChannel = ( DatagramChannel ) channel;
+                datagramChannel.setOption( StandardSocketOptions.SO_RCVBUF, RECEIVE_BUFFER_SIZE );
+                datagramChannel.bind( endpoint.getAddress() );
+                boundAddress = ( InetSocketAddress ) datagramChannel.getLocalAddress();
+                datagramChannel.configureBlocking( false );
+                datagramChannel.register( selector, SelectionKey.OP_READ, new DatagramHandler( datagramChannel ) );
+            } else {
+                ServerSocketChannel serverChannel = ( ServerSocketChannel ) channel;
+                serverChannel.setOption( StandardSocketOptions.SO_REUSEADDR, true );
+                serverChannel.bind( endpoint.getAddress() );
+                boundAddress = ( InetSocketAddress ) serverChannel.getLocalAddress();
+                serverChannel.configureBlocking( false );
+                boolean octetCounting = endpoint.getProtocol() == ListenerEndpoint.Protocol.SYSLOG_TCP;
+                serverChannel.register( selector, SelectionKey.OP_ACCEPT, ( ChannelHandler ) key ->
+                        accept( serverChannel, octetCounting ) );
+            }
+        } catch ( IOException e ) {
+            channel.close();
+            throw e;
+        }
+
+        log.info( "Listening for {} lines on {}", endpoint.getProtocol(), boundAddress );
+        boundAddresses.add( boundAddress );
+    }
+
+    /**
+     * @return the addresses the endpoints are bound to, in the order the endpoints were given
+     * (the ports are known even if port 0 was given)
+     */
+    List<InetSocketAddress> getBoundAddresses() {
+        return Collections.unmodifiableList( boundAddresses );
+    }
+
+    /**
+     * @return the number of lines received, including the dropped lines
+     */
+    long getReceivedLines() {
+        return receivedLines;
+    }
+
+    @Override
+    public long getDroppedLines() {
+        return droppedLines.get();
+    }
+
+    @Override
+    public boolean isEnded() {
+        return closed;
+    }
+
+    @Override
+    public void start( StreamSpill spill ) {
+        int threadNumber = THREAD_COUNTER.incrementAndGet();
+
+        Thread writer = new Thread( () -> writeBatches( spill ), "logfx-listener-writer-" + threadNumber );
+        writer.setDaemon( true );
+        this.writerThread = writer;
+
+        Thread listener = new Thread( this::listen, "logfx-listener-selector-" + threadNumber );
+        listener.setDaemon( true );
+        this.selectorThread = listener;
+
+        writer.start();
+        listener.start();
+    }
+
+    @Override
+    public void close() {
+        if ( closed ) {
+            return;
+        }
+        closed = true;
+
+        log.info( "Closing listener on {}", endpoints );
+
+        Thread listener = selectorThread;
+        if ( listener == null ) {
+            closeChannels();
+        } else {
+            // the Selector Thread hands its last batch over and closes the channels before it stops
+            selector.wakeup();
+            join( listener );
+        }
+
+        // the writer Thread writes the batches that are still waiting before it stops
+        Thread writer = writerThread;
+        if ( writer != null ) {
+            writer.interrupt();
+            join( writer );
+        }
+    }
+
+    private static void join( Thread thread ) {
+        try {
+            thread.join( 1000L );
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void listen() {
+        try {
+            while ( !closed ) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while ( keys.hasNext() ) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if ( key.isValid() ) {
+                        try {
+                            ( ( ChannelHandler ) key.attachment() ).onReady( key );
+                        } catch ( IOException e ) {
+                            log.debug( "Error reading from {}: {}", key.channel(), e.toString() );
+                            closeQuietly( key );
+                        }
+                    }
+                }
+                flushBatch();
+            }
+        } catch ( IOException e ) {
+            if ( !closed ) {
+                log.warn( "Error listening on {}: {}", endpoints, e.toString() );
+            }
+        } finally {
+            flushBatch();
+            closeChannels();
+        }
+    }
+
+    /**
+     * Write the batches of lines handed over by the Selector Thread until this listener is closed, which happens
+     * when the writer Thread is interrupted.
+     */
+    private void writeBatches( StreamSpill spill ) {
+        try {
+            while ( true ) {
+                Batch nextBatch = queue.poll( 1L, TimeUnit.SECONDS );
+                if ( nextBatch != null ) {
+                    write( spill, nextBatch );
+                }
+            }
+        } catch ( InterruptedException e ) {
+            log.debug( "Writer of received lines interrupted" );
+        }
+
+        // the lines received before this listener was closed are written, or counted as dropped
+        Batch nextBatch;
+        while ( ( nextBatch = queue.poll() ) != null ) {
+            write( spill, nextBatch );
+        }
+    }
+
+    private void write( StreamSpill spill, Batch nextBatch ) {
+        try {
+            spill.append( nextBatch.bytes, 0, nextBatch.bytes.length );
+        } catch ( IOException e ) {
+            if ( !closed ) {
+                log.warn( "Error writing received lines: {}", e.toString() );
+            }
+            droppedLines.addAndGet( nextBatch.lines );
+        }
+    }
+
+    private void accept( ServerSocketChannel serverChannel, boolean octetCounting ) throws IOException {
+        SocketChannel connection = serverChannel.accept();
+        if ( connection != null ) {
+            log.debug( "Accepted connection from {}", connection.getRemoteAddress() );
+            connection.configureBlocking( false );
+            connection.register( selector, SelectionKey.OP_READ, new ConnectionHandler( connection, octetCounting ) );
+        }
+    }
+
+    /**
+     * Append a line to the current batch, removing the new-lines at its end, if any.
+     * <p>
+     * Must only be called from the Selector Thread.
+     */
+    private void addLine( byte[] bytes, int from, int to ) {
+        while ( to > from && ( bytes[ to - 1 ] == '\n' || bytes[ to - 1 ] == '\r' ) ) {
+            to--;
+        }
+        int length = to - from;
+        if ( batch.remaining() < length + 1 ) {
+            flushBatch();
+        }
+        batch.put( bytes, from, length ).put( ( byte ) '\n' );
+        batchLines++;
+        receivedLines++;
+    }
+
+    /**
+     * Hand the current batch over to the writer Thread, or drop it if too many batches are waiting to be written.
+     * <p>
+     * Must only be called from the Selector Thread.
+     */
+    private void flushBatch() {
+        if ( batchLines == 0 ) {
+            return;
+        }
+
+        byte[] bytes = new byte[ batch.position() ];
+        // casts needed so that the code also runs on Java 8, where Buffer methods do not return ByteBuffer
+        ( ( Buffer ) batch ).flip();
+        batch.get( bytes );
+        ( ( Buffer ) batch ).clear();
+
+        if ( !queue.offer( new Batch( bytes, batchLines ) ) ) {
+            if ( droppedLines.getAndAdd( batchLines ) == 0L ) {
+                log.warn( "Received lines cannot be written to disk fast enough, dropping lines" );
+            }
+        }
+        batchLines = 0;
+    }
+
+    private void closeChannels() {
+        for ( SelectionKey key : selector.keys() ) {
+            closeQuietly( key );
+        }
+        try {
+            selector.close();
+        } catch ( IOException e ) {
+            log.debug( "Error closing selector: {}", e.toString() );
+        }
+    }
+
+    private static void closeQuietly( SelectionKey key ) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch ( IOException e ) {
+            log.debug( "Error closing channel: {}", e.toString() );
+        }
+    }
+
+    /**
+     * Reads syslog messages, one per datagram.
+     */
+    private final class DatagramHandler implements ChannelHandler {
+
+        private final DatagramChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate( MAX_LINE_LENGTH );
+
+        DatagramHandler( DatagramChannel channel ) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void onReady( SelectionKey key ) throws IOException {
+            // read many datagrams at once, so that they are written in a single batch
+            for ( int i = 0; i < MAX_READS_PER_WAKEUP && channel.receive( buffer ) != null; i++ ) {
+                addLine( buffer.array(), 0, buffer.position() );
+                ( ( Buffer ) buffer ).clear();
+            }
+        }
+    }
+
+    /**
+     * Reads lines separated by new-lines from a TCP connection, or also syslog messages framed with octet-counting,
+     * as in {@code 11 <34>1 hello}.
+     */
+    private final class ConnectionHandler implements ChannelHandler {
+
+        private final SocketChannel channel;
+        private final boolean octetCounting;
+        private final ByteBuffer buffer = ByteBuffer.allocate( MAX_LINE_LENGTH );
+
+        // number of bytes left in the current octet-counted frame, or -1 if the current frame ends with a new-line
+        private int frameRemaining = -1;
+
+        ConnectionHandler( SocketChannel channel, boolean octetCounting ) {
+            this.channel = channel;
+            this.octetCounting = octetCounting;
+        }
+
+        @Override
+        public void onReady( SelectionKey key ) throws IOException {
+            int count = 0;
+            for ( int i = 0; i < MAX_READS_PER_WAKEUP && ( count = channel.read( buffer ) ) > 0; i++ ) {
+                addLines();
+            }
+            if ( count < 0 ) {
+                log.debug( "Connection closed by {}", channel.getRemoteAddress() );
+                if ( buffer.position() > 0 ) {
+                    // the last line of a connection does not need to end with a new-line
+                    addLine( buffer.array(), 0, buffer.position() );
+                }
+                closeQuietly( key );
+            }
+        }
+
+        /**
+         * Add the complete lines or frames in the buffer, keeping the rest in the buffer.
+         */
+        private void addLines() {
+            byte[] bytes = buffer.array();
+            int end = buffer.position();
+            int start = 0;
+
+            while ( start < end ) {
+                if ( frameRemaining < 0 && octetCounting && isDigit( bytes[ start ] ) ) {
+                    int headerLength = frameHeaderLength( bytes, start, end );
+                    if ( headerLength == 0 ) {
+                        break; // the header is not complete yet
+                    }
+                    if ( headerLength > 0 ) {
+                        int frameLength = parseFrameLength( bytes, start, start + headerLength - 1 );
+                        frameRemaining = frameLength > 0 ? frameLength : -1;
+                        start += headerLength;
+                        continue;
+                    }
+                    // not an octet-counted frame, so it must end with a new-line
+                }
+
+                if ( frameRemaining >= 0 ) {
+                    if ( end - start < frameRemaining ) {
+                        break; // the frame is not complete yet
+                    }
+                    addLine( bytes, start, start + frameRemaining );
+                    start += frameRemaining;
+                    frameRemaining = -1;
+                } else {
+                    int newLine = indexOfNewLine( bytes, start, end );
+                    if ( newLine < 0 ) {
+                        break; // the line is not complete yet
+                    }
+                    addLine( bytes, start, newLine );
+                    start = newLine + 1;
+                }
+            }
+
+            if ( start == 0 && end == bytes.length ) {
+                // the buffer is full, so split the line or frame
+                addLine( bytes, 0, end );
+                if ( frameRemaining > 0 ) {
+                    frameRemaining -= end;
+                }
+                start = end;
+            }
+
+            System.arraycopy( bytes, start, bytes, 0, end - start );
+            ( ( Buffer ) buffer ).position( end - start );
+        }
+    }
+
+    private static boolean isDigit( byte b ) {
+        return b >= '0' && b <= '9';
+    }
+
+    /**
+     * @return the length of the header of an octet-counted frame starting at the given position, including the space
+     * after the length, 0 if the header is not complete yet, or -1 if the frame is not octet-counted
+     */
+    private static int frameHeaderLength( byte[] bytes, int start, int end ) {
+        for ( int i = start; i < end && i - start < MAX_FRAME_HEADER_LENGTH; i++ ) {
+            if ( bytes[ i ] == ' ' ) {
+                return i > start ? i - start + 1 : -1;
+            }
+            if ( !isDigit( bytes[ i ] ) ) {
+                return -1;
+            }
+        }
+        return end - start < MAX_FRAME_HEADER_LENGTH ? 0 : -1;
+    }
+
+    private static int parseFrameLength( byte[] bytes, int start, int end ) {
+        int length = 0;
+        for ( int i = start; i < end; i++ ) {
+            length = length * 10 + ( bytes[ i ] - '0' );
+        }
+        return length;
+    }
+
+    private static int indexOfNewLine( byte[] bytes, int from, int to ) {
+        for ( int i = from; i < to; i++ ) {
+            if ( bytes[ i ] == '\n' ) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return "LineListener{" +
+                "endpoints=" + endpoints +
+                ", receivedLines=" + receivedLines +
+                ", droppedLines=" + droppedLines +
+                '}';
+    }
+}
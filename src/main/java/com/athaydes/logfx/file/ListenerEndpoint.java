@@ -0,0 +1,137 @@
+package com.athaydes.logfx.file;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Objects;
+
+/**
+ * An address and protocol on which a {@link LineListener} receives log lines.
+ * <p>
+ * Endpoints are written as {@code <protocol>:[<host>:]<port>}, for example {@code syslog-udp:5514} or
+ * {@code tcp:0.0.0.0:5000}. If no host is given, only connections from the local machine are accepted.
+ */
+public final class ListenerEndpoint {
+
+    public enum Protocol {
+        /**
+         * Syslog messages, one per UDP datagram.
+         */
+        SYSLOG_UDP( "syslog-udp" ),
+
+        /**
+         * Syslog messages over TCP, either with octet-counting or with new-line framing (RFC 6587).
+         */
+        SYSLOG_TCP( "syslog-tcp" ),
+
+        /**
+         * Lines separated by new-lines over TCP.
+         */
+        TCP( "tcp" );
+
+        private final String name;
+
+        Protocol( String name ) {
+            this.name = name;
+        }
+
+        static Protocol ofName( String name ) {
+            for ( Protocol protocol : values() ) {
+                if ( protocol.name.equals( name ) ) {
+                    return protocol;
+                }
+            }
+            throw new IllegalArgumentException( "Unknown protocol: " + name +
+                    " (valid protocols are syslog-udp, syslog-tcp and tcp)" );
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private final Protocol protocol;
+    private final InetSocketAddress address;
+
+    public ListenerEndpoint( Protocol protocol, InetSocketAddress address ) {
+        this.protocol = protocol;
+        this.address = address;
+    }
+
+    /**
+     * @param value an endpoint, as in {@code syslog-tcp:127.0.0.1:5514}
+     * @return the endpoint
+     * @throws IllegalArgumentException if the value is not a valid endpoint
+     */
+    public static ListenerEndpoint parse( String value ) {
+        int protocolEnd = value.indexOf( ':' );
+        if ( protocolEnd < 0 ) {
+            throw new IllegalArgumentException( "Invalid endpoint: " + value +
+                    " (expected <protocol>:[<host>:]<port>)" );
+        }
+
+        Protocol protocol = Protocol.ofName( value.substring( 0, protocolEnd ) );
+        String hostAndPort = value.substring( protocolEnd + 1 );
+
+        int portStart = hostAndPort.lastIndexOf( ':' );
+        String host = portStart < 0 ? null : hostAndPort.substring( 0, portStart );
+        String portValue = hostAndPort.substring( portStart + 1 );
+
+        int port;
+        try {
+            port = Integer.parseInt( portValue );
+        } catch ( NumberFormatException e ) {
+            port = -1;
+        }
+        if ( port < 0 || port > 65535 ) {
+            throw new IllegalArgumentException( "Invalid port: " + portValue );
+        }
+
+        InetSocketAddress address;
+        if ( host == null ) {
+            address = new InetSocketAddress( InetAddress.getLoopbackAddress(), port );
+        } else {
+            // IPv6 addresses are written in brackets, as in [::1]:5514
+            if ( host.startsWith( "[" ) && host.endsWith( "]" ) ) {
+                host = host.substring( 1, host.length() - 1 );
+            }
+            address = new InetSocketAddress( host, port );
+            if ( address.isUnresolved() ) {
+                throw new IllegalArgumentException( "Unknown host: " + host );
+            }
+        }
+
+        return new ListenerEndpoint( protocol, address );
+    }
+
+    public Protocol getProtocol() {
+        return protocol;
+    }
+
+    public InetSocketAddress getAddress() {
+        return address;
+    }
+
+    @Override
+    public boolean equals( Object other ) {
+        if ( this == other ) return true;
+        if ( other == null || getClass() != other.getClass() ) return false;
+        ListenerEndpoint that = ( ListenerEndpoint ) other;
+        return protocol == that.protocol &&
+                address.equals( that.address );
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash( protocol, address );
+    }
+
+    @Override
+    public String toString() {
+        String host = address.getAddress().getHostAddress();
+        if ( host.contains( ":" ) ) {
+            host = "[" + host + "]";
+        }
+        return protocol + ":" + host + ":" + address.getPort();
+    }
+}
@@ -0,0 +1,156 @@
+package com.athaydes.logfx.file;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@link FileChunks} implementation that exposes the file contents directly through memory-mapped segments.
+ * <p>
+ * Segments are mapped lazily and remain mapped between reads (up to a maximum number of segments),
+ * so the file only needs to be opened when a segment that is not yet mapped is requested.
+ * <p>
+ * Segments which are no longer fully backed by the file, or which may have grown since they were mapped,
+ * are discarded when {@link #open()} is called.
+ */
+final class MappedFileChunks implements FileChunks {
+
+    private static final Logger log = LoggerFactory.getLogger( MappedFileChunks.class );
+
+    static final int MAX_MAPPED_SEGMENTS = 16;
+
+    private final File file;
+    private final int segmentSize;
+
+    // access-ordered, so the least recently used segment is evicted first
+    private final Map<Long, MappedByteBuffer> segments =
+            new LinkedHashMap<Long, MappedByteBuffer>( MAX_MAPPED_SEGMENTS + 1, 0.75f, true ) {
+                @Override
+                protected boolean removeEldestEntry( Map.Entry<Long, MappedByteBuffer> eldest ) {
+                    return size() > MAX_MAPPED_SEGMENTS;
+                }
+            };
+
+    private long length;
+
+    // only opened when a new segment needs to be mapped
+    private FileChannel channel;
+
+    MappedFileChunks( File file, int segmentSize ) {
+        if ( segmentSize < 1 ) {
+            throw new IllegalArgumentException( "Segment size must be positive" );
+        }
+        this.file = file;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Prepare this instance for a new read operation.
+     *
+     * @return this instance
+     */
+    MappedFileChunks open() {
+        length = file.length();
+
+        Iterator<Map.Entry<Long, MappedByteBuffer>> iterator = segments.entrySet().iterator();
+        while ( iterator.hasNext() ) {
+            Map.Entry<Long, MappedByteBuffer> entry = iterator.next();
+            long segmentStart = entry.getKey() * segmentSize;
+            long segmentEnd = segmentStart + entry.getValue().limit();
+            boolean isComplete = entry.getValue().limit() == segmentSize || segmentEnd == length;
+            if ( segmentEnd > length || !isComplete ) {
+                log.trace( "Discarding stale mapped segment {}", entry.getKey() );
+                iterator.remove();
+            }
+        }
+
+        return this;
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public ByteBuffer chunkFrom( long start, int maxBytes ) throws IOException {
+        if ( start >= length ) {
+            return ByteBuffer.allocate( 0 );
+        }
+        long index = start / segmentSize;
+        MappedByteBuffer segment = segment( index );
+        int offset = ( int ) ( start - index * segmentSize );
+        return slice( segment, offset, Math.min( maxBytes, segment.limit() - offset ) );
+    }
+
+    @Override
+    public ByteBuffer chunkBefore( long end, int maxBytes ) throws IOException {
+        end = Math.min( end, length );
+        if ( end <= 0L ) {
+            return ByteBuffer.allocate( 0 );
+        }
+        long index = ( end - 1 ) / segmentSize;
+        MappedByteBuffer segment = segment( index );
+        int endOffset = ( int ) ( end - index * segmentSize );
+        int byteCount = Math.min( maxBytes, endOffset );
+        return slice( segment, endOffset - byteCount, byteCount );
+    }
+
+    /**
+     * Discard all mapped segments.
+     * <p>
+     * The memory backing the segments is only released after they are garbage-collected.
+     */
+    void clear() {
+        segments.clear();
+    }
+
+    private MappedByteBuffer segment( long index ) throws IOException {
+        MappedByteBuffer segment = segments.get( index );
+        if ( segment == null ) {
+            long start = index * segmentSize;
+            long size = Math.min( segmentSize, length - start );
+            log.trace( "Mapping segment {} ({}..{}) of file {}", index, start, start + size, file );
+            if ( channel == null ) {
+                channel = FileChannel.open( file.toPath(), StandardOpenOption.READ );
+            }
+            segment = channel.map( FileChannel.MapMode.READ_ONLY, start, size );
+            segments.put( index, segment );
+        }
+        return segment;
+    }
+
+    private static ByteBuffer slice( ByteBuffer segment, int offset, int byteCount ) {
+        ByteBuffer buffer = segment.duplicate();
+        // cast needed so that the code also runs on Java 8, where Buffer methods do not return ByteBuffer
+        ( ( Buffer ) buffer ).position( offset );
+        ( ( Buffer ) buffer ).limit( offset + byteCount );
+        return buffer.slice();
+    }
+
+    /**
+     * Closes the file channel, if it was opened during the current read operation.
+     * <p>
+     * Mapped segments remain valid after the channel is closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if ( channel != null ) {
+            try {
+                channel.close();
+            } finally {
+                channel = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.athaydes.logfx.file;
+
+import com.athaydes.logfx.config.Properties;
+
+import java.io.File;
+
+/**
+ * A {@link FileContentReader} that reads files through memory-mapped segments.
+ * <p>
+ * This reader is meant for very large files: segments of the file are mapped on demand and kept mapped
+ * between reads, so moving up or down the file does not require re-opening the file, and new lines are
+ * searched for directly in the mapped memory, without copying the file contents into intermediate buffers.
+ * <p>
+ * Notice that on some Operating Systems (notably, Windows), a file cannot be deleted or truncated while
+ * it is memory-mapped, which may interfere with log rotation.
+ */
+public class MappedFileReader extends FileReader {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private final MappedFileChunks chunks;
+
+    public MappedFileReader( File file, int fileWindowSize ) {
+        this( file, fileWindowSize, DEFAULT_SEGMENT_SIZE );
+    }
+
+    MappedFileReader( File file, int fileWindowSize, int segmentSize ) {
+        this( file, fileWindowSize, segmentSize, ADAPTIVE_BUFFER_SIZE, Properties.getMaxLineLength() );
+    }
+
+    /**
+     * @param file           the file to read
+     * @param fileWindowSize number of lines in the file window
+     * @param segmentSize    size of the mapped segments
+     * @param bufferSize     size of the chunks read in each operation, as in {@link FileReader}
+     *                       (the chunks read from mapped segments are slices of the segments, never copies)
+     * @param maxLineLength  maximum number of characters of a line
+     */
+    MappedFileReader( File file, int fileWindowSize, int segmentSize, int bufferSize, int maxLineLength ) {
+        super( file, fileWindowSize, bufferSize, maxLineLength );
+        this.chunks = new MappedFileChunks( file, segmentSize );
+    }
+
+    @Override
+    FileChunks openChunks( int bufferSize ) {
+        return chunks.open();
+    }
+
+    @Override
+    void releaseFile() {
+        super.releaseFile();
+        chunks.clear();
+    }
+}
@@ -0,0 +1,725 @@
+package com.athaydes.logfx.file;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * A {@link FileContentReader} that presents several log files as a single timeline, with their lines
+ * interleaved by date-time.
+ * <p>
+ * Each file is read by its own {@link FileReader}, and lines are merged lazily as the file window moves:
+ * only a small batch of lines is read ahead of the file window (and behind it) in each file, and the next
+ * line to show is picked from the heads of those batches with a heap (a k-way merge).
+ * <p>
+ * Lines without a date-time (e.g. the lines of a stack-trace) are kept after the line before them, as if they
+ * had its date-time. Lines of the same file always appear in the same order as in the file, and lines with
+ * the same date-time are ordered by the position of their file in the list of merged files.
+ * <p>
+ * The file each line of the file window comes from is given by {@link #getLineSources()}, and line numbers
+ * refer to the line within that file.
+ */
+public class MergedFileReader implements FileContentReader {
+
+    private static final Logger log = LoggerFactory.getLogger( MergedFileReader.class );
+
+    // how many lines are read from a file at a time
+    static final int BATCH_SIZE = 64;
+
+    // how many lines to keep before and after the file window in each file
+    private static final int MAX_BUFFERED_LINES = 4 * BATCH_SIZE;
+
+    // how many lines without a date-time to read above the file window, looking for the date-time they belong to,
+    // before giving up and placing them before all other lines
+    private static final int MAX_UNDATED_LINES = 16 * BATCH_SIZE;
+
+    // date-time of lines which do not follow any line with a date-time
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    // date-time of lines read upwards while the date-time of the lines above them is not known yet
+    private static final long UNRESOLVED = Long.MAX_VALUE;
+
+    /**
+     * A file to merge and the function to extract the date-time of its lines.
+     */
+    public static final class Source {
+        private final File file;
+        private final Function<String, Optional<ZonedDateTime>> dateExtractor;
+
+        public Source( File file, Function<String, Optional<ZonedDateTime>> dateExtractor ) {
+            this.file = file;
+            this.dateExtractor = dateExtractor;
+        }
+
+        public File getFile() {
+            return file;
+        }
+    }
+
+    private static final class MergedLine {
+        private final int source;
+        private final long start;
+        private final long end;
+        private final long lineNumber;
+        private final LineHandle line;
+        private final boolean dated;
+        private long epochMillis;
+
+        MergedLine( int source, long start, long end, long lineNumber,
+                    LineHandle line, boolean dated, long epochMillis ) {
+            this.source = source;
+            this.start = start;
+            this.end = end;
+            this.lineNumber = lineNumber;
+            this.line = line;
+            this.dated = dated;
+            this.epochMillis = epochMillis;
+        }
+    }
+
+    private static final Comparator<MergedLine> LINE_ORDER = Comparator
+            .<MergedLine>comparingLong( line -> line.epochMillis )
+            .thenComparingInt( line -> line.source );
+
+    /**
+     * State of one of the merged files.
+     * <p>
+     * The lines of the file in the file window are those between {@code top} and {@code bottom}.
+     * The lines immediately above and below them which were already read are kept in {@code above}
+     * and {@code below}, in the order they appear in the file.
+     */
+    private final class Cursor {
+        private final int index;
+        private final Source source;
+        private final FileReader reader;
+        private final boolean compressed;
+
+        private long top;
+        private long bottom;
+
+        // date-time of the line before each position, which lines without a date-time at that position belong to
+        private long topDateTime = NO_DATE;
+        private long bottomDateTime = NO_DATE;
+
+        private final ArrayDeque<MergedLine> above = new ArrayDeque<>();
+        private final ArrayDeque<MergedLine> below = new ArrayDeque<>();
+
+        Cursor( int index, Source source ) {
+            this.index = index;
+            this.source = source;
+            this.compressed = GzipFileReader.isGzipFile( source.file );
+            this.reader = compressed ?
+                    new GzipFileReader( source.file, BATCH_SIZE ) :
+                    new FileReader( source.file, BATCH_SIZE );
+        }
+
+        void positionAt( long position, long dateTime ) {
+            top = bottom = position;
+            topDateTime = bottomDateTime = dateTime;
+            above.clear();
+            below.clear();
+        }
+
+        void positionAtEnd() {
+            reader.positionAtEnd();
+            positionAt( reader.getLineStarts().getFirst(), NO_DATE );
+        }
+
+        /**
+         * @return the first line below the file window, or null if there is none
+         */
+        MergedLine peekBelow() {
+            if ( below.isEmpty() ) {
+                readBelow();
+            }
+            return below.peekFirst();
+        }
+
+        /**
+         * @return the last line above the file window, or null if there is none
+         */
+        MergedLine peekAbove() {
+            while ( above.isEmpty() || above.peekLast().epochMillis == UNRESOLVED ) {
+                if ( !readAbove() ) {
+                    break;
+                }
+            }
+            return above.peekLast();
+        }
+
+        MergedLine takeBelow() {
+            MergedLine line = below.removeFirst();
+            bottom = line.end;
+            bottomDateTime = line.epochMillis;
+            return line;
+        }
+
+        MergedLine takeAbove() {
+            MergedLine line = above.removeLast();
+            if ( top == bottom ) {
+                // lines appended to the file after this line belong to its date-time
+                bottomDateTime = line.epochMillis;
+            }
+            top = line.start;
+            topDateTime = line.epochMillis;
+            return line;
+        }
+
+        void dropFromTop( MergedLine line ) {
+            top = line.end;
+            topDateTime = line.epochMillis;
+            above.addLast( line );
+            if ( above.size() > MAX_BUFFERED_LINES ) {
+                above.removeFirst();
+            }
+        }
+
+        void dropFromBottom( MergedLine line ) {
+            bottom = line.start;
+            bottomDateTime = line.epochMillis;
+            below.addFirst( line );
+            if ( below.size() > MAX_BUFFERED_LINES ) {
+                below.removeLast();
+            }
+        }
+
+        private void readBelow() {
+            long position = below.isEmpty() ? bottom : below.peekLast().end;
+            long dateTime = below.isEmpty() ? bottomDateTime : below.peekLast().epochMillis;
+
+            reader.positionAt( position );
+            Optional<LinkedList<LineHandle>> lines = reader.moveDownLines( BATCH_SIZE );
+            if ( !lines.isPresent() ) {
+                return;
+            }
+
+            for ( MergedLine line : mergedLinesOf( lines.get() ) ) {
+                if ( line.dated ) {
+                    dateTime = line.epochMillis;
+                } else {
+                    line.epochMillis = dateTime;
+                }
+                below.addLast( line );
+            }
+        }
+
+        private boolean readAbove() {
+            long position = above.isEmpty() ? top : above.peekFirst().start;
+
+            if ( position <= 0L ) {
+                resolveAbove( NO_DATE );
+                return false;
+            }
+
+            reader.positionAt( position );
+            Optional<LinkedList<LineHandle>> lines = reader.moveUpLines( BATCH_SIZE );
+            if ( !lines.isPresent() || lines.get().isEmpty() ) {
+                resolveAbove( NO_DATE );
+                return false;
+            }
+
+            List<MergedLine> newLines = mergedLinesOf( lines.get() );
+            for ( int i = newLines.size() - 1; i >= 0; i-- ) {
+                above.addFirst( newLines.get( i ) );
+            }
+
+            // only the lines below a line with a date-time can be resolved
+            long dateTime = UNRESOLVED;
+            int unresolvedLines = 0;
+            for ( MergedLine line : above ) {
+                if ( line.dated ) {
+                    dateTime = line.epochMillis;
+                } else if ( line.epochMillis == UNRESOLVED ) {
+                    line.epochMillis = dateTime;
+                    if ( dateTime == UNRESOLVED ) {
+                        unresolvedLines++;
+                    }
+                }
+            }
+
+            if ( unresolvedLines > MAX_UNDATED_LINES ) {
+                log.debug( "Too many lines without a date-time in file {}, placing them before other lines",
+                        source.file );
+                resolveAbove( NO_DATE );
+            }
+
+            return true;
+        }
+
+        private void resolveAbove( long dateTime ) {
+            for ( MergedLine line : above ) {
+                if ( line.epochMillis != UNRESOLVED ) {
+                    break;
+                }
+                line.epochMillis = dateTime;
+            }
+        }
+
+        private List<MergedLine> mergedLinesOf( List<LineHandle> lines ) {
+            FileLineStarts lineStarts = reader.getLineStarts();
+            Iterator<Long> lineNumbers = reader.getLoadedLineNumbers().iterator();
+            List<MergedLine> result = new ArrayList<>( lines.size() );
+            int i = 0;
+            for ( LineHandle line : lines ) {
+                long start = lineStarts.lineStart( i );
+                long end = start + lineStarts.lineLength( i );
+                long lineNumber = lineNumbers.hasNext() ? lineNumbers.next() : 0L;
+                Optional<ZonedDateTime> dateTime = source.dateExtractor.apply( line.getText() );
+                result.add( new MergedLine( index, start, end, lineNumber, line, dateTime.isPresent(),
+                        dateTime.map( d -> d.toInstant().toEpochMilli() ).orElse( UNRESOLVED ) ) );
+                i++;
+            }
+            return result;
+        }
+    }
+
+    private final List<Cursor> cursors;
+    private final int fileWindowSize;
+    private final LinkedList<MergedLine> window = new LinkedList<>();
+
+    // incremented on each call to cancelCurrentRead(), so that moves stop before reading more lines
+    private final AtomicLong cancelRequests = new AtomicLong();
+
+    private volatile Charset charset = null;
+
+    public MergedFileReader( List<Source> sources, int fileWindowSize ) {
+        if ( sources.isEmpty() ) {
+            throw new IllegalArgumentException( "No files to merge" );
+        }
+        this.fileWindowSize = fileWindowSize;
+        List<Cursor> cursors = new ArrayList<>( sources.size() );
+        for ( Source source : sources ) {
+            cursors.add( new Cursor( cursors.size(), source ) );
+        }
+        this.cursors = Collections.unmodifiableList( cursors );
+    }
+
+    @Override
+    public void setLineFilter( Predicate<String> lineFilter ) {
+        for ( Cursor cursor : cursors ) {
+            cursor.reader.setLineFilter( lineFilter );
+        }
+        clearBuffers();
+    }
+
+    @Override
+    public void setCharset( Charset charset ) {
+        this.charset = charset;
+        for ( Cursor cursor : cursors ) {
+            cursor.reader.setCharset( charset );
+        }
+        clearBuffers();
+    }
+
+    @Override
+    public Optional<Charset> getCharset() {
+        return Optional.ofNullable( charset );
+    }
+
+    @Override
+    public void setRecordMode( RecordMode recordMode ) {
+        for ( Cursor cursor : cursors ) {
+            // each file tells where its records start with its own date-time format
+            cursor.reader.setRecordMode( recordMode == null ?
+                    null :
+                    recordMode.withDateExtractor( cursor.source.dateExtractor ) );
+        }
+        clearBuffers();
+    }
+
+    @Override
+    public void cancelCurrentRead() {
+        cancelRequests.incrementAndGet();
+        for ( Cursor cursor : cursors ) {
+            cursor.reader.cancelCurrentRead();
+        }
+    }
+
+    @Override
+    public Optional<? extends List<String>> moveUp( int lines ) {
+        log.trace( "Moving up {} lines", lines );
+        if ( !anyFileExists() ) {
+            return Optional.empty();
+        }
+        return Optional.of( LineHandle.textOf( handlesOf( mergeUp( lines ) ) ) );
+    }
+
+    @Override
+    public Optional<? extends List<String>> moveDown( int lines ) {
+        log.trace( "Moving down {} lines", lines );
+        if ( !anyFileExists() ) {
+            return Optional.empty();
+        }
+        return Optional.of( LineHandle.textOf( handlesOf( mergeDown( lines ) ) ) );
+    }
+
+    /**
+     * Moves the file window to the given date-time.
+     * <p>
+     * The date-time of the lines of each file is extracted with the function given for the file when this reader
+     * was created, so the given function is not used.
+     */
+    @Override
+    public FileQueryResult moveTo( ZonedDateTime dateTime,
+                                   Function<String, Optional<ZonedDateTime>> dateExtractor ) {
+        log.trace( "Moving to date: {}", dateTime );
+
+        long[] positions = new long[ cursors.size() ];
+        boolean foundDates = false;
+
+        for ( Cursor cursor : cursors ) {
+            FileQueryResult result = cursor.reader.moveTo( dateTime, cursor.source.dateExtractor );
+            if ( result.isSuccess() ) {
+                foundDates = true;
+                positions[ cursor.index ] = cursor.reader.getLineStarts().getFirst();
+            } else {
+                // a file without dates cannot be merged by date, so all of its lines are placed before others
+                positions[ cursor.index ] = -1L;
+            }
+        }
+
+        if ( !foundDates ) {
+            log.debug( "No dates found in any of the merged files" );
+            return UnsuccessfulQueryResult.INSTANCE;
+        }
+
+        long target = dateTime.toInstant().toEpochMilli();
+        window.clear();
+
+        for ( Cursor cursor : cursors ) {
+            if ( positions[ cursor.index ] < 0L ) {
+                cursor.positionAtEnd();
+                continue;
+            }
+            cursor.positionAt( positions[ cursor.index ], NO_DATE );
+
+            // make the position of each file the boundary between the lines before and after the date-time
+            MergedLine line;
+            while ( ( line = cursor.peekBelow() ) != null && line.epochMillis <= target ) {
+                cursor.dropFromTop( cursor.takeBelow() );
+            }
+            while ( ( line = cursor.peekAbove() ) != null && line.epochMillis > target ) {
+                cursor.dropFromBottom( cursor.takeAbove() );
+            }
+        }
+
+        // the file window starts at the last line at or before the date-time
+        if ( mergeUp( 1 ).isEmpty() ) {
+            log.debug( "Date {} is before all merged files", dateTime );
+            top();
+            return OutsideRangeQueryResult.BEFORE;
+        }
+
+        boolean linesAfter = mergeDown( fileWindowSize - 1 ).size() > 0;
+        if ( !linesAfter ) {
+            log.debug( "Date {} is after all merged files", dateTime );
+            tail();
+            return OutsideRangeQueryResult.AFTER;
+        }
+
+        return new SuccessfulQueryResult( 1 );
+    }
+
+    /**
+     * Moves the file window so that the first line is the line with the given number in the file of the
+     * current first line of the file window.
+     */
+    @Override
+    public FileQueryResult moveToLine( long lineNumber ) {
+        log.trace( "Moving to line {}", lineNumber );
+
+        Cursor cursor = cursors.get( window.isEmpty() ? 0 : window.getFirst().source );
+        FileQueryResult result = cursor.reader.moveToLine( lineNumber );
+
+        if ( result.isBeforeRange() ) {
+            top();
+        } else if ( result.isAfterRange() ) {
+            tail();
+        } else if ( result.isSuccess() ) {
+            Optional<? extends List<LineHandle>> lines = cursor.reader.refreshLines();
+            if ( !lines.isPresent() || lines.get().isEmpty() ) {
+                return UnsuccessfulQueryResult.INSTANCE;
+            }
+            MergedLine line = cursor.mergedLinesOf( lines.get() ).get( result.fileLineNumber() - 1 );
+            if ( !line.dated ) {
+                // the date-time of the line is the date-time of the first line above it with one
+                cursor.positionAt( line.start, NO_DATE );
+                MergedLine above = cursor.peekAbove();
+                line.epochMillis = above == null ? NO_DATE : above.epochMillis;
+            }
+            positionAt( line );
+            return new SuccessfulQueryResult( 1 );
+        }
+
+        return result;
+    }
+
+    @Override
+    public void top() {
+        window.clear();
+        for ( Cursor cursor : cursors ) {
+            cursor.positionAt( 0L, NO_DATE );
+        }
+    }
+
+    @Override
+    public void tail() {
+        window.clear();
+        for ( Cursor cursor : cursors ) {
+            cursor.positionAtEnd();
+        }
+    }
+
+    @Override
+    public Optional<? extends List<String>> refresh() {
+        return refreshLines().map( LineHandle::textOf );
+    }
+
+    @Override
+    public Optional<? extends List<LineHandle>> refreshLines() {
+        if ( !anyFileExists() ) {
+            return Optional.empty();
+        }
+
+        window.clear();
+        for ( Cursor cursor : cursors ) {
+            // the position at the end of a file without a new-line at the end is after its last byte
+            if ( !cursor.compressed && cursor.top > cursor.source.file.length() + 1L ) {
+                log.debug( "File {} has shrunk, merging it again from the start", cursor.source.file );
+                cursor.positionAt( 0L, NO_DATE );
+            } else {
+                cursor.positionAt( cursor.top, cursor.topDateTime );
+            }
+        }
+
+        mergeDown( fileWindowSize );
+        if ( window.size() < fileWindowSize ) {
+            mergeUp( fileWindowSize - window.size() );
+        }
+
+        return Optional.of( handlesOf( window ) );
+    }
+
+    /**
+     * Follow the tail of the merged files.
+     * <p>
+     * The whole file window is always read again from the tail of the files.
+     *
+     * @return the changes to the file window, or nothing if none of the files exist
+     */
+    @Override
+    public Optional<TailUpdate> refreshTail() {
+        tail();
+        return refresh().map( TailUpdate::fullWindow );
+    }
+
+    @Override
+    public long[] getLineNumbers() {
+        long[] lineNumbers = new long[ fileWindowSize ];
+        int index = 0;
+        for ( MergedLine line : window ) {
+            lineNumbers[ index++ ] = line.lineNumber;
+        }
+        return lineNumbers;
+    }
+
+    /**
+     * Get the files the lines in the current file window come from.
+     *
+     * @return array with the same length as the file window, containing the index of the file, in the list of
+     * merged files, of each line in the file window, or -1 where the file window is not full.
+     */
+    public int[] getLineSources() {
+        int[] sources = new int[ fileWindowSize ];
+        int index = 0;
+        for ( MergedLine line : window ) {
+            sources[ index++ ] = line.source;
+        }
+        for ( ; index < sources.length; index++ ) {
+            sources[ index ] = -1;
+        }
+        return sources;
+    }
+
+    /**
+     * @return the merged files, in the order they were given
+     */
+    public List<File> getFiles() {
+        List<File> files = new ArrayList<>( cursors.size() );
+        for ( Cursor cursor : cursors ) {
+            files.add( cursor.source.file );
+        }
+        return files;
+    }
+
+    /**
+     * @return the first of the merged files
+     */
+    @Override
+    public File getFile() {
+        return cursors.get( 0 ).source.file;
+    }
+
+    @Override
+    public void close() {
+        for ( Cursor cursor : cursors ) {
+            cursor.reader.close();
+        }
+    }
+
+    private boolean anyFileExists() {
+        for ( Cursor cursor : cursors ) {
+            if ( cursor.source.file.isFile() ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void clearBuffers() {
+        for ( Cursor cursor : cursors ) {
+            cursor.above.clear();
+            cursor.below.clear();
+        }
+    }
+
+    /**
+     * Empty the file window, positioning it at the given line, then fill it with the lines from there.
+     */
+    private void positionAt( MergedLine line ) {
+        window.clear();
+        for ( Cursor cursor : cursors ) {
+            if ( cursor.index == line.source ) {
+                cursor.positionAt( line.start, line.epochMillis );
+                continue;
+            }
+
+            // find the boundary between the lines that go before and after the line in the other files
+            FileQueryResult result = cursor.reader.moveTo( ZonedDateTime.ofInstant(
+                    Instant.ofEpochMilli( line.epochMillis ), ZoneOffset.UTC ), cursor.source.dateExtractor );
+            if ( result.isSuccess() ) {
+                cursor.positionAt( cursor.reader.getLineStarts().getFirst(), NO_DATE );
+            } else {
+                cursor.positionAtEnd();
+                continue;
+            }
+            MergedLine other;
+            while ( ( other = cursor.peekBelow() ) != null && LINE_ORDER.compare( other, line ) < 0 ) {
+                cursor.dropFromTop( cursor.takeBelow() );
+            }
+            while ( ( other = cursor.peekAbove() ) != null && LINE_ORDER.compare( other, line ) > 0 ) {
+                cursor.dropFromBottom( cursor.takeAbove() );
+            }
+        }
+        mergeDown( fileWindowSize );
+    }
+
+    /**
+     * Add up to the given number of lines to the bottom of the file window, taking the earliest line below
+     * the file window among all files each time.
+     */
+    private List<MergedLine> mergeDown( int lines ) {
+        int count = Math.min( lines, fileWindowSize );
+        List<MergedLine> result = new ArrayList<>( count );
+        if ( count < 1 ) {
+            return result;
+        }
+
+        PriorityQueue<Cursor> heads = new PriorityQueue<>( cursors.size(),
+                ( a, b ) -> LINE_ORDER.compare( a.below.peekFirst(), b.below.peekFirst() ) );
+        for ( Cursor cursor : cursors ) {
+            if ( cursor.peekBelow() != null ) {
+                heads.add( cursor );
+            }
+        }
+
+        long requests = cancelRequests.get();
+        while ( result.size() < count && !heads.isEmpty() && cancelRequests.get() == requests ) {
+            Cursor cursor = heads.poll();
+            MergedLine line = cursor.takeBelow();
+            window.addLast( line );
+            result.add( line );
+            if ( cursor.peekBelow() != null ) {
+                heads.add( cursor );
+            }
+        }
+
+        while ( window.size() > fileWindowSize ) {
+            MergedLine dropped = window.removeFirst();
+            cursors.get( dropped.source ).dropFromTop( dropped );
+        }
+
+        return result;
+    }
+
+    /**
+     * Add up to the given number of lines to the top of the file window, taking the latest line above
+     * the file window among all files each time.
+     */
+    private List<MergedLine> mergeUp( int lines ) {
+        int count = Math.min( lines, fileWindowSize );
+        LinkedList<MergedLine> result = new LinkedList<>();
+        if ( count < 1 ) {
+            return result;
+        }
+
+        PriorityQueue<Cursor> heads = new PriorityQueue<>( cursors.size(),
+                ( a, b ) -> LINE_ORDER.compare( b.above.peekLast(), a.above.peekLast() ) );
+        for ( Cursor cursor : cursors ) {
+            if ( cursor.peekAbove() != null ) {
+                heads.add( cursor );
+            }
+        }
+
+        long requests = cancelRequests.get();
+        while ( result.size() < count && !heads.isEmpty() && cancelRequests.get() == requests ) {
+            Cursor cursor = heads.poll();
+            MergedLine line = cursor.takeAbove();
+            window.addFirst( line );
+            result.addFirst( line );
+            if ( cursor.peekAbove() != null ) {
+                heads.add( cursor );
+            }
+        }
+
+        while ( window.size() > fileWindowSize ) {
+            MergedLine dropped = window.removeLast();
+            cursors.get( dropped.source ).dropFromBottom( dropped );
+        }
+
+        return result;
+    }
+
+    private static List<LineHandle> handlesOf( List<MergedLine> lines ) {
+        List<LineHandle> result = new ArrayList<>( lines.size() );
+        for ( MergedLine line : lines ) {
+            result.add( line.line );
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "MergedFileReader{" +
+                "files=" + getFiles() +
+                ", windowSize=" + window.size() +
+                '}';
+    }
+}
@@ -0,0 +1,163 @@
+package com.athaydes.logfx.file;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Searches several files at the same time, from the top, aggregating the progress of the searches of each file.
+ * <p>
+ * The searches of the files run concurrently, with at most a few files being searched at any time
+ * (see {@link FileSearch}).
+ */
+public final class MultiFileSearch {
+
+    /**
+     * The progress of the searches of all files.
+     */
+    public static final class Summary {
+        private final List<FileSearch.Progress> fileProgress;
+        private final long elapsedNanos;
+
+        Summary( List<FileSearch.Progress> fileProgress, long elapsedNanos ) {
+            this.fileProgress = fileProgress;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return the progress of the search of each file, in the same order as the searches were given,
+         * or null for the files whose search has not reported any progress yet
+         */
+        public List<FileSearch.Progress> getFileProgress() {
+            return fileProgress;
+        }
+
+        /**
+         * @return the number of matches found so far in all files
+         */
+        public int getMatchCount() {
+            int count = 0;
+            for ( FileSearch.Progress progress : fileProgress ) {
+                count += progress == null ? 0 : progress.getMatchCount();
+            }
+            return count;
+        }
+
+        /**
+         * @return the number of bytes scanned so far in all files
+         */
+        public long getScannedBytes() {
+            long bytes = 0L;
+            for ( FileSearch.Progress progress : fileProgress ) {
+                bytes += progress == null ? 0L : progress.getScannedBytes();
+            }
+            return bytes;
+        }
+
+        /**
+         * @return the number of bytes scanned per second, on average, since the searches started
+         */
+        public double getBytesPerSecond() {
+            if ( elapsedNanos <= 0L ) {
+                return 0.0;
+            }
+            return getScannedBytes() * ( double ) TimeUnit.SECONDS.toNanos( 1 ) / elapsedNanos;
+        }
+
+        /**
+         * @return true if the searches of all files have finished
+         */
+        public boolean isDone() {
+            for ( FileSearch.Progress progress : fileProgress ) {
+                if ( progress == null || !progress.isDone() ) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "Summary{" +
+                    "fileProgress=" + fileProgress +
+                    ", elapsedNanos=" + elapsedNanos +
+                    '}';
+        }
+    }
+
+    private final List<FileSearch> searches;
+
+    // only accessed while holding the lock of this instance
+    private FileSearch.Progress[] fileProgress;
+    private long startTime;
+    private long generation = 0L;
+
+    /**
+     * @param searches searches of the files
+     */
+    public MultiFileSearch( List<FileSearch> searches ) {
+        this.searches = Collections.unmodifiableList( new ArrayList<>( searches ) );
+        this.fileProgress = new FileSearch.Progress[ searches.size() ];
+    }
+
+    /**
+     * @return the searches of each file
+     */
+    public List<FileSearch> getSearches() {
+        return searches;
+    }
+
+    /**
+     * Start searching all files for the lines accepted by the given filter, cancelling the searches in progress,
+     * if any.
+     * <p>
+     * This method may be called from any Thread.
+     *
+     * @param filter     filter accepting the lines to find, which must be thread-safe
+     * @param onProgress called from background Threads whenever the search of a file progresses,
+     *                   but not after the searches are cancelled. It should return quickly, as the searches of
+     *                   other files wait for it before reporting their own progress
+     */
+    public void start( Predicate<String> filter, Consumer<Summary> onProgress ) {
+        final long currentGeneration;
+        synchronized ( this ) {
+            currentGeneration = ++generation;
+            fileProgress = new FileSearch.Progress[ searches.size() ];
+            startTime = System.nanoTime();
+        }
+
+        for ( int i = 0; i < searches.size(); i++ ) {
+            final int index = i;
+            searches.get( i ).startFromTop( filter, progress -> {
+                // reporting while holding the lock, so that summaries are reported in order
+                synchronized ( this ) {
+                    if ( currentGeneration == generation ) {
+                        fileProgress[ index ] = progress;
+                        onProgress.accept( summary() );
+                    }
+                }
+            } );
+        }
+    }
+
+    /**
+     * Cancel the searches in progress, if any.
+     * <p>
+     * This method may be called from any Thread.
+     */
+    public void cancel() {
+        synchronized ( this ) {
+            generation++;
+        }
+        searches.forEach( FileSearch::cancel );
+    }
+
+    private Summary summary() {
+        List<FileSearch.Progress> progress = new ArrayList<>( fileProgress.length );
+        Collections.addAll( progress, fileProgress );
+        return new Summary( Collections.unmodifiableList( progress ), System.nanoTime() - startTime );
+    }
+}
@@ -0,0 +1,621 @@
+package com.athaydes.logfx.file;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Scanner that looks for the lines of a file accepted by a filter, using several Threads.
+ * <p>
+ * The bytes to scan are split into regions which are scanned in parallel. Each line belongs to the region
+ * where it starts, so the scan of a region starts at the first line that starts within it (which may require
+ * skipping the end of a line started in the previous region) and may end after the region's end, if its
+ * last line ends in a later region.
+ * <p>
+ * Regions are scanned ahead of time, but their results are consumed in order, so the accepted lines are
+ * always returned in the order they appear in the file. Once enough lines are found, regions still being
+ * scanned are abandoned.
+ * <p>
+ * A scan can be cancelled at any time, in which case the lines found in the regions consumed so far are returned.
+ * <p>
+ * Scans run on the {@link #INTERACTIVE_POOL} by default. Background work, such as searches of whole files, should use
+ * the {@link #BACKGROUND_POOL} instead, which leaves a core free and runs at a lower priority, so that it never delays
+ * the reads made to update what is being displayed (e.g. the tail of a filtered file).
+ */
+final class ParallelLineScanner {
+
+    private static final Logger log = LoggerFactory.getLogger( ParallelLineScanner.class );
+
+    static final int PARALLELISM = Math.max( 1, Runtime.getRuntime().availableProcessors() );
+
+    static final int DEFAULT_REGION_SIZE = 4 * 1024 * 1024;
+
+    // each step of a scan in steps covers this many bytes, so that the lines found do not use too much memory
+    static final long DEFAULT_STEP_SIZE = 2L * PARALLELISM * DEFAULT_REGION_SIZE;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    static final ForkJoinPool INTERACTIVE_POOL = createPool( PARALLELISM, "logfx-line-scanner-", Thread.NORM_PRIORITY );
+
+    static final ForkJoinPool BACKGROUND_POOL = createPool( Math.max( 1, PARALLELISM - 1 ),
+            "logfx-search-scanner-", Thread.MIN_PRIORITY );
+
+    /**
+     * A line accepted by the filter.
+     */
+    static final class Match {
+        final long start;
+        final long end;
+        final long lineNumber;
+        final LineHandle line;
+        final boolean endsWithNewLine;
+
+        Match( long start, long end, long lineNumber, LineHandle line, boolean endsWithNewLine ) {
+            this.start = start;
+            this.end = end;
+            this.lineNumber = lineNumber;
+            this.line = line;
+            this.endsWithNewLine = endsWithNewLine;
+        }
+    }
+
+    /**
+     * The result of a scan.
+     */
+    static final class Result {
+        final List<Match> matches;
+        final boolean reachedEnd;
+        final boolean cancelled;
+
+        // all lines starting between the start of the scan and this position were tested by the filter,
+        // and are terminated by a new-line
+        final long scannedTo;
+
+        Result( List<Match> matches, boolean reachedEnd, boolean cancelled, long scannedTo ) {
+            this.matches = matches;
+            this.reachedEnd = reachedEnd;
+            this.cancelled = cancelled;
+            this.scannedTo = scannedTo;
+        }
+    }
+
+    /**
+     * Receives the lines found by {@link #scanInSteps(long, long, long, boolean, StepListener)}, one step at a time.
+     */
+    interface StepListener {
+
+        /**
+         * @param stepStart position where the step started
+         * @param scannedTo position where the next step starts, as all lines starting before it were scanned
+         * @param matches   the lines found in the step, all starting before {@code scannedTo}
+         * @return true to scan the next step, false to stop scanning
+         * @throws IOException if the lines cannot be processed
+         */
+        boolean onStep( long stepStart, long scannedTo, List<Match> matches ) throws IOException;
+
+        /**
+         * @return maximum number of lines to find in the next step
+         */
+        default int maxLines() {
+            return Integer.MAX_VALUE;
+        }
+
+        /**
+         * @param position start of a line
+         * @return number of the line starting at the given position, or 0 if not known
+         * @throws IOException if the line number cannot be found
+         */
+        default long lineNumberAt( long position ) throws IOException {
+            return 0L;
+        }
+    }
+
+    private final FileChunks.Source chunksSource;
+    private final FileEncoding encoding;
+    private final int maxLineLength;
+    private final Predicate<LineHandle> filter;
+    private final byte[][] requiredTexts;
+    private final BooleanSupplier cancelled;
+    private final int regionSize;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param chunksSource  source of the file contents, which must be usable from several Threads at the same time
+     * @param encoding      encoding of the file
+     * @param maxLineLength maximum number of bytes to keep for each line
+     * @param filter        line filter, which must be thread-safe
+     * @param cancelled     returns true if the scan should be cancelled
+     * @param regionSize    number of bytes in each region
+     */
+    ParallelLineScanner( FileChunks.Source chunksSource,
+                         FileEncoding encoding,
+                         int maxLineLength,
+                         Predicate<LineHandle> filter,
+                         BooleanSupplier cancelled,
+                         int regionSize ) {
+        this( chunksSource, encoding, maxLineLength, filter, null, cancelled, regionSize, INTERACTIVE_POOL );
+    }
+
+    /**
+     * @param chunksSource  source of the file contents, which must be usable from several Threads at the same time
+     * @param encoding      encoding of the file
+     * @param maxLineLength maximum number of bytes to keep for each line
+     * @param filter        line filter, which must be thread-safe
+     * @param requiredTexts ASCII texts one of which every line accepted by the filter contains
+     *                      (see {@link LineFilter#getRequiredTexts()}), or null if not known
+     * @param cancelled     returns true if the scan should be cancelled
+     * @param regionSize    number of bytes in each region
+     */
+    ParallelLineScanner( FileChunks.Source chunksSource,
+                         FileEncoding encoding,
+                         int maxLineLength,
+                         Predicate<LineHandle> filter,
+                         List<String> requiredTexts,
+                         BooleanSupplier cancelled,
+                         int regionSize ) {
+        this( chunksSource, encoding, maxLineLength, filter, requiredTexts, cancelled, regionSize, INTERACTIVE_POOL );
+    }
+
+    /**
+     * @param chunksSource  source of the file contents, which must be usable from several Threads at the same time
+     * @param encoding      encoding of the file
+     * @param maxLineLength maximum number of bytes to keep for each line
+     * @param filter        line filter, which must be thread-safe
+     * @param cancelled     returns true if the scan should be cancelled
+     * @param regionSize    number of bytes in each region
+     * @param pool          pool where the regions are scanned
+     */
+    ParallelLineScanner( FileChunks.Source chunksSource,
+                         FileEncoding encoding,
+                         int maxLineLength,
+                         Predicate<LineHandle> filter,
+                         BooleanSupplier cancelled,
+                         int regionSize,
+                         ForkJoinPool pool ) {
+        this( chunksSource, encoding, maxLineLength, filter, null, cancelled, regionSize, pool );
+    }
+
+    /**
+     * @param chunksSource  source of the file contents, which must be usable from several Threads at the same time
+     * @param encoding      encoding of the file
+     * @param maxLineLength maximum number of bytes to keep for each line
+     * @param filter        line filter, which must be thread-safe
+     * @param requiredTexts ASCII texts one of which every line accepted by the filter contains
+     *                      (see {@link LineFilter#getRequiredTexts()}), or null if not known
+     * @param cancelled     returns true if the scan should be cancelled
+     * @param regionSize    number of bytes in each region
+     * @param pool          pool where the regions are scanned
+     */
+    ParallelLineScanner( FileChunks.Source chunksSource,
+                         FileEncoding encoding,
+                         int maxLineLength,
+                         Predicate<LineHandle> filter,
+                         List<String> requiredTexts,
+                         BooleanSupplier cancelled,
+                         int regionSize,
+                         ForkJoinPool pool ) {
+        // regions must start at the start of a code unit
+        if ( regionSize < encoding.getNewLineSize() || regionSize % encoding.getNewLineSize() != 0 ) {
+            throw new IllegalArgumentException( "Invalid region size: " + regionSize );
+        }
+        this.chunksSource = chunksSource;
+        this.encoding = encoding;
+        this.maxLineLength = maxLineLength;
+        this.filter = filter;
+        this.requiredTexts = requiredTextBytes( requiredTexts, encoding );
+        this.cancelled = cancelled;
+        this.regionSize = regionSize;
+        this.pool = pool;
+    }
+
+    private static ForkJoinPool createPool( int parallelism, String threadNamePrefix, int threadPriority ) {
+        return new ForkJoinPool( parallelism, ( forkJoinPool ) -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread( forkJoinPool );
+            thread.setName( threadNamePrefix + thread.getPoolIndex() );
+            thread.setDaemon( true );
+            thread.setPriority( threadPriority );
+            return thread;
+        }, null, false );
+    }
+
+    /**
+     * @return the bytes of the required texts, if lines can be searched for them byte by byte, or null
+     */
+    private static byte[][] requiredTextBytes( List<String> texts, FileEncoding encoding ) {
+        if ( texts == null || !encoding.isAsciiCompatible() || encoding.getNewLineSize() != 1 ) {
+            return null;
+        }
+        byte[][] result = new byte[ texts.size() ][];
+        for ( int i = 0; i < result.length; i++ ) {
+            String text = texts.get( i );
+            if ( text.isEmpty() || !StandardCharsets.US_ASCII.newEncoder().canEncode( text ) ) {
+                return null;
+            }
+            result[ i ] = text.getBytes( StandardCharsets.US_ASCII );
+        }
+        return result;
+    }
+
+    /**
+     * @return true if the bytes between the given indexes contain one of the required texts
+     */
+    private boolean containsRequiredText( byte[] bytes, int from, int to ) {
+        for ( byte[] text : requiredTexts ) {
+            byte first = text[ 0 ];
+            int last = to - text.length;
+            search:
+            for ( int i = from; i <= last; i++ ) {
+                if ( bytes[ i ] != first ) {
+                    continue;
+                }
+                for ( int j = 1; j < text.length; j++ ) {
+                    if ( bytes[ i + j ] != text[ j ] ) {
+                        continue search;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Scan the file for lines accepted by the filter.
+     *
+     * @param start           position of the start of the first line to scan
+     * @param end             position where to stop scanning (normally, the file length)
+     * @param maxLines        maximum number of lines to find
+     * @param firstLineNumber number of the line starting at the start position, or 0 if not known
+     * @return the lines found
+     * @throws IOException if the file cannot be read
+     */
+    Result scan( long start, long end, int maxLines, long firstLineNumber ) throws IOException {
+        long startTime = System.currentTimeMillis();
+        AtomicBoolean stop = new AtomicBoolean( false );
+        Deque<RegionScan> inFlight = new ArrayDeque<>();
+        List<Match> matches = new ArrayList<>();
+        long nextRegionStart = start;
+        long lineNumber = firstLineNumber;
+        boolean reachedEnd = false;
+        boolean wasCancelled = false;
+        int scannedRegions = 0;
+        long scannedTo = start;
+
+        try {
+            while ( matches.size() < maxLines ) {
+                if ( cancelled.getAsBoolean() ) {
+                    wasCancelled = true;
+                    break;
+                }
+
+                // keep all Threads busy, but don't get too far ahead of the results being consumed
+                while ( inFlight.size() < 2 * pool.getParallelism() && nextRegionStart < end ) {
+                    long regionEnd = Math.min( end, nextRegionStart + regionSize );
+                    RegionScan regionScan = new RegionScan( nextRegionStart, regionEnd, start, end, maxLines, stop );
+                    pool.execute( regionScan );
+                    inFlight.addLast( regionScan );
+                    nextRegionStart = regionEnd;
+                }
+
+                if ( inFlight.isEmpty() ) {
+                    reachedEnd = true;
+                    break;
+                }
+
+                RegionResult regionResult = inFlight.removeFirst().join();
+                scannedRegions++;
+
+                if ( regionResult.cancelled ) {
+                    wasCancelled = true;
+                    break;
+                }
+
+                long regionScannedTo = regionResult.scannedTo;
+
+                for ( Match match : regionResult.matches ) {
+                    if ( matches.size() >= maxLines ) {
+                        // the lines after the last match returned do not count as scanned,
+                        // otherwise the matches that were left out would be lost
+                        regionScannedTo = matches.get( matches.size() - 1 ).end;
+                        break;
+                    }
+                    long matchLineNumber = lineNumber > 0L ? lineNumber + match.lineNumber : 0L;
+                    matches.add( new Match( match.start, match.end, matchLineNumber, match.line,
+                            match.endsWithNewLine ) );
+                }
+
+                if ( lineNumber > 0L ) {
+                    lineNumber += regionResult.lineCount;
+                }
+
+                // a region that tests no lines (as they all start in previous regions) does not change this
+                scannedTo = Math.max( scannedTo, regionScannedTo );
+            }
+        } catch ( UncheckedIOException e ) {
+            throw e.getCause();
+        } finally {
+            stop.set( true );
+            for ( RegionScan regionScan : inFlight ) {
+                regionScan.cancel( false );
+            }
+        }
+
+        if ( log.isDebugEnabled() ) {
+            log.debug( "Scanned {} regions of {} bytes from {} in {} ms, found {} lines (cancelled={})",
+                    scannedRegions, regionSize, start, System.currentTimeMillis() - startTime,
+                    matches.size(), wasCancelled );
+        }
+
+        return new Result( matches, reachedEnd, wasCancelled, scannedTo );
+    }
+
+    /**
+     * Find the first line accepted by the filter.
+     *
+     * @param start position of the start of the first line to scan
+     * @param end   position where to stop scanning
+     * @return the start of the first line between the given positions accepted by the filter,
+     * or the end position if there is none
+     * @throws IOException if the file cannot be read
+     */
+    long firstMatchStart( long start, long end ) throws IOException {
+        if ( start >= end ) {
+            return end;
+        }
+        Result result = scan( start, end, 1, 0L );
+        return result.matches.isEmpty() ? end : result.matches.get( 0 ).start;
+    }
+
+    /**
+     * @param dateExtractor function to extract the date-time of lines, which must be thread-safe
+     * @param predicate     predicate the date-time of the accepted lines must satisfy
+     * @return a filter accepting the lines with a date-time accepted by the given predicate
+     */
+    static Predicate<LineHandle> dateTimeFilter( Function<String, Optional<ZonedDateTime>> dateExtractor,
+                                                 Predicate<ZonedDateTime> predicate ) {
+        return line -> dateExtractor.apply( line.getText() ).map( predicate::test ).orElse( false );
+    }
+
+    /**
+     * Scan the file for lines accepted by the filter in steps, including an incomplete last line.
+     *
+     * @see #scanInSteps(long, long, long, boolean, StepListener)
+     */
+    long scanInSteps( long start, long end, long stepSize, StepListener listener ) throws IOException {
+        return scanInSteps( start, end, stepSize, false, listener );
+    }
+
+    /**
+     * Scan the file for lines accepted by the filter in steps of a limited number of bytes, so that the lines
+     * found in a large range never use too much memory.
+     * <p>
+     * Each step is scanned in parallel, and the lines it finds are given to the listener before the next step starts.
+     *
+     * @param start             position of the start of the first line to scan
+     * @param end               position where to stop scanning (normally, the file length)
+     * @param stepSize          number of bytes of each step (larger if a line is longer than that)
+     * @param completeLinesOnly whether a last line that is not terminated by a new-line is left out, as when
+     *                          it may still be being written
+     * @param listener          receives the lines found by each step
+     * @return the position after the last line scanned
+     * @throws IOException if the file cannot be read, or the listener fails to process the lines
+     */
+    long scanInSteps( long start, long end, long stepSize, boolean completeLinesOnly, StepListener listener )
+            throws IOException {
+        long position = start;
+        long step = stepSize;
+
+        while ( position < end && !cancelled.getAsBoolean() ) {
+            long stepEnd = Math.min( end, position + step );
+            Result result = scan( position, stepEnd, listener.maxLines(), listener.lineNumberAt( position ) );
+
+            if ( result.cancelled || cancelled.getAsBoolean() ) {
+                break;
+            }
+
+            // the last line of a step ending before the end of the range may be incomplete,
+            // so it is scanned again by the next step
+            long scannedTo = stepEnd == end && result.reachedEnd && !completeLinesOnly ? end : result.scannedTo;
+
+            int matchCount = 0;
+            while ( matchCount < result.matches.size() && result.matches.get( matchCount ).start < scannedTo ) {
+                matchCount++;
+            }
+
+            boolean next = listener.onStep( position, scannedTo, result.matches.subList( 0, matchCount ) );
+
+            if ( scannedTo > position ) {
+                position = scannedTo;
+                step = stepSize;
+            } else if ( stepEnd == end ) {
+                // only an incomplete line is left
+                break;
+            } else {
+                // a line longer than the step
+                step *= 2;
+            }
+
+            if ( !next ) {
+                break;
+            }
+        }
+
+        return position;
+    }
+
+    private static final class RegionResult {
+        final List<Match> matches;
+        final long lineCount;
+        final boolean cancelled;
+        final long scannedTo;
+
+        RegionResult( List<Match> matches, long lineCount, boolean cancelled, long scannedTo ) {
+            this.matches = matches;
+            this.lineCount = lineCount;
+            this.cancelled = cancelled;
+            this.scannedTo = scannedTo;
+        }
+    }
+
+    private final class RegionScan extends RecursiveTask<RegionResult> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long regionStart;
+        private final long regionEnd;
+        private final long scanStart;
+        private final long end;
+        private final int maxLines;
+        private final AtomicBoolean stop;
+
+        RegionScan( long regionStart, long regionEnd, long scanStart, long end, int maxLines, AtomicBoolean stop ) {
+            this.regionStart = regionStart;
+            this.regionEnd = regionEnd;
+            this.scanStart = scanStart;
+            this.end = end;
+            this.maxLines = maxLines;
+            this.stop = stop;
+        }
+
+        private boolean shouldStop() {
+            return stop.get() || cancelled.getAsBoolean();
+        }
+
+        @Override
+        protected RegionResult compute() {
+            try ( FileChunks chunks = encoding.align( chunksSource.open( BUFFER_SIZE ) ) ) {
+                return scan( chunks );
+            } catch ( IOException e ) {
+                throw new UncheckedIOException( e );
+            }
+        }
+
+        private RegionResult scan( FileChunks chunks ) throws IOException {
+            final int newLineSize = encoding.getNewLineSize();
+            final LineHandle lineHandle = LineHandle.reusable( encoding.newDecoder() );
+            final LineBytes lineBytes = new LineBytes( maxLineLength );
+            final List<Match> matches = new ArrayList<>();
+
+            // lines entirely within a chunk are only tested by the filter if they contain a required text,
+            // which is much cheaper to check on the bytes of the chunk
+            final byte[] chunkBytes = requiredTexts == null ? null : new byte[ BUFFER_SIZE ];
+
+            long lineStart = regionStart == scanStart ? regionStart : firstLineStartFrom( chunks, regionStart );
+            long position = lineStart;
+            long lineCount = 0L;
+            long scannedTo = -1L;
+
+            readLoop:
+            while ( lineStart < regionEnd && position < end ) {
+                if ( shouldStop() ) {
+                    return new RegionResult( Collections.emptyList(), 0L, true, -1L );
+                }
+
+                ByteBuffer buffer = chunks.chunkFrom( position, ( int ) Math.min( BUFFER_SIZE, end - position ) );
+                int bytesRead = buffer.limit();
+                if ( bytesRead == 0 ) {
+                    break;
+                }
+
+                int lineStartIndex = 0;
+
+                if ( chunkBytes != null ) {
+                    buffer.duplicate().get( chunkBytes, 0, bytesRead );
+                }
+
+                for ( int i = 0; i < bytesRead; i++ ) {
+                    boolean isNewLine = chunkBytes == null ? encoding.isNewLine( buffer, i ) : chunkBytes[ i ] == '\n';
+                    boolean isLastByte = position + i == end - 1;
+
+                    if ( isNewLine || isLastByte ) {
+                        int lineEndIndex = isNewLine ? i + 1 - newLineSize : i + 1;
+
+                        boolean mayBeAccepted = chunkBytes == null || lineBytes.length() > 0L ||
+                                containsRequiredText( chunkBytes, lineStartIndex, lineEndIndex );
+
+                        if ( mayBeAccepted ) {
+                            lineBytes.append( buffer, lineStartIndex, lineEndIndex - lineStartIndex );
+
+                            if ( isNewLine && newLineSize == 1 ) {
+                                lineBytes.removeTrailingReturn();
+                            }
+
+                            lineHandle.reset( lineBytes, lineStart, isNewLine && newLineSize > 1 );
+
+                            if ( filter.test( lineHandle ) ) {
+                                matches.add( new Match( lineStart, position + i + 1, lineCount,
+                                        lineHandle.detach(), isNewLine ) );
+                            }
+                        }
+
+                        lineCount++;
+                        if ( isNewLine ) {
+                            scannedTo = position + i + 1;
+                        }
+                        lineBytes.clear();
+                        lineStartIndex = i + 1;
+                        lineStart = position + i + 1;
+
+                        // lines starting after the end of the region belong to the next region
+                        if ( lineStart >= regionEnd || matches.size() >= maxLines ) {
+                            break readLoop;
+                        }
+                    }
+                }
+
+                lineBytes.append( buffer, lineStartIndex, bytesRead - lineStartIndex );
+                position += bytesRead;
+            }
+
+            return new RegionResult( matches, lineCount, false, scannedTo );
+        }
+
+        /**
+         * @return the start of the first line starting at or after the given position, or the end of the scan
+         * if there is none
+         */
+        private long firstLineStartFrom( FileChunks chunks, long position ) throws IOException {
+            int newLineSize = encoding.getNewLineSize();
+            ByteBuffer previous = chunks.chunkBefore( position, newLineSize );
+            if ( previous.limit() > 0 && encoding.isNewLine( previous, previous.limit() - 1 ) ) {
+                return position;
+            }
+
+            while ( position < end ) {
+                if ( shouldStop() ) {
+                    return end;
+                }
+                ByteBuffer buffer = chunks.chunkFrom( position, ( int ) Math.min( BUFFER_SIZE, end - position ) );
+                int bytesRead = buffer.limit();
+                if ( bytesRead == 0 ) {
+                    break;
+                }
+                for ( int i = 0; i < bytesRead; i++ ) {
+                    if ( encoding.isNewLine( buffer, i ) ) {
+                        return position + i + 1;
+                    }
+                }
+                position += bytesRead;
+            }
+            return end;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.athaydes.logfx.file;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Accumulator of the lines of a multi-line record (see {@link RecordMode}) while a file is read,
+ * either forwards or backwards.
+ * <p>
+ * When reading forwards, a record is only known to be complete once the first line of the next record is found,
+ * so the lines of the current record are kept until then.
+ * When reading backwards, continuation lines are kept until the first line of their record is found.
+ * <p>
+ * Only the lines of a single record are kept at any time, and records have at most
+ * {@link RecordMode#MAX_RECORD_LINES} lines, so the memory used does not depend on the size of the file.
+ */
+final class RecordBuilder {
+
+    private final RecordMode recordMode;
+    private final byte[] newLine;
+    private final boolean removeTrailingReturn;
+    private final LineBytes bytes;
+    private final LineHandle handle;
+
+    // continuation lines found while reading backwards, in the order they appear in the file
+    private final ArrayDeque<LineHandle> continuations = new ArrayDeque<>();
+
+    private int lineCount = 0;
+    private long start;
+    private long end;
+    private long lineNumber;
+
+    RecordBuilder( RecordMode recordMode, FileEncoding encoding, LineDecoder decoder, int maxLength ) {
+        this.recordMode = recordMode;
+        this.newLine = encoding.newLineBytes();
+        // with multi-byte new-lines, the decoder removes the return character at the end of lines
+        this.removeTrailingReturn = encoding.getNewLineSize() > 1;
+        this.bytes = new LineBytes( maxLength );
+        this.handle = LineHandle.reusable( decoder );
+    }
+
+    /**
+     * @return true if no lines are being kept
+     */
+    boolean isEmpty() {
+        return lineCount == 0 && continuations.isEmpty();
+    }
+
+    /**
+     * Check whether the next line found while reading forwards belongs to the current record.
+     *
+     * @param line the line after the last line added to the current record
+     * @return true if the line should be added to the current record with {@link #append(LineHandle, long)}
+     */
+    boolean continuesWith( LineHandle line ) {
+        return lineCount > 0 && lineCount < RecordMode.MAX_RECORD_LINES &&
+                recordMode.isContinuation( line.getText() );
+    }
+
+    /**
+     * Start a new record, discarding the current one, when reading forwards.
+     *
+     * @param line       the first line of the record
+     * @param start      position of the start of the line in the file
+     * @param end        position of the end of the line in the file, including its new-line
+     * @param lineNumber number of the line, or 0 if not known
+     */
+    void startWith( LineHandle line, long start, long end, long lineNumber ) {
+        clear();
+        line.appendTo( bytes, newLine );
+        this.lineCount = 1;
+        this.start = start;
+        this.end = end;
+        this.lineNumber = lineNumber;
+    }
+
+    /**
+     * Add a line to the end of the current record, when reading forwards.
+     *
+     * @param line the line
+     * @param end  position of the end of the line in the file, including its new-line
+     */
+    void append( LineHandle line, long end ) {
+        line.appendTo( bytes, newLine );
+        this.lineCount++;
+        this.end = end;
+    }
+
+    /**
+     * Check whether a line found while reading backwards is the first line of its record.
+     *
+     * @param line  the line before the continuation lines kept so far
+     * @param start position of the start of the line in the file
+     * @return true if the line is the first line of its record, false if it should be kept with
+     * {@link #prepend(LineHandle, long)} until the first line of its record is found
+     */
+    boolean isFirstLine( LineHandle line, long start ) {
+        return start <= 0L || continuations.size() >= RecordMode.MAX_RECORD_LINES - 1 ||
+                !recordMode.isContinuation( line.getText() );
+    }
+
+    /**
+     * Keep a continuation line found while reading backwards.
+     *
+     * @param line the line, which is copied
+     * @param end  position of the end of the line in the file, including its new-line
+     */
+    void prepend( LineHandle line, long end ) {
+        if ( continuations.isEmpty() ) {
+            this.end = end;
+        }
+        continuations.addFirst( line.detach() );
+    }
+
+    /**
+     * Complete the record whose continuation lines were kept while reading backwards.
+     *
+     * @param line       the first line of the record
+     * @param start      position of the start of the line in the file
+     * @param end        position of the end of the line in the file, including its new-line
+     * @param lineNumber number of the line, or 0 if not known
+     */
+    void completeWith( LineHandle line, long start, long end, long lineNumber ) {
+        bytes.clear();
+        line.appendTo( bytes, newLine );
+        this.lineCount = 1 + continuations.size();
+        this.start = start;
+        this.lineNumber = lineNumber;
+        if ( continuations.isEmpty() ) {
+            this.end = end;
+        }
+        for ( Iterator<LineHandle> iterator = continuations.iterator(); iterator.hasNext(); ) {
+            iterator.next().appendTo( bytes, newLine );
+            iterator.remove();
+        }
+    }
+
+    /**
+     * @return the current record, as a single line whose text includes the new-lines between its lines.
+     * The returned handle is reused, so it must be detached to be kept.
+     */
+    LineHandle getRecord() {
+        handle.reset( bytes, start, removeTrailingReturn );
+        return handle;
+    }
+
+    long getStart() {
+        return start;
+    }
+
+    long getEnd() {
+        return end;
+    }
+
+    long getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Discard all lines being kept.
+     */
+    void clear() {
+        bytes.clear();
+        continuations.clear();
+        lineCount = 0;
+    }
+}
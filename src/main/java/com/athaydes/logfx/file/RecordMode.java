@@ -0,0 +1,81 @@
+package com.athaydes.logfx.file;
+
+import java.time.ZonedDateTime;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Rules to group the lines of a file into multi-line records, such as a log message followed by its stack-trace.
+ * <p>
+ * A record starts with any line that is not a continuation line, and includes all continuation lines after it.
+ * A line is a continuation line if it matches the continuation pattern, or if it has no date-time when
+ * a date extractor is given.
+ * <p>
+ * When a {@link FileContentReader} is given a record mode via {@link FileContentReader#setRecordMode(RecordMode)},
+ * each entry of its file window is a whole record, so filters, highlights and date-time searches apply to records
+ * instead of single lines.
+ */
+public final class RecordMode {
+
+    /**
+     * Pattern matching the start of the lines of a Java stack-trace that follow the exception message.
+     */
+    public static final Pattern DEFAULT_CONTINUATION_PATTERN =
+            Pattern.compile( "\\s|Caused by:|Suppressed:|\\.\\.\\. \\d+ (more|common frames omitted)" );
+
+    /**
+     * Maximum number of lines in a record. A record that would be longer is split,
+     * so that finding where records start never requires reading too much of a file.
+     */
+    static final int MAX_RECORD_LINES = 1000;
+
+    private final Function<String, Optional<ZonedDateTime>> dateExtractor;
+    private final Pattern continuationPattern;
+
+    /**
+     * @param dateExtractor       function to extract the date-time of lines, or null if lines
+     *                            without a date-time should not be considered continuation lines
+     * @param continuationPattern pattern matching the start of continuation lines, or null if only lines
+     *                            without a date-time are continuation lines
+     */
+    public RecordMode( Function<String, Optional<ZonedDateTime>> dateExtractor,
+                       Pattern continuationPattern ) {
+        if ( dateExtractor == null && continuationPattern == null ) {
+            throw new IllegalArgumentException( "Either a date extractor or a continuation pattern must be given" );
+        }
+        this.dateExtractor = dateExtractor;
+        this.continuationPattern = continuationPattern;
+    }
+
+    /**
+     * @param dateExtractor function to extract the date-time of lines
+     * @return a record mode with the same continuation pattern as this one, but with a different date extractor,
+     * or this record mode if it does not use a date extractor
+     */
+    public RecordMode withDateExtractor( Function<String, Optional<ZonedDateTime>> dateExtractor ) {
+        if ( this.dateExtractor == null ) {
+            return this;
+        }
+        return new RecordMode( dateExtractor, continuationPattern );
+    }
+
+    /**
+     * @param line a line of a file
+     * @return true if the line belongs to the same record as the line before it
+     */
+    boolean isContinuation( String line ) {
+        if ( continuationPattern != null && continuationPattern.matcher( line ).lookingAt() ) {
+            return true;
+        }
+        return dateExtractor != null && !dateExtractor.apply( line ).isPresent();
+    }
+
+    @Override
+    public String toString() {
+        return "RecordMode{" +
+                "dateExtractor=" + ( dateExtractor != null ) +
+                ", continuationPattern=" + continuationPattern +
+                '}';
+    }
+}
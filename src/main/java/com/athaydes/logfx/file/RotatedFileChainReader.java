@@ -0,0 +1,708 @@
+package com.athaydes.logfx.file;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A {@link FileContentReader} that presents a log file and the files rotated from it as a single file.
+ * <p>
+ * Given a log file such as {@code app.log}, the files rotated from it ({@code app.log.1}, {@code app.log.2}, ...)
+ * are found in the same directory (rotated files may be gzip-compressed, as in {@code app.log.2.gz}),
+ * and their contents are presented as if they were all part of a single file,
+ * starting with the oldest file (the one with the highest number) and ending with the log file itself.
+ * <p>
+ * Each file is read by its own {@link FileReader}, which is only kept open while the file has lines
+ * in the file window.
+ * <p>
+ * Line numbers refer to the line within the file each line belongs to, so {@link #moveToLine(long)} moves
+ * to a line of the file at the top of the file window.
+ * <p>
+ * The same presentation is used for the segments of a {@link StreamSpill}, which are never renamed, so the file
+ * window is kept when new segments are added to the chain, or when the oldest ones are removed from it.
+ */
+public class RotatedFileChainReader implements FileContentReader {
+
+    private static final Logger log = LoggerFactory.getLogger( RotatedFileChainReader.class );
+
+    private static final class WindowLine {
+        private final File file;
+        private final long start;
+        private final long end;
+        private final long lineNumber;
+
+        WindowLine( File file, long start, long end, long lineNumber ) {
+            this.file = file;
+            this.start = start;
+            this.end = end;
+            this.lineNumber = lineNumber;
+        }
+    }
+
+    private static final class TimeRange {
+        private final long fileLength;
+        private final long lastModified;
+        private final ZonedDateTime first;
+        private final ZonedDateTime last;
+
+        TimeRange( long fileLength, long lastModified, ZonedDateTime first, ZonedDateTime last ) {
+            this.fileLength = fileLength;
+            this.lastModified = lastModified;
+            this.first = first;
+            this.last = last;
+        }
+    }
+
+    private final File file;
+    private final Supplier<List<File>> chainFinder;
+    private final boolean stableFileNames;
+    private final int fileWindowSize;
+    private final int bufferSize;
+
+    // the files in the chain, from the oldest to the newest, which is always the log file itself
+    // (or the newest segment, for a chain of files with stable names)
+    private List<File> files;
+    private Object fileIdentity;
+
+    // concurrent, so that reads in progress can be cancelled from other Threads
+    private final Map<File, FileReader> readers = new ConcurrentHashMap<>();
+    private final Map<File, TimeRange> timeRanges = new HashMap<>();
+    private final LinkedList<WindowLine> window = new LinkedList<>();
+
+    // where the file window is when it has no lines: either at the top or at the tail of the chain
+    private boolean emptyWindowAtTop = true;
+
+    // incremented on each call to cancelCurrentRead(), so that moves stop before reading the next file
+    private final AtomicLong cancelRequests = new AtomicLong();
+
+    private Predicate<String> lineFilter = null;
+    private volatile Charset charset = null;
+    private RecordMode recordMode = null;
+
+    public RotatedFileChainReader( File file, int fileWindowSize ) {
+        this( file, fileWindowSize, FileReader.ADAPTIVE_BUFFER_SIZE );
+    }
+
+    RotatedFileChainReader( File file, int fileWindowSize, int bufferSize ) {
+        this( file, () -> findFileChain( file ), false, fileWindowSize, bufferSize );
+    }
+
+    /**
+     * Create a reader of a chain of files whose names never change, such as the segments of a stream.
+     *
+     * @param file           the file representing the whole chain
+     * @param segmentFinder  finds the files of the chain, from the oldest to the newest, which must not be empty
+     * @param fileWindowSize the size of the file window
+     * @param bufferSize     the size of the buffer of the reader of each file
+     */
+    RotatedFileChainReader( File file, Supplier<List<File>> segmentFinder, int fileWindowSize, int bufferSize ) {
+        this( file, segmentFinder, true, fileWindowSize, bufferSize );
+    }
+
+    private RotatedFileChainReader( File file, Supplier<List<File>> chainFinder, boolean stableFileNames,
+                                    int fileWindowSize, int bufferSize ) {
+        this.file = file;
+        this.chainFinder = chainFinder;
+        this.stableFileNames = stableFileNames;
+        this.fileWindowSize = fileWindowSize;
+        this.bufferSize = bufferSize;
+        this.files = chainFinder.get();
+        this.fileIdentity = stableFileNames ? null : identityOf( file );
+    }
+
+    /**
+     * @param file a log file
+     * @return true if there are files rotated from the given file in the same directory
+     */
+    public static boolean hasRotatedFiles( File file ) {
+        return findFileChain( file ).size() > 1;
+    }
+
+    /**
+     * @param file a log file
+     * @return the given file and the files rotated from it, from the oldest to the newest
+     */
+    static List<File> findFileChain( File file ) {
+        File dir = file.getAbsoluteFile().getParentFile();
+        File[] siblings = dir == null ? null : dir.listFiles();
+
+        List<File> result = new ArrayList<>();
+
+        if ( siblings != null ) {
+            Pattern rotatedFilePattern = Pattern.compile( Pattern.quote( file.getName() ) + "\\.(\\d{1,9})(\\.gz)?" );
+            Map<File, Integer> rotationNumbers = new HashMap<>();
+            for ( File sibling : siblings ) {
+                Matcher matcher = rotatedFilePattern.matcher( sibling.getName() );
+                if ( matcher.matches() && sibling.isFile() ) {
+                    rotationNumbers.put( sibling, Integer.parseInt( matcher.group( 1 ) ) );
+                    result.add( sibling );
+                }
+            }
+            result.sort( ( a, b ) -> Integer.compare( rotationNumbers.get( b ), rotationNumbers.get( a ) ) );
+        }
+
+        result.add( file );
+        return result;
+    }
+
+    @Override
+    public void setLineFilter( Predicate<String> lineFilter ) {
+        this.lineFilter = lineFilter;
+        for ( FileReader reader : readers.values() ) {
+            reader.setLineFilter( lineFilter );
+        }
+    }
+
+    @Override
+    public void setCharset( Charset charset ) {
+        this.charset = charset;
+        // the dates of the files may only be found once their lines are decoded with the new charset
+        timeRanges.clear();
+        for ( FileReader reader : readers.values() ) {
+            reader.setCharset( charset );
+        }
+    }
+
+    @Override
+    public Optional<Charset> getCharset() {
+        return Optional.ofNullable( charset );
+    }
+
+    @Override
+    public void setRecordMode( RecordMode recordMode ) {
+        this.recordMode = recordMode;
+        for ( FileReader reader : readers.values() ) {
+            reader.setRecordMode( recordMode );
+        }
+    }
+
+    @Override
+    public void cancelCurrentRead() {
+        cancelRequests.incrementAndGet();
+        for ( FileReader reader : readers.values() ) {
+            reader.cancelCurrentRead();
+        }
+    }
+
+    @Override
+    public Optional<? extends List<String>> moveUp( int lines ) {
+        log.trace( "Moving up {} lines", lines );
+
+        if ( !anyFileExists() ) {
+            return Optional.empty();
+        }
+
+        int count = Math.min( lines, fileWindowSize );
+        List<WindowLine> newLines = new ArrayList<>( count );
+        List<LineHandle> result = new ArrayList<>( count );
+
+        if ( count > 0 ) {
+            if ( window.isEmpty() ) {
+                if ( !emptyWindowAtTop ) {
+                    readUp( files.size() - 1, -1L, count, newLines, result );
+                }
+            } else {
+                WindowLine first = window.getFirst();
+                int fileIndex = files.indexOf( first.file );
+                if ( fileIndex >= 0 ) {
+                    readUp( fileIndex, first.start, count, newLines, result );
+                }
+            }
+        }
+
+        ListIterator<WindowLine> iterator = newLines.listIterator( newLines.size() );
+        while ( iterator.hasPrevious() ) {
+            window.addFirst( iterator.previous() );
+        }
+        while ( window.size() > fileWindowSize ) {
+            window.removeLast();
+        }
+
+        closeReadersOutsideWindow();
+
+        return Optional.of( LineHandle.textOf( result ) );
+    }
+
+    @Override
+    public Optional<? extends List<String>> moveDown( int lines ) {
+        log.trace( "Moving down {} lines", lines );
+
+        if ( !anyFileExists() ) {
+            return Optional.empty();
+        }
+
+        int count = Math.min( lines, fileWindowSize );
+        List<WindowLine> newLines = new ArrayList<>( count );
+        List<LineHandle> result = new ArrayList<>( count );
+
+        if ( count > 0 ) {
+            if ( window.isEmpty() ) {
+                if ( emptyWindowAtTop ) {
+                    readDown( 0, 0L, count, newLines, result );
+                }
+            } else {
+                WindowLine last = window.getLast();
+                int fileIndex = files.indexOf( last.file );
+                if ( fileIndex >= 0 ) {
+                    readDown( fileIndex, last.end, count, newLines, result );
+                }
+            }
+        }
+
+        window.addAll( newLines );
+        while ( window.size() > fileWindowSize ) {
+            window.removeFirst();
+        }
+
+        closeReadersOutsideWindow();
+
+        return Optional.of( LineHandle.textOf( result ) );
+    }
+
+    @Override
+    public FileQueryResult moveTo( ZonedDateTime dateTime,
+                                   Function<String, Optional<ZonedDateTime>> dateExtractor ) {
+        log.trace( "Moving to date: {}", dateTime );
+
+        updateFileChain();
+
+        // find the newest file whose first line is not after the date-time
+        int targetIndex = -1;
+        boolean foundDates = false;
+
+        for ( int i = files.size() - 1; i >= 0; i-- ) {
+            Optional<TimeRange> timeRange = timeRangeOf( i, dateExtractor );
+            if ( timeRange.isPresent() ) {
+                foundDates = true;
+                if ( !dateTime.isBefore( timeRange.get().first ) ) {
+                    targetIndex = i;
+                    break;
+                }
+            }
+        }
+
+        if ( targetIndex < 0 ) {
+            closeReadersOutsideWindow();
+            if ( foundDates ) {
+                log.debug( "Date {} is before the first file in the chain", dateTime );
+                top();
+                return OutsideRangeQueryResult.BEFORE;
+            } else {
+                log.debug( "No dates found in any file of the chain" );
+                return UnsuccessfulQueryResult.INSTANCE;
+            }
+        }
+
+        File targetFile = files.get( targetIndex );
+        TimeRange timeRange = timeRanges.get( targetFile );
+
+        log.debug( "Date {} should be in file {}", dateTime, targetFile );
+
+        if ( timeRange != null && dateTime.isAfter( timeRange.last ) && targetIndex < files.size() - 1 ) {
+            // the date-time is between two files, so move to the start of the next file
+            List<WindowLine> newLines = new ArrayList<>( fileWindowSize );
+            readDown( targetIndex + 1, 0L, fileWindowSize, newLines, new ArrayList<>( fileWindowSize ) );
+            setWindow( newLines );
+            return new SuccessfulQueryResult( 1 );
+        }
+
+        FileReader reader = readerFor( targetFile );
+        FileQueryResult result = reader.moveTo( dateTime, dateExtractor );
+
+        if ( result.isSuccess() ) {
+            setWindowFrom( reader, targetFile );
+        } else {
+            closeReadersOutsideWindow();
+        }
+
+        return result;
+    }
+
+    @Override
+    public FileQueryResult moveToLine( long lineNumber ) {
+        log.trace( "Moving to line {}", lineNumber );
+
+        updateFileChain();
+
+        File targetFile = window.isEmpty() ?
+                ( emptyWindowAtTop ? files.get( 0 ) : files.get( files.size() - 1 ) ) :
+                window.getFirst().file;
+
+        FileReader reader = readerFor( targetFile );
+        FileQueryResult result = reader.moveToLine( lineNumber );
+
+        if ( result.isAfterRange() ) {
+            // show the end of the file
+            List<WindowLine> newLines = new ArrayList<>( fileWindowSize );
+            readUp( files.indexOf( targetFile ), -1L, fileWindowSize, newLines, new ArrayList<>( fileWindowSize ) );
+            setWindow( newLines );
+        } else if ( result.isBeforeRange() ) {
+            top();
+        } else if ( result.isSuccess() ) {
+            setWindowFrom( reader, targetFile );
+        } else {
+            closeReadersOutsideWindow();
+        }
+
+        return result;
+    }
+
+    @Override
+    public void top() {
+        window.clear();
+        emptyWindowAtTop = true;
+        closeReadersOutsideWindow();
+    }
+
+    @Override
+    public void tail() {
+        window.clear();
+        emptyWindowAtTop = false;
+        closeReadersOutsideWindow();
+    }
+
+    @Override
+    public Optional<? extends List<String>> refresh() {
+        return refreshLines().map( LineHandle::textOf );
+    }
+
+    @Override
+    public Optional<? extends List<LineHandle>> refreshLines() {
+        updateFileChain();
+
+        if ( !anyFileExists() ) {
+            closeReadersOutsideWindow();
+            return Optional.empty();
+        }
+
+        List<WindowLine> newLines = new ArrayList<>( fileWindowSize );
+        LinkedList<LineHandle> result = new LinkedList<>();
+
+        if ( window.isEmpty() ) {
+            if ( emptyWindowAtTop ) {
+                readDown( 0, 0L, fileWindowSize, newLines, result );
+            } else {
+                readUp( files.size() - 1, -1L, fileWindowSize, newLines, result );
+            }
+        } else {
+            WindowLine first = window.getFirst();
+            int fileIndex = files.indexOf( first.file );
+            if ( fileIndex >= 0 ) {
+                readDown( fileIndex, first.start, fileWindowSize, newLines, result );
+
+                if ( newLines.size() < fileWindowSize ) {
+                    List<WindowLine> linesAbove = new ArrayList<>();
+                    List<LineHandle> handlesAbove = new ArrayList<>();
+                    readUp( fileIndex, first.start, fileWindowSize - newLines.size(), linesAbove, handlesAbove );
+                    newLines.addAll( 0, linesAbove );
+                    result.addAll( 0, handlesAbove );
+                }
+            }
+        }
+
+        setWindow( newLines );
+
+        return Optional.of( result );
+    }
+
+    /**
+     * Follow the tail of the file chain.
+     * <p>
+     * The whole file window is always read again from the tail of the log file.
+     *
+     * @return the changes to the file window, or nothing if the file does not exist
+     */
+    @Override
+    public Optional<TailUpdate> refreshTail() {
+        tail();
+        return refresh().map( TailUpdate::fullWindow );
+    }
+
+    @Override
+    public long[] getLineNumbers() {
+        long[] lineNumbers = new long[ fileWindowSize ];
+        int index = 0;
+        for ( WindowLine line : window ) {
+            lineNumbers[ index++ ] = line.lineNumber;
+        }
+        return lineNumbers;
+    }
+
+    @Override
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public void close() {
+        for ( FileReader reader : readers.values() ) {
+            reader.close();
+        }
+        readers.clear();
+    }
+
+    /**
+     * @return the files in the chain, from the oldest to the newest
+     */
+    List<File> getFiles() {
+        return Collections.unmodifiableList( files );
+    }
+
+    /**
+     * @return the files which are currently open
+     */
+    List<File> getOpenFiles() {
+        return new ArrayList<>( readers.keySet() );
+    }
+
+    private boolean anyFileExists() {
+        for ( File chainFile : files ) {
+            if ( chainFile.isFile() ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Find the files in the chain again, in case the log file was rotated.
+     */
+    private void updateFileChain() {
+        if ( stableFileNames ) {
+            updateStableFileChain();
+            return;
+        }
+
+        Object currentIdentity = identityOf( file );
+        List<File> currentFiles = chainFinder.get();
+
+        if ( !Objects.equals( currentIdentity, fileIdentity ) || !currentFiles.equals( files ) ) {
+            log.debug( "Chain of rotated files changed: {}", currentFiles );
+
+            // the contents of the files have moved, so the file window cannot be kept
+            if ( !Objects.equals( currentIdentity, fileIdentity ) ) {
+                window.clear();
+                timeRanges.clear();
+                emptyWindowAtTop = false;
+            }
+
+            close();
+            files = currentFiles;
+            fileIdentity = currentIdentity;
+        }
+    }
+
+    /**
+     * Find the files in the chain again, in case files were added to it, or the oldest ones removed from it.
+     */
+    private void updateStableFileChain() {
+        List<File> currentFiles = chainFinder.get();
+
+        if ( !currentFiles.equals( files ) ) {
+            log.debug( "Chain of files changed: {}", currentFiles );
+
+            boolean hadLines = !window.isEmpty();
+            window.removeIf( line -> !currentFiles.contains( line.file ) );
+            timeRanges.keySet().retainAll( currentFiles );
+
+            // the lines in the file window were removed, so show the oldest lines that are left
+            if ( hadLines && window.isEmpty() ) {
+                emptyWindowAtTop = true;
+            }
+
+            files = currentFiles;
+            closeReadersOutsideWindow();
+        }
+    }
+
+    static Object identityOf( File file ) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes( file.toPath(), BasicFileAttributes.class );
+            // not all file systems support file keys, so fallback to the creation time
+            return attributes.fileKey() != null ? attributes.fileKey() : attributes.creationTime();
+        } catch ( IOException e ) {
+            return null;
+        }
+    }
+
+    private FileReader readerFor( File chainFile ) {
+        FileReader reader = readers.get( chainFile );
+        if ( reader == null ) {
+            log.debug( "Opening file of rotated file chain: {}", chainFile );
+            if ( GzipFileReader.isGzipFile( chainFile ) ) {
+                reader = new GzipFileReader( chainFile, fileWindowSize );
+            } else if ( bufferSize == FileReader.ADAPTIVE_BUFFER_SIZE ) {
+                reader = new FileReader( chainFile, fileWindowSize );
+            } else {
+                reader = new FileReader( chainFile, fileWindowSize, bufferSize );
+            }
+            reader.setLineFilter( lineFilter );
+            reader.setCharset( charset );
+            reader.setRecordMode( recordMode );
+            readers.put( chainFile, reader );
+        }
+        return reader;
+    }
+
+    private void closeReadersOutsideWindow() {
+        int firstIndex = window.isEmpty() ? files.size() : files.indexOf( window.getFirst().file );
+        int lastIndex = window.isEmpty() ? -1 : files.indexOf( window.getLast().file );
+
+        Iterator<Map.Entry<File, FileReader>> iterator = readers.entrySet().iterator();
+        while ( iterator.hasNext() ) {
+            Map.Entry<File, FileReader> entry = iterator.next();
+            int index = files.indexOf( entry.getKey() );
+            if ( index < firstIndex || index > lastIndex ) {
+                log.debug( "Closing file of rotated file chain: {}", entry.getKey() );
+                entry.getValue().close();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Read lines from the file with the given index, starting at the given position, continuing on to the
+     * newer files in the chain as needed.
+     */
+    private void readDown( int fileIndex, long position, int count,
+                           List<WindowLine> newLines, List<LineHandle> result ) {
+        long requests = cancelRequests.get();
+        for ( int i = fileIndex; i < files.size() && newLines.size() < count &&
+                cancelRequests.get() == requests; i++ ) {
+            File chainFile = files.get( i );
+            FileReader reader = readerFor( chainFile );
+            reader.positionAt( i == fileIndex ? position : 0L );
+            Optional<LinkedList<LineHandle>> lines = reader.moveDownLines( count - newLines.size() );
+            if ( lines.isPresent() ) {
+                newLines.addAll( windowLinesOf( reader, chainFile, reader.getLoadedLineNumbers() ) );
+                result.addAll( lines.get() );
+            }
+        }
+    }
+
+    /**
+     * Read lines from the file with the given index, ending at the given position (or at the end of the file if
+     * the position is negative), continuing on to the older files in the chain as needed.
+     */
+    private void readUp( int fileIndex, long position, int count,
+                         List<WindowLine> newLines, List<LineHandle> result ) {
+        long requests = cancelRequests.get();
+        for ( int i = fileIndex; i >= 0 && newLines.size() < count &&
+                cancelRequests.get() == requests; i-- ) {
+            File chainFile = files.get( i );
+            FileReader reader = readerFor( chainFile );
+            if ( i == fileIndex && position >= 0L ) {
+                reader.positionAt( position );
+            } else {
+                reader.positionAtEnd();
+            }
+            Optional<LinkedList<LineHandle>> lines = reader.moveUpLines( count - newLines.size() );
+            if ( lines.isPresent() ) {
+                newLines.addAll( 0, windowLinesOf( reader, chainFile, reader.getLoadedLineNumbers() ) );
+                result.addAll( 0, lines.get() );
+            }
+        }
+    }
+
+    private static List<WindowLine> windowLinesOf( FileReader reader, File chainFile, List<Long> lineNumbers ) {
+        FileLineStarts lineStarts = reader.getLineStarts();
+        List<WindowLine> lines = new ArrayList<>( lineStarts.lineCount() );
+        Iterator<Long> lineNumberIterator = lineNumbers.iterator();
+        for ( int i = 0; i < lineStarts.lineCount(); i++ ) {
+            long start = lineStarts.lineStart( i );
+            long lineNumber = lineNumberIterator.hasNext() ? lineNumberIterator.next() : 0L;
+            lines.add( new WindowLine( chainFile, start, start + lineStarts.lineLength( i ), lineNumber ) );
+        }
+        return lines;
+    }
+
+    private void setWindow( List<WindowLine> lines ) {
+        window.clear();
+        window.addAll( lines );
+        closeReadersOutsideWindow();
+    }
+
+    private void setWindowFrom( FileReader reader, File chainFile ) {
+        List<Long> lineNumbers = new ArrayList<>( fileWindowSize );
+        for ( long lineNumber : reader.getLineNumbers() ) {
+            lineNumbers.add( lineNumber );
+        }
+        setWindow( windowLinesOf( reader, chainFile, lineNumbers ) );
+    }
+
+    private Optional<TimeRange> timeRangeOf( int fileIndex,
+                                             Function<String, Optional<ZonedDateTime>> dateExtractor ) {
+        File chainFile = files.get( fileIndex );
+        long length = chainFile.length();
+        long lastModified = chainFile.lastModified();
+
+        TimeRange timeRange = timeRanges.get( chainFile );
+        if ( timeRange != null && timeRange.fileLength == length && timeRange.lastModified == lastModified ) {
+            return Optional.of( timeRange );
+        }
+
+        // the bounds are read from the raw lines of the file, so they do not depend on the line filter
+        FileReader reader = readerFor( chainFile );
+
+        Optional<TimestampIndex> timestampIndex = reader.getCompleteTimestampIndex( dateExtractor );
+        Optional<ZonedDateTime> first;
+        Optional<ZonedDateTime> last;
+
+        if ( timestampIndex.isPresent() ) {
+            first = timestampIndex.get().getFirstDateTime();
+            last = timestampIndex.get().getLastDateTime();
+        } else {
+            try {
+                first = reader.firstDateTime( dateExtractor );
+                last = first.isPresent() ? reader.lastDateTime( dateExtractor ) : Optional.empty();
+            } catch ( IOException e ) {
+                log.warn( "Error reading file [{}]: {}", chainFile, e );
+                first = Optional.empty();
+                last = Optional.empty();
+            }
+        }
+
+        if ( first.isPresent() && last.isPresent() ) {
+            log.debug( "File {} has dates from {} to {}", chainFile, first.get(), last.get() );
+            timeRange = new TimeRange( length, lastModified, first.get(), last.get() );
+            timeRanges.put( chainFile, timeRange );
+            return Optional.of( timeRange );
+        } else {
+            log.debug( "Could not find dates in file {}", chainFile );
+            timeRanges.remove( chainFile );
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RotatedFileChainReader{" +
+                "files=" + Arrays.toString( files.toArray() ) +
+                ", windowSize=" + window.size() +
+                '}';
+    }
+}
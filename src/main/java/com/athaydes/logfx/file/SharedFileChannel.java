@@ -0,0 +1,144 @@
+package com.athaydes.logfx.file;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+
+/**
+ * A {@link FileChannel} that is kept open between read operations, so that a file does not need to be
+ * opened again every time it is read.
+ * <p>
+ * The channel is only re-opened if the file is replaced (i.e. a different file now exists at the same path),
+ * or after it is closed.
+ * <p>
+ * This class is thread-safe, so the same channel may be used by different threads to read the same file.
+ * A channel is only closed once all the read operations using it are done, so closing this channel, or the file
+ * being replaced, never breaks the reads happening in other threads, such as the background indexers.
+ */
+final class SharedFileChannel implements FileChunks.Source {
+
+    private static final Logger log = LoggerFactory.getLogger( SharedFileChannel.class );
+
+    /**
+     * A channel and the number of read operations using it.
+     */
+    private static final class CountedChannel {
+        private final FileChannel channel;
+        private int users = 0;
+        private boolean retired = false;
+
+        CountedChannel( FileChannel channel ) {
+            this.channel = channel;
+        }
+    }
+
+    private final File file;
+    private final ByteBufferPool bufferPool;
+
+    private CountedChannel channel;
+    private Object fileIdentity;
+
+    SharedFileChannel( File file, ByteBufferPool bufferPool ) {
+        this.file = file;
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Start a new read operation.
+     *
+     * @param bufferSize size of the buffer to use for this operation
+     * @return the contents of the file, which must be closed when the read operation is done
+     * @throws IOException if the file cannot be opened
+     */
+    @Override
+    public synchronized ChannelFileChunks open( int bufferSize ) throws IOException {
+        ensureChannelIsOpen();
+        return chunksOf( channel, bufferSize );
+    }
+
+    private ChannelFileChunks chunksOf( CountedChannel countedChannel, int bufferSize ) throws IOException {
+        long size = countedChannel.channel.size();
+        ByteBuffer buffer = bufferPool.acquire( bufferSize );
+        countedChannel.users++;
+        return new ChannelFileChunks( countedChannel.channel, size, bufferPool, buffer,
+                () -> release( countedChannel ) );
+    }
+
+    private synchronized void release( CountedChannel countedChannel ) {
+        countedChannel.users--;
+        if ( countedChannel.retired && countedChannel.users == 0 ) {
+            closeQuietly( countedChannel.channel );
+        }
+    }
+
+    private void ensureChannelIsOpen() throws IOException {
+        Object currentFileIdentity;
+        try {
+            BasicFileAttributes attributes = Files.readAttributes( file.toPath(), BasicFileAttributes.class );
+            // not all file systems support file keys, so fallback to the creation time
+            currentFileIdentity = attributes.fileKey() != null ?
+                    attributes.fileKey() :
+                    attributes.creationTime();
+        } catch ( IOException e ) {
+            close();
+            throw e;
+        }
+
+        if ( channel != null && !channel.channel.isOpen() ) {
+            retire( channel );
+            channel = null;
+        }
+
+        if ( channel != null && !Objects.equals( currentFileIdentity, fileIdentity ) ) {
+            log.debug( "File has been replaced, will re-open it: {}", file );
+            retire( channel );
+            channel = null;
+        }
+
+        if ( channel == null ) {
+            log.debug( "Opening file channel: {}", file );
+            channel = new CountedChannel( FileChannel.open( file.toPath(), StandardOpenOption.READ ) );
+            fileIdentity = currentFileIdentity;
+        }
+    }
+
+    /**
+     * Close the file channel, if it is open.
+     * <p>
+     * If any read operations are still using the channel, it is only closed when the last one is done.
+     * <p>
+     * The channel is opened again on the next call to {@link #open(int)}.
+     */
+    synchronized void close() {
+        if ( channel != null ) {
+            log.debug( "Closing file channel: {}", file );
+            retire( channel );
+            channel = null;
+            fileIdentity = null;
+        }
+    }
+
+    private void retire( CountedChannel countedChannel ) {
+        countedChannel.retired = true;
+        if ( countedChannel.users == 0 ) {
+            closeQuietly( countedChannel.channel );
+        }
+    }
+
+    private void closeQuietly( FileChannel fileChannel ) {
+        try {
+            fileChannel.close();
+        } catch ( IOException e ) {
+            log.warn( "Error closing file [{}]: {}", file, e );
+        }
+    }
+
+}
@@ -0,0 +1,250 @@
+package com.athaydes.logfx.file;
+
+import com.athaydes.logfx.config.Properties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * A {@link FileContentReader} of a stream, such as the output of {@code kubectl logs -f} piped into LogFX,
+ * or the lines received by a {@link LineListener}.
+ * <p>
+ * The stream is read on background Threads into a {@link StreamSpill} under LogFX's home directory, as fast as
+ * the producer writes to it, without ever waiting for the stream to be displayed. The spill file is then read as
+ * if it were a log file that keeps growing, except that its oldest lines are deleted once it reaches its maximum size.
+ * <p>
+ * Closing this reader stops reading the stream, and deletes the spill file.
+ */
+public final class StreamReader implements FileContentReader {
+
+    private static final Logger log = LoggerFactory.getLogger( StreamReader.class );
+
+    /**
+     * Number of segments of the spill file of a stream when it reaches its maximum size.
+     */
+    static final int SEGMENT_COUNT = 16;
+
+    private final String name;
+    private final StreamSource source;
+    private final StreamSpill spill;
+    private final RotatedFileChainReader segmentsReader;
+    private final File file;
+
+    private volatile boolean closed = false;
+
+    /**
+     * Create a reader of the given stream, starting to read it immediately.
+     * <p>
+     * The stream is kept on disk up to the size given by {@link Properties#getStreamMaxSize()}.
+     *
+     * @param name           name of the stream
+     * @param input          the stream
+     * @param fileWindowSize the size of the file window
+     * @throws IOException if the spill file cannot be created
+     */
+    public StreamReader( String name, InputStream input, int fileWindowSize ) throws IOException {
+        this( name, new InputStreamSource( name, input ), fileWindowSize );
+    }
+
+    private StreamReader( String name, StreamSource source, int fileWindowSize ) throws IOException {
+        this( name, source, new File( Properties.LOGFX_DIR.toFile(), "streams" ), Properties.getStreamMaxSize(),
+                Properties.getStreamMaxSize() / SEGMENT_COUNT, fileWindowSize,
+                FileReader.ADAPTIVE_BUFFER_SIZE );
+    }
+
+    StreamReader( String name, InputStream input, File spillsDir, long maxSize, long segmentSize,
+                  int fileWindowSize, int bufferSize ) throws IOException {
+        this( name, new InputStreamSource( name, input ), spillsDir, maxSize, segmentSize,
+                fileWindowSize, bufferSize );
+    }
+
+    StreamReader( String name, StreamSource source, File spillsDir, long maxSize, long segmentSize,
+                  int fileWindowSize, int bufferSize ) throws IOException {
+        this.name = name;
+        this.source = source;
+        try {
+            this.spill = StreamSpill.create( spillsDir, name, maxSize, segmentSize );
+        } catch ( IOException e ) {
+            source.close();
+            throw e;
+        }
+        this.file = new File( spill.getDirectory(), name );
+        this.segmentsReader = new RotatedFileChainReader( file, spill::getSegments, fileWindowSize, bufferSize );
+
+        source.start( spill );
+    }
+
+    /**
+     * Create a reader of the lines received on the given endpoints, starting to listen on them immediately.
+     * <p>
+     * The lines are kept on disk up to the size given by {@link Properties#getStreamMaxSize()}.
+     *
+     * @param endpoints      the endpoints to listen on
+     * @param fileWindowSize the size of the file window
+     * @return the reader
+     * @throws IOException if any of the endpoints cannot be listened on, or the spill file cannot be created
+     */
+    public static StreamReader listeningOn( List<ListenerEndpoint> endpoints, int fileWindowSize ) throws IOException {
+        String name = endpoints.stream().map( ListenerEndpoint::toString ).collect( Collectors.joining( " " ) );
+        return new StreamReader( name, new LineListener( endpoints ), fileWindowSize );
+    }
+
+    /**
+     * This method may be called from any Thread.
+     *
+     * @return the number of bytes read from the stream so far
+     */
+    public long getBytesRead() {
+        return spill.getBytesWritten();
+    }
+
+    /**
+     * @return the number of bytes read from the stream that were deleted to keep the spill file within its maximum size
+     */
+    public long getBytesEvicted() {
+        return spill.getBytesEvicted();
+    }
+
+    /**
+     * This method may be called from any Thread.
+     *
+     * @return the number of lines of the stream that were dropped because they could not be written to disk in time
+     */
+    public long getDroppedLines() {
+        return source.getDroppedLines();
+    }
+
+    /**
+     * @return true if the end of the stream was reached, or it could not be read anymore
+     */
+    public boolean isEnded() {
+        return source.isEnded();
+    }
+
+    /**
+     * @return the segments of the spill file, from the oldest to the newest
+     */
+    List<File> getSegments() {
+        return spill.getSegments();
+    }
+
+    @Override
+    public void setLineFilter( Predicate<String> lineFilter ) {
+        segmentsReader.setLineFilter( lineFilter );
+    }
+
+    @Override
+    public void setCharset( Charset charset ) {
+        segmentsReader.setCharset( charset );
+    }
+
+    @Override
+    public Optional<Charset> getCharset() {
+        return segmentsReader.getCharset();
+    }
+
+    @Override
+    public void setRecordMode( RecordMode recordMode ) {
+        segmentsReader.setRecordMode( recordMode );
+    }
+
+    @Override
+    public void cancelCurrentRead() {
+        segmentsReader.cancelCurrentRead();
+    }
+
+    @Override
+    public Optional<? extends List<String>> moveUp( int lines ) {
+        return segmentsReader.moveUp( lines );
+    }
+
+    @Override
+    public Optional<? extends List<String>> moveDown( int lines ) {
+        return segmentsReader.moveDown( lines );
+    }
+
+    @Override
+    public FileQueryResult moveTo( ZonedDateTime dateTime,
+                                   Function<String, Optional<ZonedDateTime>> dateExtractor ) {
+        return segmentsReader.moveTo( dateTime, dateExtractor );
+    }
+
+    @Override
+    public FileQueryResult moveToLine( long lineNumber ) {
+        return segmentsReader.moveToLine( lineNumber );
+    }
+
+    @Override
+    public void top() {
+        segmentsReader.top();
+    }
+
+    @Override
+    public void tail() {
+        segmentsReader.tail();
+    }
+
+    @Override
+    public Optional<? extends List<String>> refresh() {
+        return segmentsReader.refresh();
+    }
+
+    @Override
+    public Optional<? extends List<LineHandle>> refreshLines() {
+        return segmentsReader.refreshLines();
+    }
+
+    @Override
+    public Optional<TailUpdate> refreshTail() {
+        return segmentsReader.refreshTail();
+    }
+
+    @Override
+    public long[] getLineNumbers() {
+        return segmentsReader.getLineNumbers();
+    }
+
+    /**
+     * @return a file named after the stream, in the directory of its spill file (this file does not exist)
+     */
+    @Override
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Stop reading the stream, and delete the spill file.
+     */
+    @Override
+    public void close() {
+        if ( closed ) {
+            return;
+        }
+        closed = true;
+
+        log.info( "Closing stream {}", name );
+
+        source.close();
+        segmentsReader.close();
+        spill.close();
+    }
+
+    @Override
+    public String toString() {
+        return "StreamReader{" +
+                "name='" + name + '\'' +
+                ", spill=" + spill +
+                ", ended=" + source.isEnded() +
+                '}';
+    }
+}
@@ -0,0 +1,34 @@
+package com.athaydes.logfx.file;
+
+/**
+ * A source of the contents of a stream, which writes them to a {@link StreamSpill} on Threads of its own.
+ */
+interface StreamSource {
+
+    /**
+     * Start writing the contents of the stream to the given spill file.
+     * <p>
+     * This method must not block.
+     *
+     * @param spill the spill file
+     */
+    void start( StreamSpill spill );
+
+    /**
+     * @return true if the stream ended, or cannot be read anymore
+     */
+    boolean isEnded();
+
+    /**
+     * @return the number of lines of the stream that were dropped because they could not be written in time
+     */
+    default long getDroppedLines() {
+        return 0L;
+    }
+
+    /**
+     * Stop reading the stream.
+     */
+    void close();
+
+}
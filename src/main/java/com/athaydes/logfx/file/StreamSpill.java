@@ -0,0 +1,302 @@
+package com.athaydes.logfx.file;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * An append-only file on disk holding the contents of a stream, such as the standard input of LogFX.
+ * <p>
+ * The contents are written to segments in a directory of their own. A new segment is started once the current one
+ * reaches the maximum size of a segment, always at the end of a line, so that no line crosses segments.
+ * The oldest segments are deleted when the total size of the segments goes over the maximum size of the spill file,
+ * so that a stream can be followed indefinitely.
+ * <p>
+ * Segments are never renamed, so they can be read as a chain of files with {@link RotatedFileChainReader}.
+ * <p>
+ * Only a single Thread may append to a spill file, but its segments may be listed from any Thread.
+ */
+final class StreamSpill implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger( StreamSpill.class );
+
+    private static final String LOCK_FILE_NAME = ".lock";
+
+    private final File directory;
+    private final long maxSize;
+    private final long segmentSize;
+    private final FileChannel lockChannel;
+
+    // the segments, from the oldest to the newest, which is the one being written to
+    private final List<File> segments = new CopyOnWriteArrayList<>();
+
+    private OutputStream output;
+    private long segmentNumber = 0L;
+    private long currentSegmentSize = 0L;
+    private long totalSize = 0L;
+    private boolean endsWithNewLine = true;
+    private boolean closed = false;
+
+    private volatile long bytesWritten = 0L;
+    private volatile long bytesEvicted = 0L;
+
+    private StreamSpill( File directory, long maxSize, long segmentSize ) throws IOException {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.segmentSize = segmentSize;
+
+        // hold a lock on the directory while it is in use, so that it is not deleted as a stale spill
+        this.lockChannel = FileChannel.open( new File( directory, LOCK_FILE_NAME ).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE );
+        lockChannel.lock();
+
+        startSegment();
+    }
+
+    /**
+     * Create a spill file in a new directory under the given directory.
+     * <p>
+     * The spill files left behind by LogFX processes that are no longer running are deleted first.
+     *
+     * @param spillsDir   the directory where all spill files are created
+     * @param name        name of the stream, used as the prefix of the name of the directory of the spill file
+     * @param maxSize     maximum number of bytes to keep in the spill file
+     * @param segmentSize maximum number of bytes of a segment (longer lines may make segments larger)
+     * @return the spill file
+     * @throws IOException if the directory of the spill file cannot be created
+     */
+    static StreamSpill create( File spillsDir, String name, long maxSize, long segmentSize ) throws IOException {
+        if ( segmentSize < 1L || maxSize < segmentSize ) {
+            throw new IllegalArgumentException( "Invalid sizes for stream spill file: maxSize=" +
+                    maxSize + ", segmentSize=" + segmentSize );
+        }
+
+        Files.createDirectories( spillsDir.toPath() );
+        deleteStaleSpills( spillsDir );
+
+        // names of streams may contain characters that are not allowed in file names, such as ':'
+        String prefix = name.replaceAll( "[^A-Za-z0-9._-]", "_" ) + "-";
+        File directory = Files.createTempDirectory( spillsDir.toPath(), prefix ).toFile();
+        log.debug( "Creating spill file for stream {} at {}", name, directory );
+
+        try {
+            return new StreamSpill( directory, maxSize, segmentSize );
+        } catch ( IOException e ) {
+            deleteDirectory( directory );
+            throw e;
+        }
+    }
+
+    /**
+     * Delete the directories of the spill files under the given directory which are not in use by any process.
+     *
+     * @param spillsDir the directory where all spill files are created
+     */
+    static void deleteStaleSpills( File spillsDir ) {
+        File[] directories = spillsDir.listFiles( File::isDirectory );
+        if ( directories == null ) {
+            return;
+        }
+
+        for ( File directory : directories ) {
+            boolean stale;
+            try ( FileChannel channel = FileChannel.open( new File( directory, LOCK_FILE_NAME ).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE ) ) {
+                FileLock lock = channel.tryLock();
+                stale = lock != null;
+                if ( lock != null ) {
+                    lock.release();
+                }
+            } catch ( OverlappingFileLockException e ) {
+                // locked by this process
+                stale = false;
+            } catch ( IOException e ) {
+                log.debug( "Unable to check whether spill file is in use: {} ({})", directory, e.toString() );
+                stale = false;
+            }
+
+            if ( stale ) {
+                log.info( "Deleting stale stream spill file: {}", directory );
+                deleteDirectory( directory );
+            }
+        }
+    }
+
+    /**
+     * @return the directory of this spill file
+     */
+    File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * This method may be called from any Thread.
+     *
+     * @return the segments of this spill file, from the oldest to the newest
+     */
+    List<File> getSegments() {
+        return new ArrayList<>( segments );
+    }
+
+    /**
+     * @return the number of bytes appended to this spill file, including evicted bytes
+     */
+    long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * @return the number of bytes deleted with the oldest segments to keep this spill file within its maximum size
+     */
+    long getBytesEvicted() {
+        return bytesEvicted;
+    }
+
+    /**
+     * Append bytes to this spill file.
+     * <p>
+     * This method never waits for the segments to be read.
+     *
+     * @param bytes  the bytes to append
+     * @param offset start of the bytes to append
+     * @param length number of bytes to append
+     * @throws IOException if the bytes cannot be written, or this spill file is closed
+     */
+    synchronized void append( byte[] bytes, int offset, int length ) throws IOException {
+        if ( closed ) {
+            throw new IOException( "Stream spill file is closed: " + directory );
+        }
+
+        int end = offset + length;
+        while ( offset < end ) {
+            if ( currentSegmentSize >= segmentSize ) {
+                if ( endsWithNewLine ) {
+                    startSegment();
+                } else {
+                    // finish the current line before starting a new segment
+                    int newLine = indexOfNewLine( bytes, offset, end );
+                    int count = ( newLine < 0 ? end : newLine + 1 ) - offset;
+                    write( bytes, offset, count );
+                    offset += count;
+                }
+            } else {
+                int count = ( int ) Math.min( end - offset, segmentSize - currentSegmentSize );
+                write( bytes, offset, count );
+                offset += count;
+            }
+        }
+    }
+
+    /**
+     * Close this spill file and delete its directory.
+     */
+    @Override
+    public synchronized void close() {
+        if ( closed ) {
+            return;
+        }
+        closed = true;
+
+        log.debug( "Closing stream spill file {}", directory );
+
+        try {
+            output.close();
+        } catch ( IOException e ) {
+            log.warn( "Error closing segment of stream spill file: {}", e.toString() );
+        }
+
+        try {
+            lockChannel.close();
+        } catch ( IOException e ) {
+            log.warn( "Error releasing lock of stream spill file: {}", e.toString() );
+        }
+
+        segments.clear();
+        deleteDirectory( directory );
+    }
+
+    private void write( byte[] bytes, int offset, int count ) throws IOException {
+        output.write( bytes, offset, count );
+        currentSegmentSize += count;
+        totalSize += count;
+        bytesWritten += count;
+        endsWithNewLine = bytes[ offset + count - 1 ] == '\n';
+    }
+
+    private void startSegment() throws IOException {
+        if ( output != null ) {
+            output.close();
+        }
+
+        segmentNumber++;
+        File segment = new File( directory, String.format( "segment-%010d.log", segmentNumber ) );
+        output = new FileOutputStream( segment );
+        currentSegmentSize = 0L;
+        endsWithNewLine = true;
+        segments.add( segment );
+
+        evictOldestSegments();
+    }
+
+    private void evictOldestSegments() {
+        while ( totalSize > maxSize && segments.size() > 1 ) {
+            File oldest = segments.remove( 0 );
+            long length = oldest.length();
+            totalSize -= length;
+            bytesEvicted += length;
+
+            log.debug( "Evicting segment of stream spill file: {}", oldest );
+
+            if ( !oldest.delete() ) {
+                // the segment may still be open for reading on some systems
+                log.warn( "Unable to delete segment of stream spill file, will try again on exit: {}", oldest );
+                oldest.deleteOnExit();
+            }
+        }
+    }
+
+    private static int indexOfNewLine( byte[] bytes, int from, int to ) {
+        for ( int i = from; i < to; i++ ) {
+            if ( bytes[ i ] == '\n' ) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void deleteDirectory( File directory ) {
+        File[] files = directory.listFiles();
+        if ( files != null ) {
+            for ( File file : files ) {
+                if ( !file.delete() ) {
+                    file.deleteOnExit();
+                }
+            }
+        }
+        if ( !directory.delete() ) {
+            directory.deleteOnExit();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "StreamSpill{" +
+                "directory=" + directory +
+                ", segments=" + segments.size() +
+                ", bytesWritten=" + bytesWritten +
+                ", bytesEvicted=" + bytesEvicted +
+                '}';
+    }
+}
@@ -0,0 +1,80 @@
+package com.athaydes.logfx.file;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Changes to the file window caused by following the tail of a file.
+ * <p>
+ * If the whole file window had to be read again, {@link #isFullWindow()} returns true and {@link #getLines()}
+ * contains every line in the file window.
+ * <p>
+ * Otherwise, the update should be applied to the previous file window by removing the first
+ * {@link #getDroppedLines()} lines from it, then replacing the last {@link #getLines()} lines of the
+ * first {@link #getLineCount()} lines with the given lines. The first of those lines may replace the last line
+ * of the previous file window if that line had not been terminated before.
+ * <p>
+ * If the file was truncated, or replaced by a new file (e.g. because it was rotated), the whole file window is
+ * read again from the new contents of the file.
+ */
+public final class TailUpdate {
+
+    private final boolean fullWindow;
+    private final int droppedLines;
+    private final int lineCount;
+    private final List<String> lines;
+
+    private TailUpdate( boolean fullWindow, int droppedLines, int lineCount, List<String> lines ) {
+        this.fullWindow = fullWindow;
+        this.droppedLines = droppedLines;
+        this.lineCount = lineCount;
+        this.lines = Collections.unmodifiableList( lines );
+    }
+
+    static TailUpdate fullWindow( List<String> lines ) {
+        return new TailUpdate( true, 0, lines.size(), lines );
+    }
+
+    static TailUpdate appended( int droppedLines, int lineCount, List<String> lines ) {
+        return new TailUpdate( false, droppedLines, lineCount, lines );
+    }
+
+    /**
+     * @return true if the whole file window was read again, false if only the lines appended to the
+     * file were read.
+     */
+    public boolean isFullWindow() {
+        return fullWindow;
+    }
+
+    /**
+     * @return number of lines removed from the top of the file window
+     */
+    public int getDroppedLines() {
+        return droppedLines;
+    }
+
+    /**
+     * @return number of lines in the file window after the update
+     */
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @return the new lines at the bottom of the file window
+     */
+    public List<String> getLines() {
+        return lines;
+    }
+
+    @Override
+    public String toString() {
+        return "TailUpdate{" +
+                "fullWindow=" + fullWindow +
+                ", droppedLines=" + droppedLines +
+                ", lineCount=" + lineCount +
+                ", lines=" + lines.size() +
+                '}';
+    }
+}
@@ -0,0 +1,182 @@
+package com.athaydes.logfx.file;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Number of lines of a file in consecutive periods of time (buckets), split by category
+ * (e.g. by which highlight expression matched each line).
+ * <p>
+ * Instances of this class are immutable snapshots of the counts made by a {@link TimeHistogramScanner}.
+ */
+public final class TimeHistogram {
+
+    public static final TimeHistogram EMPTY = new TimeHistogram( 0L, 1L, new long[ 0 ][ 0 ] );
+
+    private final long firstBucketStart;
+    private final long bucketWidth;
+
+    // counts[ bucket ][ category ]
+    private final long[][] counts;
+
+    private TimeHistogram( long firstBucketStart, long bucketWidth, long[][] counts ) {
+        this.firstBucketStart = firstBucketStart;
+        this.bucketWidth = bucketWidth;
+        this.counts = counts;
+    }
+
+    public boolean isEmpty() {
+        return counts.length == 0;
+    }
+
+    public int getBucketCount() {
+        return counts.length;
+    }
+
+    /**
+     * @return the duration of each bucket, in milliseconds
+     */
+    public long getBucketWidth() {
+        return bucketWidth;
+    }
+
+    /**
+     * @param bucket index of a bucket
+     * @return the start of the bucket, in milliseconds since the epoch
+     */
+    public long getBucketStart( int bucket ) {
+        return firstBucketStart + bucket * bucketWidth;
+    }
+
+    /**
+     * @param bucket index of a bucket
+     * @return the start of the bucket as a UTC date-time
+     */
+    public ZonedDateTime getBucketStartDateTime( int bucket ) {
+        return ZonedDateTime.ofInstant( Instant.ofEpochMilli( getBucketStart( bucket ) ), ZoneOffset.UTC );
+    }
+
+    /**
+     * @param bucket   index of a bucket
+     * @param category index of a category
+     * @return how many lines of the given category are in the bucket
+     */
+    public long getCount( int bucket, int category ) {
+        long[] bucketCounts = counts[ bucket ];
+        return category < bucketCounts.length ? bucketCounts[ category ] : 0L;
+    }
+
+    /**
+     * @param bucket index of a bucket
+     * @return how many lines are in the bucket
+     */
+    public long getTotal( int bucket ) {
+        long total = 0L;
+        for ( long count : counts[ bucket ] ) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * @return the number of lines in the fullest bucket
+     */
+    public long getMaxTotal() {
+        long max = 0L;
+        for ( int i = 0; i < counts.length; i++ ) {
+            max = Math.max( max, getTotal( i ) );
+        }
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return "TimeHistogram{" +
+                "firstBucketStart=" + firstBucketStart +
+                ", bucketWidth=" + bucketWidth +
+                ", buckets=" + counts.length +
+                '}';
+    }
+
+    /**
+     * Mutable counts from which {@link TimeHistogram} snapshots are taken.
+     * <p>
+     * Buckets are aligned to multiples of their width since the epoch. Whenever the counted lines span more
+     * than the maximum number of buckets, the width of the buckets is doubled, merging pairs of buckets.
+     */
+    static final class Counts {
+
+        static final long INITIAL_BUCKET_WIDTH = 1000L;
+
+        private final int categoryCount;
+        private final int maxBuckets;
+        private long bucketWidth = INITIAL_BUCKET_WIDTH;
+
+        // counts by bucket index (the bucket start divided by the bucket width)
+        private TreeMap<Long, long[]> buckets = new TreeMap<>();
+
+        // lines are mostly counted in order, so the last bucket is kept at hand
+        private long lastBucket = Long.MIN_VALUE;
+        private long[] lastBucketCounts;
+
+        Counts( int categoryCount, int maxBuckets ) {
+            if ( categoryCount < 1 || maxBuckets < 2 ) {
+                throw new IllegalArgumentException( "Invalid histogram size" );
+            }
+            this.categoryCount = categoryCount;
+            this.maxBuckets = maxBuckets;
+        }
+
+        void add( long epochMillis, int category ) {
+            long bucket = Math.floorDiv( epochMillis, bucketWidth );
+            if ( bucket != lastBucket ) {
+                while ( !buckets.isEmpty() &&
+                        Math.max( bucket, buckets.lastKey() ) - Math.min( bucket, buckets.firstKey() ) >= maxBuckets ) {
+                    doubleBucketWidth();
+                    bucket = Math.floorDiv( epochMillis, bucketWidth );
+                }
+                lastBucket = bucket;
+                lastBucketCounts = buckets.computeIfAbsent( bucket, ignore -> new long[ categoryCount ] );
+            }
+            lastBucketCounts[ category ]++;
+        }
+
+        private void doubleBucketWidth() {
+            TreeMap<Long, long[]> merged = new TreeMap<>();
+            for ( Map.Entry<Long, long[]> entry : buckets.entrySet() ) {
+                long[] target = merged.computeIfAbsent( Math.floorDiv( entry.getKey(), 2L ),
+                        ignore -> new long[ categoryCount ] );
+                for ( int i = 0; i < categoryCount; i++ ) {
+                    target[ i ] += entry.getValue()[ i ];
+                }
+            }
+            buckets = merged;
+            bucketWidth *= 2L;
+            lastBucket = Long.MIN_VALUE;
+            lastBucketCounts = null;
+        }
+
+        void clear() {
+            buckets.clear();
+            bucketWidth = INITIAL_BUCKET_WIDTH;
+            lastBucket = Long.MIN_VALUE;
+            lastBucketCounts = null;
+        }
+
+        TimeHistogram snapshot() {
+            if ( buckets.isEmpty() ) {
+                return EMPTY;
+            }
+            long first = buckets.firstKey();
+            long[][] counts = new long[ ( int ) ( buckets.lastKey() - first + 1L ) ][];
+            for ( int i = 0; i < counts.length; i++ ) {
+                long[] bucketCounts = buckets.get( first + i );
+                counts[ i ] = bucketCounts == null ? new long[ categoryCount ] : bucketCounts.clone();
+            }
+            return new TimeHistogram( first * bucketWidth, bucketWidth, counts );
+        }
+    }
+}
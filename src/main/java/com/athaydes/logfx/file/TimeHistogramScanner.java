@@ -0,0 +1,256 @@
+package com.athaydes.logfx.file;
+
+import com.athaydes.logfx.config.Properties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.time.ZonedDateTime;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Counts the lines of a file by time, building a {@link TimeHistogram}.
+ * <p>
+ * The file is read from start to end, extracting the date-time of each line. Lines without a date-time
+ * (e.g. the lines of a stack-trace) are counted at the date-time of the last line that had one.
+ * <p>
+ * Scans are incremental: each scan only reads the lines appended to the file since the previous scan,
+ * unless the file was truncated or replaced, in which case it is scanned again from the start.
+ * <p>
+ * To avoid competing with the rest of the application for the CPU, scans pause regularly so that they
+ * only use the given fraction of the time of one CPU core.
+ */
+public final class TimeHistogramScanner {
+
+    private static final Logger log = LoggerFactory.getLogger( TimeHistogramScanner.class );
+
+    public static final int DEFAULT_MAX_BUCKETS = 240;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // how often to report the progress of a scan
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos( 250 );
+
+    // shorter pauses are accumulated, as sleeping for very short periods is not precise
+    private static final long MIN_PAUSE_NANOS = TimeUnit.MILLISECONDS.toNanos( 10 );
+
+    private final File file;
+    private final FileChunks.Source chunksSource;
+    private final Charset charset;
+    private final int maxLineLength;
+    private final Function<String, Optional<ZonedDateTime>> dateExtractor;
+    private final ToIntFunction<LineHandle> classifier;
+    private final double cpuBudget;
+    private final TimeHistogram.Counts counts;
+
+    private FileEncoding encoding;
+    private FileIdentity identity;
+
+    // all lines before this position, which is the start of a line, have been counted
+    private long scannedTo = 0L;
+
+    // date-time of the last dated line counted, or Long.MIN_VALUE if none
+    private long lastDateTime = Long.MIN_VALUE;
+
+    // time spent scanning that must be compensated by pausing, to keep within the CPU budget
+    private long pauseDebtNanos = 0L;
+
+    TimeHistogramScanner( File file,
+                          FileChunks.Source chunksSource,
+                          Charset charset,
+                          int maxLineLength,
+                          Function<String, Optional<ZonedDateTime>> dateExtractor,
+                          ToIntFunction<LineHandle> classifier,
+                          int categoryCount,
+                          int maxBuckets,
+                          double cpuBudget ) {
+        if ( !( cpuBudget > 0.0 && cpuBudget <= 1.0 ) ) {
+            throw new IllegalArgumentException( "CPU budget must be between 0 (exclusive) and 1: " + cpuBudget );
+        }
+        this.file = file;
+        this.chunksSource = chunksSource;
+        this.charset = charset;
+        this.maxLineLength = maxLineLength;
+        this.dateExtractor = dateExtractor;
+        this.classifier = classifier;
+        this.cpuBudget = cpuBudget;
+        this.counts = new TimeHistogram.Counts( categoryCount, maxBuckets );
+    }
+
+    /**
+     * Create a scanner of the file read by the given reader.
+     * <p>
+     * Only readers of a single file are supported.
+     *
+     * @param reader        reader of a file
+     * @param dateExtractor function to extract the date-time of the lines of the file
+     * @param classifier    function returning the category of each line, from 0 to categoryCount - 1
+     * @param categoryCount number of categories of lines
+     * @return a scanner of the file, if the reader is supported
+     */
+    public static Optional<TimeHistogramScanner> forReader( FileContentReader reader,
+                                                            Function<String, Optional<ZonedDateTime>> dateExtractor,
+                                                            ToIntFunction<LineHandle> classifier,
+                                                            int categoryCount ) {
+        if ( !( reader instanceof FileReader ) ) {
+            return Optional.empty();
+        }
+        FileReader fileReader = ( FileReader ) reader;
+        return Optional.of( new TimeHistogramScanner( fileReader.getFile(), fileReader::openIndexChunks,
+                fileReader.getCharset().orElse( null ), Properties.getMaxLineLength(),
+                dateExtractor, classifier, categoryCount, DEFAULT_MAX_BUCKETS, Properties.getHistogramCpuBudget() ) );
+    }
+
+    /**
+     * Count the lines appended to the file since the last scan.
+     *
+     * @param cancelled  returns true if the scan should stop
+     * @param onProgress receives the histogram regularly while the scan runs
+     * @return the histogram of the whole file, as far as it was scanned
+     * @throws IOException if the file cannot be read
+     */
+    public synchronized TimeHistogram scan( BooleanSupplier cancelled,
+                                            Consumer<TimeHistogram> onProgress ) throws IOException {
+        long startTime = System.nanoTime();
+        long lastProgress = startTime;
+        long startPosition;
+
+        try ( FileChunks rawChunks = chunksSource.open( BUFFER_SIZE ) ) {
+            checkFileChange( rawChunks );
+            startPosition = scannedTo;
+
+            FileChunks chunks = encoding.align( rawChunks );
+            final int newLineSize = encoding.getNewLineSize();
+            final boolean singleByteNewLine = newLineSize == 1;
+            final LineBytes lineBytes = new LineBytes( maxLineLength );
+            final LineHandle lineHandle = LineHandle.reusable( encoding.newDecoder() );
+            final long length = chunks.length();
+
+            long position = scannedTo;
+            long lineStart = scannedTo;
+
+            while ( position < length ) {
+                long workStart = System.nanoTime();
+
+                if ( cancelled.getAsBoolean() ) {
+                    break;
+                }
+
+                ByteBuffer buffer = chunks.chunkFrom( position, BUFFER_SIZE );
+                int bytesRead = buffer.limit();
+                if ( bytesRead == 0 ) {
+                    break;
+                }
+                int lineStartIndex = 0;
+
+                for ( int i = 0; i < bytesRead; i++ ) {
+                    // the last line is only counted once it is terminated, as it may be incomplete
+                    if ( encoding.isNewLine( buffer, i ) ) {
+                        lineBytes.append( buffer, lineStartIndex, i + 1 - newLineSize - lineStartIndex );
+                        if ( singleByteNewLine ) {
+                            lineBytes.removeTrailingReturn();
+                        }
+                        lineHandle.reset( lineBytes, lineStart, !singleByteNewLine );
+                        count( lineHandle );
+                        lineBytes.clear();
+                        lineStartIndex = i + 1;
+                        lineStart = position + i + 1;
+                    }
+                }
+
+                lineBytes.append( buffer, lineStartIndex, bytesRead - lineStartIndex );
+                position += bytesRead;
+                scannedTo = lineStart;
+
+                long now = System.nanoTime();
+                if ( now - lastProgress >= PROGRESS_INTERVAL_NANOS ) {
+                    lastProgress = now;
+                    onProgress.accept( counts.snapshot() );
+                }
+
+                if ( !keepWithinBudget( now - workStart ) ) {
+                    break;
+                }
+            }
+        }
+
+        if ( log.isDebugEnabled() ) {
+            log.debug( "Scanned file {} from {} to {} for its time histogram in {} ms", file,
+                    startPosition, scannedTo, TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - startTime ) );
+        }
+
+        TimeHistogram histogram = counts.snapshot();
+        onProgress.accept( histogram );
+        return histogram;
+    }
+
+    /**
+     * @return the position up to which the file has been scanned
+     */
+    public synchronized long getScannedTo() {
+        return scannedTo;
+    }
+
+    private void count( LineHandle line ) {
+        Optional<ZonedDateTime> dateTime = dateExtractor.apply( line.getText() );
+        if ( dateTime.isPresent() ) {
+            lastDateTime = dateTime.get().toInstant().toEpochMilli();
+        }
+        if ( lastDateTime != Long.MIN_VALUE ) {
+            counts.add( lastDateTime, classifier.applyAsInt( line ) );
+        }
+    }
+
+    private void checkFileChange( FileChunks chunks ) throws IOException {
+        FileIdentity currentIdentity = FileIdentity.of( file, chunks );
+        FileEncoding currentEncoding = charset == null ? FileEncoding.detect( chunks ) : FileEncoding.of( charset );
+
+        boolean changed = identity != null && currentIdentity.changeSince( identity ) != FileIdentity.Change.NONE;
+
+        if ( changed || !currentEncoding.equals( encoding ) ) {
+            if ( scannedTo > 0L ) {
+                log.debug( "File {} has changed, scanning it again for its time histogram", file );
+            }
+            counts.clear();
+            scannedTo = 0L;
+            lastDateTime = Long.MIN_VALUE;
+            encoding = currentEncoding;
+        }
+
+        identity = currentIdentity;
+    }
+
+    /**
+     * Pause, if necessary, so that the scan only uses its CPU budget.
+     *
+     * @param workNanos time spent scanning since the last call
+     * @return false if the scan was interrupted while pausing
+     */
+    private boolean keepWithinBudget( long workNanos ) {
+        if ( cpuBudget >= 1.0 ) {
+            return true;
+        }
+        pauseDebtNanos += ( long ) ( workNanos * ( 1.0 - cpuBudget ) / cpuBudget );
+        if ( pauseDebtNanos >= MIN_PAUSE_NANOS ) {
+            long pauseStart = System.nanoTime();
+            try {
+                TimeUnit.NANOSECONDS.sleep( pauseDebtNanos );
+            } catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                pauseDebtNanos -= System.nanoTime() - pauseStart;
+                pauseDebtNanos = Math.max( 0L, pauseDebtNanos );
+            }
+        }
+        return true;
+    }
+}
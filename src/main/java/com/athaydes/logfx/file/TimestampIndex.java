@@ -0,0 +1,381 @@
+package com.athaydes.logfx.file;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Sampled index of the date-times of the lines of a file.
+ * <p>
+ * The position and date-time of the first dated line found after every {@code sampleInterval} bytes of the file
+ * are recorded, so that a search for a date-time can start from a range of bytes no larger than the sample
+ * interval, instead of bisecting the whole file.
+ * <p>
+ * Indexes are immutable, and stored in a directory (normally under
+ * {@link com.athaydes.logfx.config.Properties#LOGFX_DIR}) together with the identity of the file they were
+ * built from, so that an index that no longer matches its file can be detected (see
+ * {@link #checkAgainst(FileIdentity, long)}). As files only grow at the end, an index of an older version of
+ * a file remains valid for the bytes it covers, and only needs to be extended.
+ * <p>
+ * Date-times are kept with millisecond precision.
+ */
+final class TimestampIndex {
+
+    private static final Logger log = LoggerFactory.getLogger( TimestampIndex.class );
+
+    private static final int MAGIC_NUMBER = 0x4C465453;
+    private static final int FORMAT_VERSION = 1;
+
+    // larger payloads are certainly not written by this class
+    private static final int MAX_PAYLOAD_LENGTH = 64 * 1024 * 1024;
+
+    private static final String NO_FILE_KEY = String.valueOf( ( Object ) null );
+
+    // the last date-time of an index of a file without dates
+    static final long NO_DATE = Long.MIN_VALUE;
+
+    /**
+     * The result of checking an index against the current state of its file.
+     */
+    enum Status {
+        /**
+         * The index covers the whole file.
+         */
+        UP_TO_DATE,
+
+        /**
+         * The file was appended to after the index was built, so the index only covers the start of the file.
+         */
+        PARTIAL,
+
+        /**
+         * The file was truncated, replaced or modified, so the index must be built again.
+         */
+        STALE
+    }
+
+    private final String path;
+    private final String fileKey;
+    private final long creationTime;
+    private final int headLength;
+    private final long headChecksum;
+    private final long length;
+    private final long lastModified;
+    private final long sampleInterval;
+    private final long lastDateTime;
+
+    // the line starting at offsets[ k ] is dated epochMillis[ k ], both arrays being sorted
+    private final long[] offsets;
+    private final long[] epochMillis;
+
+    TimestampIndex( String path, FileIdentity identity, long lastModified, long sampleInterval,
+                    long[] offsets, long[] epochMillis, long lastDateTime ) {
+        this( path, identity.getFileKeyText(), identity.getCreationTimeMillis(), identity.getHeadLength(),
+                identity.headChecksum( identity.getHeadLength() ), identity.getSize(), lastModified,
+                sampleInterval, offsets, epochMillis, lastDateTime );
+    }
+
+    private TimestampIndex( String path, String fileKey, long creationTime, int headLength, long headChecksum,
+                            long length, long lastModified, long sampleInterval,
+                            long[] offsets, long[] epochMillis, long lastDateTime ) {
+        if ( offsets.length != epochMillis.length ) {
+            throw new IllegalArgumentException( "Invalid samples" );
+        }
+        this.path = path;
+        this.fileKey = fileKey;
+        this.creationTime = creationTime;
+        this.headLength = headLength;
+        this.headChecksum = headChecksum;
+        this.length = length;
+        this.lastModified = lastModified;
+        this.sampleInterval = sampleInterval;
+        this.offsets = offsets;
+        this.epochMillis = epochMillis;
+        this.lastDateTime = lastDateTime;
+    }
+
+    /**
+     * @param indexDir directory where indexes are stored
+     * @param file     the indexed file
+     * @return the path of the index of the given file
+     */
+    static Path pathFor( Path indexDir, File file ) {
+        String canonicalPath = canonicalPathOf( file );
+        return indexDir.resolve( file.getName() + "-" +
+                Integer.toHexString( canonicalPath.hashCode() ) + ".tsidx" );
+    }
+
+    static String canonicalPathOf( File file ) {
+        try {
+            return file.getCanonicalPath();
+        } catch ( IOException e ) {
+            return file.getAbsolutePath();
+        }
+    }
+
+    /**
+     * Check whether this index still describes the given file.
+     *
+     * @param identity     the current identity of the file
+     * @param lastModified the current last-modified time of the file
+     * @return the status of this index
+     */
+    Status checkAgainst( FileIdentity identity, long lastModified ) {
+        if ( !isSameFile( fileKey, creationTime, identity ) ||
+                identity.getSize() < length ||
+                identity.getHeadLength() < headLength ||
+                identity.headChecksum( headLength ) != headChecksum ) {
+            return Status.STALE;
+        }
+        if ( identity.getSize() == length ) {
+            // a file of the same length that was modified was re-written
+            return lastModified == this.lastModified ? Status.UP_TO_DATE : Status.STALE;
+        }
+        return Status.PARTIAL;
+    }
+
+    /**
+     * @return true if the given identity is of the file whose key and creation time were recorded in an index
+     */
+    static boolean isSameFile( String fileKey, long creationTime, FileIdentity identity ) {
+        // as in FileIdentity, the creation time is only used if the file system does not support file keys
+        if ( !fileKey.equals( NO_FILE_KEY ) || !identity.getFileKeyText().equals( NO_FILE_KEY ) ) {
+            return fileKey.equals( identity.getFileKeyText() );
+        }
+        return creationTime == identity.getCreationTimeMillis();
+    }
+
+    /**
+     * @param dateTime a date-time
+     * @return the start of the last sampled line dated before the given date-time
+     */
+    OptionalLong offsetBefore( ZonedDateTime dateTime ) {
+        long millis = dateTime.toInstant().toEpochMilli();
+        // the sample must be strictly before the date-time, even considering the precision lost
+        int index = Arrays.binarySearch( epochMillis, millis );
+        int insertionPoint = index >= 0 ? firstIndexOf( index ) : -index - 1;
+        return insertionPoint == 0 ? OptionalLong.empty() : OptionalLong.of( offsets[ insertionPoint - 1 ] );
+    }
+
+    /**
+     * @param dateTime a date-time
+     * @return the start of the first sampled line dated after the given date-time
+     */
+    OptionalLong offsetAfter( ZonedDateTime dateTime ) {
+        long millis = dateTime.toInstant().toEpochMilli();
+        int index = Arrays.binarySearch( epochMillis, millis );
+        int after = index >= 0 ? lastIndexOf( index ) + 1 : -index - 1;
+        return after >= offsets.length ? OptionalLong.empty() : OptionalLong.of( offsets[ after ] );
+    }
+
+    private int firstIndexOf( int index ) {
+        while ( index > 0 && epochMillis[ index - 1 ] == epochMillis[ index ] ) {
+            index--;
+        }
+        return index;
+    }
+
+    private int lastIndexOf( int index ) {
+        while ( index < epochMillis.length - 1 && epochMillis[ index + 1 ] == epochMillis[ index ] ) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * @return the date-time of the first dated line of the file
+     */
+    Optional<ZonedDateTime> getFirstDateTime() {
+        return epochMillis.length == 0 ? Optional.empty() : Optional.of( toDateTime( epochMillis[ 0 ] ) );
+    }
+
+    /**
+     * @return the date-time of the last dated line of the indexed part of the file
+     */
+    Optional<ZonedDateTime> getLastDateTime() {
+        return lastDateTime == NO_DATE ? Optional.empty() : Optional.of( toDateTime( lastDateTime ) );
+    }
+
+    private static ZonedDateTime toDateTime( long epochMillis ) {
+        return ZonedDateTime.ofInstant( Instant.ofEpochMilli( epochMillis ), ZoneOffset.UTC );
+    }
+
+    String getPath() {
+        return path;
+    }
+
+    long getLength() {
+        return length;
+    }
+
+    long getSampleInterval() {
+        return sampleInterval;
+    }
+
+    int getSampleCount() {
+        return offsets.length;
+    }
+
+    long getOffset( int sample ) {
+        return offsets[ sample ];
+    }
+
+    long getEpochMillis( int sample ) {
+        return epochMillis[ sample ];
+    }
+
+    /**
+     * Write this index to the given path.
+     * <p>
+     * The index is first written to a temporary file, which is then moved to the given path, so that
+     * an incomplete index is never found at the path.
+     *
+     * @param indexPath where to write the index
+     * @throws IOException if the index cannot be written
+     */
+    void writeTo( Path indexPath ) throws IOException {
+        Files.createDirectories( indexPath.getParent() );
+        Path tempFile = indexPath.resolveSibling( indexPath.getFileName() + ".tmp" );
+
+        ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream( 128 + offsets.length * 16 );
+        try ( DataOutputStream payload = new DataOutputStream( payloadBytes ) ) {
+            payload.writeUTF( path );
+            payload.writeUTF( fileKey );
+            payload.writeLong( creationTime );
+            payload.writeInt( headLength );
+            payload.writeLong( headChecksum );
+            payload.writeLong( length );
+            payload.writeLong( lastModified );
+            payload.writeLong( sampleInterval );
+            payload.writeLong( lastDateTime );
+            payload.writeInt( offsets.length );
+            for ( int i = 0; i < offsets.length; i++ ) {
+                payload.writeLong( offsets[ i ] );
+                payload.writeLong( epochMillis[ i ] );
+            }
+        }
+
+        byte[] payload = payloadBytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update( payload );
+
+        try ( DataOutputStream out = new DataOutputStream( new BufferedOutputStream(
+                new DeflaterOutputStream( Files.newOutputStream( tempFile ) ) ) ) ) {
+            out.writeInt( MAGIC_NUMBER );
+            out.writeInt( FORMAT_VERSION );
+            out.writeInt( payload.length );
+            out.writeLong( crc.getValue() );
+            out.write( payload );
+        }
+
+        Files.move( tempFile, indexPath, StandardCopyOption.REPLACE_EXISTING );
+    }
+
+    /**
+     * Read the index of the given file from the given path.
+     * <p>
+     * If the index is corrupt, or was built for a different file, an empty result is returned.
+     * Whether the index is still up-to-date must be checked separately.
+     *
+     * @param indexPath where the index was written
+     * @param file      the indexed file
+     * @return the index, if it can be read
+     */
+    static Optional<TimestampIndex> readFrom( Path indexPath, File file ) {
+        if ( !Files.isRegularFile( indexPath ) ) {
+            return Optional.empty();
+        }
+
+        byte[] payload;
+        long expectedChecksum;
+
+        try ( DataInputStream in = new DataInputStream( new BufferedInputStream(
+                new InflaterInputStream( Files.newInputStream( indexPath ) ) ) ) ) {
+            if ( in.readInt() != MAGIC_NUMBER || in.readInt() != FORMAT_VERSION ) {
+                log.debug( "Ignoring timestamp index with unknown format: {}", indexPath );
+                return Optional.empty();
+            }
+            int payloadLength = in.readInt();
+            if ( payloadLength < 0 || payloadLength > MAX_PAYLOAD_LENGTH ) {
+                throw new IOException( "Invalid payload length: " + payloadLength );
+            }
+            expectedChecksum = in.readLong();
+            payload = new byte[ payloadLength ];
+            in.readFully( payload );
+        } catch ( IOException e ) {
+            log.debug( "Unable to read timestamp index {}: {}", indexPath, e );
+            return Optional.empty();
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update( payload );
+        if ( crc.getValue() != expectedChecksum ) {
+            log.debug( "Timestamp index is corrupt (checksum mismatch): {}", indexPath );
+            return Optional.empty();
+        }
+
+        try ( DataInputStream in = new DataInputStream( new ByteArrayInputStream( payload ) ) ) {
+            String path = in.readUTF();
+            if ( !path.equals( canonicalPathOf( file ) ) ) {
+                log.debug( "Ignoring timestamp index of another file ({}): {}", path, indexPath );
+                return Optional.empty();
+            }
+            String fileKey = in.readUTF();
+            long creationTime = in.readLong();
+            int headLength = in.readInt();
+            long headChecksum = in.readLong();
+            long length = in.readLong();
+            long lastModified = in.readLong();
+            long sampleInterval = in.readLong();
+            long lastDateTime = in.readLong();
+            int sampleCount = in.readInt();
+            if ( sampleCount < 0 || sampleCount > payload.length / 16 ) {
+                throw new IOException( "Invalid number of samples: " + sampleCount );
+            }
+            long[] offsets = new long[ sampleCount ];
+            long[] epochMillis = new long[ sampleCount ];
+            for ( int i = 0; i < sampleCount; i++ ) {
+                offsets[ i ] = in.readLong();
+                epochMillis[ i ] = in.readLong();
+                if ( i > 0 && ( offsets[ i ] <= offsets[ i - 1 ] || epochMillis[ i ] < epochMillis[ i - 1 ] ) ) {
+                    throw new IOException( "Samples are not sorted" );
+                }
+            }
+            return Optional.of( new TimestampIndex( path, fileKey, creationTime, headLength, headChecksum,
+                    length, lastModified, sampleInterval, offsets, epochMillis, lastDateTime ) );
+        } catch ( IOException e ) {
+            log.debug( "Unable to read timestamp index {}: {}", indexPath, e );
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TimestampIndex{" +
+                "path='" + path + '\'' +
+                ", length=" + length +
+                ", sampleInterval=" + sampleInterval +
+                ", samples=" + offsets.length +
+                '}';
+    }
+}
@@ -0,0 +1,567 @@
+package com.athaydes.logfx.file;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Maintains the {@link TimestampIndex} of a file.
+ * <p>
+ * The index is loaded from disk when first needed, and built (or extended, when the file grows) in the background,
+ * then written back to disk. An index that no longer matches its file, or that is corrupt, is never used, and is
+ * replaced by a new one once that is built. Nothing is ever waited for: until an index is available, searches
+ * just do not benefit from it.
+ * <p>
+ * As the dates of the lines of a file can only be found given a function that extracts them, the last function
+ * used to look for an index is also used to build it. Indexes built by a function that finds different dates
+ * (e.g. because the date-time format of the file was guessed differently) are detected by checking a couple of
+ * samples when the index is requested.
+ * <p>
+ * This class is thread-safe.
+ */
+final class TimestampIndexer {
+
+    private static final Logger log = LoggerFactory.getLogger( TimestampIndexer.class );
+
+    static final long DEFAULT_SAMPLE_INTERVAL = 1024 * 1024;
+
+    // bisecting smaller files is already fast enough that indexing them is not worth it
+    static final long DEFAULT_MIN_FILE_LENGTH = 16 * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // how many lines without a date may follow each sampled position, as in FileReader#moveTo
+    private static final int MAX_UNDATED_LINES = 50;
+
+    // how many bytes before the end of the file to look for its last date
+    private static final long LAST_DATE_SEARCH_BYTES = 64 * 1024;
+
+    private static final ExecutorService backgroundIndexer = Executors.newSingleThreadExecutor( ( runnable ) -> {
+        Thread thread = new Thread( runnable, "logfx-timestamp-indexer" );
+        thread.setDaemon( true );
+        return thread;
+    } );
+
+    private static final class DatedLine {
+        private final long start;
+        private final long epochMillis;
+
+        DatedLine( long start, long epochMillis ) {
+            this.start = start;
+            this.epochMillis = epochMillis;
+        }
+    }
+
+    private final File file;
+    private final FileChunks.Source chunksSource;
+    private final Path indexPath;
+    private final long sampleInterval;
+    private final long minFileLength;
+    private final int maxLineLength;
+    private final Executor executor;
+    private final AtomicBoolean indexing = new AtomicBoolean( false );
+
+    private volatile FileEncoding encoding = FileEncoding.UTF_8;
+    private volatile Function<String, Optional<ZonedDateTime>> dateExtractor;
+
+    private boolean closed = false;
+    private boolean loaded = false;
+    private TimestampIndex index;
+
+    // incremented whenever the index is discarded, so that indexes built from a discarded one are not used
+    private long generation = 0L;
+
+    // length of the file the last time it was indexed, whether or not any dates were found
+    private long indexedLength = -1L;
+
+    TimestampIndexer( File file, FileChunks.Source chunksSource, Path indexDir, int maxLineLength ) {
+        this( file, chunksSource, indexDir, maxLineLength,
+                DEFAULT_SAMPLE_INTERVAL, DEFAULT_MIN_FILE_LENGTH, backgroundIndexer );
+    }
+
+    TimestampIndexer( File file, FileChunks.Source chunksSource, Path indexDir, int maxLineLength,
+                      long sampleInterval, long minFileLength, Executor executor ) {
+        // samples must start at the start of a code unit
+        if ( sampleInterval < 4 || sampleInterval % 4 != 0 ) {
+            throw new IllegalArgumentException( "Invalid sample interval: " + sampleInterval );
+        }
+        this.file = file;
+        this.chunksSource = chunksSource;
+        this.indexPath = TimestampIndex.pathFor( indexDir, file );
+        this.maxLineLength = maxLineLength;
+        this.sampleInterval = sampleInterval;
+        this.minFileLength = minFileLength;
+        this.executor = executor;
+    }
+
+    /**
+     * Get the index of the file, if one is available that matches its current identity and was built using
+     * a function that extracts the same dates as the given one.
+     * <p>
+     * If no such index is available, or it does not cover the whole file, the index is built or extended
+     * in the background, using the given function.
+     *
+     * @param identity      the current identity of the file
+     * @param dateExtractor function to extract the date-time of the lines of the file
+     * @return the index, if available
+     */
+    Optional<TimestampIndex> indexFor( FileIdentity identity,
+                                       Function<String, Optional<ZonedDateTime>> dateExtractor ) {
+        this.dateExtractor = dateExtractor;
+
+        if ( identity.getSize() < minFileLength ) {
+            return Optional.empty();
+        }
+
+        TimestampIndex current = getIndex();
+
+        if ( current == null ) {
+            update( identity.getSize() );
+            return Optional.empty();
+        }
+
+        TimestampIndex.Status status = current.checkAgainst( identity, file.lastModified() );
+
+        if ( status == TimestampIndex.Status.STALE ) {
+            log.info( "Timestamp index of file {} is out of date, it will be built again", file );
+            discard( current );
+            update( identity.getSize() );
+            return Optional.empty();
+        }
+
+        if ( !hasSameDates( current, dateExtractor ) ) {
+            log.info( "Timestamp index of file {} has different dates than expected, it will be built again", file );
+            discard( current );
+            update( identity.getSize() );
+            return Optional.empty();
+        }
+
+        if ( status == TimestampIndex.Status.PARTIAL ) {
+            update( identity.getSize() );
+        }
+
+        return Optional.of( current );
+    }
+
+    /**
+     * Extend the index in the background if enough bytes were appended to the file since it was last indexed,
+     * unless that is already being done.
+     * <p>
+     * Nothing is done until the index is requested via {@link #indexFor(FileIdentity, Function)}.
+     *
+     * @param fileLength the current length of the file
+     */
+    void update( long fileLength ) {
+        if ( dateExtractor == null || fileLength < minFileLength ) {
+            return;
+        }
+        synchronized ( this ) {
+            if ( closed || ( indexedLength >= 0L && fileLength - indexedLength < sampleInterval ) ) {
+                return;
+            }
+        }
+        if ( indexing.compareAndSet( false, true ) ) {
+            executor.execute( this::indexInBackground );
+        }
+    }
+
+    /**
+     * @return true if the index is currently being built in the background.
+     */
+    boolean isIndexing() {
+        return indexing.get();
+    }
+
+    /**
+     * Discard the index in memory, so that it is checked against the file again when next requested.
+     * <p>
+     * This should be called when the file is found to have been truncated or replaced.
+     */
+    synchronized void invalidate() {
+        index = null;
+        loaded = false;
+        indexedLength = -1L;
+        generation++;
+    }
+
+    /**
+     * Set the encoding of the file.
+     * <p>
+     * If the encoding changes, the index is discarded, as the lines of the file may be found in different positions.
+     *
+     * @param encoding of the file
+     */
+    void setEncoding( FileEncoding encoding ) {
+        if ( !encoding.equals( this.encoding ) ) {
+            this.encoding = encoding;
+            synchronized ( this ) {
+                index = null;
+                loaded = true;
+                indexedLength = -1L;
+                generation++;
+            }
+        }
+    }
+
+    /**
+     * Stop indexing the file.
+     */
+    synchronized void close() {
+        closed = true;
+    }
+
+    Path getIndexPath() {
+        return indexPath;
+    }
+
+    /**
+     * @return the index currently in memory, loading it from disk if that was not done yet
+     */
+    synchronized TimestampIndex getIndex() {
+        if ( !loaded ) {
+            loaded = true;
+            index = TimestampIndex.readFrom( indexPath, file )
+                    .filter( loadedIndex -> loadedIndex.getSampleInterval() == sampleInterval )
+                    .orElse( null );
+            if ( index != null ) {
+                log.debug( "Loaded timestamp index of file {}: {}", file, index );
+            }
+        }
+        return index;
+    }
+
+    private synchronized void discard( TimestampIndex discarded ) {
+        if ( index == discarded ) {
+            index = null;
+            indexedLength = -1L;
+            generation++;
+        }
+    }
+
+    private synchronized boolean isClosed() {
+        return closed;
+    }
+
+    private FileChunks openChunks() throws IOException {
+        return encoding.align( chunksSource.open( BUFFER_SIZE ) );
+    }
+
+    /**
+     * @return true if the first and last samples of the index are found again by the given function
+     */
+    private boolean hasSameDates( TimestampIndex index,
+                                  Function<String, Optional<ZonedDateTime>> dateExtractor ) {
+        int sampleCount = index.getSampleCount();
+        if ( sampleCount == 0 ) {
+            return true;
+        }
+        try ( FileChunks chunks = openChunks() ) {
+            for ( int sample : new int[]{ 0, sampleCount - 1 } ) {
+                long offset = index.getOffset( sample );
+                Optional<DatedLine> datedLine = findDatedLine( chunks, encoding, offset,
+                        Math.min( index.getLength(), offset + sampleInterval ), dateExtractor );
+                if ( !datedLine.isPresent() ||
+                        datedLine.get().start != offset ||
+                        datedLine.get().epochMillis != index.getEpochMillis( sample ) ) {
+                    return false;
+                }
+            }
+            return true;
+        } catch ( IOException e ) {
+            log.debug( "Unable to check timestamp index of file [{}]: {}", file, e );
+            return false;
+        }
+    }
+
+    private void indexInBackground() {
+        boolean again = false;
+        try {
+            again = index();
+        } catch ( IOException | RuntimeException e ) {
+            log.warn( "Unable to index timestamps of file [{}]: {}", file, e );
+        } finally {
+            indexing.set( false );
+        }
+        if ( again ) {
+            update( file.length() );
+        }
+    }
+
+    /**
+     * Build or extend the index of the file, then write it to disk.
+     *
+     * @return true if the index was discarded while being built, so it should be built again
+     */
+    private boolean index() throws IOException {
+        if ( isClosed() ) {
+            return false;
+        }
+
+        long startTime = System.currentTimeMillis();
+        Function<String, Optional<ZonedDateTime>> extractor = dateExtractor;
+        FileEncoding fileEncoding = encoding;
+        long startGeneration;
+        synchronized ( this ) {
+            startGeneration = generation;
+        }
+        TimestampIndex base = getIndex();
+
+        // if the file is modified after this, its length will not match the index
+        long lastModified = file.lastModified();
+
+        TimestampIndex newIndex;
+
+        try ( FileChunks chunks = openChunks() ) {
+            FileIdentity identity = FileIdentity.of( file, chunks );
+
+            if ( base != null ) {
+                TimestampIndex.Status status = base.checkAgainst( identity, lastModified );
+                if ( status == TimestampIndex.Status.UP_TO_DATE ) {
+                    synchronized ( this ) {
+                        indexedLength = identity.getSize();
+                    }
+                    return false;
+                }
+                if ( status == TimestampIndex.Status.STALE ) {
+                    base = null;
+                }
+            }
+
+            newIndex = build( chunks, fileEncoding, identity, lastModified, base, extractor );
+        }
+
+        if ( newIndex == null ) {
+            return false;
+        }
+
+        synchronized ( this ) {
+            if ( closed ) {
+                return false;
+            }
+            if ( generation != startGeneration || fileEncoding != encoding ) {
+                log.debug( "Timestamp index of file {} was discarded while being built", file );
+                return true;
+            }
+            index = newIndex.getSampleCount() == 0 ? null : newIndex;
+            indexedLength = newIndex.getLength();
+        }
+
+        if ( newIndex.getSampleCount() == 0 ) {
+            log.debug( "No dates found in file {}, not keeping timestamp index", file );
+            Files.deleteIfExists( indexPath );
+        } else {
+            newIndex.writeTo( indexPath );
+        }
+
+        if ( log.isInfoEnabled() ) {
+            log.info( "{} timestamp index of file {} up to byte {} in {} ms, {} samples",
+                    base == null ? "Built" : "Extended", file, newIndex.getLength(),
+                    System.currentTimeMillis() - startTime, newIndex.getSampleCount() );
+        }
+
+        return false;
+    }
+
+    /**
+     * Build an index of the given file contents, sampling only the part of the file after the end of the
+     * base index, if there is one.
+     *
+     * @return the new index, or null if the indexer was closed
+     */
+    private TimestampIndex build( FileChunks chunks,
+                                  FileEncoding encoding,
+                                  FileIdentity identity,
+                                  long lastModified,
+                                  TimestampIndex base,
+                                  Function<String, Optional<ZonedDateTime>> extractor ) throws IOException {
+        final long length = identity.getSize();
+        int count = base == null ? 0 : base.getSampleCount();
+        long[] offsets = new long[ Math.max( 16, count * 2 ) ];
+        long[] epochMillis = new long[ offsets.length ];
+
+        for ( int i = 0; i < count; i++ ) {
+            offsets[ i ] = base.getOffset( i );
+            epochMillis[ i ] = base.getEpochMillis( i );
+        }
+
+        // samples whose position is within the base index were already taken
+        long sample = base == null ? 0L : ( base.getLength() + sampleInterval - 1L ) / sampleInterval;
+
+        for ( long position = sample * sampleInterval; position < length; position += sampleInterval ) {
+            if ( isClosed() ) {
+                return null;
+            }
+
+            long limit = Math.min( length, position + sampleInterval );
+            long lineStart = position == 0L ? 0L : firstLineStartFrom( chunks, encoding, position, limit );
+            if ( lineStart >= limit ) {
+                // a single line covers this sample
+                continue;
+            }
+
+            Optional<DatedLine> datedLine = findDatedLine( chunks, encoding, lineStart, limit, extractor );
+
+            // lines out of order are not sampled, so that samples remain sorted
+            if ( datedLine.isPresent() && ( count == 0 ||
+                    ( datedLine.get().start > offsets[ count - 1 ] &&
+                            datedLine.get().epochMillis >= epochMillis[ count - 1 ] ) ) ) {
+                if ( count == offsets.length ) {
+                    offsets = Arrays.copyOf( offsets, count * 2 );
+                    epochMillis = Arrays.copyOf( epochMillis, count * 2 );
+                }
+                offsets[ count ] = datedLine.get().start;
+                epochMillis[ count ] = datedLine.get().epochMillis;
+                count++;
+            }
+        }
+
+        long lastDateTime = count == 0 ?
+                TimestampIndex.NO_DATE :
+                lastDateBefore( chunks, encoding, Math.max( offsets[ count - 1 ], length - LAST_DATE_SEARCH_BYTES ),
+                        length, extractor ).orElse( epochMillis[ count - 1 ] );
+
+        return new TimestampIndex( TimestampIndex.canonicalPathOf( file ), identity, lastModified, sampleInterval,
+                Arrays.copyOf( offsets, count ), Arrays.copyOf( epochMillis, count ), lastDateTime );
+    }
+
+    /**
+     * @return the start of the first line starting at or after the given position, or the limit if there is
+     * none before it
+     */
+    static long firstLineStartFrom( FileChunks chunks, FileEncoding encoding,
+                                            long position, long limit ) throws IOException {
+        ByteBuffer previous = chunks.chunkBefore( position, encoding.getNewLineSize() );
+        if ( previous.limit() > 0 && encoding.isNewLine( previous, previous.limit() - 1 ) ) {
+            return position;
+        }
+
+        while ( position < limit ) {
+            ByteBuffer buffer = chunks.chunkFrom( position, ( int ) Math.min( BUFFER_SIZE, limit - position ) );
+            int bytesRead = buffer.limit();
+            if ( bytesRead == 0 ) {
+                break;
+            }
+            for ( int i = 0; i < bytesRead; i++ ) {
+                if ( encoding.isNewLine( buffer, i ) ) {
+                    return position + i + 1;
+                }
+            }
+            position += bytesRead;
+        }
+
+        return limit;
+    }
+
+    /**
+     * Find the first line with a date, starting at the given line start and skipping lines without dates,
+     * but only lines starting before the given limit.
+     */
+    private Optional<DatedLine> findDatedLine( FileChunks chunks,
+                                               FileEncoding encoding,
+                                               long lineStart,
+                                               long limit,
+                                               Function<String, Optional<ZonedDateTime>> extractor )
+            throws IOException {
+        DatedLine[] result = new DatedLine[ 1 ];
+        forEachLine( chunks, encoding, lineStart, limit, MAX_UNDATED_LINES, ( start, line ) -> {
+            Optional<ZonedDateTime> dateTime = extractor.apply( line );
+            dateTime.ifPresent( date -> result[ 0 ] = new DatedLine( start, date.toInstant().toEpochMilli() ) );
+            return dateTime.isPresent();
+        } );
+        return Optional.ofNullable( result[ 0 ] );
+    }
+
+    /**
+     * Find the date-time of the last dated line starting between the given positions.
+     */
+    private Optional<Long> lastDateBefore( FileChunks chunks,
+                                           FileEncoding encoding,
+                                           long from,
+                                           long limit,
+                                           Function<String, Optional<ZonedDateTime>> extractor )
+            throws IOException {
+        long lineStart = firstLineStartFrom( chunks, encoding, from - from % encoding.getNewLineSize(), limit );
+        Long[] result = new Long[ 1 ];
+        forEachLine( chunks, encoding, lineStart, limit, Integer.MAX_VALUE, ( start, line ) -> {
+            extractor.apply( line ).ifPresent( date -> result[ 0 ] = date.toInstant().toEpochMilli() );
+            return false;
+        } );
+        return Optional.ofNullable( result[ 0 ] );
+    }
+
+    private interface LineVisitor {
+        /**
+         * @return true to stop visiting lines
+         */
+        boolean visit( long lineStart, String line );
+    }
+
+    /**
+     * Visit at most maxLines lines, starting at the given line start, and only lines starting before the limit.
+     */
+    private void forEachLine( FileChunks chunks,
+                              FileEncoding encoding,
+                              long lineStart,
+                              long limit,
+                              int maxLines,
+                              LineVisitor visitor ) throws IOException {
+        final int newLineSize = encoding.getNewLineSize();
+        final LineBytes lineBytes = new LineBytes( maxLineLength );
+        final LineHandle lineHandle = LineHandle.reusable( encoding.newDecoder() );
+        final long length = chunks.length();
+        final boolean singleByteNewLine = newLineSize == 1;
+
+        long position = lineStart;
+        int visitedLines = 0;
+
+        while ( position < length ) {
+            ByteBuffer buffer = chunks.chunkFrom( position, BUFFER_SIZE );
+            int bytesRead = buffer.limit();
+            if ( bytesRead == 0 ) {
+                break;
+            }
+            int lineStartIndex = 0;
+
+            for ( int i = 0; i < bytesRead; i++ ) {
+                boolean isNewLine = encoding.isNewLine( buffer, i );
+                if ( isNewLine || position + i == length - 1 ) {
+                    int lineEndIndex = isNewLine ? i + 1 - newLineSize : i + 1;
+                    lineBytes.append( buffer, lineStartIndex, lineEndIndex - lineStartIndex );
+                    if ( isNewLine && singleByteNewLine ) {
+                        lineBytes.removeTrailingReturn();
+                    }
+                    lineHandle.reset( lineBytes, lineStart, isNewLine && !singleByteNewLine );
+
+                    if ( visitor.visit( lineStart, lineHandle.getText() ) ) {
+                        return;
+                    }
+
+                    visitedLines++;
+                    lineStart = position + i + 1;
+                    if ( lineStart >= limit || visitedLines >= maxLines ) {
+                        return;
+                    }
+
+                    lineBytes.clear();
+                    lineStartIndex = i + 1;
+                }
+            }
+
+            lineBytes.append( buffer, lineStartIndex, bytesRead - lineStartIndex );
+            position += bytesRead;
+        }
+    }
+}
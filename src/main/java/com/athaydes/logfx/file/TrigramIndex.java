@@ -0,0 +1,618 @@
+package com.athaydes.logfx.file;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Index of the trigrams (sequences of 3 bytes) found in each block of a file.
+ * <p>
+ * A file is divided into blocks of a fixed size, and, as in {@link FilterBlockSummary}, each line belongs to the
+ * block where it starts. For each trigram found in the lines of a file, the index lists the blocks containing it,
+ * so that, given some text that all lines accepted by a filter must contain, the blocks that cannot contain any
+ * such line can be found without reading them (see {@link #candidateBlocks(List, long)}).
+ * <p>
+ * The index is made of segments, each covering a range of consecutive blocks, which are stored in separate files
+ * next to the index file, and are only read when the index is queried. As files only grow at the end, an index is
+ * extended by adding segments for the blocks appended to its file, leaving existing segments untouched.
+ * Only whole blocks are indexed, i.e. blocks whose lines are all terminated, and where no more lines can start.
+ * <p>
+ * Each segment file contains the posting lists of its trigrams (the blocks containing each trigram, delta-encoded
+ * as variable-length integers), followed by a directory of its trigrams, sorted so that they can be looked up
+ * with a binary search.
+ * <p>
+ * As {@link TimestampIndex}, indexes are immutable and stored together with the identity of their file, so that
+ * an index that no longer matches its file can be detected. Only files in encodings compatible with ASCII are
+ * indexed, and only ASCII text can be looked up.
+ */
+final class TrigramIndex {
+
+    private static final Logger log = LoggerFactory.getLogger( TrigramIndex.class );
+
+    private static final int MAGIC_NUMBER = 0x4C465447;
+    private static final int FORMAT_VERSION = 1;
+
+    // larger payloads are certainly not written by this class
+    private static final int MAX_PAYLOAD_LENGTH = 64 * 1024 * 1024;
+
+    // size of each entry in the directory of a segment (a trigram and the start of its posting list)
+    private static final int DIRECTORY_ENTRY_SIZE = 8;
+
+    static final int TRIGRAM_LENGTH = 3;
+
+    /**
+     * A range of blocks of the indexed file, with the posting lists of the trigrams found in them.
+     */
+    static final class Segment {
+        private final Path path;
+        private final long firstBlock;
+        private final int blockCount;
+        private final int trigramCount;
+        private final long postingsLength;
+
+        Segment( Path path, long firstBlock, int blockCount, int trigramCount, long postingsLength ) {
+            this.path = path;
+            this.firstBlock = firstBlock;
+            this.blockCount = blockCount;
+            this.trigramCount = trigramCount;
+            this.postingsLength = postingsLength;
+        }
+
+        long getFirstBlock() {
+            return firstBlock;
+        }
+
+        long getEndBlock() {
+            return firstBlock + blockCount;
+        }
+
+        int getTrigramCount() {
+            return trigramCount;
+        }
+
+        Path getPath() {
+            return path;
+        }
+
+        long getFileLength() {
+            return postingsLength + ( long ) trigramCount * DIRECTORY_ENTRY_SIZE;
+        }
+
+        /**
+         * @return the blocks (relative to the first block of this segment) containing the given trigram,
+         * in ascending order, or null if the trigram is not found in any block
+         */
+        private int[] postingsOf( FileChannel channel, int trigram, ByteBuffer entry ) throws IOException {
+            int low = 0;
+            int high = trigramCount - 1;
+            while ( low <= high ) {
+                int middle = ( low + high ) >>> 1;
+                readFully( channel, entry, postingsLength + ( long ) middle * DIRECTORY_ENTRY_SIZE );
+                int value = entry.getInt( 0 );
+                if ( value < trigram ) {
+                    low = middle + 1;
+                } else if ( value > trigram ) {
+                    high = middle - 1;
+                } else {
+                    long start = entry.getInt( 4 ) & 0xFFFFFFFFL;
+                    long end = postingsLength;
+                    if ( middle < trigramCount - 1 ) {
+                        readFully( channel, entry, postingsLength + ( long ) ( middle + 1 ) * DIRECTORY_ENTRY_SIZE );
+                        end = entry.getInt( 4 ) & 0xFFFFFFFFL;
+                    }
+                    if ( start >= end || end > postingsLength ) {
+                        throw new IOException( "Invalid posting list of trigram " + trigram + " in " + path );
+                    }
+                    return decodePostings( channel, start, ( int ) ( end - start ) );
+                }
+            }
+            return null;
+        }
+
+        private int[] decodePostings( FileChannel channel, long start, int length ) throws IOException {
+            ByteBuffer bytes = ByteBuffer.allocate( length );
+            readFully( channel, bytes, start );
+            int[] blocks = new int[ Math.min( length, blockCount ) ];
+            int count = 0;
+            int block = -1;
+            while ( bytes.hasRemaining() ) {
+                int delta = readVarInt( bytes );
+                block += delta + 1;
+                if ( delta < 0 || block >= blockCount || count == blocks.length ) {
+                    throw new IOException( "Invalid posting list in " + path );
+                }
+                blocks[ count++ ] = block;
+            }
+            return Arrays.copyOf( blocks, count );
+        }
+
+        @Override
+        public String toString() {
+            return "Segment{" +
+                    "firstBlock=" + firstBlock +
+                    ", blockCount=" + blockCount +
+                    ", trigramCount=" + trigramCount +
+                    '}';
+        }
+    }
+
+    private final String path;
+    private final String fileKey;
+    private final long creationTime;
+    private final int headLength;
+    private final long headChecksum;
+    private final long length;
+    private final long lastModified;
+    private final long blockSize;
+    private final List<Segment> segments;
+
+    TrigramIndex( String path, FileIdentity identity, long lastModified, long blockSize, List<Segment> segments ) {
+        this( path, identity.getFileKeyText(), identity.getCreationTimeMillis(), identity.getHeadLength(),
+                identity.headChecksum( identity.getHeadLength() ), identity.getSize(), lastModified,
+                blockSize, segments );
+    }
+
+    private TrigramIndex( String path, String fileKey, long creationTime, int headLength, long headChecksum,
+                          long length, long lastModified, long blockSize, List<Segment> segments ) {
+        this.path = path;
+        this.fileKey = fileKey;
+        this.creationTime = creationTime;
+        this.headLength = headLength;
+        this.headChecksum = headChecksum;
+        this.length = length;
+        this.lastModified = lastModified;
+        this.blockSize = blockSize;
+        this.segments = Collections.unmodifiableList( new ArrayList<>( segments ) );
+    }
+
+    /**
+     * @param indexDir directory where indexes are stored
+     * @param file     the indexed file
+     * @return the path of the index of the given file
+     */
+    static Path pathFor( Path indexDir, File file ) {
+        String canonicalPath = TimestampIndex.canonicalPathOf( file );
+        return indexDir.resolve( file.getName() + "-" +
+                Integer.toHexString( canonicalPath.hashCode() ) + ".tgidx" );
+    }
+
+    /**
+     * @param indexPath  the path of an index
+     * @param firstBlock the first block of a segment of the index
+     * @return the path of the segment
+     */
+    static Path segmentPathFor( Path indexPath, long firstBlock ) {
+        return indexPath.resolveSibling( indexPath.getFileName() + "." + firstBlock );
+    }
+
+    /**
+     * Check whether this index still describes the given file.
+     *
+     * @param identity     the current identity of the file
+     * @param lastModified the current last-modified time of the file
+     * @return the status of this index
+     * @see TimestampIndex#checkAgainst(FileIdentity, long)
+     */
+    TimestampIndex.Status checkAgainst( FileIdentity identity, long lastModified ) {
+        if ( !TimestampIndex.isSameFile( fileKey, creationTime, identity ) ||
+                identity.getSize() < length ||
+                identity.getHeadLength() < headLength ||
+                identity.headChecksum( headLength ) != headChecksum ) {
+            return TimestampIndex.Status.STALE;
+        }
+        if ( identity.getSize() == length ) {
+            return lastModified == this.lastModified ?
+                    TimestampIndex.Status.UP_TO_DATE :
+                    TimestampIndex.Status.STALE;
+        }
+        return TimestampIndex.Status.PARTIAL;
+    }
+
+    /**
+     * Find the blocks that may contain a line containing any of the given texts.
+     * <p>
+     * Texts shorter than a trigram cannot be looked up, so if any text is too short, or is not ASCII,
+     * no blocks can be ruled out and an empty result is returned.
+     *
+     * @param texts     ASCII texts to look for
+     * @param fromBlock the first block of interest
+     * @return the blocks, between the given one and the end of the indexed blocks, where the texts may be found,
+     * or empty if this index cannot rule out any block
+     * @throws IOException if the segments of this index cannot be read
+     */
+    Optional<BitSet> candidateBlocks( List<String> texts, long fromBlock ) throws IOException {
+        List<int[]> trigramsOfTexts = new ArrayList<>( texts.size() );
+        for ( String text : texts ) {
+            int[] trigrams = trigramsOf( text );
+            if ( trigrams.length == 0 ) {
+                return Optional.empty();
+            }
+            trigramsOfTexts.add( trigrams );
+        }
+
+        BitSet candidates = new BitSet();
+        ByteBuffer entry = ByteBuffer.allocate( DIRECTORY_ENTRY_SIZE );
+
+        for ( Segment segment : segments ) {
+            if ( segment.getEndBlock() <= fromBlock ) {
+                continue;
+            }
+            try ( FileChannel channel = FileChannel.open( segment.path, StandardOpenOption.READ ) ) {
+                for ( int[] trigrams : trigramsOfTexts ) {
+                    int[] blocks = blocksContainingAll( channel, segment, trigrams, entry );
+                    for ( int block : blocks ) {
+                        long fileBlock = segment.firstBlock + block;
+                        if ( fileBlock >= fromBlock ) {
+                            candidates.set( toIndex( fileBlock ) );
+                        }
+                    }
+                }
+            }
+        }
+
+        return Optional.of( candidates );
+    }
+
+    /**
+     * @return the blocks of the segment (relative to its first block) containing all the given trigrams
+     */
+    private static int[] blocksContainingAll( FileChannel channel, Segment segment,
+                                              int[] trigrams, ByteBuffer entry ) throws IOException {
+        List<int[]> postings = new ArrayList<>( trigrams.length );
+        for ( int trigram : trigrams ) {
+            int[] blocks = segment.postingsOf( channel, trigram, entry );
+            if ( blocks == null ) {
+                return new int[ 0 ];
+            }
+            postings.add( blocks );
+        }
+
+        // intersecting the shortest lists first keeps the intermediate results small
+        postings.sort( Comparator.comparingInt( blocks -> blocks.length ) );
+
+        int[] result = postings.get( 0 );
+        int count = result.length;
+        for ( int i = 1; i < postings.size() && count > 0; i++ ) {
+            int[] other = postings.get( i );
+            int kept = 0;
+            int j = 0;
+            for ( int k = 0; k < count; k++ ) {
+                while ( j < other.length && other[ j ] < result[ k ] ) {
+                    j++;
+                }
+                if ( j < other.length && other[ j ] == result[ k ] ) {
+                    result[ kept++ ] = result[ k ];
+                }
+            }
+            count = kept;
+        }
+        return Arrays.copyOf( result, count );
+    }
+
+    /**
+     * @param text ASCII text
+     * @return the distinct trigrams of the given text, or an empty array if it has none, or is not ASCII
+     */
+    static int[] trigramsOf( String text ) {
+        if ( text.length() < TRIGRAM_LENGTH ) {
+            return new int[ 0 ];
+        }
+        for ( int i = 0; i < text.length(); i++ ) {
+            if ( text.charAt( i ) >= 0x80 ) {
+                return new int[ 0 ];
+            }
+        }
+        byte[] bytes = text.getBytes( StandardCharsets.US_ASCII );
+        int[] trigrams = new int[ bytes.length - TRIGRAM_LENGTH + 1 ];
+        for ( int i = 0; i < trigrams.length; i++ ) {
+            trigrams[ i ] = trigramAt( bytes, i );
+        }
+        return Arrays.stream( trigrams ).distinct().toArray();
+    }
+
+    private static int trigramAt( byte[] bytes, int index ) {
+        return ( ( bytes[ index ] & 0xFF ) << 16 ) | ( ( bytes[ index + 1 ] & 0xFF ) << 8 ) |
+                ( bytes[ index + 2 ] & 0xFF );
+    }
+
+    private static int toIndex( long block ) {
+        return ( int ) Math.min( block, Integer.MAX_VALUE - 1 );
+    }
+
+    String getPath() {
+        return path;
+    }
+
+    long getLength() {
+        return length;
+    }
+
+    long getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * @return the number of blocks covered by this index, which are the first blocks of the file
+     */
+    long getBlockCount() {
+        return segments.isEmpty() ? 0L : segments.get( segments.size() - 1 ).getEndBlock();
+    }
+
+    /**
+     * @return the number of bytes at the start of the file covered by this index
+     */
+    long getIndexedLength() {
+        return getBlockCount() * blockSize;
+    }
+
+    List<Segment> getSegments() {
+        return segments;
+    }
+
+    /**
+     * Write a segment of an index to the given path.
+     * <p>
+     * The given entries are sorted, then reused to build the directory of the segment, so no memory
+     * proportional to the number of entries is needed besides the entries themselves.
+     *
+     * @param segmentPath where to write the segment
+     * @param firstBlock  the first block of the segment
+     * @param blockCount  the number of blocks in the segment
+     * @param entries     the trigrams found in each block of the segment, each entry having the trigram in
+     *                    its high 32 bits and the block, relative to the first block, in its low 32 bits.
+     *                    There must be no duplicate entries.
+     * @param count       the number of entries
+     * @return the segment that was written
+     * @throws IOException if the segment cannot be written
+     */
+    static Segment writeSegment( Path segmentPath, long firstBlock, int blockCount,
+                                 long[] entries, int count ) throws IOException {
+        Files.createDirectories( segmentPath.getParent() );
+        Path tempFile = segmentPath.resolveSibling( segmentPath.getFileName() + ".tmp" );
+
+        Arrays.sort( entries, 0, count );
+
+        int trigramCount = 0;
+        long postingsLength = 0L;
+
+        try ( DataOutputStream out = new DataOutputStream( new BufferedOutputStream(
+                Files.newOutputStream( tempFile ) ) ) ) {
+            int i = 0;
+            while ( i < count ) {
+                int trigram = ( int ) ( entries[ i ] >>> 32 );
+                long postingsStart = postingsLength;
+                int previousBlock = -1;
+                while ( i < count && ( int ) ( entries[ i ] >>> 32 ) == trigram ) {
+                    int block = ( int ) entries[ i ];
+                    postingsLength += writeVarInt( out, block - previousBlock - 1 );
+                    previousBlock = block;
+                    i++;
+                }
+
+                // the entries of this trigram were already written, so its directory entry can take their place
+                entries[ trigramCount++ ] = ( ( long ) trigram << 32 ) | postingsStart;
+            }
+
+            if ( postingsLength > 0xFFFFFFFFL ) {
+                throw new IOException( "Too many entries in segment: " + count );
+            }
+
+            for ( int k = 0; k < trigramCount; k++ ) {
+                out.writeInt( ( int ) ( entries[ k ] >>> 32 ) );
+                out.writeInt( ( int ) entries[ k ] );
+            }
+        }
+
+        Files.move( tempFile, segmentPath, StandardCopyOption.REPLACE_EXISTING );
+
+        return new Segment( segmentPath, firstBlock, blockCount, trigramCount, postingsLength );
+    }
+
+    private static int writeVarInt( DataOutputStream out, int value ) throws IOException {
+        int bytes = 1;
+        while ( ( value & ~0x7F ) != 0 ) {
+            out.writeByte( ( value & 0x7F ) | 0x80 );
+            value >>>= 7;
+            bytes++;
+        }
+        out.writeByte( value );
+        return bytes;
+    }
+
+    private static int readVarInt( ByteBuffer buffer ) throws IOException {
+        int value = 0;
+        for ( int shift = 0; shift < 32; shift += 7 ) {
+            if ( !buffer.hasRemaining() ) {
+                throw new IOException( "Truncated posting list" );
+            }
+            byte b = buffer.get();
+            value |= ( b & 0x7F ) << shift;
+            if ( b >= 0 ) {
+                return value;
+            }
+        }
+        throw new IOException( "Invalid variable-length integer" );
+    }
+
+    private static void readFully( FileChannel channel, ByteBuffer buffer, long position ) throws IOException {
+        buffer.clear();
+        while ( buffer.hasRemaining() ) {
+            int bytesRead = channel.read( buffer, position + buffer.position() );
+            if ( bytesRead < 0 ) {
+                throw new IOException( "Unexpected end of index segment" );
+            }
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Write this index to the given path. Its segments must have been written already.
+     * <p>
+     * As with {@link TimestampIndex#writeTo(Path)}, an incomplete index is never found at the given path.
+     *
+     * @param indexPath where to write the index
+     * @throws IOException if the index cannot be written
+     */
+    void writeTo( Path indexPath ) throws IOException {
+        Files.createDirectories( indexPath.getParent() );
+        Path tempFile = indexPath.resolveSibling( indexPath.getFileName() + ".tmp" );
+
+        ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream( 128 + segments.size() * 24 );
+        try ( DataOutputStream payload = new DataOutputStream( payloadBytes ) ) {
+            payload.writeUTF( path );
+            payload.writeUTF( fileKey );
+            payload.writeLong( creationTime );
+            payload.writeInt( headLength );
+            payload.writeLong( headChecksum );
+            payload.writeLong( length );
+            payload.writeLong( lastModified );
+            payload.writeLong( blockSize );
+            payload.writeInt( segments.size() );
+            for ( Segment segment : segments ) {
+                payload.writeLong( segment.firstBlock );
+                payload.writeInt( segment.blockCount );
+                payload.writeInt( segment.trigramCount );
+                payload.writeLong( segment.postingsLength );
+            }
+        }
+
+        byte[] payload = payloadBytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update( payload );
+
+        try ( DataOutputStream out = new DataOutputStream( new BufferedOutputStream(
+                new DeflaterOutputStream( Files.newOutputStream( tempFile ) ) ) ) ) {
+            out.writeInt( MAGIC_NUMBER );
+            out.writeInt( FORMAT_VERSION );
+            out.writeInt( payload.length );
+            out.writeLong( crc.getValue() );
+            out.write( payload );
+        }
+
+        Files.move( tempFile, indexPath, StandardCopyOption.REPLACE_EXISTING );
+    }
+
+    /**
+     * Read the index of the given file from the given path.
+     * <p>
+     * If the index is corrupt, any of its segments is missing, or it was built for a different file,
+     * an empty result is returned. Whether the index is still up-to-date must be checked separately.
+     *
+     * @param indexPath where the index was written
+     * @param file      the indexed file
+     * @return the index, if it can be read
+     */
+    static Optional<TrigramIndex> readFrom( Path indexPath, File file ) {
+        if ( !Files.isRegularFile( indexPath ) ) {
+            return Optional.empty();
+        }
+
+        byte[] payload;
+        long expectedChecksum;
+
+        try ( DataInputStream in = new DataInputStream( new BufferedInputStream(
+                new InflaterInputStream( Files.newInputStream( indexPath ) ) ) ) ) {
+            if ( in.readInt() != MAGIC_NUMBER || in.readInt() != FORMAT_VERSION ) {
+                log.debug( "Ignoring trigram index with unknown format: {}", indexPath );
+                return Optional.empty();
+            }
+            int payloadLength = in.readInt();
+            if ( payloadLength < 0 || payloadLength > MAX_PAYLOAD_LENGTH ) {
+                throw new IOException( "Invalid payload length: " + payloadLength );
+            }
+            expectedChecksum = in.readLong();
+            payload = new byte[ payloadLength ];
+            in.readFully( payload );
+        } catch ( IOException e ) {
+            log.debug( "Unable to read trigram index {}: {}", indexPath, e );
+            return Optional.empty();
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update( payload );
+        if ( crc.getValue() != expectedChecksum ) {
+            log.debug( "Trigram index is corrupt (checksum mismatch): {}", indexPath );
+            return Optional.empty();
+        }
+
+        try ( DataInputStream in = new DataInputStream( new ByteArrayInputStream( payload ) ) ) {
+            String path = in.readUTF();
+            if ( !path.equals( TimestampIndex.canonicalPathOf( file ) ) ) {
+                log.debug( "Ignoring trigram index of another file ({}): {}", path, indexPath );
+                return Optional.empty();
+            }
+            String fileKey = in.readUTF();
+            long creationTime = in.readLong();
+            int headLength = in.readInt();
+            long headChecksum = in.readLong();
+            long length = in.readLong();
+            long lastModified = in.readLong();
+            long blockSize = in.readLong();
+            int segmentCount = in.readInt();
+            if ( blockSize <= 0L || segmentCount < 0 || segmentCount > payload.length / 24 ) {
+                throw new IOException( "Invalid index header" );
+            }
+            List<Segment> segments = new ArrayList<>( segmentCount );
+            long nextBlock = 0L;
+            for ( int i = 0; i < segmentCount; i++ ) {
+                long firstBlock = in.readLong();
+                Segment segment = new Segment( segmentPathFor( indexPath, firstBlock ), firstBlock,
+                        in.readInt(), in.readInt(), in.readLong() );
+                if ( firstBlock != nextBlock || segment.blockCount <= 0 || segment.trigramCount < 0 ||
+                        segment.postingsLength < 0L ) {
+                    throw new IOException( "Invalid segment: " + segment );
+                }
+                if ( !Files.isRegularFile( segment.path ) ||
+                        Files.size( segment.path ) != segment.getFileLength() ) {
+                    throw new IOException( "Segment file is missing or has an unexpected size: " + segment.path );
+                }
+                segments.add( segment );
+                nextBlock = segment.getEndBlock();
+            }
+            if ( nextBlock * blockSize > length ) {
+                throw new IOException( "Index covers more bytes than its file has" );
+            }
+            return Optional.of( new TrigramIndex( path, fileKey, creationTime, headLength, headChecksum,
+                    length, lastModified, blockSize, segments ) );
+        } catch ( IOException e ) {
+            log.debug( "Unable to read trigram index {}: {}", indexPath, e );
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TrigramIndex{" +
+                "path='" + path + '\'' +
+                ", length=" + length +
+                ", blockSize=" + blockSize +
+                ", blocks=" + getBlockCount() +
+                ", segments=" + segments.size() +
+                '}';
+    }
+}
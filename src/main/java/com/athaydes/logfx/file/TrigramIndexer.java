@@ -0,0 +1,473 @@
+package com.athaydes.logfx.file;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Maintains the {@link TrigramIndex} of a file.
+ * <p>
+ * As with {@link TimestampIndexer}, the index is loaded from disk when first needed, and built (or extended, when
+ * the file grows) in the background, then written back to disk, and nothing is ever waited for.
+ * <p>
+ * Building an index uses a fixed amount of memory, regardless of the size of the file: the trigrams found in each
+ * block are accumulated until the memory budget is reached, at which point they are written to disk as a segment
+ * of the index.
+ * <p>
+ * This class is thread-safe.
+ */
+final class TrigramIndexer {
+
+    private static final Logger log = LoggerFactory.getLogger( TrigramIndexer.class );
+
+    /**
+     * Default size of the blocks of the index, a multiple of the size of the blocks of a {@link FilterBlockSummary}.
+     */
+    static final long DEFAULT_BLOCK_SIZE = 4 * FilterBlockSummary.BLOCK_SIZE;
+
+    // extending an index by less than this many blocks would create too many small segments
+    private static final int MIN_APPENDED_BLOCKS = 64;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // one bit for each possible trigram, to tell which trigrams were already found in the current block
+    private static final int SEEN_TRIGRAMS_BYTES = ( 1 << 24 ) / 8;
+
+    private static final ExecutorService backgroundIndexer = Executors.newSingleThreadExecutor( ( runnable ) -> {
+        Thread thread = new Thread( runnable, "logfx-trigram-indexer" );
+        thread.setDaemon( true );
+        return thread;
+    } );
+
+    private final File file;
+    private final FileChunks.Source chunksSource;
+    private final Path indexPath;
+    private final long blockSize;
+    private final long minFileLength;
+    private final long minAppendedLength;
+    private final long memoryBudget;
+    private final Executor executor;
+    private final AtomicBoolean indexing = new AtomicBoolean( false );
+
+    private volatile FileEncoding encoding = FileEncoding.UTF_8;
+
+    private boolean closed = false;
+    private boolean loaded = false;
+    private TrigramIndex index;
+
+    // incremented whenever the index is discarded, so that indexes built from a discarded one are not used
+    private long generation = 0L;
+
+    // length of the file the last time it was indexed
+    private long indexedLength = -1L;
+
+    /**
+     * @param file          the file to index
+     * @param chunksSource  source of the contents of the file
+     * @param indexDir      directory where indexes are stored
+     * @param minFileLength minimum length of a file for it to be indexed, or a negative number to never index it
+     * @param memoryBudget  maximum number of bytes to use while building the index
+     */
+    TrigramIndexer( File file, FileChunks.Source chunksSource, Path indexDir,
+                    long minFileLength, long memoryBudget ) {
+        this( file, chunksSource, indexDir, DEFAULT_BLOCK_SIZE, minFileLength,
+                MIN_APPENDED_BLOCKS * DEFAULT_BLOCK_SIZE, memoryBudget, backgroundIndexer );
+    }
+
+    TrigramIndexer( File file, FileChunks.Source chunksSource, Path indexDir, long blockSize,
+                    long minFileLength, long minAppendedLength, long memoryBudget, Executor executor ) {
+        // index blocks must be made of whole filter summary blocks, and small enough for their trigrams to fit
+        if ( blockSize <= 0L || blockSize % FilterBlockSummary.BLOCK_SIZE != 0L || blockSize > ( 1L << 30 ) ) {
+            throw new IllegalArgumentException( "Invalid block size: " + blockSize );
+        }
+        if ( memoryBudget < minMemoryBudget( blockSize ) ) {
+            throw new IllegalArgumentException( "Memory budget is too small: " + memoryBudget +
+                    " (at least " + minMemoryBudget( blockSize ) + " bytes are required)" );
+        }
+        this.file = file;
+        this.chunksSource = chunksSource;
+        this.indexPath = TrigramIndex.pathFor( indexDir, file );
+        this.blockSize = blockSize;
+        this.minFileLength = minFileLength;
+        this.minAppendedLength = minAppendedLength;
+        this.memoryBudget = memoryBudget;
+        this.executor = executor;
+    }
+
+    /**
+     * @return the minimum memory budget to build an index with the given block size, which must fit the
+     * trigrams of at least one block
+     */
+    static long minMemoryBudget( long blockSize ) {
+        return SEEN_TRIGRAMS_BYTES + maxTrigramsPerBlock( blockSize ) * ( 4L + 8L );
+    }
+
+    private static int maxTrigramsPerBlock( long blockSize ) {
+        return ( int ) Math.min( blockSize, 1 << 24 );
+    }
+
+    /**
+     * Get the index of the file, if one is available that matches its current identity.
+     * <p>
+     * If no such index is available, or it does not cover the whole file, the index is built or extended
+     * in the background.
+     *
+     * @param identity the current identity of the file
+     * @return the index, if available
+     */
+    Optional<TrigramIndex> indexFor( FileIdentity identity ) {
+        if ( !isEnabledFor( identity.getSize() ) ) {
+            return Optional.empty();
+        }
+
+        TrigramIndex current = getIndex();
+
+        if ( current == null ) {
+            update( identity.getSize() );
+            return Optional.empty();
+        }
+
+        TimestampIndex.Status status = current.checkAgainst( identity, file.lastModified() );
+
+        if ( status == TimestampIndex.Status.STALE ) {
+            log.info( "Trigram index of file {} is out of date, it will be built again", file );
+            discard( current );
+            update( identity.getSize() );
+            return Optional.empty();
+        }
+
+        if ( status == TimestampIndex.Status.PARTIAL ) {
+            update( identity.getSize() );
+        }
+
+        return Optional.of( current );
+    }
+
+    private boolean isEnabledFor( long fileLength ) {
+        return minFileLength >= 0L && fileLength >= minFileLength && encoding.isAsciiCompatible();
+    }
+
+    /**
+     * Extend the index in the background if enough bytes were appended to the file since it was last indexed,
+     * unless that is already being done.
+     *
+     * @param fileLength the current length of the file
+     */
+    void update( long fileLength ) {
+        if ( !isEnabledFor( fileLength ) ) {
+            return;
+        }
+        synchronized ( this ) {
+            if ( closed || ( indexedLength >= 0L && fileLength - indexedLength < minAppendedLength ) ) {
+                return;
+            }
+        }
+        if ( indexing.compareAndSet( false, true ) ) {
+            executor.execute( this::indexInBackground );
+        }
+    }
+
+    /**
+     * @return true if the index is currently being built in the background.
+     */
+    boolean isIndexing() {
+        return indexing.get();
+    }
+
+    /**
+     * Discard the index in memory, so that it is checked against the file again when next requested.
+     * <p>
+     * This should be called when the file is found to have been truncated or replaced.
+     */
+    synchronized void invalidate() {
+        index = null;
+        loaded = false;
+        indexedLength = -1L;
+        generation++;
+    }
+
+    /**
+     * Set the encoding of the file.
+     * <p>
+     * If the encoding changes, the index is discarded, as the lines of the file may be found in different positions.
+     * Files in encodings that are not compatible with ASCII are not indexed.
+     *
+     * @param encoding of the file
+     */
+    void setEncoding( FileEncoding encoding ) {
+        if ( !encoding.equals( this.encoding ) ) {
+            this.encoding = encoding;
+            synchronized ( this ) {
+                index = null;
+                loaded = true;
+                indexedLength = -1L;
+                generation++;
+            }
+        }
+    }
+
+    /**
+     * Stop indexing the file.
+     */
+    synchronized void close() {
+        closed = true;
+    }
+
+    Path getIndexPath() {
+        return indexPath;
+    }
+
+    /**
+     * @return the index currently in memory, loading it from disk if that was not done yet
+     */
+    synchronized TrigramIndex getIndex() {
+        if ( !loaded ) {
+            loaded = true;
+            index = TrigramIndex.readFrom( indexPath, file )
+                    .filter( loadedIndex -> loadedIndex.getBlockSize() == blockSize )
+                    .orElse( null );
+            if ( index != null ) {
+                log.debug( "Loaded trigram index of file {}: {}", file, index );
+            }
+        }
+        return index;
+    }
+
+    private synchronized void discard( TrigramIndex discarded ) {
+        if ( index == discarded ) {
+            index = null;
+            indexedLength = -1L;
+            generation++;
+        }
+    }
+
+    private synchronized boolean isClosed() {
+        return closed;
+    }
+
+    private void indexInBackground() {
+        boolean again = false;
+        try {
+            again = index();
+        } catch ( IOException | RuntimeException e ) {
+            log.warn( "Unable to index trigrams of file [{}]: {}", file, e );
+        } finally {
+            indexing.set( false );
+        }
+        if ( again ) {
+            update( file.length() );
+        }
+    }
+
+    /**
+     * Build or extend the index of the file, then write it to disk.
+     *
+     * @return true if the index was discarded while being built, so it should be built again
+     */
+    private boolean index() throws IOException {
+        if ( isClosed() ) {
+            return false;
+        }
+
+        long startTime = System.currentTimeMillis();
+        FileEncoding fileEncoding = encoding;
+        long startGeneration;
+        synchronized ( this ) {
+            startGeneration = generation;
+        }
+        TrigramIndex base = getIndex();
+
+        // if the file is modified after this, its length will not match the index
+        long lastModified = file.lastModified();
+
+        TrigramIndex newIndex;
+
+        try ( FileChunks chunks = fileEncoding.align( chunksSource.open( BUFFER_SIZE ) ) ) {
+            FileIdentity identity = FileIdentity.of( file, chunks );
+
+            if ( base != null ) {
+                TimestampIndex.Status status = base.checkAgainst( identity, lastModified );
+                if ( status == TimestampIndex.Status.UP_TO_DATE ) {
+                    synchronized ( this ) {
+                        indexedLength = identity.getSize();
+                    }
+                    return false;
+                }
+                if ( status == TimestampIndex.Status.STALE ) {
+                    base = null;
+                }
+            }
+
+            if ( base == null ) {
+                deleteSegments();
+            }
+
+            newIndex = build( chunks, fileEncoding, identity, lastModified, base );
+        }
+
+        if ( newIndex == null ) {
+            return false;
+        }
+
+        synchronized ( this ) {
+            if ( closed ) {
+                return false;
+            }
+            if ( generation != startGeneration || fileEncoding != encoding ) {
+                log.debug( "Trigram index of file {} was discarded while being built", file );
+                return true;
+            }
+            index = newIndex;
+            indexedLength = newIndex.getLength();
+        }
+
+        newIndex.writeTo( indexPath );
+
+        if ( log.isInfoEnabled() ) {
+            log.info( "{} trigram index of file {} up to byte {} in {} ms, {} segments",
+                    base == null ? "Built" : "Extended", file, newIndex.getIndexedLength(),
+                    System.currentTimeMillis() - startTime, newIndex.getSegments().size() );
+        }
+
+        return false;
+    }
+
+    /**
+     * Build an index of the given file contents, indexing only the blocks after the end of the base index,
+     * if there is one.
+     * <p>
+     * The trigrams of the lines starting in each block are recorded once per block. Only the trigrams of the
+     * current block are kept in a set, and the entries (trigram and block) of the previous blocks are accumulated
+     * in an array sized to fit the memory budget, which is written to disk as a segment whenever it is full.
+     *
+     * @return the new index, or null if the indexer was closed
+     */
+    private TrigramIndex build( FileChunks chunks,
+                                FileEncoding encoding,
+                                FileIdentity identity,
+                                long lastModified,
+                                TrigramIndex base ) throws IOException {
+        final long length = identity.getSize();
+        final long firstBlock = base == null ? 0L : base.getBlockCount();
+        final List<TrigramIndex.Segment> segments = new ArrayList<>();
+        if ( base != null ) {
+            segments.addAll( base.getSegments() );
+        }
+
+        final int maxTrigramsPerBlock = maxTrigramsPerBlock( blockSize );
+        final long seenBytes = SEEN_TRIGRAMS_BYTES + maxTrigramsPerBlock * 4L;
+        final long bytesToIndex = Math.max( 0L, length - firstBlock * blockSize );
+
+        // a block cannot have more distinct trigrams than bytes, so fewer entries may be needed for small files
+        final long[] entries = new long[ ( int ) Math.min( Integer.MAX_VALUE - 8,
+                Math.min( ( memoryBudget - seenBytes ) / 8L, Math.max( bytesToIndex, maxTrigramsPerBlock ) ) ) ];
+        final long[] seen = new long[ SEEN_TRIGRAMS_BYTES / 8 ];
+        final int[] blockTrigrams = new int[ maxTrigramsPerBlock ];
+
+        int entryCount = 0;
+        int blockTrigramCount = 0;
+        long segmentFirstBlock = firstBlock;
+
+        // the lines that start before the first block to index belong to the previous blocks
+        long position = firstBlock == 0L ? 0L :
+                TimestampIndexer.firstLineStartFrom( chunks, encoding, firstBlock * blockSize, length );
+
+        // block where the current line started, which the trigrams being found belong to
+        long lineBlock = position / blockSize;
+        int trigram = 0;
+        int lineBytes = 0;
+
+        while ( position < length ) {
+            if ( isClosed() ) {
+                return null;
+            }
+
+            ByteBuffer buffer = chunks.chunkFrom( position, BUFFER_SIZE );
+            int bytesRead = buffer.limit();
+            if ( bytesRead == 0 ) {
+                break;
+            }
+
+            for ( int i = 0; i < bytesRead; i++ ) {
+                byte b = buffer.get( i );
+                if ( b == '\n' ) {
+                    trigram = 0;
+                    lineBytes = 0;
+                    long nextLineBlock = ( position + i + 1 ) / blockSize;
+                    if ( nextLineBlock != lineBlock ) {
+                        // all lines starting in the current block have been read
+                        if ( entryCount + blockTrigramCount > entries.length ) {
+                            segments.add( writeSegment( segmentFirstBlock, lineBlock, entries, entryCount ) );
+                            segmentFirstBlock = lineBlock;
+                            entryCount = 0;
+                        }
+                        int relativeBlock = ( int ) ( lineBlock - segmentFirstBlock );
+                        for ( int k = 0; k < blockTrigramCount; k++ ) {
+                            int blockTrigram = blockTrigrams[ k ];
+                            entries[ entryCount++ ] = ( ( long ) blockTrigram << 32 ) | relativeBlock;
+                            seen[ blockTrigram >>> 6 ] &= ~( 1L << blockTrigram );
+                        }
+                        blockTrigramCount = 0;
+                        lineBlock = nextLineBlock;
+                    }
+                } else {
+                    trigram = ( ( trigram << 8 ) | ( b & 0xFF ) ) & 0xFFFFFF;
+                    if ( ++lineBytes >= TrigramIndex.TRIGRAM_LENGTH &&
+                            ( seen[ trigram >>> 6 ] & ( 1L << trigram ) ) == 0L ) {
+                        seen[ trigram >>> 6 ] |= 1L << trigram;
+                        blockTrigrams[ blockTrigramCount++ ] = trigram;
+                    }
+                }
+            }
+
+            position += bytesRead;
+        }
+
+        // the block of the last line is not complete, as the line may not be terminated,
+        // or more lines may start in the same block later
+        if ( lineBlock > segmentFirstBlock ) {
+            segments.add( writeSegment( segmentFirstBlock, lineBlock, entries, entryCount ) );
+        }
+
+        return new TrigramIndex( TimestampIndex.canonicalPathOf( file ), identity, lastModified, blockSize, segments );
+    }
+
+    /**
+     * Delete the segments of any index previously built for the file, which would otherwise be left behind
+     * when the index is built again from scratch.
+     */
+    private void deleteSegments() throws IOException {
+        Path indexDir = indexPath.getParent();
+        if ( !Files.isDirectory( indexDir ) ) {
+            return;
+        }
+        String segmentPrefix = indexPath.getFileName() + ".";
+        try ( DirectoryStream<Path> segmentPaths = Files.newDirectoryStream( indexDir,
+                path -> path.getFileName().toString().startsWith( segmentPrefix ) ) ) {
+            for ( Path segmentPath : segmentPaths ) {
+                Files.deleteIfExists( segmentPath );
+            }
+        }
+    }
+
+    private TrigramIndex.Segment writeSegment( long firstBlock, long endBlock,
+                                               long[] entries, int count ) throws IOException {
+        log.debug( "Writing segment of trigram index of file {}, blocks {}..{}, {} entries",
+                file, firstBlock, endBlock, count );
+        return TrigramIndex.writeSegment( TrigramIndex.segmentPathFor( indexPath, firstBlock ),
+                firstBlock, ( int ) ( endBlock - firstBlock ), entries, count );
+    }
+}
@@ -1,9 +1,16 @@
 package com.athaydes.logfx.text;
 
 import com.athaydes.logfx.data.LogLineColors;
+import com.athaydes.logfx.file.LineFilter;
+import com.athaydes.logfx.file.LineHandle;
 import javafx.scene.paint.Paint;
 
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 /**
  * A log line highlight expression.
@@ -18,6 +25,12 @@ public final class HighlightExpression {
     private final Paint fillColor;
     private final boolean isFiltered;
 
+    // if the expression is just some ASCII text, it can be found in the bytes of a line without decoding it
+    private final byte[] asciiLiteral;
+
+    // the longest ASCII text found in all matches of the expression, if any
+    private final String requiredText;
+
     public HighlightExpression( String expression, Paint bkgColor, Paint fillColor, boolean isFiltered ) {
         this( Pattern.compile( expression ), bkgColor, fillColor, isFiltered );
     }
@@ -27,6 +40,218 @@ public final class HighlightExpression {
         this.bkgColor = bkgColor;
         this.fillColor = fillColor;
         this.isFiltered = isFiltered;
+        this.asciiLiteral = asciiLiteralOf( expression );
+        this.requiredText = requiredTextOf( expression );
+    }
+
+    private static byte[] asciiLiteralOf( Pattern pattern ) {
+        if ( pattern.flags() != 0 && pattern.flags() != Pattern.LITERAL ) {
+            return null;
+        }
+        String text = pattern.pattern();
+        for ( int i = 0; i < text.length(); i++ ) {
+            char c = text.charAt( i );
+            boolean isPrintableAscii = c >= 0x20 && c < 0x7F;
+            if ( !isPrintableAscii || ( pattern.flags() == 0 && "\\^$.|?*+()[]{}".indexOf( c ) >= 0 ) ) {
+                return null;
+            }
+        }
+        return text.getBytes( StandardCharsets.US_ASCII );
+    }
+
+    /**
+     * Find the longest run of literal ASCII characters which every match of the pattern must contain.
+     * <p>
+     * Only the top-level sequence of the pattern is considered: groups and character classes interrupt runs of
+     * literal characters, and a character followed by a quantifier that allows it to be absent is not required.
+     * If the pattern has alternatives at the top level, or flags (including embedded ones) that could make
+     * a literal character match anything other than itself, no text is required.
+     */
+    private static String requiredTextOf( Pattern pattern ) {
+        if ( pattern.flags() == Pattern.LITERAL ) {
+            return asciiLiteralOf( pattern ) == null ? null : pattern.pattern();
+        }
+        if ( pattern.flags() != 0 ) {
+            return null;
+        }
+
+        String text = pattern.pattern();
+        StringBuilder run = new StringBuilder();
+        String longest = "";
+        int i = 0;
+
+        while ( i < text.length() ) {
+            char c = text.charAt( i );
+            int next = i + 1;
+            boolean endsRun = true;
+
+            switch ( c ) {
+                case '|':
+                    return null;
+                case '(':
+                    if ( text.startsWith( "(?", i ) && next + 1 < text.length() &&
+                            ":=!<>".indexOf( text.charAt( next + 1 ) ) < 0 ) {
+                        // embedded flags, such as (?i), may apply to the rest of the pattern
+                        return null;
+                    }
+                    next = skipGroup( text, i );
+                    break;
+                case '[':
+                    next = skipCharacterClass( text, i );
+                    break;
+                case '\\':
+                    if ( next < text.length() && isEscapedLiteral( text.charAt( next ) ) ) {
+                        run.append( text.charAt( next ) );
+                        endsRun = false;
+                    }
+                    next = skipEscape( text, i );
+                    break;
+                case '?':
+                case '*':
+                    // the previous character is optional
+                    removeLast( run );
+                    break;
+                case '{':
+                    removeLast( run );
+                    next = skipTo( text, next, '}' );
+                    break;
+                case '+':
+                    // the previous character is required, but may be repeated
+                    break;
+                case '.':
+                case '^':
+                case '$':
+                    break;
+                default:
+                    if ( c >= 0x20 && c < 0x7F ) {
+                        run.append( c );
+                        endsRun = false;
+                    }
+            }
+
+            if ( endsRun ) {
+                if ( run.length() > longest.length() ) {
+                    longest = run.toString();
+                }
+                run.setLength( 0 );
+            }
+            i = next;
+        }
+
+        if ( run.length() > longest.length() ) {
+            longest = run.toString();
+        }
+        return longest.isEmpty() ? null : longest;
+    }
+
+    private static boolean isEscapedLiteral( char c ) {
+        return c >= 0x20 && c < 0x7F && !Character.isLetterOrDigit( c );
+    }
+
+    private static void removeLast( StringBuilder run ) {
+        if ( run.length() > 0 ) {
+            run.setLength( run.length() - 1 );
+        }
+    }
+
+    private static int skipTo( String text, int index, char end ) {
+        int endIndex = text.indexOf( end, index );
+        return endIndex < 0 ? text.length() : endIndex + 1;
+    }
+
+    /**
+     * @return the index after the escape sequence starting at the given index
+     */
+    private static int skipEscape( String text, int index ) {
+        int next = index + 2;
+        if ( next > text.length() ) {
+            return text.length();
+        }
+        switch ( text.charAt( index + 1 ) ) {
+            case 'x':
+                return next < text.length() && text.charAt( next ) == '{' ?
+                        skipTo( text, next, '}' ) :
+                        Math.min( text.length(), next + 2 );
+            case 'u':
+                return Math.min( text.length(), next + 4 );
+            case 'c':
+                return Math.min( text.length(), next + 1 );
+            case 'p':
+            case 'P':
+                return next < text.length() && text.charAt( next ) == '{' ?
+                        skipTo( text, next, '}' ) :
+                        Math.min( text.length(), next + 1 );
+            case 'k':
+                return skipTo( text, next, '>' );
+            case 'N':
+                return skipTo( text, next, '}' );
+            case 'Q':
+                int quoteEnd = text.indexOf( "\\E", next );
+                return quoteEnd < 0 ? text.length() : quoteEnd + 2;
+            default:
+                // octal escapes and back-references are followed by digits
+                if ( Character.isDigit( text.charAt( index + 1 ) ) ) {
+                    while ( next < text.length() && Character.isDigit( text.charAt( next ) ) ) {
+                        next++;
+                    }
+                }
+                return next;
+        }
+    }
+
+    /**
+     * @return the index after the group starting at the given index
+     */
+    private static int skipGroup( String text, int index ) {
+        int depth = 0;
+        int i = index;
+        while ( i < text.length() ) {
+            char c = text.charAt( i );
+            if ( c == '\\' ) {
+                i = skipEscape( text, i );
+                continue;
+            }
+            if ( c == '[' ) {
+                i = skipCharacterClass( text, i );
+                continue;
+            }
+            if ( c == '(' ) {
+                depth++;
+            } else if ( c == ')' && --depth == 0 ) {
+                return i + 1;
+            }
+            i++;
+        }
+        return text.length();
+    }
+
+    /**
+     * @return the index after the character class starting at the given index
+     */
+    private static int skipCharacterClass( String text, int index ) {
+        int depth = 0;
+        int i = index;
+        while ( i < text.length() ) {
+            char c = text.charAt( i );
+            if ( c == '\\' ) {
+                i = skipEscape( text, i );
+                continue;
+            }
+            if ( c == '[' ) {
+                depth++;
+                // a closing bracket right at the start of a class is a literal
+                if ( i + 1 < text.length() && text.charAt( i + 1 ) == '^' ) {
+                    i++;
+                }
+                if ( i + 1 < text.length() && text.charAt( i + 1 ) == ']' ) {
+                    i++;
+                }
+            } else if ( c == ']' && --depth == 0 ) {
+                return i + 1;
+            }
+            i++;
+        }
+        return text.length();
     }
 
     public Paint getBkgColor() {
@@ -45,6 +270,13 @@ public final class HighlightExpression {
         return isFiltered;
     }
 
+    /**
+     * @return ASCII text that every line matched by this expression contains, if any is known
+     */
+    public Optional<String> getRequiredText() {
+        return Optional.ofNullable( requiredText );
+    }
+
     public LogLineColors getLogLineColors() {
         return new LogLineColors( bkgColor, fillColor );
     }
@@ -58,6 +290,72 @@ public final class HighlightExpression {
         return expression.matcher( text ).find();
     }
 
+    /**
+     * Same as {@link #matches(String)}, but only decoding the line if the expression cannot be found
+     * by looking at the bytes of the line.
+     *
+     * @param line the line to match
+     * @return true if the expression matches the line
+     */
+    public boolean matches( LineHandle line ) {
+        if ( asciiLiteral != null && line.isAsciiCompatible() ) {
+            return line.containsBytes( asciiLiteral );
+        }
+        return matches( line.getText() );
+    }
+
+    /**
+     * Create a line filter that accepts the lines matched by any of the given expressions that are filtered.
+     *
+     * @param expressions highlight expressions
+     * @return the filter
+     */
+    public static LineFilter filterOf( List<HighlightExpression> expressions ) {
+        List<HighlightExpression> filteredExpressions = expressions.stream()
+                .filter( HighlightExpression::isFiltered )
+                .collect( Collectors.toList() );
+
+        // a line is accepted if any expression matches it, so neither the order of the expressions,
+        // nor their colors, affect which lines are accepted
+        Set<String> fingerprint = filteredExpressions.stream()
+                .map( exp -> exp.getPattern().flags() + ":" + exp.getPattern().pattern() )
+                .collect( Collectors.toSet() );
+
+        // a line can only be accepted if it contains the text required by one of the expressions,
+        // so an index can only be used if all expressions require some text
+        Optional<List<String>> requiredTexts = filteredExpressions.stream()
+                .allMatch( exp -> exp.getRequiredText().isPresent() ) ?
+                Optional.of( filteredExpressions.stream()
+                        .map( exp -> exp.getRequiredText().get() )
+                        .distinct()
+                        .collect( Collectors.toList() ) ) :
+                Optional.empty();
+
+        return new LineFilter() {
+            @Override
+            public boolean test( String line ) {
+                return filteredExpressions.stream()
+                        .anyMatch( ( exp ) -> exp.matches( line ) );
+            }
+
+            @Override
+            public boolean test( LineHandle line ) {
+                return filteredExpressions.stream()
+                        .anyMatch( ( exp ) -> exp.matches( line ) );
+            }
+
+            @Override
+            public Optional<Object> getFingerprint() {
+                return Optional.of( fingerprint );
+            }
+
+            @Override
+            public Optional<List<String>> getRequiredTexts() {
+                return requiredTexts;
+            }
+        };
+    }
+
     public HighlightExpression withFilter( boolean enable ) {
         return new HighlightExpression( this.expression, this.bkgColor, this.fillColor, enable );
     }
@@ -63,6 +63,8 @@ public class AwesomeIcons {
 
     public static final String CLOSE = "\uf2d4";
     public static final String ARROW_DOWN = "\uf063";
+    public static final String ARROW_UP = "\uf062";
+    public static final String SEARCH = "\uf002";
     public static final String HELP = "\uf059";
     public static final String TRASH = "\uf1f8";
     public static final String CLOCK = "\uf017";
@@ -167,6 +167,10 @@ public class Dialog {
         dialogStage.hide();
     }
 
+    public Window getWindow() {
+        return dialogStage;
+    }
+
     public boolean isVisible() {
         return dialogStage.isShowing();
     }
@@ -0,0 +1,207 @@
+package com.athaydes.logfx.ui;
+
+import com.athaydes.logfx.file.FileExport;
+import com.athaydes.logfx.ui.GoToDateView.DateTimeTextField;
+import javafx.application.Platform;
+import javafx.beans.binding.Bindings;
+import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.control.RadioButton;
+import javafx.scene.control.TextField;
+import javafx.scene.control.ToggleGroup;
+import javafx.scene.control.Tooltip;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+import javafx.stage.FileChooser;
+
+import java.io.File;
+
+/**
+ * A view to export the lines of a log file within a range of bytes or of date-times, or accepted by the
+ * current filter, to another file.
+ */
+class ExportView {
+
+    private final LogView logView;
+    private final Dialog dialog;
+    private final Label statusLabel = new Label();
+    private final ProgressBar progressBar = new ProgressBar( 0.0 );
+    private final Button exportButton = new Button( "Export" );
+
+    // only accessed from the JavaFX Thread
+    private long exportId = 0L;
+    private boolean exporting = false;
+
+    @MustCallOnJavaFXThread
+    ExportView( LogView logView ) {
+        this.logView = logView;
+
+        VBox root = new VBox( 10 );
+
+        dialog = new Dialog( root );
+        dialog.setTitle( "Export " + logView.getFile().getName() );
+        dialog.setResizable( false );
+
+        ToggleGroup rangeGroup = new ToggleGroup();
+
+        RadioButton wholeFile = new RadioButton( "Whole file" );
+        wholeFile.setToggleGroup( rangeGroup );
+        wholeFile.setSelected( true );
+
+        RadioButton byteRange = new RadioButton( "Bytes" );
+        byteRange.setToggleGroup( rangeGroup );
+        TextField fromByte = new TextField( "0" );
+        fromByte.setPromptText( "From" );
+        TextField toByte = new TextField();
+        toByte.setPromptText( "To (end of file)" );
+        HBox byteRangeBox = new HBox( 10, byteRange, fromByte, new Label( "to" ), toByte );
+        fromByte.disableProperty().bind( byteRange.selectedProperty().not() );
+        toByte.disableProperty().bind( byteRange.selectedProperty().not() );
+
+        RadioButton timeRange = new RadioButton( "Date-times" );
+        timeRange.setToggleGroup( rangeGroup );
+        DateTimeTextField fromDateTime = new DateTimeTextField();
+        fromDateTime.setTooltip( new Tooltip( "Enter a date and time (yyyy-MM-dd HH:mm:ss[.SSS z])" ) );
+        DateTimeTextField untilDateTime = new DateTimeTextField();
+        untilDateTime.setTooltip( new Tooltip( "Enter a date and time (yyyy-MM-dd HH:mm:ss[.SSS z])" ) );
+        HBox timeRangeBox = new HBox( 10, timeRange, fromDateTime, new Label( "to" ), untilDateTime );
+        fromDateTime.disableProperty().bind( timeRange.selectedProperty().not() );
+        untilDateTime.disableProperty().bind( timeRange.selectedProperty().not() );
+
+        CheckBox filtered = new CheckBox( "Only lines accepted by the current filter" );
+        filtered.setSelected( logView.isFiltered() );
+        filtered.setDisable( !logView.isFiltered() );
+
+        CheckBox gzip = new CheckBox( "Compress with gzip" );
+
+        progressBar.setMaxWidth( Double.MAX_VALUE );
+        progressBar.setVisible( false );
+
+        Button cancelButton = new Button( "Cancel" );
+        cancelButton.setOnAction( event -> dialog.hide() );
+
+        exportButton.disableProperty().bind( Bindings.createBooleanBinding( () ->
+                        timeRange.isSelected() &&
+                                !( fromDateTime.validProperty().get() && untilDateTime.validProperty().get() ),
+                timeRange.selectedProperty(), fromDateTime.validProperty(), untilDateTime.validProperty() ) );
+
+        exportButton.setOnAction( event -> {
+            long start = 0L;
+            long end = Long.MAX_VALUE;
+            if ( byteRange.isSelected() ) {
+                try {
+                    start = parseBytes( fromByte, 0L );
+                    end = parseBytes( toByte, Long.MAX_VALUE );
+                } catch ( NumberFormatException e ) {
+                    return;
+                }
+            }
+
+            File target = chooseTarget( gzip.isSelected() );
+            if ( target == null ) {
+                return;
+            }
+
+            startExport();
+            final long id = exportId;
+            if ( timeRange.isSelected() ) {
+                logView.exportTimeRange( fromDateTime.getValue().orElseThrow( IllegalStateException::new ),
+                        untilDateTime.getValue().orElseThrow( IllegalStateException::new ),
+                        filtered.isSelected(), target, gzip.isSelected(),
+                        progress -> Platform.runLater( () -> update( id, target, progress ) ),
+                        () -> Platform.runLater( () -> {
+                            stopExport( "" );
+                            Dialog.showMessage( "Unable to guess date-time format in file\n" +
+                                    logView.getFile().getName(), Dialog.MessageLevel.INFO );
+                        } ) );
+            } else {
+                logView.exportBytes( start, end, filtered.isSelected(), target, gzip.isSelected(),
+                        progress -> Platform.runLater( () -> update( id, target, progress ) ) );
+            }
+        } );
+
+        HBox buttonBox = new HBox( 10, cancelButton, exportButton );
+
+        dialog.setOnHidden( event -> {
+            if ( exporting ) {
+                logView.cancelExport();
+                exportId++;
+            }
+        } );
+
+        root.getChildren().addAll( wholeFile, byteRangeBox, timeRangeBox, filtered, gzip,
+                progressBar, statusLabel, buttonBox );
+    }
+
+    @MustCallOnJavaFXThread
+    void show() {
+        dialog.show();
+    }
+
+    private File chooseTarget( boolean gzip ) {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle( "Export to file" );
+        File file = logView.getFile();
+        fileChooser.setInitialDirectory( file.getAbsoluteFile().getParentFile() );
+        fileChooser.setInitialFileName( file.getName() + ".export" + ( gzip ? ".gz" : "" ) );
+        return fileChooser.showSaveDialog( dialog.getWindow() );
+    }
+
+    private static long parseBytes( TextField field, long defaultValue ) {
+        String text = field.getText().trim().replace( ",", "" ).replace( "_", "" );
+        try {
+            long value = text.isEmpty() ? defaultValue : Long.parseLong( text );
+            if ( value < 0L ) {
+                throw new NumberFormatException( "negative value: " + value );
+            }
+            field.getStyleClass().remove( "error" );
+            return value;
+        } catch ( NumberFormatException e ) {
+            if ( !field.getStyleClass().contains( "error" ) ) {
+                field.getStyleClass().add( "error" );
+            }
+            throw e;
+        }
+    }
+
+    @MustCallOnJavaFXThread
+    private void startExport() {
+        exportId++;
+        exporting = true;
+        exportButton.setVisible( false );
+        progressBar.setVisible( true );
+        progressBar.setProgress( ProgressBar.INDETERMINATE_PROGRESS );
+        statusLabel.setText( "Exporting..." );
+    }
+
+    @MustCallOnJavaFXThread
+    private void stopExport( String status ) {
+        exporting = false;
+        exportButton.setVisible( true );
+        progressBar.setVisible( false );
+        statusLabel.setText( status );
+    }
+
+    @MustCallOnJavaFXThread
+    private void update( long id, File target, FileExport.Progress progress ) {
+        // progress of a previous export may arrive after it was cancelled
+        if ( id != exportId ) {
+            return;
+        }
+        if ( progress.isDone() ) {
+            stopExport( progress.getError()
+                    .map( error -> "Export failed: " + error )
+                    .orElseGet( () -> String.format( "Exported %.1f MB to %s",
+                            progress.getExportedBytes() / 1_000_000.0, target.getName() ) ) );
+            progress.getError().ifPresent( error -> Dialog.showMessage(
+                    "Unable to export file\n" + logView.getFile().getName(), Dialog.MessageLevel.ERROR ) );
+        } else if ( progress.getTotalBytes() > 0L ) {
+            progressBar.setProgress( ( double ) progress.getProcessedBytes() / progress.getTotalBytes() );
+            statusLabel.setText( String.format( "Exported %.1f MB (%.0f%%)",
+                    progress.getExportedBytes() / 1_000_000.0,
+                    100.0 * progress.getProcessedBytes() / progress.getTotalBytes() ) );
+        }
+    }
+}
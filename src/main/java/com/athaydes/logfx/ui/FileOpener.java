@@ -6,6 +6,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.util.List;
 import java.util.function.Consumer;
 
 /**
@@ -26,4 +27,22 @@ public class FileOpener {
         }
     }
 
+    /**
+     * Open a dialog to select several files.
+     *
+     * @param stage           owner of the dialog
+     * @param title           title of the dialog
+     * @param onFilesSelected called with the selected files, unless the dialog is cancelled
+     */
+    public static void openFiles( Stage stage, String title, Consumer<List<File>> onFilesSelected ) {
+        log.debug( "Opening files" );
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle( title );
+        List<File> files = fileChooser.showOpenMultipleDialog( stage );
+        log.debug( "Selected files {}", files );
+        if ( files != null && !files.isEmpty() ) {
+            onFilesSelected.accept( files );
+        }
+    }
+
 }
@@ -0,0 +1,228 @@
+package com.athaydes.logfx.ui;
+
+import com.athaydes.logfx.file.FileSearch;
+import com.athaydes.logfx.file.MultiFileSearch;
+import com.athaydes.logfx.ui.LogViewPane.LogViewWrapper;
+import javafx.application.Platform;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.TextField;
+import javafx.scene.control.Tooltip;
+import javafx.scene.control.TreeItem;
+import javafx.scene.control.TreeView;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A view to search all opened log files at the same time, showing how many lines matching a regular expression
+ * were found in each file, and when the first and last of them were logged.
+ * <p>
+ * Selecting one of the lines found moves its log view to it.
+ */
+class GlobalSearchView {
+
+    // maximum number of lines found in a file that are listed under the file
+    private static final int MAX_LISTED_MATCHES = 1000;
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern( "yyyy-MM-dd HH:mm:ss" );
+
+    private final Dialog dialog;
+    private final Label statusLabel = new Label( "Preparing search..." );
+    private final TreeItem<String> root = new TreeItem<>();
+    private final List<FileTreeItem> fileItems = new ArrayList<>();
+
+    // null until all files are ready to be searched, only accessed from the JavaFX Thread
+    private MultiFileSearch multiFileSearch;
+
+    @MustCallOnJavaFXThread
+    GlobalSearchView( List<LogViewWrapper> logViews ) {
+        VBox box = new VBox( 10 );
+
+        dialog = new Dialog( box );
+        dialog.setTitle( "Find in all files" );
+        dialog.setResizable( true );
+
+        Label searchLabel = new Label( "Find in all files:" );
+
+        TextField searchField = new TextField();
+        searchField.setPromptText( "Regular expression" );
+        searchField.setMinWidth( 400.0 );
+        HBox.setHgrow( searchField, Priority.ALWAYS );
+
+        Button searchButton = new Button( "Find" );
+        searchButton.setDefaultButton( true );
+        searchButton.setDisable( true );
+        searchButton.setOnAction( event -> search( searchField ) );
+
+        HBox searchBox = new HBox( 10, searchField, searchButton );
+
+        TreeView<String> resultsView = new TreeView<>( root );
+        resultsView.setShowRoot( false );
+        resultsView.setPrefSize( 600.0, 300.0 );
+        resultsView.setTooltip( new Tooltip( "Select a line to go to it" ) );
+        resultsView.getSelectionModel().selectedItemProperty().addListener( ( observable, oldValue, item ) -> {
+            if ( item instanceof MatchTreeItem ) {
+                MatchTreeItem matchItem = ( MatchTreeItem ) item;
+                FileTreeItem fileItem = ( FileTreeItem ) matchItem.getParent();
+                fileItem.wrapper.goToMatch( fileItem.search, matchItem.match );
+            }
+        } );
+        VBox.setVgrow( resultsView, Priority.ALWAYS );
+
+        box.getChildren().addAll( searchLabel, searchBox, statusLabel, resultsView );
+
+        dialog.setOnHidden( event -> {
+            if ( multiFileSearch != null ) {
+                multiFileSearch.cancel();
+            }
+        } );
+
+        // the searches are created in the background as the date-time format of each file may need to be guessed
+        List<Optional<FileSearch>> searches = new ArrayList<>( logViews.size() );
+        for ( LogViewWrapper wrapper : logViews ) {
+            wrapper.getLogView().createFileSearch( search -> Platform.runLater( () -> {
+                searches.add( search );
+                search.ifPresent( fileSearch -> fileItems.add( new FileTreeItem( wrapper, fileSearch ) ) );
+                if ( searches.size() == logViews.size() ) {
+                    List<FileSearch> fileSearches = new ArrayList<>( fileItems.size() );
+                    for ( FileTreeItem fileItem : fileItems ) {
+                        fileSearches.add( fileItem.search );
+                        root.getChildren().add( fileItem );
+                    }
+                    multiFileSearch = new MultiFileSearch( fileSearches );
+                    searchButton.setDisable( fileItems.isEmpty() );
+                    statusLabel.setText( fileItems.isEmpty() ?
+                            "None of the opened files can be searched" :
+                            String.format( "Ready to search %d file%s", fileItems.size(),
+                                    fileItems.size() == 1 ? "" : "s" ) );
+                }
+            } ) );
+        }
+
+        if ( logViews.isEmpty() ) {
+            statusLabel.setText( "No files are opened" );
+        }
+    }
+
+    @MustCallOnJavaFXThread
+    void show() {
+        dialog.show();
+    }
+
+    @MustCallOnJavaFXThread
+    private void search( TextField searchField ) {
+        Pattern pattern;
+        try {
+            pattern = Pattern.compile( searchField.getText() );
+            searchField.getStyleClass().remove( "error" );
+        } catch ( PatternSyntaxException e ) {
+            if ( !searchField.getStyleClass().contains( "error" ) ) {
+                searchField.getStyleClass().add( "error" );
+            }
+            return;
+        }
+
+        fileItems.forEach( FileTreeItem::clear );
+        statusLabel.setText( "Searching..." );
+
+        multiFileSearch.start( line -> pattern.matcher( line ).find(), summary -> Platform.runLater( () -> {
+            statusLabel.setText( statusOf( summary ) );
+            List<FileSearch.Progress> fileProgress = summary.getFileProgress();
+            for ( int i = 0; i < fileProgress.size(); i++ ) {
+                if ( fileProgress.get( i ) != null ) {
+                    fileItems.get( i ).update( fileProgress.get( i ) );
+                }
+            }
+        } ) );
+    }
+
+    private static String statusOf( MultiFileSearch.Summary summary ) {
+        return String.format( "%,d match%s, %.1f MB scanned at %.1f MB/s%s",
+                summary.getMatchCount(), summary.getMatchCount() == 1 ? "" : "es",
+                summary.getScannedBytes() / 1_000_000.0,
+                summary.getBytesPerSecond() / 1_000_000.0,
+                summary.isDone() ? "" : " (searching...)" );
+    }
+
+    private static String formatDateTime( Optional<ZonedDateTime> dateTime ) {
+        return dateTime.map( DATE_FORMAT::format ).orElse( "?" );
+    }
+
+    /**
+     * Tree item showing the results of the search of a file, with the lines found as children.
+     */
+    private static class FileTreeItem extends TreeItem<String> {
+
+        private final LogViewWrapper wrapper;
+        private final FileSearch search;
+        private FileSearch.Progress progress;
+
+        FileTreeItem( LogViewWrapper wrapper, FileSearch search ) {
+            super( wrapper.getLogView().getFile().getName() );
+            this.wrapper = wrapper;
+            this.search = search;
+            expandedProperty().addListener( observable -> updateMatches() );
+        }
+
+        @Override
+        public boolean isLeaf() {
+            return progress == null || progress.getMatchCount() == 0;
+        }
+
+        void clear() {
+            progress = null;
+            getChildren().clear();
+            setValue( wrapper.getLogView().getFile().getName() );
+        }
+
+        void update( FileSearch.Progress progress ) {
+            this.progress = progress;
+            String dateTimes = progress.getMatchCount() == 0 ? "" : String.format( " [%s - %s]",
+                    formatDateTime( progress.getFirstDateTime() ), formatDateTime( progress.getLastDateTime() ) );
+            setValue( String.format( "%s: %,d match%s%s%s", wrapper.getLogView().getFile().getName(),
+                    progress.getMatchCount(), progress.getMatchCount() == 1 ? "" : "es",
+                    progress.isLimitReached() ? " (limit reached)" : "", dateTimes ) );
+            if ( isExpanded() ) {
+                updateMatches();
+            }
+        }
+
+        private void updateMatches() {
+            int listed = getChildren().size();
+            if ( !isExpanded() || listed >= MAX_LISTED_MATCHES || progress == null ||
+                    listed >= progress.getMatchCount() ) {
+                return;
+            }
+            List<FileSearch.Match> matches = search.getMatches();
+            List<MatchTreeItem> newItems = new ArrayList<>();
+            for ( int i = listed; i < Math.min( matches.size(), MAX_LISTED_MATCHES ); i++ ) {
+                newItems.add( new MatchTreeItem( matches.get( i ) ) );
+            }
+            getChildren().addAll( newItems );
+        }
+    }
+
+    /**
+     * Tree item representing a line found by a search.
+     */
+    private static class MatchTreeItem extends TreeItem<String> {
+
+        private final FileSearch.Match match;
+
+        MatchTreeItem( FileSearch.Match match ) {
+            super( match.getLineNumber() > 0L ?
+                    String.format( "Line %,d", match.getLineNumber() ) :
+                    String.format( "Byte %,d", match.getStart() ) );
+            this.match = match;
+        }
+    }
+}
@@ -92,7 +92,7 @@ class GoToDateView {
         dialog.show();
     }
 
-    private static class DateTimeTextField extends TextField {
+    static class DateTimeTextField extends TextField {
 
         private static String lastValidDateTimeText = null;
 
@@ -0,0 +1,91 @@
+package com.athaydes.logfx.ui;
+
+import javafx.application.Platform;
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.TextField;
+import javafx.scene.control.Tooltip;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+import javafx.stage.StageStyle;
+
+import java.util.OptionalLong;
+import java.util.function.IntConsumer;
+
+/**
+ * A view that allows the user to select a line number to go to in an opened log file.
+ */
+class GoToLineView {
+
+    private final Dialog dialog;
+
+    GoToLineView( LogView logView, IntConsumer scrollTo ) {
+        VBox root = new VBox( 20 );
+
+        dialog = new Dialog( root );
+        dialog.setStyle( StageStyle.UNDECORATED );
+        dialog.setResizable( false );
+
+        Label lineLabel = new Label( "Go to line:" );
+
+        LineNumberTextField lineNumberField = new LineNumberTextField();
+        lineNumberField.setMinWidth( 240.0 );
+        lineNumberField.setTooltip( new Tooltip( "Enter a line number (the first line is line 1)" ) );
+
+        Button cancelButton = new Button( "Cancel" );
+        cancelButton.setOnAction( event -> dialog.hide() );
+
+        Button goButton = new Button( "Go" );
+        goButton.disableProperty().bind( lineNumberField.validProperty().not() );
+        goButton.setDefaultButton( true );
+
+        goButton.setOnAction( event -> {
+            lineNumberField.getValue().ifPresent( lineNumber ->
+                    Platform.runLater( () -> logView.goToLine( lineNumber, scrollTo ) ) );
+            dialog.hide();
+        } );
+
+        HBox buttonBox = new HBox( 10 );
+        buttonBox.getChildren().addAll( cancelButton, goButton );
+
+        root.getChildren().addAll( lineLabel, lineNumberField, buttonBox );
+    }
+
+    void show() {
+        dialog.show();
+    }
+
+    private static class LineNumberTextField extends TextField {
+
+        private final BooleanProperty valid = new SimpleBooleanProperty( false );
+
+        private long lineNumber;
+
+        LineNumberTextField() {
+            textProperty().addListener( ( observable, oldValue, newValue ) -> {
+                try {
+                    this.lineNumber = Long.parseLong( newValue.trim().replace( ",", "" ) );
+                    valid.set( lineNumber > 0L );
+                } catch ( NumberFormatException e ) {
+                    valid.set( false );
+                }
+                if ( valid.get() ) {
+                    getStyleClass().remove( "error" );
+                } else if ( !getStyleClass().contains( "error" ) ) {
+                    getStyleClass().add( "error" );
+                }
+            } );
+        }
+
+        BooleanProperty validProperty() {
+            return valid;
+        }
+
+        OptionalLong getValue() {
+            return valid.get() ? OptionalLong.of( lineNumber ) : OptionalLong.empty();
+        }
+    }
+
+}
@@ -204,11 +204,7 @@ public class HighlightOptions extends VBox {
 
     Optional<Predicate<String>> getLineFilter() {
         if ( isFilterEnabled.get() ) {
-            List<HighlightExpression> filteredExpressions = observableExpressions.stream()
-                    .filter( HighlightExpression::isFiltered )
-                    .collect( Collectors.toList() );
-            return Optional.of( ( line ) -> filteredExpressions.stream()
-                    .anyMatch( ( exp ) -> exp.matches( line ) ) );
+            return Optional.of( HighlightExpression.filterOf( observableExpressions ) );
         } else {
             return Optional.empty();
         }
@@ -20,6 +20,8 @@ import java.util.List;
  */
 class LogLine extends Label implements SelectionHandler.SelectableNode {
 
+    private final Label lineNumberLabel = new Label();
+
     LogLine( BindableValue<Font> fontValue,
              NumberBinding widthProperty,
              Paint bkgColor, Paint fillColor ) {
@@ -28,6 +30,34 @@ class LogLine extends Label implements SelectionHandler.SelectableNode {
         fontProperty().bind( fontValue );
         minWidthProperty().bind( widthProperty );
         getStyleClass().add( "log-line" );
+
+        lineNumberLabel.fontProperty().bind( fontValue );
+        lineNumberLabel.getStyleClass().add( "log-line-number" );
+        setGraphic( lineNumberLabel );
+    }
+
+    /**
+     * Set the text to show as the line number of this line (not part of the line's text).
+     *
+     * @param lineNumberText line number text, or the empty String if the line number is not known
+     */
+    @MustCallOnJavaFXThread
+    void setLineNumberText( String lineNumberText ) {
+        lineNumberLabel.setText( lineNumberText );
+    }
+
+    /**
+     * Set the text to show as the line number of this line, with the given color.
+     * <p>
+     * This is used in merged views to tag each line with the file it comes from.
+     *
+     * @param lineNumberText line number text
+     * @param color          color of the text
+     */
+    @MustCallOnJavaFXThread
+    void setLineNumberText( String lineNumberText, Paint color ) {
+        lineNumberLabel.setText( lineNumberText );
+        lineNumberLabel.setTextFill( color );
     }
 
     @MustCallOnJavaFXThread
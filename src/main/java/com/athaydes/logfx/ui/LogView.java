@@ -1,12 +1,22 @@
 package com.athaydes.logfx.ui;
 
 import com.athaydes.logfx.binding.BindableValue;
+import com.athaydes.logfx.concurrency.Cancellable;
 import com.athaydes.logfx.concurrency.TaskRunner;
+import com.athaydes.logfx.config.Properties;
 import com.athaydes.logfx.data.LogLineColors;
 import com.athaydes.logfx.file.FileChangeWatcher;
 import com.athaydes.logfx.file.FileContentReader;
 import com.athaydes.logfx.file.FileContentReader.FileQueryResult;
+import com.athaydes.logfx.file.FileExport;
+import com.athaydes.logfx.file.FileSearch;
+import com.athaydes.logfx.file.LineHandle;
+import com.athaydes.logfx.file.MergedFileReader;
 import com.athaydes.logfx.file.OutsideRangeQueryResult;
+import com.athaydes.logfx.file.RecordMode;
+import com.athaydes.logfx.file.StreamReader;
+import com.athaydes.logfx.file.TailUpdate;
+import com.athaydes.logfx.file.TimeHistogramScanner;
 import com.athaydes.logfx.text.DateTimeFormatGuess;
 import com.athaydes.logfx.text.DateTimeFormatGuesser;
 import javafx.application.Platform;
@@ -22,21 +32,29 @@ import javafx.scene.Node;
 import javafx.scene.input.ClipboardContent;
 import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
+import javafx.scene.paint.Paint;
 import javafx.scene.text.Font;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.nio.charset.Charset;
+import java.time.Duration;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import java.util.function.IntConsumer;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import java.util.regex.Pattern;
 
 import static java.util.stream.Collectors.toList;
 
@@ -52,6 +70,13 @@ public class LogView extends VBox {
 
     public static final int MAX_LINES = 100;
     private static final double DELTA_FACTOR = 10.0;
+    private static final Duration STREAM_CHECK_PERIOD = Duration.ofMillis( 500 );
+
+    // colors used to tell the files of a merged view apart
+    private static final Color[] SOURCE_COLORS = {
+            Color.DEEPSKYBLUE, Color.ORANGE, Color.LIMEGREEN, Color.VIOLET, Color.GOLD, Color.TOMATO,
+            Color.TURQUOISE, Color.PLUM, Color.YELLOWGREEN, Color.SANDYBROWN, Color.CORNFLOWERBLUE, Color.HOTPINK
+    };
 
     private final HighlightOptions highlightOptions;
     private final ExecutorService fileReaderExecutor = Executors.newSingleThreadExecutor();
@@ -59,18 +84,33 @@ public class LogView extends VBox {
     private final BooleanProperty allowRefresh = new SimpleBooleanProperty( true );
     private final FileContentReader fileContentReader;
     private final File file;
-    private final FileChangeWatcher fileChangeWatcher;
+    private final List<File> sourceFiles;
+    private final List<FileChangeWatcher> fileChangeWatchers = new ArrayList<>();
+
+    // null unless the file is a stream
+    private final Cancellable streamChangeWatcher;
     private final Supplier<LogLine> logLineFactory;
     private final TaskRunner taskRunner;
     private final SelectionHandler selectionHandler;
     private final DateTimeFormatGuesser dateTimeFormatGuesser = DateTimeFormatGuesser.standard();
 
+    // null if the file cannot be searched
+    private final FileSearch fileSearch;
+
+    // null if the file cannot be exported
+    private final FileExport fileExport;
+
     private volatile Consumer<Boolean> onFileExists = ( ignore ) -> {
     };
 
     private volatile Runnable onFileUpdate = DO_NOTHING;
 
     private DateTimeFormatGuess dateTimeFormatGuess = null;
+
+    private volatile boolean recordMode = false;
+
+    // direction of the last move (positive means up), only accessed from the JavaFX Thread
+    private double lastMoveDirection = 0.0;
     private final InvalidationListener expressionsChangeListener;
 
     @MustCallOnJavaFXThread
@@ -84,6 +124,8 @@ public class LogView extends VBox {
         this.taskRunner = taskRunner;
         this.selectionHandler = new SelectionHandler( this );
         this.file = fileContentReader.getFile();
+        this.fileSearch = FileSearch.forReader( fileContentReader ).orElse( null );
+        this.fileExport = FileExport.forReader( fileContentReader ).orElse( null );
 
         final LogLineColors logLineColors = highlightOptions.logLineColorsFor( "" );
         final NumberBinding width = Bindings.max( widthProperty(), widthProperty );
@@ -95,7 +137,7 @@ public class LogView extends VBox {
             getChildren().add( logLineFactory.get() );
         }
 
-        this.expressionsChangeListener = ( Observable o ) -> immediateOnFileChange();
+        this.expressionsChangeListener = ( Observable o ) -> reloadFileWindow();
 
         highlightOptions.getObservableExpressions().addListener( expressionsChangeListener );
         highlightOptions.getStandardLogColors().addListener( expressionsChangeListener );
@@ -107,7 +149,32 @@ public class LogView extends VBox {
             }
         } );
 
-        this.fileChangeWatcher = new FileChangeWatcher( file, taskRunner, this::onFileChange );
+        this.sourceFiles = fileContentReader instanceof MergedFileReader ?
+                ( ( MergedFileReader ) fileContentReader ).getFiles() :
+                Collections.singletonList( file );
+
+        if ( fileContentReader instanceof StreamReader ) {
+            // the spill file of a stream is not watched, the number of bytes read from the stream is checked instead
+            this.streamChangeWatcher = watchStream( ( StreamReader ) fileContentReader );
+        } else {
+            this.streamChangeWatcher = null;
+            for ( File sourceFile : sourceFiles ) {
+                fileChangeWatchers.add( new FileChangeWatcher( sourceFile, taskRunner, this::onFileChange ) );
+            }
+        }
+    }
+
+    private Cancellable watchStream( StreamReader streamReader ) {
+        AtomicLong bytesRead = new AtomicLong( 0L );
+        AtomicLong droppedLines = new AtomicLong( 0L );
+        return taskRunner.scheduleRepeatingTask( STREAM_CHECK_PERIOD, () -> {
+            long currentBytesRead = streamReader.getBytesRead();
+            long currentDroppedLines = streamReader.getDroppedLines();
+            if ( bytesRead.getAndSet( currentBytesRead ) != currentBytesRead ||
+                    droppedLines.getAndSet( currentDroppedLines ) != currentDroppedLines ) {
+                onFileChange();
+            }
+        } );
     }
 
     BooleanProperty allowRefreshProperty() {
@@ -119,7 +186,7 @@ public class LogView extends VBox {
     }
 
     void loadFileContents() {
-        immediateOnFileChange();
+        reloadFileWindow();
     }
 
     void setOnFileExists( Consumer<Boolean> onFileExists ) {
@@ -143,6 +210,15 @@ public class LogView extends VBox {
         int lines = Double.valueOf( deltaY / DELTA_FACTOR ).intValue();
         log.trace( "Moving by deltaY={}, lines={}", deltaY, lines );
 
+        double direction = Math.signum( deltaY );
+        if ( direction != 0.0 ) {
+            if ( lastMoveDirection != 0.0 && direction != lastMoveDirection ) {
+                // a slow move in the other direction (e.g. with a filter that rejects most lines) is no longer wanted
+                fileContentReader.cancelCurrentRead();
+            }
+            lastMoveDirection = direction;
+        }
+
         fileReaderExecutor.execute( () -> {
             Optional<? extends List<String>> result;
             if ( deltaY > 0.0 ) {
@@ -152,6 +228,9 @@ public class LogView extends VBox {
                 result = fileContentReader.moveDown( -lines );
                 result.ifPresent( this::addBottomLines );
             }
+            if ( result.isPresent() ) {
+                updateLineNumbers();
+            }
             onFileExists.accept( result.isPresent() );
         } );
     }
@@ -170,7 +249,7 @@ public class LogView extends VBox {
     void goTo( ZonedDateTime dateTime, IntConsumer whenDoneAcceptLineNumber ) {
         fileReaderExecutor.execute( () -> {
             if ( dateTimeFormatGuess == null ) {
-                findFileDateTimeFormatterFromFileContents();
+                findFileDateTimeFormatterFromFileContents( true );
             }
             if ( dateTimeFormatGuess == null ) {
                 log.warn( "Could not guess date-time format from this log file, " +
@@ -189,18 +268,7 @@ public class LogView extends VBox {
                             System.currentTimeMillis() - startTime, dateTime, result );
                 }
 
-                final int lineNumber = result.isAfterRange() ?
-                        MAX_LINES :
-                        ( result.isBeforeRange() ?
-                                1 :
-                                result.fileLineNumber() );
-                final boolean outOfRange = result instanceof OutsideRangeQueryResult;
-
-                onFileChange( () -> Platform.runLater( () -> {
-                    LogLine line = lineAt( lineNumber - 1 );
-                    line.animate( outOfRange ? Color.RED : Color.LAWNGREEN );
-                    whenDoneAcceptLineNumber.accept( lineNumber );
-                } ) );
+                showMoveResult( result, whenDoneAcceptLineNumber );
             } else {
                 log.warn( "Failed to open date-time in log, could not recognize dates in the log (took {} ms)",
                         System.currentTimeMillis() - startTime );
@@ -211,17 +279,290 @@ public class LogView extends VBox {
         } );
     }
 
+    void goToLine( long lineNumber, IntConsumer whenDoneAcceptLineNumber ) {
+        fileReaderExecutor.execute( () -> {
+            FileQueryResult result = fileContentReader.moveToLine( lineNumber );
+            if ( result.isSuccess() ) {
+                log.debug( "Moved to line {}, result: {}", lineNumber, result );
+                showMoveResult( result, whenDoneAcceptLineNumber );
+            } else {
+                log.warn( "Failed to move to line {}", lineNumber );
+                Dialog.showMessage( "Unable to go to line " + lineNumber, Dialog.MessageLevel.WARNING );
+            }
+        } );
+    }
+
+    /**
+     * @return true if the file can be searched
+     */
+    boolean isSearchSupported() {
+        return fileSearch != null;
+    }
+
+    /**
+     * Search the file in the background for lines matching the given pattern, starting from the current
+     * file window, and cancelling the previous search, if any.
+     *
+     * @param pattern    to search for, or null to only cancel the previous search
+     * @param onProgress called from a background Thread with the progress of the search
+     */
+    void search( Pattern pattern, Consumer<FileSearch.Progress> onProgress ) {
+        if ( fileSearch == null ) {
+            return;
+        }
+
+        // cancel immediately, as the file reader Thread may be busy
+        fileSearch.cancel();
+
+        if ( pattern != null ) {
+            fileReaderExecutor.execute( () ->
+                    fileSearch.start( line -> pattern.matcher( line ).find(), onProgress ) );
+        }
+    }
+
+    /**
+     * Move the file window to the next or previous match of the current search.
+     *
+     * @param forward                  whether to move to the next match, or to the previous one
+     * @param whenDoneAcceptMatchIndex receives the index of the match among the matches found so far
+     * @param whenDoneAcceptLineNumber receives the number of the line of the match in the file window
+     */
+    void findNext( boolean forward, IntConsumer whenDoneAcceptMatchIndex, IntConsumer whenDoneAcceptLineNumber ) {
+        if ( fileSearch == null ) {
+            return;
+        }
+        fileReaderExecutor.execute( () -> {
+            Optional<FileSearch.Match> match = forward ? fileSearch.next() : fileSearch.previous();
+            match.ifPresent( m -> {
+                int matchIndex = fileSearch.indexOf( m );
+                moveToMatch( fileSearch, m, lineNumber -> {
+                    whenDoneAcceptMatchIndex.accept( matchIndex );
+                    whenDoneAcceptLineNumber.accept( lineNumber );
+                } );
+            } );
+        } );
+    }
+
+    /**
+     * Create a search of the file, independent of the search started with {@link #search(Pattern, Consumer)},
+     * guessing the date-time format of the file if that was not done yet, so that the search can find the date-times
+     * of its matches.
+     * <p>
+     * The callback is called from a background Thread, with an empty result if the file cannot be searched.
+     *
+     * @param callback receives the search
+     */
+    void createFileSearch( Consumer<Optional<FileSearch>> callback ) {
+        if ( fileSearch == null || fileReaderExecutor.isShutdown() ) {
+            callback.accept( Optional.empty() );
+            return;
+        }
+        fileReaderExecutor.execute( () -> {
+            if ( dateTimeFormatGuess == null ) {
+                findFileDateTimeFormatterFromFileContents( false );
+            }
+            final DateTimeFormatGuess guess = dateTimeFormatGuess;
+            callback.accept( FileSearch.forReader( fileContentReader, guess == null ? null : guess::convert ) );
+        } );
+    }
+
+    /**
+     * Move the file window to a match of a search created with {@link #createFileSearch(Consumer)}.
+     *
+     * @param search                   the search that found the match
+     * @param match                    to move to
+     * @param whenDoneAcceptLineNumber receives the number of the line of the match in the file window
+     */
+    void goToMatch( FileSearch search, FileSearch.Match match, IntConsumer whenDoneAcceptLineNumber ) {
+        fileReaderExecutor.execute( () -> moveToMatch( search, match, whenDoneAcceptLineNumber ) );
+    }
+
+    /**
+     * @return true if the lines of the file are being filtered
+     */
+    boolean isFiltered() {
+        return highlightOptions.getLineFilter().isPresent();
+    }
+
+    /**
+     * @return true if the lines of the file can be exported
+     */
+    boolean isExportSupported() {
+        return fileExport != null;
+    }
+
+    /**
+     * Export the lines starting within the given range of bytes to another file, in the background.
+     *
+     * @param start      start of the range (inclusive)
+     * @param end        end of the range (exclusive)
+     * @param filtered   whether to export only the lines accepted by the current filter
+     * @param target     file to export the lines to
+     * @param gzip       whether to compress the exported lines
+     * @param onProgress called from a background Thread as the export progresses
+     */
+    @MustCallOnJavaFXThread
+    void exportBytes( long start, long end, boolean filtered, File target, boolean gzip,
+                      Consumer<FileExport.Progress> onProgress ) {
+        if ( fileExport == null ) {
+            return;
+        }
+        Predicate<String> filter = filtered ? highlightOptions.getLineFilter().orElse( null ) : null;
+        fileExport.exportBytes( start, end, filter, target, gzip, onProgress );
+    }
+
+    /**
+     * Export the lines logged within the given range of date-times to another file, in the background,
+     * guessing the date-time format of the file if that was not done yet.
+     *
+     * @param from                     start date-time of the range (inclusive)
+     * @param until                    end date-time of the range (inclusive)
+     * @param filtered                 whether to export only the lines accepted by the current filter
+     * @param target                   file to export the lines to
+     * @param gzip                     whether to compress the exported lines
+     * @param onProgress               called from a background Thread as the export progresses
+     * @param onDateTimeFormatNotFound called from a background Thread if the date-time format of the file
+     *                                 cannot be guessed, in which case nothing is exported
+     */
+    @MustCallOnJavaFXThread
+    void exportTimeRange( ZonedDateTime from, ZonedDateTime until, boolean filtered, File target, boolean gzip,
+                          Consumer<FileExport.Progress> onProgress, Runnable onDateTimeFormatNotFound ) {
+        if ( fileExport == null ) {
+            return;
+        }
+        Predicate<String> filter = filtered ? highlightOptions.getLineFilter().orElse( null ) : null;
+        fileReaderExecutor.execute( () -> {
+            if ( dateTimeFormatGuess == null ) {
+                findFileDateTimeFormatterFromFileContents( true );
+            }
+            if ( dateTimeFormatGuess == null ) {
+                log.warn( "Could not guess date-time format from this log file, cannot export a time range" );
+                onDateTimeFormatNotFound.run();
+                return;
+            }
+            fileExport.exportTimeRange( from, until, dateTimeFormatGuess::convert, filter, target, gzip, onProgress );
+        } );
+    }
+
+    /**
+     * Cancel the export in progress, if any, deleting the file it was writing.
+     */
+    void cancelExport() {
+        if ( fileExport != null ) {
+            fileExport.cancel();
+        }
+    }
+
+    // must be called from fileReaderExecutor Thread
+    private void moveToMatch( FileSearch search, FileSearch.Match match, IntConsumer whenDoneAcceptLineNumber ) {
+        FileQueryResult result = search.moveTo( match );
+        if ( result.isSuccess() ) {
+            log.debug( "Moved to search match {}, result: {}", match, result );
+            showMoveResult( result, whenDoneAcceptLineNumber );
+        } else {
+            log.warn( "Failed to move to search match {}", match );
+        }
+    }
+
+    // must be called from fileReaderExecutor Thread
+    private void showMoveResult( FileQueryResult result, IntConsumer whenDoneAcceptLineNumber ) {
+        final int windowLineNumber = result.isAfterRange() ?
+                MAX_LINES :
+                ( result.isBeforeRange() ?
+                        1 :
+                        result.fileLineNumber() );
+        final boolean outOfRange = result instanceof OutsideRangeQueryResult;
+
+        onFileChange( () -> Platform.runLater( () -> {
+            LogLine line = lineAt( windowLineNumber - 1 );
+            line.animate( outOfRange ? Color.RED : Color.LAWNGREEN );
+            whenDoneAcceptLineNumber.accept( windowLineNumber );
+        } ) );
+    }
+
+    /**
+     * Set the charset used to read the file, reloading the file window with it.
+     *
+     * @param charset the charset of the file, or null to detect it automatically
+     */
+    void setCharset( Charset charset ) {
+        fileReaderExecutor.execute( () -> fileContentReader.setCharset( charset ) );
+        reloadFileWindow();
+    }
+
+    Optional<Charset> getCharset() {
+        return fileContentReader.getCharset();
+    }
+
+    /**
+     * Show multi-line records, such as log messages followed by their stack-traces, as single entries,
+     * reloading the file window.
+     * <p>
+     * A line starts a new record unless it has no date-time, or it matches the record continuation pattern.
+     *
+     * @param enable whether to group lines into records
+     */
+    void setRecordMode( boolean enable ) {
+        recordMode = enable;
+        fileReaderExecutor.execute( () -> {
+            RecordMode mode = null;
+            if ( enable ) {
+                if ( dateTimeFormatGuess == null ) {
+                    findFileDateTimeFormatterFromFileContents( false );
+                }
+                final DateTimeFormatGuess guess = dateTimeFormatGuess;
+                Pattern continuationPattern = Properties.getRecordContinuationPattern()
+                        .orElse( RecordMode.DEFAULT_CONTINUATION_PATTERN );
+                mode = new RecordMode( guess == null ? null : guess::convert, continuationPattern );
+            }
+            fileContentReader.setRecordMode( mode );
+        } );
+        reloadFileWindow();
+    }
+
+    boolean isRecordMode() {
+        return recordMode;
+    }
+
     void onFileUpdate( Runnable onFileUpdate ) {
         this.onFileUpdate = onFileUpdate;
     }
 
+    /**
+     * Create a scanner to count the lines of the file by time, guessing the date-time format of the file
+     * if that was not done yet.
+     * <p>
+     * The callback is called from a background Thread, with an empty result if the date-time format of the
+     * file cannot be guessed (or the file is not supported).
+     *
+     * @param classifier    function returning the category of each line
+     * @param categoryCount number of categories of lines
+     * @param callback      receives the scanner
+     */
+    void createTimeHistogramScanner( ToIntFunction<LineHandle> classifier,
+                                     int categoryCount,
+                                     Consumer<Optional<TimeHistogramScanner>> callback ) {
+        if ( fileReaderExecutor.isShutdown() ) {
+            return;
+        }
+        fileReaderExecutor.execute( () -> {
+            if ( dateTimeFormatGuess == null ) {
+                findFileDateTimeFormatterFromFileContents( false );
+            }
+            final DateTimeFormatGuess guess = dateTimeFormatGuess;
+            callback.accept( guess == null ?
+                    Optional.empty() :
+                    TimeHistogramScanner.forReader( fileContentReader, guess::convert, classifier, categoryCount ) );
+        } );
+    }
+
     // must be called from fileReaderExecutor Thread
-    private void findFileDateTimeFormatterFromFileContents() {
+    private void findFileDateTimeFormatterFromFileContents( boolean showErrors ) {
         Optional<? extends List<String>> lines = fileContentReader.refresh();
         if ( lines.isPresent() ) {
             dateTimeFormatGuess = dateTimeFormatGuesser
                     .guessDateTimeFormats( lines.get() ).orElse( null );
-        } else {
+        } else if ( showErrors ) {
             log.warn( "Unable to extract any date-time formatters from file as the file could not be read: {}", file );
             Dialog.showMessage( "Could not be read file\n" + file.getName(), Dialog.MessageLevel.INFO );
         }
@@ -284,22 +625,83 @@ public class LogView extends VBox {
     }
 
     private void immediateOnFileChange( Runnable andThen ) {
-        Predicate<String> filter = highlightOptions.getLineFilter().orElse( null );
+        immediateOnFileChange( false, andThen );
+    }
+
+    /**
+     * Read the whole file window again with the current line filter.
+     * <p>
+     * This must be done when the highlight expressions change, as the lines in the file window may need to be
+     * filtered and colored differently.
+     */
+    private void reloadFileWindow() {
+        immediateOnFileChange( true, DO_NOTHING );
+    }
+
+    private void immediateOnFileChange( boolean reloadWindow, Runnable andThen ) {
+        Predicate<String> filter = reloadWindow ? highlightOptions.getLineFilter().orElse( null ) : null;
         fileReaderExecutor.execute( () -> {
-            fileContentReader.setLineFilter( filter );
-            if ( tailingFileProperty().get() ) {
-                fileContentReader.tail();
+            boolean fileExists;
+            if ( reloadWindow ) {
+                fileContentReader.setLineFilter( filter );
+            }
+            if ( tailingFileProperty().get() && !reloadWindow ) {
+                // only the lines appended to the file need to be read and displayed
+                Optional<TailUpdate> update = fileContentReader.refreshTail();
+                update.ifPresent( this::updateWith );
+                fileExists = update.isPresent();
+            } else {
+                if ( tailingFileProperty().get() ) {
+                    fileContentReader.tail();
+                }
+                // lines are only decoded as they are displayed
+                Optional<? extends List<LineHandle>> lines = fileContentReader.refreshLines();
+                lines.ifPresent( list -> updateWith( list.stream().map( LineHandle::getText ).iterator() ) );
+                fileExists = lines.isPresent();
+            }
+            if ( fileExists ) {
+                updateLineNumbers();
             }
-            Optional<? extends List<String>> lines = fileContentReader.refresh();
-            lines.ifPresent( list -> updateWith( list.iterator() ) );
             try {
-                onFileExists.accept( lines.isPresent() );
+                onFileExists.accept( fileExists );
             } finally {
                 andThen.run();
             }
         } );
     }
 
+    private void updateWith( TailUpdate update ) {
+        log.trace( "Updating tail of file window: {}", update );
+
+        if ( update.isFullWindow() ) {
+            updateWith( update.getLines().iterator() );
+            return;
+        }
+
+        List<String> lines = update.getLines();
+        int droppedLines = update.getDroppedLines();
+
+        if ( droppedLines == 0 && lines.isEmpty() ) {
+            return;
+        }
+
+        final int firstLineIndex = update.getLineCount() - lines.size();
+
+        Platform.runLater( () -> {
+            ObservableList<Node> children = getChildren();
+            int count = Math.min( droppedLines, children.size() );
+            if ( count > 0 ) {
+                // re-use the dropped lines at the bottom, they are always overwritten by the new lines
+                List<Node> dropped = new ArrayList<>( children.subList( 0, count ) );
+                children.remove( 0, count );
+                children.addAll( dropped );
+            }
+            for ( int i = 0; i < lines.size(); i++ ) {
+                updateLine( lineAt( firstLineIndex + i ), lines.get( i ) );
+            }
+        } );
+    }
+
     private void updateWith( Iterator<String> lines ) {
         int index = 0;
 
@@ -323,6 +725,76 @@ public class LogView extends VBox {
         }
     }
 
+    // must be called from fileReaderExecutor Thread
+    private void updateLineNumbers() {
+        long[] lineNumbers = fileContentReader.getLineNumbers();
+        if ( fileContentReader instanceof MergedFileReader ) {
+            updateLineNumbers( lineNumbers, ( ( MergedFileReader ) fileContentReader ).getLineSources() );
+        } else {
+            updateLineNumbers( lineNumbers );
+        }
+    }
+
+    private void updateLineNumbers( long[] lineNumbers ) {
+        long maxLineNumber = 0L;
+        for ( long lineNumber : lineNumbers ) {
+            maxLineNumber = Math.max( maxLineNumber, lineNumber );
+        }
+
+        // pad line numbers so that they are aligned
+        final String format = "%" + Long.toString( maxLineNumber ).length() + "d";
+
+        Platform.runLater( () -> {
+            ObservableList<Node> children = getChildren();
+            int count = Math.min( children.size(), lineNumbers.length );
+            for ( int i = 0; i < count; i++ ) {
+                long lineNumber = lineNumbers[ i ];
+                lineAt( i ).setLineNumberText( lineNumber > 0L ? String.format( format, lineNumber ) : "" );
+            }
+        } );
+    }
+
+    /**
+     * Update the line numbers of a merged view, tagging each line with the name and color of its file.
+     */
+    private void updateLineNumbers( long[] lineNumbers, int[] lineSources ) {
+        long maxLineNumber = 0L;
+        for ( long lineNumber : lineNumbers ) {
+            maxLineNumber = Math.max( maxLineNumber, lineNumber );
+        }
+        int maxNameLength = 0;
+        for ( File sourceFile : sourceFiles ) {
+            maxNameLength = Math.max( maxNameLength, sourceFile.getName().length() );
+        }
+
+        // pad file names and line numbers so that they are aligned
+        final String format = "%-" + maxNameLength + "s %" + Long.toString( maxLineNumber ).length() + "s";
+
+        Platform.runLater( () -> {
+            ObservableList<Node> children = getChildren();
+            int count = Math.min( children.size(), Math.min( lineNumbers.length, lineSources.length ) );
+            for ( int i = 0; i < count; i++ ) {
+                int source = lineSources[ i ];
+                if ( source < 0 ) {
+                    lineAt( i ).setLineNumberText( "" );
+                } else {
+                    long lineNumber = lineNumbers[ i ];
+                    String text = String.format( format, sourceFiles.get( source ).getName(),
+                            lineNumber > 0L ? Long.toString( lineNumber ) : "" );
+                    lineAt( i ).setLineNumberText( text, colorOfSource( source ) );
+                }
+            }
+        } );
+    }
+
+    /**
+     * @param source index of a file in a merged view
+     * @return the color of the lines of the file
+     */
+    static Paint colorOfSource( int source ) {
+        return SOURCE_COLORS[ source % SOURCE_COLORS.length ];
+    }
+
     @MustCallOnJavaFXThread
     private void updateLine( LogLine line, String text ) {
         LogLineColors logLineColors = highlightOptions.logLineColorsFor( text );
@@ -338,8 +810,36 @@ public class LogView extends VBox {
         return file;
     }
 
+    /**
+     * @return the files shown by this view, which are more than one in a merged view
+     */
+    List<File> getSourceFiles() {
+        return sourceFiles;
+    }
+
+    /**
+     * @return the number of lines of a stream that were dropped because they could not be written to disk in time,
+     * or 0 if this view is not showing a stream
+     */
+    long getDroppedLines() {
+        return fileContentReader instanceof StreamReader ?
+                ( ( StreamReader ) fileContentReader ).getDroppedLines() : 0L;
+    }
+
+    HighlightOptions getHighlightOptions() {
+        return highlightOptions;
+    }
+
     void closeFileReader() {
-        fileChangeWatcher.close();
+        if ( fileSearch != null ) {
+            fileSearch.cancel();
+        }
+        cancelExport();
+        fileChangeWatchers.forEach( FileChangeWatcher::close );
+        if ( streamChangeWatcher != null ) {
+            streamChangeWatcher.cancel();
+        }
+        fileReaderExecutor.execute( fileContentReader::close );
         fileReaderExecutor.shutdown();
         highlightOptions.getObservableExpressions().removeListener( expressionsChangeListener );
         highlightOptions.getStandardLogColors().removeListener( expressionsChangeListener );
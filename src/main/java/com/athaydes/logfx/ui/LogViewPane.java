@@ -1,6 +1,7 @@
 package com.athaydes.logfx.ui;
 
 import com.athaydes.logfx.concurrency.TaskRunner;
+import com.athaydes.logfx.file.FileSearch;
 import javafx.application.Platform;
 import javafx.beans.InvalidationListener;
 import javafx.beans.property.BooleanProperty;
@@ -8,15 +9,21 @@ import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.collections.ListChangeListener;
+import javafx.geometry.Insets;
 import javafx.geometry.Orientation;
+import javafx.geometry.Pos;
 import javafx.scene.Node;
 import javafx.scene.control.Button;
+import javafx.scene.control.CheckMenuItem;
 import javafx.scene.control.ContextMenu;
+import javafx.scene.control.Menu;
 import javafx.scene.control.MenuItem;
+import javafx.scene.control.RadioMenuItem;
 import javafx.scene.control.ScrollPane;
 import javafx.scene.control.SeparatorMenuItem;
 import javafx.scene.control.SplitPane;
 import javafx.scene.control.ToggleButton;
+import javafx.scene.control.ToggleGroup;
 import javafx.scene.control.Tooltip;
 import javafx.scene.input.Clipboard;
 import javafx.scene.input.KeyCode;
@@ -34,11 +41,14 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.nio.charset.Charset;
 import java.time.Duration;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import java.util.stream.DoubleStream;
 
 import static com.athaydes.logfx.ui.LogView.MAX_LINES;
@@ -51,6 +61,11 @@ public final class LogViewPane {
 
     private static final Logger log = LoggerFactory.getLogger( LogViewPane.class );
 
+    // charsets that can be selected explicitly, in addition to auto-detecting the charset of a file
+    private static final String[] ENCODING_OPTIONS = {
+            "UTF-8", "UTF-16LE", "UTF-16BE", "ISO-8859-1", "windows-1252"
+    };
+
     private final SplitPane pane = new SplitPane();
 
     // a simple observable that changes state every time a change occurs in a pane divider
@@ -131,6 +146,32 @@ public final class LogViewPane {
             }
         } );
 
+        MenuItem goToLineMenuItem = new MenuItem( "To line" );
+        goToLineMenuItem.setAccelerator( new KeyCodeCombination( KeyCode.L, KeyCombination.SHORTCUT_DOWN ) );
+        goToLineMenuItem.setOnAction( event -> getFocusedView().ifPresent( LogViewWrapper::toLine ) );
+
+        MenuItem findMenuItem = new MenuItem( "Find" );
+        findMenuItem.setAccelerator( new KeyCodeCombination( KeyCode.K, KeyCombination.SHORTCUT_DOWN ) );
+        findMenuItem.setOnAction( event -> getFocusedView().ifPresent( LogViewWrapper::find ) );
+
+        MenuItem findNextMenuItem = new MenuItem( "Find next" );
+        findNextMenuItem.setAccelerator( new KeyCodeCombination( KeyCode.F3 ) );
+        findNextMenuItem.setOnAction( event -> getFocusedView().ifPresent( wrapper -> wrapper.findNext( true ) ) );
+
+        MenuItem findPreviousMenuItem = new MenuItem( "Find previous" );
+        findPreviousMenuItem.setAccelerator( new KeyCodeCombination( KeyCode.F3, KeyCombination.SHIFT_DOWN ) );
+        findPreviousMenuItem.setOnAction( event -> getFocusedView().ifPresent( wrapper -> wrapper.findNext( false ) ) );
+
+        MenuItem findInAllFilesMenuItem = new MenuItem( "Find in all files" );
+        findInAllFilesMenuItem.setAccelerator( new KeyCodeCombination( KeyCode.K,
+                KeyCombination.SHORTCUT_DOWN, KeyCombination.SHIFT_DOWN ) );
+        findInAllFilesMenuItem.setOnAction( event -> new GlobalSearchView( getAllLogViews() ).show() );
+
+        MenuItem exportMenuItem = new MenuItem( "Export..." );
+        exportMenuItem.setAccelerator( new KeyCodeCombination( KeyCode.E,
+                KeyCombination.SHORTCUT_DOWN, KeyCombination.SHIFT_DOWN ) );
+        exportMenuItem.setOnAction( event -> getFocusedView().ifPresent( LogViewWrapper::export ) );
+
         MenuItem toTopMenuItem = new MenuItem( "To top of file" );
         toTopMenuItem.setAccelerator( new KeyCodeCombination( KeyCode.T,
                 KeyCombination.SHORTCUT_DOWN, KeyCombination.SHIFT_DOWN ) );
@@ -149,14 +190,57 @@ public final class LogViewPane {
         tailMenuItem.setOnAction( event -> getFocusedView()
                 .ifPresent( LogViewWrapper::switchTailFile ) );
 
-        pane.setContextMenu( new ContextMenu(
+        Menu encodingMenu = new Menu( "Encoding" );
+        ToggleGroup encodingGroup = new ToggleGroup();
+        RadioMenuItem autoDetectEncodingMenuItem = new RadioMenuItem( "Auto-detect" );
+        autoDetectEncodingMenuItem.setToggleGroup( encodingGroup );
+        autoDetectEncodingMenuItem.setOnAction( event -> getFocusedView()
+                .ifPresent( wrapper -> wrapper.setCharset( null ) ) );
+        encodingMenu.getItems().add( autoDetectEncodingMenuItem );
+
+        for ( String charsetName : ENCODING_OPTIONS ) {
+            if ( !Charset.isSupported( charsetName ) ) {
+                continue;
+            }
+            Charset charset = Charset.forName( charsetName );
+            RadioMenuItem charsetMenuItem = new RadioMenuItem( charset.name() );
+            charsetMenuItem.setUserData( charset );
+            charsetMenuItem.setToggleGroup( encodingGroup );
+            charsetMenuItem.setOnAction( event -> getFocusedView()
+                    .ifPresent( wrapper -> wrapper.setCharset( charset ) ) );
+            encodingMenu.getItems().add( charsetMenuItem );
+        }
+
+        CheckMenuItem recordModeMenuItem = new CheckMenuItem( "Group multi-line records" );
+        recordModeMenuItem.setOnAction( event -> getFocusedView()
+                .ifPresent( wrapper -> wrapper.logView.setRecordMode( recordModeMenuItem.isSelected() ) ) );
+
+        ContextMenu contextMenu = new ContextMenu(
                 copyMenuItem,
                 new SeparatorMenuItem(),
-                toTopMenuItem, tailMenuItem, pageUpMenuItem, pageDownMenuItem, goToDateMenuItem,
+                toTopMenuItem, tailMenuItem, pageUpMenuItem, pageDownMenuItem, goToDateMenuItem, goToLineMenuItem,
+                new SeparatorMenuItem(),
+                findMenuItem, findNextMenuItem, findPreviousMenuItem, findInAllFilesMenuItem,
                 new SeparatorMenuItem(),
-                pauseMenuItem,
+                exportMenuItem,
                 new SeparatorMenuItem(),
-                minimizeMenuItem, maximizeMenuItem, closeMenuItem ) );
+                pauseMenuItem, encodingMenu, recordModeMenuItem,
+                new SeparatorMenuItem(),
+                minimizeMenuItem, maximizeMenuItem, closeMenuItem );
+
+        // show the charset and record mode of the focused view as selected
+        contextMenu.setOnShowing( event -> {
+            recordModeMenuItem.setDisable( !getFocusedView().isPresent() );
+            recordModeMenuItem.setSelected( getFocusedView().map( wrapper -> wrapper.logView.isRecordMode() )
+                    .orElse( false ) );
+            Optional<Charset> charset = getFocusedView().flatMap( wrapper -> wrapper.logView.getCharset() );
+            encodingMenu.setDisable( !getFocusedView().isPresent() );
+            encodingGroup.selectToggle( encodingGroup.getToggles().stream()
+                    .filter( toggle -> Objects.equals( toggle.getUserData(), charset.orElse( null ) ) )
+                    .findFirst().orElse( autoDetectEncodingMenuItem ) );
+        } );
+
+        pane.setContextMenu( contextMenu );
 
         // aggregate any change in the position of number of dividers into a single listener
         InvalidationListener dividersListener = ( event ) ->
@@ -386,9 +470,13 @@ public final class LogViewPane {
         private final LogView logView;
         private final Consumer<LogViewWrapper> onCloseFile;
         private final LogViewHeader header;
+        private final TimeHistogramStrip timeHistogram;
         private final LogViewScrollPane scrollPane;
         private final Supplier<List<LogViewWrapper>> logViewsGetter;
 
+        // created when the file is first searched
+        private SearchBar searchBar;
+
         @MustCallOnJavaFXThread
         LogViewWrapper( LogView logView,
                         Supplier<List<LogViewWrapper>> logViewsGetter,
@@ -399,7 +487,12 @@ public final class LogViewPane {
             this.onCloseFile = onCloseFile;
             this.logViewsGetter = logViewsGetter;
 
-            this.header = new LogViewHeader( logView, this::closeView, this::toDateTime );
+            this.timeHistogram = new TimeHistogramStrip( logView, dateTime -> {
+                stopTailingFile();
+                logView.goTo( dateTime, this::scrollTo );
+            } );
+
+            this.header = new LogViewHeader( logView, timeHistogram, this::closeView, this::toDateTime );
 
             this.scrollPane = new LogViewScrollPane( this );
 
@@ -423,6 +516,7 @@ public final class LogViewPane {
             } );
 
             logView.loadFileContents();
+            timeHistogram.restart();
         }
 
         LogView getLogView() {
@@ -444,6 +538,61 @@ public final class LogViewPane {
             goToView.show();
         }
 
+        @MustCallOnJavaFXThread
+        void toLine() {
+            stopTailingFile();
+            GoToLineView goToView = new GoToLineView( logView, this::scrollTo );
+            goToView.show();
+        }
+
+        @MustCallOnJavaFXThread
+        void find() {
+            if ( !logView.isSearchSupported() ) {
+                Dialog.showMessage( "Searching is not supported for this view", Dialog.MessageLevel.INFO );
+                return;
+            }
+            stopTailingFile();
+            if ( searchBar == null ) {
+                searchBar = new SearchBar( logView, this::scrollTo, this::closeSearch );
+            }
+            header.setBottom( searchBar );
+            searchBar.focus();
+        }
+
+        @MustCallOnJavaFXThread
+        void findNext( boolean forward ) {
+            if ( searchBar == null || header.getBottom() != searchBar ) {
+                find();
+            } else {
+                stopTailingFile();
+                searchBar.findNext( forward );
+            }
+        }
+
+        @MustCallOnJavaFXThread
+        void export() {
+            if ( !logView.isExportSupported() ) {
+                Dialog.showMessage( "Exporting is not supported for this view", Dialog.MessageLevel.INFO );
+                return;
+            }
+            new ExportView( logView ).show();
+        }
+
+        @MustCallOnJavaFXThread
+        void goToMatch( FileSearch search, FileSearch.Match match ) {
+            stopTailingFile();
+            logView.goToMatch( search, match, this::scrollTo );
+        }
+
+        @MustCallOnJavaFXThread
+        private void closeSearch() {
+            if ( searchBar != null ) {
+                searchBar.stop();
+                header.setBottom( null );
+                scrollPane.requestFocus();
+            }
+        }
+
         @MustCallOnJavaFXThread
         void toTop() {
             stopTailingFile();
@@ -464,6 +613,19 @@ public final class LogViewPane {
             }
         }
 
+        /**
+         * Set the charset of the file, reloading the file window and counting the lines of the time histogram
+         * again with it.
+         *
+         * @param charset the charset of the file, or null to detect it automatically
+         */
+        @MustCallOnJavaFXThread
+        void setCharset( Charset charset ) {
+            logView.setCharset( charset );
+            // the new scanner is created after the charset is set, as both happen on the file reader's Thread
+            timeHistogram.restart();
+        }
+
         @MustCallOnJavaFXThread
         private void startTailingFile() {
             if ( !isTailingFile() ) {
@@ -488,6 +650,7 @@ public final class LogViewPane {
         @MustCallOnJavaFXThread
         void closeView() {
             try {
+                timeHistogram.close();
                 logView.closeFileReader();
             } finally {
                 onCloseFile.accept( this );
@@ -497,6 +660,7 @@ public final class LogViewPane {
         @MustCallOnJavaFXThread
         void stop() {
             // do not call onClose as this is not closing the view, just stopping the app
+            timeHistogram.close();
             logView.closeFileReader();
         }
 
@@ -531,20 +695,27 @@ public final class LogViewPane {
         private final BooleanProperty tailFile;
         private final BooleanProperty pauseRefresh;
 
-        LogViewHeader( LogView logView, Runnable closeLogView, Runnable goToDateTime ) {
+        LogViewHeader( LogView logView, TimeHistogramStrip timeHistogram,
+                       Runnable closeLogView, Runnable goToDateTime ) {
             setMinWidth( 10.0 );
 
             File file = logView.getFile();
+            List<File> sourceFiles = logView.getSourceFiles();
 
             HBox leftAlignedBox = new HBox( 2.0 );
             HBox rightAlignedBox = new HBox( 2.0 );
 
             Button fileNameLabel = new Button();
             fileNameLabel.setMinWidth( 5.0 );
-            fileNameLabel.setTooltip( new Tooltip( file.getAbsolutePath() ) );
+            fileNameLabel.setTooltip( new Tooltip( sourceFiles.stream()
+                    .map( File::getAbsolutePath )
+                    .collect( Collectors.joining( "\n" ) ) ) );
 
             Runnable updateFileLabel = () -> {
-                if ( file.exists() ) {
+                if ( sourceFiles.size() > 1 ) {
+                    Platform.runLater( () -> fileNameLabel.setText(
+                            "Merged timeline (" + sourceFiles.size() + " files)" ) );
+                } else if ( file.exists() ) {
                     final double fileLength = ( double ) file.length();
                     final String fileSizeText;
                     if ( fileLength < 10_000 ) {
@@ -557,11 +728,18 @@ public final class LogViewPane {
                     Platform.runLater( () ->
                             fileNameLabel.setText( file.getName() + " " + fileSizeText ) );
                 } else {
-                    Platform.runLater( () -> fileNameLabel.setText( file.getName() ) );
+                    // streams are not kept in an actual file, but may have lost lines
+                    long droppedLines = logView.getDroppedLines();
+                    final String droppedLinesText = droppedLines > 0L ?
+                            String.format( " (%,d lines dropped)", droppedLines ) : "";
+                    Platform.runLater( () -> fileNameLabel.setText( file.getName() + droppedLinesText ) );
                 }
             };
 
-            logView.onFileUpdate( updateFileLabel );
+            logView.onFileUpdate( () -> {
+                updateFileLabel.run();
+                timeHistogram.update();
+            } );
             updateFileLabel.run();
 
             leftAlignedBox.getChildren().add( fileNameLabel );
@@ -596,7 +774,11 @@ public final class LogViewPane {
             rightAlignedBox.getChildren().addAll( goToDateButton, tailFileButton, pauseRefreshButton, closeButton );
 
             setLeft( leftAlignedBox );
+            setCenter( timeHistogram );
             setRight( rightAlignedBox );
+
+            BorderPane.setAlignment( timeHistogram, Pos.CENTER );
+            BorderPane.setMargin( timeHistogram, new Insets( 0, 6, 0, 6 ) );
         }
 
         BooleanProperty tailFileProperty() {
@@ -0,0 +1,167 @@
+package com.athaydes.logfx.ui;
+
+import com.athaydes.logfx.file.FileSearch;
+import javafx.application.Platform;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.TextField;
+import javafx.scene.control.Tooltip;
+import javafx.scene.input.KeyCode;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+
+import java.util.function.IntConsumer;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A bar to search a log file for lines matching a regular expression, and to move to the lines found.
+ * <p>
+ * The file is searched in the background as the expression is typed, and the number of matches is updated
+ * while the search runs.
+ */
+class SearchBar extends HBox {
+
+    private final LogView logView;
+    private final IntConsumer scrollTo;
+    private final TextField searchField = new TextField();
+    private final Label statusLabel = new Label();
+
+    // only accessed from the JavaFX Thread
+    private long searchId = 0L;
+    private boolean searching = false;
+    private FileSearch.Progress progress;
+
+    @MustCallOnJavaFXThread
+    SearchBar( LogView logView, IntConsumer scrollTo, Runnable close ) {
+        super( 4.0 );
+        this.logView = logView;
+        this.scrollTo = scrollTo;
+
+        setAlignment( Pos.CENTER_LEFT );
+        setPadding( new Insets( 2.0, 0, 0, 0 ) );
+
+        searchField.setPromptText( "Find (regular expression)" );
+        searchField.setTooltip( new Tooltip( "Enter: find next\nShift+Enter: find previous\nEscape: close" ) );
+        searchField.setMinWidth( 60.0 );
+        searchField.setPrefWidth( 240.0 );
+        HBox.setHgrow( searchField, Priority.SOMETIMES );
+        searchField.textProperty().addListener( ( observable, oldValue, newValue ) -> search( newValue ) );
+        searchField.setOnKeyPressed( event -> {
+            if ( event.getCode() == KeyCode.ENTER ) {
+                findNext( !event.isShiftDown() );
+                event.consume();
+            } else if ( event.getCode() == KeyCode.ESCAPE ) {
+                close.run();
+                event.consume();
+            }
+        } );
+
+        statusLabel.setMinWidth( 10.0 );
+
+        Button previousButton = AwesomeIcons.createIconButton( AwesomeIcons.ARROW_UP );
+        previousButton.setTooltip( new Tooltip( "Find previous" ) );
+        previousButton.setOnAction( event -> findNext( false ) );
+
+        Button nextButton = AwesomeIcons.createIconButton( AwesomeIcons.ARROW_DOWN );
+        nextButton.setTooltip( new Tooltip( "Find next" ) );
+        nextButton.setOnAction( event -> findNext( true ) );
+
+        Button closeButton = AwesomeIcons.createIconButton( AwesomeIcons.CLOSE );
+        closeButton.setTooltip( new Tooltip( "Close search" ) );
+        closeButton.setOnAction( event -> close.run() );
+
+        getChildren().addAll( AwesomeIcons.createIconLabel( AwesomeIcons.SEARCH ), searchField,
+                previousButton, nextButton, statusLabel, closeButton );
+    }
+
+    /**
+     * Focus on the search field, restarting the search if it was stopped.
+     */
+    @MustCallOnJavaFXThread
+    void focus() {
+        if ( !searching ) {
+            search( searchField.getText() );
+        }
+        searchField.requestFocus();
+        searchField.selectAll();
+    }
+
+    /**
+     * Move the log view to the next or previous match, restarting the search if it was stopped.
+     *
+     * @param forward whether to move to the next match, or to the previous one
+     */
+    @MustCallOnJavaFXThread
+    void findNext( boolean forward ) {
+        if ( !searching ) {
+            search( searchField.getText() );
+        }
+        final long id = searchId;
+        logView.findNext( forward, matchIndex -> {
+            if ( id == searchId && progress != null && matchIndex >= 0 ) {
+                statusLabel.setText( String.format( "%,d of %,d%s", matchIndex + 1, progress.getMatchCount(),
+                        progress.isDone() && !progress.isLimitReached() ? "" : "+" ) );
+            }
+        }, scrollTo );
+    }
+
+    /**
+     * Stop searching, discarding the results of the search.
+     */
+    @MustCallOnJavaFXThread
+    void stop() {
+        searchId++;
+        searching = false;
+        progress = null;
+        statusLabel.setText( "" );
+        logView.search( null, ignore -> {
+        } );
+    }
+
+    @MustCallOnJavaFXThread
+    private void search( String text ) {
+        stop();
+
+        if ( text.isEmpty() ) {
+            searchField.getStyleClass().remove( "error" );
+            return;
+        }
+
+        Pattern pattern;
+        try {
+            pattern = Pattern.compile( text );
+        } catch ( PatternSyntaxException e ) {
+            if ( !searchField.getStyleClass().contains( "error" ) ) {
+                searchField.getStyleClass().add( "error" );
+            }
+            return;
+        }
+        searchField.getStyleClass().remove( "error" );
+
+        final long id = searchId;
+        searching = true;
+        statusLabel.setText( "Searching..." );
+
+        logView.search( pattern, newProgress -> Platform.runLater( () -> {
+            // progress of a previous search may arrive after a new search started
+            if ( id == searchId ) {
+                progress = newProgress;
+                statusLabel.setText( statusOf( newProgress ) );
+            }
+        } ) );
+    }
+
+    private static String statusOf( FileSearch.Progress progress ) {
+        int count = progress.getMatchCount();
+        String matches = String.format( "%,d%s match%s", count, progress.isLimitReached() ? "+" : "",
+                count == 1 ? "" : "es" );
+        if ( progress.isDone() || progress.getTotalBytes() == 0L ) {
+            return matches;
+        }
+        return String.format( "%s (%.0f%%)", matches,
+                100.0 * progress.getScannedBytes() / progress.getTotalBytes() );
+    }
+}
@@ -0,0 +1,308 @@
+package com.athaydes.logfx.ui;
+
+import com.athaydes.logfx.data.LogLineColors;
+import com.athaydes.logfx.file.LineHandle;
+import com.athaydes.logfx.file.TimeHistogram;
+import com.athaydes.logfx.file.TimeHistogramScanner;
+import com.athaydes.logfx.text.HighlightExpression;
+import javafx.application.Platform;
+import javafx.beans.InvalidationListener;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.Tooltip;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.Paint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * A compact strip showing how many lines of a file were logged over time, split by which
+ * highlight expression matched each line.
+ * <p>
+ * Clicking on the strip moves the log view to the time that was clicked.
+ */
+class TimeHistogramStrip extends Pane {
+
+    private static final Logger log = LoggerFactory.getLogger( TimeHistogramStrip.class );
+
+    private static final double HEIGHT = 12.0;
+
+    private static final DateTimeFormatter TOOLTIP_DATE_FORMAT = DateTimeFormatter.ofPattern( "yyyy-MM-dd HH:mm:ss" );
+
+    // a single Thread scans all files, so the CPU budget of the scans applies to all of them together
+    private static final ExecutorService histogramExecutor = Executors.newSingleThreadExecutor( ( runnable ) -> {
+        Thread thread = new Thread( runnable, "logfx-time-histogram" );
+        thread.setDaemon( true );
+        return thread;
+    } );
+
+    private final LogView logView;
+    private final Consumer<ZonedDateTime> onSelectDateTime;
+    private final Canvas canvas = new Canvas();
+    private final Tooltip tooltip = new Tooltip();
+    private final InvalidationListener restartListener = ( ignore ) -> restart();
+
+    // incremented whenever the current scanner must be discarded
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicBoolean scanScheduled = new AtomicBoolean( false );
+    private final AtomicBoolean requestingScanner = new AtomicBoolean( false );
+
+    private volatile TimeHistogramScanner scanner;
+    private volatile boolean closed = false;
+
+    // only accessed from the JavaFX Thread
+    private List<HighlightExpression> expressions = new ArrayList<>();
+    private LogLineColors standardColors;
+    private TimeHistogram histogram = TimeHistogram.EMPTY;
+
+    @MustCallOnJavaFXThread
+    TimeHistogramStrip( LogView logView, Consumer<ZonedDateTime> onSelectDateTime ) {
+        this.logView = logView;
+        this.onSelectDateTime = onSelectDateTime;
+
+        getStyleClass().add( "time-histogram" );
+        setMinSize( 10.0, HEIGHT );
+        setPrefHeight( HEIGHT );
+        setMaxHeight( HEIGHT );
+
+        canvas.widthProperty().bind( widthProperty() );
+        canvas.heightProperty().bind( heightProperty() );
+        canvas.widthProperty().addListener( ( ignore ) -> draw() );
+        canvas.heightProperty().addListener( ( ignore ) -> draw() );
+        getChildren().add( canvas );
+
+        Tooltip.install( this, tooltip );
+        addEventHandler( MouseEvent.MOUSE_MOVED, event -> updateTooltip( event.getX() ) );
+        addEventHandler( MouseEvent.MOUSE_CLICKED, event -> {
+            int bucket = bucketAt( event.getX() );
+            if ( bucket >= 0 ) {
+                onSelectDateTime.accept( histogram.getBucketStartDateTime( bucket ) );
+            }
+        } );
+
+        HighlightOptions highlightOptions = logView.getHighlightOptions();
+        highlightOptions.getObservableExpressions().addListener( restartListener );
+        highlightOptions.getStandardLogColors().addListener( restartListener );
+
+        setVisible( false );
+    }
+
+    /**
+     * Discard the current counts and count all lines of the file again with the current highlight expressions.
+     */
+    @MustCallOnJavaFXThread
+    void restart() {
+        if ( closed ) {
+            return;
+        }
+        HighlightOptions highlightOptions = logView.getHighlightOptions();
+        expressions = new ArrayList<>( highlightOptions.getObservableExpressions() );
+        standardColors = highlightOptions.getStandardLogColors().get();
+        histogram = TimeHistogram.EMPTY;
+        scanner = null;
+        generation.incrementAndGet();
+        requestingScanner.set( false );
+        draw();
+        requestScanner();
+    }
+
+    /**
+     * Count the lines appended to the file since the last update.
+     * <p>
+     * May be called from any Thread.
+     */
+    void update() {
+        if ( closed ) {
+            return;
+        }
+        if ( scanner == null ) {
+            Platform.runLater( this::requestScanner );
+        } else {
+            scheduleScan();
+        }
+    }
+
+    @MustCallOnJavaFXThread
+    void close() {
+        closed = true;
+        generation.incrementAndGet();
+        scanner = null;
+        HighlightOptions highlightOptions = logView.getHighlightOptions();
+        highlightOptions.getObservableExpressions().removeListener( restartListener );
+        highlightOptions.getStandardLogColors().removeListener( restartListener );
+    }
+
+    @MustCallOnJavaFXThread
+    private void requestScanner() {
+        if ( closed || !requestingScanner.compareAndSet( false, true ) ) {
+            return;
+        }
+        final long currentGeneration = generation.get();
+
+        // the expressions must not change while a scan is running, so the classifier uses its own copy of them
+        final HighlightExpression[] classifierExpressions = expressions.toArray( new HighlightExpression[ 0 ] );
+        final int otherCategory = classifierExpressions.length;
+
+        logView.createTimeHistogramScanner( line -> {
+            for ( int i = 0; i < classifierExpressions.length; i++ ) {
+                if ( classifierExpressions[ i ].matches( line ) ) {
+                    return i;
+                }
+            }
+            return otherCategory;
+        }, otherCategory + 1, ( Optional<TimeHistogramScanner> newScanner ) -> {
+            if ( generation.get() != currentGeneration ) {
+                return;
+            }
+            if ( newScanner.isPresent() ) {
+                scanner = newScanner.get();
+                requestingScanner.set( false );
+                scheduleScan();
+            } else {
+                // do not try again until the highlight options change
+                log.debug( "Cannot show the time histogram of file {}", logView.getFile() );
+            }
+        } );
+    }
+
+    private void scheduleScan() {
+        if ( !scanScheduled.compareAndSet( false, true ) ) {
+            return;
+        }
+        histogramExecutor.execute( () -> {
+            scanScheduled.set( false );
+            final TimeHistogramScanner currentScanner = scanner;
+            final long currentGeneration = generation.get();
+            if ( currentScanner == null ) {
+                return;
+            }
+            try {
+                currentScanner.scan( () -> closed || generation.get() != currentGeneration,
+                        ( newHistogram ) -> Platform.runLater( () -> {
+                            if ( generation.get() == currentGeneration ) {
+                                histogram = newHistogram;
+                                draw();
+                            }
+                        } ) );
+            } catch ( Exception e ) {
+                log.warn( "Error scanning file {} for its time histogram: {}", logView.getFile(), e.toString() );
+            }
+        } );
+    }
+
+    private int bucketAt( double x ) {
+        int bucketCount = histogram.getBucketCount();
+        if ( bucketCount == 0 || getWidth() <= 0.0 ) {
+            return -1;
+        }
+        return Math.max( 0, Math.min( bucketCount - 1, ( int ) ( x / getWidth() * bucketCount ) ) );
+    }
+
+    @MustCallOnJavaFXThread
+    private void draw() {
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        double width = canvas.getWidth();
+        double height = canvas.getHeight();
+        gc.clearRect( 0, 0, width, height );
+
+        setVisible( !histogram.isEmpty() );
+        if ( histogram.isEmpty() || standardColors == null ) {
+            return;
+        }
+
+        int bucketCount = histogram.getBucketCount();
+        double bucketWidth = width / bucketCount;
+        double scale = height / histogram.getMaxTotal();
+        int otherCategory = expressions.size();
+
+        for ( int b = 0; b < bucketCount; b++ ) {
+            long total = histogram.getTotal( b );
+            if ( total == 0L ) {
+                continue;
+            }
+            double x = b * bucketWidth;
+            double bottom = height;
+
+            // lines not matching any expression at the bottom, with the others stacked on top of them
+            bottom = drawBar( gc, x, bucketWidth, bottom, histogram.getCount( b, otherCategory ) * scale,
+                    standardColors.getFill(), 0.5 );
+            for ( int category = 0; category < otherCategory; category++ ) {
+                bottom = drawBar( gc, x, bucketWidth, bottom, histogram.getCount( b, category ) * scale,
+                        expressions.get( category ).getBkgColor(), 1.0 );
+            }
+
+            // make sure every bucket with lines is visible
+            if ( bottom > height - 1.0 ) {
+                drawBar( gc, x, bucketWidth, height, 1.0, standardColors.getFill(), 0.5 );
+            }
+        }
+    }
+
+    private static double drawBar( GraphicsContext gc, double x, double width, double bottom,
+                                   double barHeight, Paint color, double alpha ) {
+        if ( barHeight <= 0.0 ) {
+            return bottom;
+        }
+        gc.setGlobalAlpha( alpha );
+        gc.setFill( color == null ? Color.GRAY : color );
+        gc.fillRect( x, bottom - barHeight, Math.max( 1.0, width ), barHeight );
+        gc.setGlobalAlpha( 1.0 );
+        return bottom - barHeight;
+    }
+
+    @MustCallOnJavaFXThread
+    private void updateTooltip( double x ) {
+        int bucket = bucketAt( x );
+        if ( bucket < 0 ) {
+            tooltip.setText( "" );
+            return;
+        }
+
+        StringBuilder text = new StringBuilder()
+                .append( histogram.getBucketStartDateTime( bucket )
+                        .withZoneSameInstant( ZoneId.systemDefault() )
+                        .format( TOOLTIP_DATE_FORMAT ) )
+                .append( " (+" ).append( durationText( histogram.getBucketWidth() ) ).append( ")\n" )
+                .append( histogram.getTotal( bucket ) ).append( " lines" );
+
+        for ( int category = 0; category < expressions.size(); category++ ) {
+            long count = histogram.getCount( bucket, category );
+            if ( count > 0L ) {
+                text.append( "\n" ).append( expressions.get( category ).getPattern().pattern() )
+                        .append( ": " ).append( count );
+            }
+        }
+
+        tooltip.setText( text.toString() );
+    }
+
+    static String durationText( long millis ) {
+        long seconds = millis / 1000L;
+        if ( seconds < 60L ) {
+            return seconds + "s";
+        }
+        long minutes = seconds / 60L;
+        if ( minutes < 60L ) {
+            return minutes + "m";
+        }
+        long hours = minutes / 60L;
+        if ( hours < 48L ) {
+            return hours + "h";
+        }
+        return ( hours / 24L ) + "d";
+    }
+}
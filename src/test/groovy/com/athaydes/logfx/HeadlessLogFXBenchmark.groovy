@@ -0,0 +1,132 @@
+package com.athaydes.logfx
+
+import com.athaydes.logfx.config.HighlightConfig
+import spock.lang.Requires
+import spock.lang.Shared
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.StandardOpenOption
+import java.time.ZonedDateTime
+
+/**
+ * Measures the throughput of the headless mode of LogFX, comparing it with grep (when available) on the same file.
+ * <p>
+ * Both write their output to a file, as grep stops at the first match when writing to {@code /dev/null}.
+ * <p>
+ * Run with {@code ./gradlew benchmark}. The size of the generated log file, in MB, can be set with the
+ * {@code logfx.benchmark.size} system property.
+ */
+@Requires( { System.getProperty( 'logfx.benchmark' ) } )
+class HeadlessLogFXBenchmark extends Specification {
+
+    static final int RUNS = 5
+
+    @Shared
+    File dir = Files.createTempDirectory( 'headless-benchmark' ).toFile()
+
+    @Shared
+    File file = new File( dir, 'app.log' )
+
+    @Shared
+    File configFile = new File( dir, 'config' )
+
+    @Shared
+    File output = new File( dir, 'output' )
+
+    @Shared
+    boolean hasGrep = [ 'sh', '-c', 'command -v grep' ].execute().waitFor() == 0
+
+    def setupSpec() {
+        long size = ( System.getProperty( 'logfx.benchmark.size' ) ?: '200' ).toLong() * 1024 * 1024
+        def startTime = ZonedDateTime.parse( '2017-09-01T10:00:00Z' )
+        def random = new Random( 42L )
+        file.withWriter { writer ->
+            long written = 0L
+            long i = 0L
+            while ( written < size ) {
+                i++
+                def level = i % 100 == 0 ? 'ERROR' : i % 20 == 0 ? 'WARN' : 'INFO'
+                def line = "${startTime.plusNanos( i * 1_000_000L )} $level [thread-${i % 8}] com.example.Service - " +
+                        "processing request id=$i user=u${random.nextInt( 1000 )} took ${random.nextInt( 500 )}ms\n"
+                writer.write( line )
+                written += line.length()
+            }
+        }
+
+        configFile.write( '''\
+            version:
+              V2
+            expressions:
+              0xff0000ff 0xffffffff true ERROR
+              0xffff00ff 0x000000ff false WARN
+            filters:
+              enable
+            '''.stripIndent() )
+    }
+
+    def cleanupSpec() {
+        dir.deleteDir()
+    }
+
+    @Unroll
+    def "Throughput of #description"() {
+        given:
+        def options = HeadlessLogFX.parseOptions( ( args + [ '--config', configFile.path, file.path ] ) as String[] )
+        def config = HighlightConfig.read( options.config )
+
+        when: 'LogFX writes the file a few times'
+        def times = ( 1..RUNS ).collect {
+            long start = System.nanoTime()
+            FileChannel.open( output.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING ).withCloseable { out ->
+                assert new HeadlessLogFX( options, config ).run( out, System.err ) == 0
+            }
+            System.nanoTime() - start
+        }
+        def outputLength = output.length()
+
+        and: 'grep does the same'
+        def grepTimes = hasGrep ? ( 1..RUNS ).collect { timeOf( grepCommand ) } : [ ]
+
+        then:
+        outputLength > 0L
+
+        cleanup:
+        report( description, times, grepTimes )
+
+        where:
+        description                     | args                                    | grepCommand
+        'filtering lines'               | [ '--color=never' ]                     | [ 'grep', 'ERROR' ]
+        'filtering and coloring lines'  | [ '--color=always' ]                    | [ 'grep', '--color=always', 'ERROR' ]
+        'coloring all lines'            | [ '--color=always', '--no-filter' ]     | [ 'grep', '--color=always', '-E', 'ERROR|WARN|$' ]
+        'writing all lines'             | [ '--color=never', '--no-filter' ]      | [ 'cat' ]
+        'writing a range of date-times' | [ '--color=never', '--no-filter',
+                                            '--since', '2017-09-01 10:10:00',
+                                            '--until', '2017-09-01 10:11:00' ] | [ 'grep', '^2017-09-01T10:10:' ]
+    }
+
+    long timeOf( List<String> command ) {
+        long start = System.nanoTime()
+        new ProcessBuilder( command + [ file.path ] )
+                .redirectOutput( output )
+                .redirectError( ProcessBuilder.Redirect.INHERIT )
+                .start()
+                .waitFor()
+        System.nanoTime() - start
+    }
+
+    void report( String description, List<Long> times, List<Long> grepTimes ) {
+        def throughput = { long nanos -> file.length() / 1_000_000.0 / ( nanos / 1_000_000_000.0 ) }
+        def best = times.min()
+        def message = String.format( '%-30s LogFX: first run %6.0f MB/s, best %6.0f MB/s',
+                description, throughput( times.first() ), throughput( best ) )
+        if ( grepTimes ) {
+            message += String.format( ' | grep: best %6.0f MB/s | LogFX/grep: %.2f',
+                    throughput( grepTimes.min() ), grepTimes.min() / ( double ) best )
+        }
+        println message
+    }
+}
@@ -0,0 +1,213 @@
+package com.athaydes.logfx
+
+import com.athaydes.logfx.config.HighlightConfig
+import spock.lang.Specification
+import spock.lang.Unroll
+import spock.util.concurrent.PollingConditions
+
+import java.nio.channels.Channels
+import java.nio.file.Files
+import java.time.ZonedDateTime
+
+class HeadlessLogFXSpec extends Specification {
+
+    File dir = Files.createTempDirectory( 'headless-logfx' ).toFile()
+    File file = new File( dir, 'app.log' )
+    File configFile = new File( dir, 'config' )
+    ByteArrayOutputStream out = new ByteArrayOutputStream()
+    ByteArrayOutputStream err = new ByteArrayOutputStream()
+
+    def setup() {
+        configFile.write( '''\
+            version:
+              V2
+            standard-log-colors:
+              0x000000ff 0xd3d3d3ff
+            expressions:
+              0xff0000ff 0xffffffff true ERROR
+              0xffff00ff 0x000000ff false WARN
+            filters:
+              enable
+            gui:
+              font 12.0 Courier New
+            '''.stripIndent() )
+
+        file.write( ( 1..100 ).collect { i ->
+            def level = i % 10 == 0 ? 'ERROR' : i % 5 == 0 ? 'WARN' : 'INFO'
+            "${ZonedDateTime.parse( '2017-09-01T10:00:00Z' ).plusSeconds( i )} $level message $i"
+        }.join( '\n' ) + '\n' )
+    }
+
+    def cleanup() {
+        dir.deleteDir()
+    }
+
+    HeadlessLogFX headless( String... args ) {
+        def options = HeadlessLogFX.parseOptions( args + [ '--config', configFile.path, file.path ] as String[] )
+        new HeadlessLogFX( options, HighlightConfig.read( options.config ) )
+    }
+
+    int run( HeadlessLogFX headless ) {
+        headless.run( Channels.newChannel( out ), new PrintStream( err, true ) )
+    }
+
+    List<String> getWrittenLines() {
+        out.toString( 'UTF-8' ).readLines()
+    }
+
+    def "Command-line options can be parsed"() {
+        when:
+        def options = HeadlessLogFX.parseOptions( [ '--since', '2017-09-11 18:13:57', '--until=2017-09-11T21:00:00.5 +02:00',
+                                                    '-f', '--color=always', '--no-filter', '--config', 'my-config',
+                                                    'app.log' ] as String[] )
+
+        then:
+        options.file == new File( 'app.log' )
+        options.since == ZonedDateTime.parse( '2017-09-11T18:13:57Z' )
+        options.until == ZonedDateTime.parse( '2017-09-11T21:00:00.5+02:00' )
+        options.follow
+        options.colorMode == HeadlessLogFX.ColorMode.ALWAYS
+        options.noFilter
+        options.config.toString() == 'my-config'
+        !options.help
+
+        when: 'only a file is given'
+        options = HeadlessLogFX.parseOptions( [ 'app.log' ] as String[] )
+
+        then: 'the defaults are used'
+        options.file == new File( 'app.log' )
+        options.since == null
+        options.until == null
+        !options.follow
+        options.colorMode == HeadlessLogFX.ColorMode.AUTO
+        !options.noFilter
+        options.config.fileName.toString() == 'config'
+    }
+
+    @Unroll
+    def "Invalid command-line options are rejected: #args"() {
+        when:
+        HeadlessLogFX.parseOptions( args as String[] )
+
+        then:
+        def error = thrown( IllegalArgumentException )
+        error.message == message
+
+        where:
+        args                                       | message
+        [ ]                                        | 'No file was given'
+        [ 'a.log', 'b.log' ]                       | 'Only one file can be given'
+        [ '--tail', 'a.log' ]                      | 'Unknown option: --tail'
+        [ 'a.log', '--since' ]                     | 'Missing value for option --since'
+        [ '--follow=yes', 'a.log' ]                | 'Option does not take a value: --follow'
+        [ '--since', 'yesterday', 'a.log' ]        | 'Invalid date-time: yesterday'
+        [ '--color', 'green', 'a.log' ]            | 'Invalid value for --color: green'
+        [ '--since', '2017-09-02 10:00:00',
+          '--until', '2017-09-01 10:00:00', 'a.log' ] | 'The --until date-time is before the --since date-time'
+    }
+
+    def "The lines accepted by the filters of the config are written"() {
+        when:
+        def exitCode = run( headless() )
+
+        then:
+        exitCode == 0
+        writtenLines == file.readLines().findAll { it.contains( 'ERROR' ) }
+
+        when: 'filters are disabled on the command-line'
+        out.reset()
+        exitCode = run( headless( '--no-filter' ) )
+
+        then: 'all lines are written'
+        exitCode == 0
+        out.toByteArray() == file.bytes
+    }
+
+    def "Lines are colored with the highlight expressions of the config"() {
+        when:
+        def exitCode = run( headless( '--color', 'always', '--no-filter' ) )
+
+        then: 'the lines matching an expression are colored with its ANSI colors'
+        exitCode == 0
+        def lines = file.readLines()
+        writtenLines.size() == lines.size()
+        writtenLines[ 9 ] == "\u001B[38;2;255;255;255m\u001B[48;2;255;0;0m${lines[ 9 ]}\u001B[0m".toString()
+        writtenLines[ 4 ] == "\u001B[38;2;0;0;0m\u001B[48;2;255;255;0m${lines[ 4 ]}\u001B[0m".toString()
+
+        and: 'other lines are written as they are'
+        writtenLines[ 0 ] == lines[ 0 ]
+    }
+
+    def "The lines logged within a range of date-times are written"() {
+        when:
+        def exitCode = run( headless( '--since', '2017-09-01 11:00:30 +01:00', '--until', '2017-09-01 10:01:20',
+                '--no-filter' ) )
+
+        then: 'date-times without a time-zone are in UTC, like the date-times of the lines'
+        exitCode == 0
+        writtenLines == file.readLines()[ 29..79 ]
+    }
+
+    def "The lines logged within a range of date-times are written from a UTF-16 file"() {
+        given: 'a file encoded with UTF-16, without a byte-order mark'
+        def lines = file.readLines()
+        file.bytes = ( lines.join( '\n' ) + '\n' ).getBytes( 'UTF-16LE' )
+
+        when:
+        def exitCode = run( headless( '--since', '2017-09-01 10:00:30', '--until', '2017-09-01 10:00:40',
+                '--no-filter' ) )
+
+        then: 'the date-time format is guessed from the decoded lines, and the lines are written as they are'
+        exitCode == 0
+        err.size() == 0
+        out.toString( 'UTF-16LE' ).readLines() == lines[ 29..39 ]
+    }
+
+        def "Errors are reported with an exit code"() {
+        when: 'the file does not exist'
+        file.delete()
+        def exitCode = run( headless() )
+
+        then:
+        exitCode == 2
+        err.toString().startsWith( 'File does not exist' )
+
+        when: 'the date-times of the file cannot be guessed'
+        err.reset()
+        file.write( 'no\ndates\nhere\n' )
+        exitCode = run( headless( '--since', '2017-09-01 10:00:00' ) )
+
+        then:
+        exitCode == 2
+        err.toString().startsWith( 'Unable to guess the date-time format' )
+        out.size() == 0
+    }
+
+    def "A followed file is written until stopped"() {
+        given:
+        def headless = headless( '--follow' )
+        def conditions = new PollingConditions( timeout: 5 )
+        def exitCode = null
+
+        when:
+        def thread = Thread.start { exitCode = run( headless ) }
+        conditions.eventually {
+            assert writtenLines.size() == 10
+        }
+        file << '2017-09-01T11:00:00Z ERROR new error\n'
+
+        then:
+        conditions.eventually {
+            assert writtenLines.last() == '2017-09-01T11:00:00Z ERROR new error'
+        }
+
+        when:
+        headless.stop()
+        thread.join( 5000 )
+
+        then:
+        !thread.alive
+        exitCode == 0
+    }
+
+}
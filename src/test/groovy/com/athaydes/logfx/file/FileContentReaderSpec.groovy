@@ -19,9 +19,19 @@ class FileContentReaderSpec extends Specification {
         file.deleteOnExit()
     }
 
+    FileReader createReader( File file, int fileWindowSize, Integer bufferSize = null ) {
+        bufferSize == null ?
+                new FileReader( file, fileWindowSize ) :
+                new FileReader( file, fileWindowSize, bufferSize )
+    }
+
+    FileReader createReader( File file, int fileWindowSize, int bufferSize, int maxLineLength ) {
+        new FileReader( file, fileWindowSize, bufferSize, maxLineLength )
+    }
+
     def "Can read the tail of a single-line file spanning multiple buffers"() {
         given: 'a file reader with a short byte buffer'
-        FileContentReader reader = new FileReader( file, 5, 8 )
+        FileContentReader reader = createReader( file, 5, 8 )
 
         when: 'A file with a very long line is created'
         file << ( 'Z' * 100 )
@@ -34,9 +44,67 @@ class FileContentReaderSpec extends Specification {
 
     }
 
+    def "Can read lines spanning many buffers in both directions"() {
+        given: 'a file reader with a short byte buffer'
+        FileContentReader reader = createReader( file, 3, 8 )
+
+        and: 'a file with lines that are much longer than the buffer'
+        def longLine1 = ( 0..999 ).join( ',' )
+        def longLine2 = ( 'a'..'z' ).join( '' ) * 20
+        file << longLine1 << '\r\n' << longLine2 << '\r\n' << 'short'
+
+        when: 'the file is read from the top'
+        def top = reader.refresh()
+
+        then: 'all lines are read correctly'
+        top.isPresent()
+        top.get() == [ longLine1, longLine2, 'short' ]
+
+        when: 'the file is read from the tail'
+        reader.tail()
+        def tail = reader.refresh()
+
+        then: 'all lines are read correctly'
+        tail.isPresent()
+        tail.get() == [ longLine1, longLine2, 'short' ]
+    }
+
+    def "Lines longer than the maximum line length are truncated without affecting line boundaries"() {
+        given: 'a file reader with a short byte buffer and a maximum line length of 10 bytes'
+        FileContentReader reader = createReader( file, 2, 8, 10 )
+
+        and: 'a file with some lines longer than the maximum line length'
+        file << ( 'A' * 5 ) << ( 'B' * 50 ) << '\r\n' << 'short line' << '\r\n' << ( 'C' * 100 ) << '\n' << 'end'
+
+        when: 'the file is read from the top'
+        def top = reader.refresh()
+
+        then: 'only the first bytes of long lines are read'
+        top.isPresent()
+        top.get() == [ 'AAAAABBBBB', 'short line' ]
+
+        when: 'the reader moves down'
+        def lines = reader.moveDown( 2 )
+
+        then: 'the next lines are found correctly'
+        lines.isPresent()
+        lines.get() == [ 'C' * 10, 'end' ]
+
+        when: 'the file is read from the tail, then moves up'
+        reader.tail()
+        def tail = reader.refresh()
+        lines = reader.moveUp( 2 )
+
+        then: 'the same lines are returned'
+        tail.isPresent()
+        tail.get() == [ 'C' * 10, 'end' ]
+        lines.isPresent()
+        lines.get() == [ 'AAAAABBBBB', 'short line' ]
+    }
+
     def "Can read the tail of a multi-line file with some lines spanning multiple buffers"() {
         given: 'a file reader with a short byte buffer'
-        FileContentReader reader = new FileReader( file, 5, 8 )
+        FileContentReader reader = createReader( file, 5, 8 )
 
         when: 'A file with some long and short lines is created'
         file << ( 'Z' * 100 ) << '\n' << 'abc' << '\n\n' << ( 'X' * 10 ) << '\n'
@@ -52,7 +120,7 @@ class FileContentReaderSpec extends Specification {
     @Unroll
     def "Can read the tail of a short file with a short buffer"() {
         given: 'a file reader with a short byte buffer'
-        FileContentReader reader = new FileReader( file, windowSize, 8 )
+        FileContentReader reader = createReader( file, windowSize, 8 )
 
         when: 'A file with 10 lines is created'
         file << ( 1..10 ).join( '\n' )
@@ -76,7 +144,7 @@ class FileContentReaderSpec extends Specification {
     @Unroll
     def "Can read the tail of a short file with the default buffer"() {
         given: 'a file reader with a short byte buffer'
-        FileContentReader reader = new FileReader( file, windowSize )
+        FileContentReader reader = createReader( file, windowSize )
 
         when: 'A file with 10 lines is created'
         file << ( 1..10 ).join( '\n' )
@@ -100,7 +168,7 @@ class FileContentReaderSpec extends Specification {
     @Unroll
     def "Can read the tail of a long file"() {
         given: 'a file reader with a default buffer'
-        FileContentReader reader = new FileReader( file, windowSize )
+        FileContentReader reader = createReader( file, windowSize )
 
         when: 'A file with 100,000 lines is created'
         file << ( 1..100_000 ).join( '\n' )
@@ -124,7 +192,7 @@ class FileContentReaderSpec extends Specification {
     @Unroll
     def "Can read the top of a long file"() {
         given: 'a file reader with a default buffer'
-        FileContentReader reader = new FileReader( file, windowSize )
+        FileContentReader reader = createReader( file, windowSize )
 
         when: 'A file with 100,000 lines is created'
         file << ( 1..100_000 ).join( '\n' )
@@ -148,7 +216,7 @@ class FileContentReaderSpec extends Specification {
     @Unroll
     def "Can read the tail of a long file, then move up using a large or small buffer"() {
         given: 'a file reader with a buffer of size #bufferSize'
-        FileContentReader reader = new FileReader( file, windowSize, bufferSize )
+        FileContentReader reader = createReader( file, windowSize, bufferSize )
 
         when: 'A file with 100,000 lines is created'
         file << ( 1..100_000 ).join( '\n' )
@@ -189,7 +257,7 @@ class FileContentReaderSpec extends Specification {
     @Unroll
     def "Can read the top of a long file, then move down using a large or small buffer"() {
         given: 'a file reader with a buffer of size #bufferSize'
-        FileContentReader reader = new FileReader( file, windowSize, bufferSize )
+        FileContentReader reader = createReader( file, windowSize, bufferSize )
 
         when: 'A file with 100,000 lines is created'
         file << ( 1..100_000 ).join( '\n' )
@@ -230,7 +298,7 @@ class FileContentReaderSpec extends Specification {
     @Unroll
     def "Refresh at top should cause the previously read lines to be read again"() {
         given: 'a file reader with a short byte buffer'
-        FileContentReader reader = new FileReader( file, 3, 8 )
+        FileContentReader reader = createReader( file, 3, 8 )
 
         and: 'A file with 10 lines is created'
         file << ( 0..9 ).collect { def s = it.toString(); s.padLeft( 3, s ) }.join( '\n' )
@@ -253,7 +321,7 @@ class FileContentReaderSpec extends Specification {
 
     def "Refresh at tail should cause the previously read lines to be read again"() {
         given: 'a file reader with a short byte buffer'
-        FileContentReader reader = new FileReader( file, 3, 8 )
+        FileContentReader reader = createReader( file, 3, 8 )
 
         and: 'A file with 10 lines is created'
         file << ( 0..9 ).collect { def s = it.toString(); s.padLeft( 3, s ) }.join( '\n' )
@@ -283,7 +351,7 @@ class FileContentReaderSpec extends Specification {
 
     def "Moving down a small amount of lines returns the expected lines and moves the file window accordingly"() {
         given: 'a file reader with a short byte buffer and file window'
-        FileContentReader reader = new FileReader( file, 3, 8 )
+        FileContentReader reader = createReader( file, 3, 8 )
 
         and: 'A file with 10 lines is created'
         file << ( 0..9 ).collect { def s = it.toString(); s.padLeft( 3, s ) }.join( '\n' )
@@ -314,7 +382,7 @@ class FileContentReaderSpec extends Specification {
 
     def "Moving up a small amount of lines returns the expected lines and moves the file window accordingly"() {
         given: 'a file reader with a short byte buffer and file window'
-        FileContentReader reader = new FileReader( file, 3, 8 )
+        FileContentReader reader = createReader( file, 3, 8 )
 
         and: 'A file with 10 lines is created'
         file << ( 0..9 ).collect { def s = it.toString(); s.padLeft( 3, s ) }.join( '\n' )
@@ -348,7 +416,7 @@ class FileContentReaderSpec extends Specification {
 
     def "Moving up after file boundaries does not cause errors"() {
         given: 'a file reader with a short byte buffer'
-        FileContentReader reader = new FileReader( file, 5, 8 )
+        FileContentReader reader = createReader( file, 5, 8 )
 
         and: 'A file with 10 lines is created'
         file << ( 0..9 ).collect { def s = it.toString(); s.padLeft( 3, s ) }.join( '\n' )
@@ -387,7 +455,7 @@ class FileContentReaderSpec extends Specification {
 
     def "Moving down after file boundaries does not cause errors"() {
         given: 'a file reader with a short byte buffer'
-        FileContentReader reader = new FileReader( file, 5, 8 )
+        FileContentReader reader = createReader( file, 5, 8 )
 
         and: 'A file with 10 lines is created'
         file << ( 0..9 ).collect { def s = it.toString(); s.padLeft( 3, s ) }.join( '\n' )
@@ -426,7 +494,7 @@ class FileContentReaderSpec extends Specification {
 
     def "Moving down more lines than the size of the file window is allowed and the file window moves as expected"() {
         given: 'a file reader with a short byte buffer and file window'
-        FileContentReader reader = new FileReader( file, 3, 8 )
+        FileContentReader reader = createReader( file, 3, 8 )
 
         and: 'A file with 10 lines is created'
         file << ( 0..9 ).collect { def s = it.toString(); s.padLeft( 3, s ) }.join( '\n' )
@@ -447,7 +515,7 @@ class FileContentReaderSpec extends Specification {
 
     def "Moving up more lines than the size of the file window is allowed and the file window moves as expected"() {
         given: 'a file reader with a short byte buffer and file window'
-        FileContentReader reader = new FileReader( file, 3, 8 )
+        FileContentReader reader = createReader( file, 3, 8 )
 
         and: 'A file with 10 lines is created'
         file << ( 0..9 ).collect { def s = it.toString(); s.padLeft( 3, s ) }.join( '\n' )
@@ -469,7 +537,7 @@ class FileContentReaderSpec extends Specification {
 
     def "It is possible to refresh from the tail after a file change"() {
         given: 'a file reader with a short byte buffer'
-        FileContentReader reader = new FileReader( file, 5, 8 )
+        FileContentReader reader = createReader( file, 5, 8 )
 
         and: 'A file with 10 lines is created'
         file << ( 0..9 ).collect { def s = it.toString(); s.padLeft( 3, s ) }.join( '\n' )
@@ -516,7 +584,7 @@ class FileContentReaderSpec extends Specification {
 
     def "It is possible to refresh from the top after a file change"() {
         given: 'a file reader with a short byte buffer'
-        FileContentReader reader = new FileReader( file, 5, 8 )
+        FileContentReader reader = createReader( file, 5, 8 )
 
         and: 'A file with 10 lines is created'
         file << ( 0..9 ).collect { def s = it.toString(); s.padLeft( 3, s ) }.join( '\n' )
@@ -557,7 +625,7 @@ class FileContentReaderSpec extends Specification {
     @Unroll
     def "Can adjust file window to start at a specific line below current window"() {
         given: 'a file reader with a short byte buffer'
-        FileContentReader reader = new FileReader( file, windowSize, 8 )
+        FileContentReader reader = createReader( file, windowSize, 8 )
 
         when: 'A file with 10 lines is created'
         file << ( 1..10 ).join( '\n' )
@@ -623,7 +691,7 @@ class FileContentReaderSpec extends Specification {
     @Unroll
     def "FileReader can move to a specific time in a log file starting from the top"() {
         given: 'a file reader with a default buffer and a small file window of #fileWindowSize'
-        FileContentReader reader = new FileReader( file, fileWindowSize )
+        FileContentReader reader = createReader( file, fileWindowSize )
 
         and: 'a file with most log lines having a date in a recognizable format'
         file.write( '''|INFO Fri Sep 01 22:02:53 CEST 2017 - 0
@@ -711,7 +779,7 @@ class FileContentReaderSpec extends Specification {
     @Unroll
     def "FileReader can move to a specific time in a log file starting from the bottom"() {
         given: 'a file reader with a default buffer and a small file window of #fileWindowSize'
-        FileContentReader reader = new FileReader( file, fileWindowSize )
+        FileContentReader reader = createReader( file, fileWindowSize )
 
         and: 'a file with most log lines having a date in a recognizable format'
         file.write( '''|INFO Fri Sep 01 22:02:53 CEST 2017 - 0
@@ -800,7 +868,7 @@ class FileContentReaderSpec extends Specification {
     @Unroll
     def "FileReader can move to a specific time in a log file that is much smaller than the file-window size"() {
         given: 'a file reader with a default buffer and a large file window'
-        FileContentReader reader = new FileReader( file, 100 )
+        FileContentReader reader = createReader( file, 100 )
 
         and: 'a file with most log lines having a date in a recognizable format (and less than 100 lines)'
         file.write( '''|INFO Fri Sep 01 22:02:53 CEST 2017 - 0
@@ -868,10 +936,55 @@ class FileContentReaderSpec extends Specification {
 
     }
 
+    @Unroll
+    def "FileReader can move to a specific time (#seconds) in a large log file without reading the whole file"() {
+        given: 'a file reader with a default buffer'
+        FileContentReader reader = createReader( file, 5 )
+
+        and: 'a large file where each log line is one second after the previous one, some followed by stack-traces'
+        def startTime = ZonedDateTime.parse( '2017-09-01T10:00:00Z' )
+        def dateFormat = DateTimeFormatter.ofPattern( 'yyyy-MM-dd HH:mm:ss' ).withZone( startTime.zone )
+        file.withWriter { writer ->
+            50_000.times { i ->
+                writer.write( "${dateFormat.format( startTime.plusSeconds( i ) )} INFO message $i\n" )
+                if ( i % 7 == 0 ) {
+                    writer.write( "    at com.acme.Service.call(Service.java:$i)\n    at java.lang.Thread.run\n" )
+                }
+            }
+        }
+
+        and: 'A function that extracts date-times from log lines, counting how many lines it is called with'
+        def extractedLines = 0
+        def dateExtractor = { String line ->
+            extractedLines++
+            line.startsWith( ' ' ) ?
+                    Optional.empty() :
+                    Optional.of( ZonedDateTime.parse( line.substring( 0, 19 ), dateFormat ) )
+        }
+
+        when: 'we try to move to a certain time in the log'
+        def result = reader.moveTo( startTime.plusSeconds( seconds ), dateExtractor )
+        def lines = reader.refresh()
+
+        then: 'the file reader moves the file window to the line with the given time'
+        result.isSuccess()
+        !result.isBeforeRange() && !result.isAfterRange()
+        lines.get()[ result.fileLineNumber() - 1 ].endsWith( "INFO message $seconds" )
+
+        and: 'only a small number of lines had to be checked'
+        extractedLines < 1000
+
+        cleanup:
+        reader?.close()
+
+        where:
+        seconds << [ 0, 1, 7, 8, 12_345, 25_000, 49_990, 49_999 ]
+    }
+
     @Unroll
     def "Can read and move down then up through Windows log file, handling line endings correctly"() {
         given: 'a file reader with a windows size of #windowSize and byte buffer of size #bufferSize'
-        FileContentReader reader = new FileReader( file, windowSize, bufferSize )
+        FileContentReader reader = createReader( file, windowSize, bufferSize )
 
         and: 'A Windows log file with 10 lines is created'
         def lineCreator = { it.toString() * 10 }
@@ -914,7 +1027,7 @@ class FileContentReaderSpec extends Specification {
     @Unroll
     def "Can read and move up then down through Windows log file, handling line endings correctly"() {
         given: 'a file reader with a windows size of #windowSize and byte buffer of size #bufferSize'
-        FileContentReader reader = new FileReader( file, windowSize, bufferSize )
+        FileContentReader reader = createReader( file, windowSize, bufferSize )
 
         and: 'A Windows log file with 10 lines is created'
         def lineCreator = { it.toString() * 10 }
@@ -956,4 +1069,282 @@ class FileContentReaderSpec extends Specification {
         4          | 4096
     }
 
-}
\ No newline at end of file
+    def "The line numbers of the file window are tracked as the window moves"() {
+        given: 'a file reader with a short byte buffer and file window'
+        FileContentReader reader = createReader( file, 10, 16 )
+
+        and: 'A file with 100 lines is created'
+        file << ( 1..100 ).join( '\n' )
+
+        when: 'The reader refreshes from the top'
+        reader.refresh()
+
+        then: 'The line numbers of the file window are the numbers of the first lines'
+        reader.lineNumbers as List == ( 1L..10L )
+
+        when: 'The reader moves down'
+        reader.moveDown( 3 )
+
+        then: 'The line numbers are shifted down'
+        reader.lineNumbers as List == ( 4L..13L )
+
+        when: 'The reader moves up'
+        reader.moveUp( 2 )
+
+        then: 'The line numbers are shifted up'
+        reader.lineNumbers as List == ( 2L..11L )
+
+        when: 'The reader goes to the tail'
+        reader.tail()
+        reader.refresh()
+
+        then: 'The line numbers are the numbers of the last lines'
+        reader.lineNumbers as List == ( 91L..100L )
+
+        when: 'Lines are filtered'
+        reader.lineFilter = { String line -> line.endsWith( '5' ) }
+        reader.top()
+        def lines = reader.refresh()
+
+        then: 'The line numbers are the numbers of the lines that were accepted by the filter'
+        lines.isPresent()
+        lines.get() == [ '5', '15', '25', '35', '45', '55', '65', '75', '85', '95' ]
+        reader.lineNumbers as List == [ 5L, 15L, 25L, 35L, 45L, 55L, 65L, 75L, 85L, 95L ]
+    }
+
+    @Unroll
+    def "Can move to a specific line of a file"() {
+        given: 'a file reader with a short byte buffer and file window'
+        FileContentReader reader = createReader( file, 10, 16 )
+
+        and: 'A file with 100 lines is created'
+        file << ( 1..100 ).join( '\n' )
+
+        when: 'The reader moves to line #lineNumber'
+        def result = reader.moveToLine( lineNumber )
+
+        then: 'The result is as expected'
+        result.success
+        result.beforeRange == isBeforeRange
+        result.afterRange == isAfterRange
+        if ( !isBeforeRange && !isAfterRange ) {
+            assert result.fileLineNumber() == expectedFileLineNumber
+        }
+
+        and: 'The file window is in the expected location'
+        def fileWindow = reader.refresh()
+        fileWindow.isPresent()
+        fileWindow.get() == expectedFileWindow.collect { it.toString() }
+        reader.lineNumbers as List == expectedFileWindow.collect { it as long }
+
+        where:
+        lineNumber || isBeforeRange | isAfterRange | expectedFileLineNumber | expectedFileWindow
+        1          || false         | false        | 1                      | ( 1..10 )
+        50         || false         | false        | 1                      | ( 50..59 )
+        91         || false         | false        | 1                      | ( 91..100 )
+        95         || false         | false        | 5                      | ( 91..100 )
+        100        || false         | false        | 10                     | ( 91..100 )
+        0          || true          | false        | -1                     | ( 1..10 )
+        101        || false         | true         | -1                     | ( 91..100 )
+        5000       || false         | true         | -1                     | ( 91..100 )
+    }
+
+    def "The byte range of every line in the file window is known"() {
+        given: 'a file reader with a short byte buffer and file window'
+        FileReader reader = createReader( file, 3, 8 )
+
+        and: 'A file with lines of different lengths and line terminators'
+        file << 'a\nbbbb\r\n\ncccccccccccc\ndd'
+
+        when: 'The reader refreshes from the top'
+        reader.refresh()
+
+        then: 'The byte ranges of the lines in the file window are known'
+        FileLineStartsSpec.rangesOf( reader.lineStarts ) == [ [ 0L, 2L ], [ 2L, 8L ], [ 8L, 9L ] ]
+
+        when: 'The reader goes to the tail'
+        reader.tail()
+        reader.refresh()
+
+        then: 'The byte ranges of the lines in the file window are known'
+        FileLineStartsSpec.rangesOf( reader.lineStarts ) == [ [ 8L, 9L ], [ 9L, 22L ], [ 22L, 24L ] ]
+    }
+
+    def "Moving down after the last line grows skips the rest of that line"() {
+        given: 'a file reader'
+        FileContentReader reader = createReader( file, 3, 8 )
+
+        and: 'a file whose last line is not terminated'
+        file << 'line 1\nline 2'
+
+        when: 'the file is read from the top'
+        def top = reader.refresh()
+
+        then: 'all lines are read'
+        top.get() == [ 'line 1', 'line 2' ]
+
+        when: 'the last line grows and new lines are added'
+        file << ' is longer now\nline 3\nline 4'
+
+        and: 'the reader moves down'
+        def lines = reader.moveDown( 2 )
+
+        then: 'only the new lines are read'
+        lines.isPresent()
+        lines.get() == [ 'line 3', 'line 4' ]
+    }
+
+    def "Following the tail of a file only reads the lines appended to it"() {
+        given: 'a file reader'
+        FileReader reader = createReader( file, 3, 64 )
+
+        and: 'a file whose last line is not terminated'
+        file << 'line 1\nline 2\nline 3'
+
+        when: 'the reader follows the tail of the file for the first time'
+        def update = reader.refreshTail()
+
+        then: 'the whole file window is read'
+        update.isPresent()
+        update.get().fullWindow
+        update.get().lines == [ 'line 1', 'line 2', 'line 3' ]
+
+        when: 'the reader follows the tail again without any changes to the file'
+        update = reader.refreshTail()
+
+        then: 'nothing is read'
+        update.isPresent()
+        !update.get().fullWindow
+        update.get().droppedLines == 0
+        update.get().lineCount == 3
+        update.get().lines.empty
+
+        when: 'the last line is terminated and more lines are appended'
+        file << ' is complete\nline 4\nline 5'
+        update = reader.refreshTail()
+
+        then: 'the last line is read again, followed by the new lines'
+        update.isPresent()
+        !update.get().fullWindow
+        update.get().droppedLines == 2
+        update.get().lineCount == 3
+        update.get().lines == [ 'line 3 is complete', 'line 4', 'line 5' ]
+
+        and: 'the file window is the same as if the tail had been read again'
+        def otherReader = createReader( file, 3, 64 )
+        otherReader.tail()
+        otherReader.refresh()
+        FileLineStartsSpec.rangesOf( reader.lineStarts ) == FileLineStartsSpec.rangesOf( otherReader.lineStarts )
+
+        when: 'a terminated line is appended'
+        file << '\nline 6\n'
+        update = reader.refreshTail()
+
+        then: 'the last line is read again, followed by the new line'
+        update.isPresent()
+        !update.get().fullWindow
+        update.get().droppedLines == 1
+        update.get().lineCount == 3
+        update.get().lines == [ 'line 5', 'line 6' ]
+
+        when: 'another line is appended'
+        file << 'line 7\n'
+        update = reader.refreshTail()
+
+        then: 'only the new line is read'
+        update.isPresent()
+        !update.get().fullWindow
+        update.get().droppedLines == 1
+        update.get().lineCount == 3
+        update.get().lines == [ 'line 7' ]
+
+        cleanup:
+        reader?.close()
+        otherReader?.close()
+    }
+
+    def "Following the tail of a file smaller than the file window fills the window"() {
+        given: 'a file reader'
+        FileReader reader = createReader( file, 5, 64 )
+
+        and: 'a small file'
+        file << 'a\nb'
+
+        when: 'the reader follows the tail of the file'
+        def update = reader.refreshTail()
+
+        then: 'the whole file is read'
+        update.isPresent()
+        update.get().fullWindow
+        update.get().lines == [ 'a', 'b' ]
+
+        when: 'lines are appended to the file'
+        file << '\nc\nd'
+        update = reader.refreshTail()
+
+        then: 'the new lines are added to the window without dropping any lines'
+        update.isPresent()
+        !update.get().fullWindow
+        update.get().droppedLines == 0
+        update.get().lineCount == 4
+        update.get().lines == [ 'b', 'c', 'd' ]
+
+        cleanup:
+        reader?.close()
+    }
+
+    def "Following the tail of a file reads the whole window when it is cheaper or required"() {
+        given: 'a file reader'
+        FileReader reader = createReader( file, 3, 64 )
+
+        and: 'a file'
+        file << 'line 1\nline 2\nline 3\nline 4\n'
+
+        when: 'the reader follows the tail of the file'
+        def update = reader.refreshTail()
+
+        then: 'the whole window is read'
+        update.isPresent()
+        update.get().fullWindow
+
+        when: 'more bytes than fit in the buffer are appended'
+        file << ( 'x' * 100 ) << '\nlast line'
+        update = reader.refreshTail()
+
+        then: 'the whole window is read again from the tail'
+        update.isPresent()
+        update.get().fullWindow
+        update.get().lines == [ 'line 4', 'x' * 100, 'last line' ]
+
+        when: 'the file is truncated'
+        file.write( 'new line 1\nnew line 2' )
+        update = reader.refreshTail()
+
+        then: 'the whole window is read again from the tail'
+        update.isPresent()
+        update.get().fullWindow
+        update.get().lines == [ 'new line 1', 'new line 2' ]
+
+        when: 'the file window is moved away from the tail'
+        file << '\nnew line 3\nnew line 4'
+        reader.top()
+        reader.refresh()
+        file << '\nnew line 5'
+        update = reader.refreshTail()
+
+        then: 'the whole window is read again from the tail'
+        update.isPresent()
+        update.get().fullWindow
+        update.get().lines == [ 'new line 3', 'new line 4', 'new line 5' ]
+
+        when: 'the file is deleted'
+        file.delete()
+
+        then: 'nothing can be read'
+        !reader.refreshTail().isPresent()
+
+        cleanup:
+        reader?.close()
+    }
+
+}
@@ -17,9 +17,15 @@ class FileContentReaderWithFilterSpec extends Specification {
         file.deleteOnExit()
     }
 
+    FileReader createReader( File file, int fileWindowSize, Integer bufferSize = null ) {
+        bufferSize == null ?
+                new FileReader( file, fileWindowSize ) :
+                new FileReader( file, fileWindowSize, bufferSize )
+    }
+
     def "FileReader should be able to filter lines from the top"() {
         given: 'A FileReader with a line filter'
-        FileContentReader reader = new FileReader( file, 5, 16 ).with {
+        FileContentReader reader = createReader( file, 5, 16 ).with {
             lineFilter = { String line -> line.contains( mustContainText ) }
             it
         }
@@ -47,7 +53,7 @@ class FileContentReaderWithFilterSpec extends Specification {
 
     def "FileReader should be able to filter lines from the top (after moving down)"() {
         given: 'A FileReader with a line filter'
-        FileContentReader reader = new FileReader( file, 5, 16 ).with {
+        FileContentReader reader = createReader( file, 5, 16 ).with {
             lineFilter = { String line -> line.contains( mustContainText ) }
             it
         }
@@ -79,7 +85,7 @@ class FileContentReaderWithFilterSpec extends Specification {
 
     def "FileReader should be able to filter lines from the tail (after moving up)"() {
         given: 'A FileReader with a line filter'
-        FileContentReader reader = new FileReader( file, 5, 16 ).with {
+        FileContentReader reader = createReader( file, 5, 16 ).with {
             lineFilter = { String line -> line.contains( mustContainText ) }
             it
         }
@@ -115,7 +121,7 @@ class FileContentReaderWithFilterSpec extends Specification {
 
     def "FileReader should be able to filter lines from the tail"() {
         given: 'A FileReader with a line filter'
-        FileContentReader reader = new FileReader( file, 5, 16 ).with {
+        FileContentReader reader = createReader( file, 5, 16 ).with {
             lineFilter = { String line -> line.contains( mustContainText ) }
             it
         }
@@ -141,4 +147,50 @@ class FileContentReaderWithFilterSpec extends Specification {
         '30'            | [ 'line 30' ]
     }
 
+    def "FileReader should only read the lines appended to the file when following its tail with a filter"() {
+        given: 'A FileReader with a line filter'
+        FileReader reader = createReader( file, 3, 16 ).with {
+            lineFilter = { String line -> line.contains( 'ERROR' ) }
+            it
+        }
+
+        and: 'the File contains some lines'
+        ( 1..10 ).each { line ->
+            file << "line $line ${line % 4 == 0 ? 'ERROR' : 'INFO'}" << '\n'
+        }
+
+        when: 'we follow the tail of the file'
+        def update = reader.refreshTail()
+
+        then: 'the whole window is read'
+        update.isPresent()
+        update.get().fullWindow
+        update.get().lines == [ 'line 4 ERROR', 'line 8 ERROR' ]
+
+        when: 'many more lines are appended, with only a few being accepted by the filter'
+        ( 11..100 ).each { line ->
+            file << "line $line ${line % 40 == 0 ? 'ERROR' : 'INFO'}" << '\n'
+        }
+        update = reader.refreshTail()
+
+        then: 'only the accepted lines that were appended are returned'
+        update.isPresent()
+        !update.get().fullWindow
+        update.get().droppedLines == 1
+        update.get().lineCount == 3
+        update.get().lines == [ 'line 40 ERROR', 'line 80 ERROR' ]
+
+        when: 'the filter is changed'
+        reader.lineFilter = { String line -> line.contains( 'line 9' ) }
+        update = reader.refreshTail()
+
+        then: 'the whole window is read again'
+        update.isPresent()
+        update.get().fullWindow
+        update.get().lines == [ 'line 97 INFO', 'line 98 INFO', 'line 99 INFO' ]
+
+        cleanup:
+        reader?.close()
+    }
+
 }
@@ -0,0 +1,196 @@
+package com.athaydes.logfx.file
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.ByteBuffer
+import java.nio.charset.Charset
+import java.nio.charset.StandardCharsets
+import java.util.zip.GZIPOutputStream
+
+@Unroll
+class FileEncodingSpec extends Specification {
+
+    static final List<String> LINES = ( 1..300 ).collect { i ->
+        "line $i: ${i % 3 == 0 ? 'a\u00e7\u00e3o n\u00e3o \u00e7edilha' : 'plain ascii'} ${i % 7 == 0 ? '\u4e2d\u6587 \u0a0a' : 'text'}".toString()
+    }
+
+    File file = File.createTempFile( 'file-encoding', '.log' )
+
+    def cleanup() {
+        file.delete()
+    }
+
+    static byte[] encode( List<String> lines, String charset, String newLine = '\n', byte[] bom = [ ] ) {
+        def out = new ByteArrayOutputStream()
+        out.write( bom )
+        out.write( lines.join( newLine ).getBytes( charset ) )
+        out.toByteArray()
+    }
+
+    static FileEncoding detect( byte[] bytes ) {
+        FileEncoding.detect( new FileChunks() {
+            long length() { bytes.length }
+
+            ByteBuffer chunkFrom( long start, int maxBytes ) {
+                ByteBuffer.wrap( bytes, start as int, Math.min( maxBytes, bytes.length - start as int ) ).slice()
+            }
+
+            ByteBuffer chunkBefore( long end, int maxBytes ) { throw new UnsupportedOperationException() }
+
+            void close() {}
+        } )
+    }
+
+    def "The encoding of a file can be detected: #expectedCharset"() {
+        expect:
+        detect( bytes ).charset == Charset.forName( expectedCharset )
+
+        and: 'the same charset is detected from a stream, which is reset to its start'
+        def stream = new BufferedInputStream( new ByteArrayInputStream( bytes ) )
+        FileEncoding.detectCharset( stream ) == Charset.forName( expectedCharset )
+        stream.bytes == bytes
+
+        where:
+        bytes                                                                         | expectedCharset
+        encode( LINES, 'UTF-8' )                                                      | 'UTF-8'
+        encode( LINES, 'UTF-8', '\n', [ 0xEF, 0xBB, 0xBF ] as byte[] )                | 'UTF-8'
+        encode( LINES, 'UTF-16LE' )                                                   | 'UTF-16LE'
+        encode( LINES, 'UTF-16LE', '\n', [ 0xFF, 0xFE ] as byte[] )                   | 'UTF-16LE'
+        encode( LINES, 'UTF-16BE' )                                                   | 'UTF-16BE'
+        encode( LINES, 'UTF-16BE', '\n', [ 0xFE, 0xFF ] as byte[] )                   | 'UTF-16BE'
+        encode( [ 'ascii only' ], 'US-ASCII' )                                        | 'UTF-8'
+        encode( [ 'caf\u00e9 ol\u00e9' ], 'ISO-8859-1' )                              | 'windows-1252'
+        new byte[ 0 ]                                                                 | 'UTF-8'
+    }
+
+    def "The first lines of a #charset file (gzip=#gzip) are read without the byte-order mark"() {
+        given:
+        def bytes = encode( LINES, charset, '\n', bom as byte[] )
+        def target = gzip ? new File( file.parentFile, file.name + '.gz' ) : file
+        target.withOutputStream { out ->
+            gzip ? new GZIPOutputStream( out ).withStream { it.write( bytes ) } : out.write( bytes )
+        }
+
+        expect:
+        FileEncoding.readFirstLines( target, 10 ) == LINES.take( 10 )
+        FileEncoding.readFirstLines( target, 1000 ) == LINES
+
+        cleanup:
+        target.delete()
+
+        where:
+        charset    | bom                  | gzip
+        'UTF-8'    | [ 0xEF, 0xBB, 0xBF ] | false
+        'UTF-8'    | [ 0xEF, 0xBB, 0xBF ] | true
+        'UTF-16LE' | [ 0xFF, 0xFE ]       | false
+        'UTF-16BE' | [ ]                  | true
+    }
+
+    def "A file encoded with #charset (new-line=#newLineName, BOM=#bom) is read as if it were UTF-8"() {
+        given: 'a file encoded in the given charset'
+        file.bytes = encode( LINES, charset, newLine, bom as byte[] )
+
+        and: 'the same file encoded in UTF-8'
+        def utf8File = File.createTempFile( 'file-encoding-utf8', '.log' )
+        utf8File.bytes = encode( LINES, 'UTF-8', newLine )
+
+        and: 'readers with a small buffer for both files'
+        def reader = new FileReader( file, 10, 64 )
+        def utf8Reader = new FileReader( utf8File, 10, 64 )
+
+        expect: 'the lines at the top of the file are read correctly'
+        reader.refresh().get() == LINES.take( 10 )
+        utf8Reader.refresh().get() == LINES.take( 10 )
+
+        and: 'both readers see the same lines when moving down'
+        ( 1..20 ).every { reader.moveDown( 7 ) == utf8Reader.moveDown( 7 ) }
+        reader.refresh() == utf8Reader.refresh()
+
+        and: 'at the tail'
+        reader.tail(); utf8Reader.tail()
+        reader.refresh().get() == LINES.takeRight( 10 )
+        utf8Reader.refresh().get() == LINES.takeRight( 10 )
+
+        and: 'when moving up'
+        ( 1..20 ).every { reader.moveUp( 7 ) == utf8Reader.moveUp( 7 ) }
+        reader.refresh() == utf8Reader.refresh()
+
+        and: 'when moving to a line'
+        reader.moveToLine( 150 ).fileLineNumber() == utf8Reader.moveToLine( 150 ).fileLineNumber()
+        reader.refresh().get().first() == LINES[ 149 ]
+        reader.lineNumbers == utf8Reader.lineNumbers
+
+        cleanup:
+        reader?.close()
+        utf8Reader?.close()
+        utf8File.delete()
+
+        where:
+        charset    | newLine | bom
+        'UTF-8'    | '\n'    | [ 0xEF, 0xBB, 0xBF ]
+        'UTF-16LE' | '\n'    | [ ]
+        'UTF-16LE' | '\r\n'  | [ 0xFF, 0xFE ]
+        'UTF-16BE' | '\n'    | [ 0xFE, 0xFF ]
+        'UTF-16BE' | '\r\n'  | [ ]
+
+        newLineName = newLine == '\n' ? 'LF' : 'CRLF'
+    }
+
+    def "Lines appended to a UTF-16 file are read when following the tail of the file"() {
+        given:
+        file.bytes = encode( LINES.take( 20 ), 'UTF-16LE', '\n', [ 0xFF, 0xFE ] as byte[] )
+        def reader = new FileReader( file, 5, 64 )
+
+        when:
+        reader.tail()
+        def initialLines = reader.refresh().get()
+        file.append( encode( [ '', 'appended \u4e2d', 'lines' ], 'UTF-16LE' ) )
+        def update = reader.refreshTail().get()
+
+        then:
+        initialLines == LINES.subList( 15, 20 )
+        update.lines == [ LINES[ 19 ], 'appended \u4e2d', 'lines' ]
+
+        cleanup:
+        reader?.close()
+    }
+
+    def "The charset of a file can be set explicitly"() {
+        given: 'a file encoded with ISO-8859-1 which is also valid UTF-8'
+        file.bytes = encode( [ 'a\u00c3\u00a9b', 'second' ], 'ISO-8859-1' )
+        def reader = new FileReader( file, 5, 64 )
+
+        expect: 'the file is read as UTF-8 by default'
+        reader.refresh().get() == [ 'a\u00e9b', 'second' ]
+        !reader.charset.isPresent()
+
+        when: 'the charset is set explicitly'
+        reader.setCharset( StandardCharsets.ISO_8859_1 )
+
+        then: 'the file is read with the given charset'
+        reader.refresh().get() == [ 'a\u00c3\u00a9b', 'second' ]
+        reader.charset == Optional.of( StandardCharsets.ISO_8859_1 )
+
+        cleanup:
+        reader?.close()
+    }
+
+    def "Lines are decoded with the ASCII fast path only when they contain only ASCII characters"() {
+        given:
+        def decoder = FileEncoding.of( Charset.forName( charset ) ).newDecoder()
+        def bytes = "  $line  ".getBytes( charset )
+
+        expect:
+        decoder.decode( bytes, 2, bytes.length - 4, false ) == line
+
+        where:
+        charset        | line
+        'UTF-8'        | 'ascii only'
+        'UTF-8'        | 'a\u00e7\u00e3o \u4e2d'
+        'ISO-8859-1'   | 'caf\u00e9'
+        'windows-1252' | 'price: \u20ac10'
+        'UTF-8'        | ''
+    }
+
+}
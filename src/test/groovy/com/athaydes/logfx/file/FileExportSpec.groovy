@@ -0,0 +1,209 @@
+package com.athaydes.logfx.file
+
+import java.util.concurrent.Executor
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.Function
+import java.util.function.Predicate
+import java.util.zip.GZIPInputStream
+import java.util.zip.GZIPOutputStream
+
+class FileExportSpec extends LogFileSpecification {
+
+    File target = new File( dir, 'export.log' )
+    FileReader reader
+
+    def cleanup() {
+        reader?.close()
+    }
+
+    FileExport createExport( Executor executor = SAME_THREAD ) {
+        reader = new FileReader( file, 10, 4096 )
+        reader.refresh()
+        // small regions, steps, batches and transfers, so that exports take many of each
+        new FileExport( reader, 4096, 256, 1000, 64, 500, executor )
+    }
+
+    def "All lines starting within a range of bytes can be exported"() {
+        given: 'an export of a file'
+        writeLines( 1000 )
+        def export = createExport()
+        def lines = file.readLines()
+        def reports = [ ]
+
+        when: 'the whole file is exported'
+        export.exportBytes( 0L, Long.MAX_VALUE, null, target, false, { reports << it } )
+
+        then: 'the exported file is a copy of the file'
+        target.bytes == file.bytes
+
+        and: 'progress is reported as the lines are copied, until the export is done'
+        reports.size() > 10
+        reports*.exportedBytes == reports*.exportedBytes.sort( false )
+        reports.findAll { it.done }.size() == 1
+        reports.last().done
+        !reports.last().error.present
+        reports.last().exportedBytes == file.length()
+        reports.last().processedBytes == file.length()
+        reports.last().totalBytes == file.length()
+
+        when: 'a range of bytes starting and ending in the middle of lines is exported'
+        def lineStart = { int lineNumber -> lines.take( lineNumber - 1 ).sum( 0L ) { it.size() + 1L } as long }
+        export.exportBytes( lineStart( 100 ) - 3L, lineStart( 200 ) - 3L, null, target, false, {} )
+
+        then: 'the lines starting within the range are exported'
+        target.readLines() == lines[ 99..198 ]
+    }
+
+    def "The lines accepted by a filter can be exported in batches"() {
+        given: 'a file with lines that are longer than the batches of the export'
+        file.withWriter { writer ->
+            ( 1..1000 ).each { i ->
+                writer.write( "${i % 10 == 0 ? 'ERROR' : 'INFO'} message $i${i % 100 == 0 ? ' ' + 'x' * 100 : ''}\n" )
+            }
+        }
+        def export = createExport()
+        def reports = [ ]
+
+        when: 'the ERROR lines and the lines after them are exported'
+        export.exportBytes( 0L, Long.MAX_VALUE, { it.startsWith( 'ERROR' ) || it.endsWith( '1' ) } as Predicate,
+                target, false, { reports << it } )
+
+        then: 'only the lines accepted by the filter are exported'
+        target.readLines() == file.readLines().findAll { it.startsWith( 'ERROR' ) || it.endsWith( '1' ) }
+
+        and: 'the progress of the export is reported'
+        reports.last().done
+        reports.last().exportedBytes == target.length()
+        reports.last().processedBytes == file.length()
+    }
+
+    def "Exported lines can be compressed with gzip"() {
+        given: 'an export of a file'
+        writeLines( 1000 )
+        def export = createExport()
+
+        when: 'the whole file is exported with compression'
+        export.exportBytes( 0L, Long.MAX_VALUE, null, target, true, {} )
+
+        then: 'the exported file is the compressed file'
+        new GZIPInputStream( target.newInputStream() ).bytes == file.bytes
+        target.length() < file.length()
+
+        when: 'the lines accepted by a filter are exported with compression'
+        export.exportBytes( 0L, Long.MAX_VALUE, { it.startsWith( 'ERROR' ) } as Predicate, target, true, {} )
+
+        then: 'the exported file contains the compressed lines'
+        new GZIPInputStream( target.newInputStream() ).readLines() ==
+                file.readLines().findAll { it.startsWith( 'ERROR' ) }
+    }
+
+    def "The uncompressed lines of a gzip-compressed file are exported"() {
+        given: 'a gzip-compressed file'
+        writeLines( 1000 )
+        def gzipFile = new File( dir, 'app.log.gz' )
+        gzipFile.withOutputStream { out ->
+            new GZIPOutputStream( out ).withStream { it.write( file.bytes ) }
+        }
+        reader = new GzipFileReader( gzipFile, 10, new File( dir, 'index' ).toPath(), 16 * 1024, 1024 )
+        reader.refresh()
+        def export = new FileExport( reader, 4096, 256, 1000, 64, 500, SAME_THREAD )
+
+        when: 'the whole file is exported'
+        export.exportBytes( 0L, Long.MAX_VALUE, null, target, false, {} )
+
+        then: 'the exported file contains the uncompressed lines'
+        target.bytes == file.bytes
+
+        when: 'the lines accepted by a filter are exported'
+        export.exportBytes( 0L, Long.MAX_VALUE, { it.startsWith( 'ERROR' ) } as Predicate, target, false, {} )
+
+        then: 'the exported file contains the lines accepted by the filter'
+        target.readLines() == file.readLines().findAll { it.startsWith( 'ERROR' ) }
+    }
+
+    def "The lines logged within a range of date-times can be exported"() {
+        given: 'a file with dated lines, some of them followed by lines without a date-time'
+        file.withWriter { writer ->
+            ( 1..1000 ).each { i ->
+                writer.write( "${START_TIME.plusSeconds( i )} ${i % 10 == 0 ? 'ERROR' : 'INFO'} message $i\n" )
+                if ( i % 10 == 0 ) {
+                    writer.write( "    at stack trace of message $i\n" )
+                }
+            }
+        }
+        def export = createExport()
+        def lines = file.readLines()
+        def reports = [ ]
+
+        when: 'the lines of a range of date-times are exported'
+        export.exportTimeRange( START_TIME.plusSeconds( 100 ), START_TIME.plusSeconds( 200 ), ISO_DATE_EXTRACTOR,
+                null, target, false, { reports << it } )
+
+        then: 'the lines dated within the range, and the lines without a date-time after them, are exported'
+        def exported = target.readLines()
+        exported.first() == lines.find { it.endsWith( 'message 100' ) }
+        exported.last() == '    at stack trace of message 200'
+        exported.size() == 101 + 11
+        reports.last().done
+
+        when: 'the lines of a range of date-times accepted by a filter are exported'
+        export.exportTimeRange( START_TIME.plusSeconds( 100 ), START_TIME.plusSeconds( 200 ), ISO_DATE_EXTRACTOR,
+                { it.contains( 'ERROR' ) } as Predicate, target, false, {} )
+
+        then: 'only the lines accepted by the filter are exported'
+        target.readLines() == exported.findAll { it.contains( 'ERROR' ) }
+
+        when: 'a range of date-times after the end of the file is exported'
+        export.exportTimeRange( START_TIME.plusSeconds( 2000 ), START_TIME.plusSeconds( 3000 ), ISO_DATE_EXTRACTOR,
+                null, target, false, {} )
+
+        then: 'nothing is exported'
+        target.length() == 0L
+    }
+
+    def "A range of date-times is found by bisecting a file that has no timestamp index"() {
+        given: 'a file with many dated lines, and a date extractor that counts the lines it is applied to'
+        file.withWriter { writer ->
+            ( 1..20_000 ).each { i -> writer.write( "${START_TIME.plusSeconds( i )} INFO message $i\n" ) }
+        }
+        def export = createExport()
+        def extractedLines = new AtomicInteger()
+        def countingExtractor = { String line ->
+            extractedLines.incrementAndGet()
+            extractIsoDate( line )
+        } as Function
+
+        when: 'the lines of a range of date-times near the end of the file are exported'
+        export.exportTimeRange( START_TIME.plusSeconds( 15_000 ), START_TIME.plusSeconds( 15_009 ), countingExtractor,
+                null, target, false, {} )
+
+        then: 'the lines of the range are exported'
+        target.readLines() == file.readLines()[ 14_999..15_008 ]
+
+        and: 'the file is not scanned from its start to find the range'
+        extractedLines.get() < 2_000
+    }
+
+    def "An export that is cancelled stops and deletes the file it was writing"() {
+        given: 'an export of a file'
+        writeLines( 1000 )
+        def export = createExport()
+        def reports = [ ]
+
+        when: 'the export is cancelled while it runs'
+        export.exportBytes( 0L, Long.MAX_VALUE, null, target, false, { FileExport.Progress progress ->
+            reports << progress
+            if ( progress.exportedBytes > 2000L ) {
+                export.cancel()
+            }
+        } )
+
+        then: 'it stops without reporting anything after being cancelled'
+        reports.every { !it.done }
+        reports.last().exportedBytes < file.length()
+
+        and: 'the file it was writing is deleted'
+        !target.exists()
+    }
+
+}
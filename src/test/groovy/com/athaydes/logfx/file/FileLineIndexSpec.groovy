@@ -0,0 +1,127 @@
+package com.athaydes.logfx.file
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.file.Files
+import java.util.concurrent.Executor
+
+class FileLineIndexSpec extends Specification {
+
+    File file = Files.createTempFile( 'file-line-index', '.log' ).toFile()
+
+    SharedFileChannel fileChannel = new SharedFileChannel( file, new ByteBufferPool( 1 ) )
+
+    def setup() {
+        file.deleteOnExit()
+    }
+
+    def cleanup() {
+        fileChannel.close()
+        file.delete()
+    }
+
+    FileLineIndex createIndex( int checkpointInterval ) {
+        // run updates synchronously
+        new FileLineIndex( file, fileChannel, checkpointInterval, { Runnable r -> r.run() } as Executor )
+    }
+
+    @Unroll
+    def "Can find the line number of any position, and the start of any line (checkpoint interval: #interval)"() {
+        given: 'a file with lines of different lengths, some of them empty'
+        def lines = ( 1..200 ).collect { ( it % 7 == 0 ) ? '' : ( 'x' * ( it % 13 ) ) }
+        file << lines.join( '\n' )
+        def contents = file.text
+
+        and: 'the expected line start positions and line numbers of each position'
+        def expectedLineStarts = [ 0L ]
+        def expectedLineNumbers = [ ]
+        long lineNumber = 1L
+        contents.eachWithIndex { String c, int i ->
+            expectedLineNumbers << lineNumber
+            if ( c == '\n' ) {
+                lineNumber++
+                expectedLineStarts << ( i + 1L )
+            }
+        }
+
+        and: 'an index of the file'
+        def index = createIndex( interval )
+
+        when: 'the file is indexed'
+        index.update()
+
+        then: 'the whole file is indexed'
+        index.indexedLength == file.length()
+        index.checkpointCount == 1 + ( int ) ( 199 / interval )
+
+        and: 'the line number of every position can be found'
+        ( 0..<contents.size() ).collect { index.lineNumberAt( it ).asLong } == expectedLineNumbers
+
+        and: 'the start of every line can be found'
+        ( 1..200 ).collect { index.lineStart( it ).asLong } == expectedLineStarts
+
+        and: 'lines that do not exist are not found'
+        [ 0L, -1L, 201L, 1000L ].collect { index.lineStart( it ).present } == [ false, false, false, false ]
+
+        where:
+        interval << [ 1, 3, 10, 64, 1000 ]
+    }
+
+    def "The index is extended incrementally as the file grows"() {
+        given: 'a file with a few lines'
+        file << ( 1..30 ).collect { "line $it" }.join( '\n' ) << '\n'
+
+        and: 'an index of the file'
+        def index = createIndex( 10 )
+
+        when: 'the file is indexed'
+        index.update()
+        def indexedLength = index.indexedLength
+
+        then: 'the whole file is indexed'
+        indexedLength == file.length()
+        index.checkpointCount == 4
+
+        when: 'more lines are added to the file and the index is updated'
+        file << ( 31..55 ).collect { "line $it" }.join( '\n' )
+        index.update()
+
+        then: 'the index is extended'
+        index.indexedLength == file.length()
+        index.checkpointCount == 6
+
+        and: 'the new lines can be found'
+        def lineStartOf = { int n -> ( 1..<n ).sum { "line $it\n".size() } as long }
+        [ 31L, 40L, 55L ].collect { index.lineStart( it ).asLong } == [ 31, 40, 55 ].collect( lineStartOf )
+    }
+
+    def "The index is reset when the file is truncated"() {
+        given: 'an indexed file'
+        file << ( 1..30 ).collect { "line $it" }.join( '\n' )
+        def index = createIndex( 10 )
+        index.update()
+
+        when: 'the file is truncated and new contents are written to it'
+        file.text = 'a\nb\nc'
+        index.update()
+
+        then: 'the index is rebuilt'
+        index.indexedLength == 5L
+        index.checkpointCount == 1
+        ( 1..3 ).collect { index.lineStart( it ).asLong } == [ 0L, 2L, 4L ]
+    }
+
+    def "Positions and lines not yet indexed are indexed on demand"() {
+        given: 'an index that has not been updated'
+        file << ( 1..30 ).collect { "line $it" }.join( '\n' )
+        def index = createIndex( 10 )
+
+        expect: 'the position of a line to be found'
+        index.lineStart( 12 ).asLong == ( 1..11 ).sum { "line $it\n".size() }
+
+        and: 'the number of a line at a position close to the indexed part of the file to be found'
+        index.lineNumberAt( file.length() ).asLong == 30L
+    }
+
+}
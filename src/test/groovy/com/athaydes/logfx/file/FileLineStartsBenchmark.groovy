@@ -0,0 +1,144 @@
+package com.athaydes.logfx.file
+
+import groovy.transform.CompileStatic
+import spock.lang.Requires
+import spock.lang.Specification
+
+import java.lang.management.ManagementFactory
+
+/**
+ * Compares the ring buffer used by {@link FileLineStarts} with the {@code TreeSet<Long>} it replaced, when lines are
+ * added to a full file window as it happens while following the tail of a file, moving up and moving down.
+ * <p>
+ * Run with {@code ./gradlew benchmark}.
+ */
+@Requires( { System.getProperty( 'logfx.benchmark' ) } )
+class FileLineStartsBenchmark extends Specification {
+
+    static final int WINDOW_SIZE = 100
+    static final int OPERATIONS = 20_000_000
+    static final int RUNS = 5
+
+    /**
+     * The implementation of {@link FileLineStarts} before it used a ring buffer.
+     */
+    @CompileStatic
+    static class TreeSetLineStarts {
+
+        private final int size
+        private final TreeSet<Long> indexes = new TreeSet<>()
+
+        TreeSetLineStarts( int size ) {
+            this.size = size
+        }
+
+        void addFirst( long index ) {
+            indexes.add( index )
+            trim( false )
+        }
+
+        void addLast( long index ) {
+            indexes.add( index )
+            trim( true )
+        }
+
+        long getFirst() {
+            indexes.isEmpty() ? 0L : indexes.first()
+        }
+
+        long getLast() {
+            indexes.isEmpty() ? 0L : indexes.last()
+        }
+
+        private void trim( boolean fromBeginning ) {
+            while ( indexes.size() > size ) {
+                if ( fromBeginning ) {
+                    indexes.remove( getFirst() )
+                } else {
+                    indexes.remove( getLast() )
+                }
+            }
+        }
+    }
+
+    /**
+     * Mostly appends lines, as when following the tail of a file, but moves up a whole window every 1,000 lines.
+     *
+     * @return a value depending on every line, so that the work cannot be optimized away
+     */
+    @CompileStatic
+    static long addLinesToRingBuffer( int operations ) {
+        def lineStarts = new FileLineStarts( WINDOW_SIZE )
+        long end = 0L
+        long checksum = 0L
+        for ( int i = 0; i < operations; i++ ) {
+            if ( i % 1000 < WINDOW_SIZE && i > WINDOW_SIZE ) {
+                long first = lineStarts.first
+                lineStarts.addFirst( first - 80L, first )
+            } else {
+                lineStarts.addLast( end, end + 80L )
+                end += 80L
+            }
+            checksum += lineStarts.last
+        }
+        checksum
+    }
+
+    @CompileStatic
+    static long addLinesToTreeSet( int operations ) {
+        def lineStarts = new TreeSetLineStarts( WINDOW_SIZE + 1 )
+        long end = 0L
+        long checksum = 0L
+        for ( int i = 0; i < operations; i++ ) {
+            if ( i % 1000 < WINDOW_SIZE && i > WINDOW_SIZE ) {
+                lineStarts.addFirst( lineStarts.first - 80L )
+            } else {
+                end += 80L
+                lineStarts.addLast( end )
+            }
+            checksum += lineStarts.last
+        }
+        checksum
+    }
+
+    def "Adding lines to a full file window with a ring buffer and with a TreeSet"() {
+        when: 'lines are added with each implementation a few times, after warming up'
+        2.times {
+            addLinesToRingBuffer( OPERATIONS.intdiv( 10 ) )
+            addLinesToTreeSet( OPERATIONS.intdiv( 10 ) )
+        }
+        def ringBuffer = measure { addLinesToRingBuffer( OPERATIONS ) }
+        def treeSet = measure { addLinesToTreeSet( OPERATIONS ) }
+
+        then:
+        report( 'ring buffer', ringBuffer )
+        report( 'TreeSet', treeSet )
+        println String.format( 'TreeSet/ring buffer: %.1f', treeSet.nanosPerOperation / ringBuffer.nanosPerOperation )
+        ringBuffer.nanosPerOperation < treeSet.nanosPerOperation
+    }
+
+    static Map<String, Double> measure( Closure<Long> addLines ) {
+        def threads = ManagementFactory.threadMXBean as com.sun.management.ThreadMXBean
+        long threadId = Thread.currentThread().id
+        double bestNanos = Double.MAX_VALUE
+        double bestBytes = Double.MAX_VALUE
+
+        RUNS.times {
+            long allocatedBefore = threads.getThreadAllocatedBytes( threadId )
+            long start = System.nanoTime()
+            assert addLines() != 0L
+            long nanos = System.nanoTime() - start
+            long allocated = threads.getThreadAllocatedBytes( threadId ) - allocatedBefore
+            bestNanos = Math.min( bestNanos, nanos / ( double ) OPERATIONS )
+            bestBytes = Math.min( bestBytes, allocated / ( double ) OPERATIONS )
+        }
+
+        [ nanosPerOperation: bestNanos, bytesPerOperation: bestBytes ]
+    }
+
+    static void report( String implementation, Map<String, Double> result ) {
+        println String.format( '%-12s %,d lines, window of %d lines: best %6.1f ns/line, %6.1f bytes allocated/line',
+                implementation, OPERATIONS, WINDOW_SIZE, result.nanosPerOperation, result.bytesPerOperation )
+    }
+
+}
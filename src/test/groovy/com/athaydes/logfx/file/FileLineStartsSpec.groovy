@@ -0,0 +1,122 @@
+package com.athaydes.logfx.file
+
+import spock.lang.Specification
+
+class FileLineStartsSpec extends Specification {
+
+    static List<List<Long>> rangesOf( FileLineStarts lineStarts ) {
+        ( 0..<lineStarts.lineCount() ).collect { int i ->
+            [ lineStarts.lineStart( i ), lineStarts.lineStart( i ) + lineStarts.lineLength( i ) ]
+        }
+    }
+
+    def "An empty window is positioned where it was reset to"() {
+        given: 'an empty window'
+        def lineStarts = new FileLineStarts( 3 )
+
+        expect: 'it to be positioned at the start of the file'
+        lineStarts.lineCount() == 0
+        lineStarts.first == 0L
+        lineStarts.last == 0L
+
+        when: 'it is reset to another position'
+        lineStarts.reset( 42L )
+
+        then: 'it is positioned there'
+        lineStarts.lineCount() == 0
+        lineStarts.first == 42L
+        lineStarts.last == 42L
+    }
+
+    def "Lines can be added at the end of the window, dropping lines from the start when it is full"() {
+        given: 'an empty window'
+        def lineStarts = new FileLineStarts( 3 )
+
+        when: 'lines are added at the end'
+        lineStarts.addLast( 0L, 10L )
+        lineStarts.addLast( 10L, 15L )
+
+        then: 'the window contains the lines'
+        rangesOf( lineStarts ) == [ [ 0L, 10L ], [ 10L, 15L ] ]
+        lineStarts.first == 0L
+        lineStarts.last == 15L
+
+        when: 'more lines than fit in the window are added'
+        lineStarts.addLast( 15L, 16L )
+        lineStarts.addLast( 16L, 20L )
+        lineStarts.addLast( 20L, 30L )
+
+        then: 'the first lines are dropped'
+        rangesOf( lineStarts ) == [ [ 15L, 16L ], [ 16L, 20L ], [ 20L, 30L ] ]
+        lineStarts.first == 15L
+        lineStarts.last == 30L
+    }
+
+    def "Lines can be added at the start of the window, dropping lines from the end when it is full"() {
+        given: 'a window positioned at the end of a file'
+        def lineStarts = new FileLineStarts( 3 )
+        lineStarts.reset( 31L )
+
+        when: 'lines are added at the start'
+        lineStarts.addFirst( 20L, 30L )
+        lineStarts.addFirst( 16L, 20L )
+
+        then: 'the window contains the lines'
+        rangesOf( lineStarts ) == [ [ 16L, 20L ], [ 20L, 30L ] ]
+        lineStarts.first == 16L
+        lineStarts.last == 30L
+
+        when: 'more lines than fit in the window are added'
+        lineStarts.addFirst( 15L, 16L )
+        lineStarts.addFirst( 10L, 15L )
+        lineStarts.addFirst( 0L, 10L )
+
+        then: 'the last lines are dropped'
+        rangesOf( lineStarts ) == [ [ 0L, 10L ], [ 10L, 15L ], [ 15L, 16L ] ]
+        lineStarts.first == 0L
+        lineStarts.last == 16L
+    }
+
+    def "Lines can be added at both ends of the window many times"() {
+        given: 'a window of 5 lines'
+        def lineStarts = new FileLineStarts( 5 )
+        def expected = new LinkedList<List<Long>>()
+
+        when: 'lines are added at both ends, wrapping around the ring buffer many times'
+        lineStarts.reset( 1000L )
+        def random = new Random( 42 )
+        500.times {
+            if ( random.nextBoolean() || expected.isEmpty() ) {
+                long start = expected.isEmpty() ? 1000L : expected.last[ 1 ]
+                lineStarts.addLast( start, start + 1 + random.nextInt( 9 ) )
+                expected.addLast( [ start, lineStarts.last ] )
+                if ( expected.size() > 5 ) expected.removeFirst()
+            } else {
+                long end = expected.first[ 0 ]
+                lineStarts.addFirst( end - 1 - random.nextInt( 9 ), end )
+                expected.addFirst( [ lineStarts.first, end ] )
+                if ( expected.size() > 5 ) expected.removeLast()
+            }
+            assert rangesOf( lineStarts ) == expected
+        }
+
+        then: 'the window always contained the expected lines'
+        lineStarts.lineCount() == 5
+    }
+
+    def "Accessing lines outside the window is not allowed"() {
+        given: 'a window with one line'
+        def lineStarts = new FileLineStarts( 3 )
+        lineStarts.addLast( 0L, 10L )
+
+        when: 'a line outside the window is accessed'
+        lineStarts.lineStart( index )
+
+        then: 'an error is thrown'
+        thrown IndexOutOfBoundsException
+
+        where:
+        index << [ -1, 1, 2, 3 ]
+    }
+
+}
@@ -0,0 +1,157 @@
+package com.athaydes.logfx.file
+
+import com.sun.management.UnixOperatingSystemMXBean
+import spock.lang.Requires
+import spock.lang.Specification
+
+import java.lang.management.ManagementFactory
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+
+@Requires( { FileReaderResourcesSpec.canCountOpenFiles() } )
+class FileReaderResourcesSpec extends Specification {
+
+    File file = Files.createTempFile( 'file-reader-resources', '.log' ).toFile()
+
+    def setup() {
+        file.deleteOnExit()
+        file << 'line 1\nline 2\nline 3\n'
+
+        // make sure all classes and buffers needed for reading files are loaded before counting open files
+        def warmUpReader = new FileReader( file, 2 )
+        warmUpReader.refresh()
+        warmUpReader.close()
+    }
+
+    def cleanup() {
+        file.delete()
+    }
+
+    static boolean canCountOpenFiles() {
+        ManagementFactory.operatingSystemMXBean instanceof UnixOperatingSystemMXBean
+    }
+
+    static long openFilesCount() {
+        ( ManagementFactory.operatingSystemMXBean as UnixOperatingSystemMXBean ).openFileDescriptorCount
+    }
+
+    def "The file is kept open between reads, and released when the reader is closed"() {
+        given: 'a file reader'
+        def reader = new FileReader( file, 2 )
+        def initialOpenFiles = openFilesCount()
+
+        when: 'the reader performs many read operations'
+        reader.refresh()
+        10.times { reader.moveDown( 1 ); reader.moveUp( 1 ); reader.tail(); reader.refresh() }
+
+        then: 'a single file is opened'
+        openFilesCount() == initialOpenFiles + 1
+
+        when: 'the reader is closed'
+        reader.close()
+
+        then: 'the file is no longer open'
+        openFilesCount() == initialOpenFiles
+    }
+
+    def "Files are not leaked when many readers are opened and closed"() {
+        given: 'the initial number of open files'
+        def initialOpenFiles = openFilesCount()
+
+        when: 'many readers are used and then closed'
+        100.times {
+            def reader = new FileReader( file, 2 )
+            assert reader.refresh().get() == [ 'line 1', 'line 2' ]
+            reader.close()
+        }
+
+        then: 'no files remain open'
+        openFilesCount() == initialOpenFiles
+    }
+
+    def "The file is re-opened transparently when it is replaced"() {
+        given: 'a file reader that has read the file'
+        def reader = new FileReader( file, 2 )
+        def initialOpenFiles = openFilesCount()
+        reader.refresh()
+
+        and: 'a new file with different contents'
+        def newFile = Files.createTempFile( 'file-reader-resources-new', '.log' ).toFile()
+        newFile.deleteOnExit()
+        newFile << 'new line 1\nnew line 2\n'
+
+        when: 'the file is replaced with the new file'
+        Files.move( newFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING )
+
+        and: 'the reader refreshes from the top'
+        reader.top()
+        def lines = reader.refresh()
+
+        then: 'the contents of the new file are read'
+        lines.isPresent()
+        lines.get() == [ 'new line 1', 'new line 2' ]
+
+        and: 'only the new file is kept open'
+        openFilesCount() == initialOpenFiles + 1
+
+        cleanup:
+        reader?.close()
+    }
+
+    def "The file is released when it is deleted"() {
+        given: 'a file reader that has read the file'
+        def reader = new FileReader( file, 2 )
+        def initialOpenFiles = openFilesCount()
+        reader.refresh()
+
+        when: 'the file is deleted'
+        file.delete()
+
+        and: 'the reader refreshes'
+        def lines = reader.refresh()
+
+        then: 'nothing is read'
+        !lines.isPresent()
+
+        and: 'the file is no longer open'
+        openFilesCount() == initialOpenFiles
+
+        cleanup:
+        reader?.close()
+    }
+
+    def "The file is only closed once the read operations in progress are done"() {
+        given: 'a shared file channel being read by some other Thread, such as a background indexer'
+        def channel = new SharedFileChannel( file, ByteBufferPool.globalInstance )
+        def initialOpenFiles = openFilesCount()
+        def chunks = channel.open( 1024 )
+
+        when: 'the channel is closed while the read operation is in progress'
+        channel.close()
+
+        then: 'the read operation can still read the file'
+        def buffer = chunks.chunkFrom( 0L, 6 )
+        def bytes = new byte[buffer.remaining()]
+        buffer.get( bytes )
+        new String( bytes ) == 'line 1'
+
+        and: 'the file is still open'
+        openFilesCount() == initialOpenFiles + 1
+
+        when: 'the read operation is done'
+        chunks.close()
+
+        then: 'the file is no longer open'
+        openFilesCount() == initialOpenFiles
+
+        when: 'the channel is used again'
+        channel.open( 1024 ).withCloseable { it.length() }
+
+        then: 'the file is opened again, and kept open after the read operation'
+        openFilesCount() == initialOpenFiles + 1
+
+        cleanup:
+        channel?.close()
+    }
+
+}
@@ -0,0 +1,119 @@
+package com.athaydes.logfx.file
+
+import com.athaydes.logfx.config.Properties
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.file.Files
+
+@Unroll
+class FileRotationSpec extends Specification {
+
+    File dir = Files.createTempDirectory( 'file-rotation' ).toFile()
+    File file = new File( dir, 'app.log' )
+    File rotatedFile = new File( dir, 'app.log.1' )
+
+    def cleanup() {
+        dir.deleteDir()
+    }
+
+    static FileReader createReader( String type, File file, int fileWindowSize ) {
+        type == 'mapped' ?
+                new MappedFileReader( file, fileWindowSize, 64, 64, Properties.maxLineLength ) :
+                new FileReader( file, fileWindowSize, 64 )
+    }
+
+    def "The #type reader detects that the file was truncated and written to again"() {
+        given: 'a reader following the tail of a file'
+        file << ( 1..5 ).collect { "line $it" }.join( '\n' ) << '\n'
+        def reader = createReader( type, file, 3 )
+        reader.refreshTail()
+
+        when: 'the file is truncated, then more bytes than it had before are written to it'
+        file.write( ( 1..10 ).collect { "new line $it" }.join( '\n' ) )
+
+        and: 'the reader follows the tail again'
+        def update = reader.refreshTail()
+
+        then: 'the whole window is read again from the new contents of the file'
+        update.isPresent()
+        update.get().fullWindow
+        update.get().lines == [ 'new line 8', 'new line 9', 'new line 10' ]
+
+        when: 'the reader moves to a line'
+        reader.moveToLine( 2 )
+
+        then: 'the line index reflects the new contents of the file'
+        reader.refresh().get() == [ 'new line 2', 'new line 3', 'new line 4' ]
+        reader.lineNumbers == [ 2L, 3L, 4L ] as long[]
+
+        cleanup:
+        reader?.close()
+
+        where:
+        type << [ 'channel', 'mapped' ]
+    }
+
+    def "The #type reader starts again from the top of the file when it is replaced"() {
+        given: 'a reader that has read the middle of a file'
+        file << ( 1..10 ).collect { "line $it" }.join( '\n' )
+        def reader = createReader( type, file, 3 )
+        reader.moveToLine( 5 )
+        assert reader.refresh().get() == [ 'line 5', 'line 6', 'line 7' ]
+
+        when: 'the file is rotated and a new file is created in its place'
+        Files.move( file.toPath(), rotatedFile.toPath() )
+        file << ( 1..12 ).collect { "new line $it" }.join( '\n' )
+
+        and: 'the reader refreshes'
+        def lines = reader.refresh()
+
+        then: 'the top of the new file is read'
+        lines.isPresent()
+        lines.get() == [ 'new line 1', 'new line 2', 'new line 3' ]
+        reader.lineNumbers == [ 1L, 2L, 3L ] as long[]
+
+        cleanup:
+        reader?.close()
+
+        where:
+        type << [ 'channel', 'mapped' ]
+    }
+
+    def "The tail of the new file is followed after the file is replaced"() {
+        given: 'a reader following the tail of a file'
+        file << 'line 1\nline 2\nline 3'
+        def reader = new FileReader( file, 3, 64 )
+        assert reader.refreshTail().get().lines == [ 'line 1', 'line 2', 'line 3' ]
+
+        when: 'more lines are written to the file'
+        file << ' is complete\nline 4\nline 5\n'
+
+        and: 'before the reader reads them, the file is rotated and a new file is created in its place'
+        Files.move( file.toPath(), rotatedFile.toPath() )
+        file << 'new line 1\nnew line 2\n'
+
+        and: 'the reader follows the tail again'
+        def update = reader.refreshTail()
+
+        then: 'the tail of the new file is read'
+        update.isPresent()
+        update.get().fullWindow
+        update.get().lines == [ 'new line 1', 'new line 2', '' ]
+
+        when: 'more lines are written to the new file'
+        file << 'new line 3\n'
+        update = reader.refreshTail()
+
+        then: 'only the new line is read, replacing the empty last line'
+        update.isPresent()
+        !update.get().fullWindow
+        update.get().droppedLines == 0
+        update.get().lines == [ 'new line 3' ]
+
+        cleanup:
+        reader?.close()
+    }
+
+}
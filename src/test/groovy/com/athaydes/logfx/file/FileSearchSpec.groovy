@@ -0,0 +1,213 @@
+package com.athaydes.logfx.file
+
+import java.time.ZonedDateTime
+import java.util.concurrent.Executor
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.Function
+import java.util.function.Predicate
+
+class FileSearchSpec extends LogFileSpecification {
+
+    FileReader reader
+
+    def cleanup() {
+        reader?.close()
+    }
+
+    FileSearch createSearch( int maxMatches = FileSearch.DEFAULT_MAX_MATCHES, Executor executor = SAME_THREAD,
+                             Function<String, Optional<ZonedDateTime>> dateExtractor = null ) {
+        reader = new FileReader( file, 10, 4096 )
+        reader.refresh()
+        // small regions and steps, so that searches take many steps
+        new FileSearch( reader, dateExtractor, 4096, 256, 1000, maxMatches, executor )
+    }
+
+    static long lineStart( File file, long lineNumber ) {
+        file.readLines().take( ( lineNumber - 1 ) as int ).sum( 0L ) { it.size() + 1L } as long
+    }
+
+    def "A search finds the matches after the file window first, then the matches before it"() {
+        given: 'a search of a file whose window is in the middle of the file'
+        writeLines( 1000 )
+        def search = createSearch()
+        reader.moveToLine( 501 )
+
+        when: 'a search for ERROR lines is started'
+        def progressReports = [ ]
+        def matchCounts = [ ]
+        search.start( { it.startsWith( 'ERROR' ) } as Predicate<String>, { FileSearch.Progress progress ->
+            progressReports << progress
+            matchCounts << search.matches.split { it.lineNumber > 500 }*.size()
+        } )
+
+        then: 'all matches are found, in the order they appear in the file'
+        search.matchCount == 100
+        search.matches*.lineNumber == ( 1..100 ).collect { it * 10L }
+        search.matches*.start == ( 1..100 ).collect { lineStart( file, it * 10L ) }
+
+        and: 'progress is reported on each step of the search, until it is done'
+        progressReports.size() > 10
+        progressReports*.matchCount == progressReports*.matchCount.sort( false )
+        progressReports*.scannedBytes == progressReports*.scannedBytes.sort( false )
+        progressReports.findAll { it.done }.size() == 1
+        progressReports.last().done
+        progressReports.last().matchCount == 100
+        progressReports.last().scannedBytes == file.length()
+        progressReports.last().totalBytes == file.length()
+        !progressReports.last().limitReached
+
+        and: 'the matches before the file window were only found after all matches after it'
+        matchCounts.findAll { after, before -> before > 0 }.every { after, before -> after == 50 }
+        matchCounts.count { after, before -> after == 50 && before == 0 } == 1
+    }
+
+    def "Next and previous matches wrap around the file, and the file window can be moved to them"() {
+        given: 'a search for ERROR lines'
+        writeLines( 1000 )
+        def search = createSearch()
+        search.start( { it.startsWith( 'ERROR' ) } as Predicate<String>, {} )
+
+        expect: 'the next and previous matches of a position to be found'
+        search.next( lineStart( file, 500 ) ).get().lineNumber == 510
+        search.next( lineStart( file, 510 ) ).get().lineNumber == 520
+        search.previous( lineStart( file, 510 ) ).get().lineNumber == 500
+        search.previous( lineStart( file, 505 ) ).get().lineNumber == 500
+
+        and: 'to wrap around at the ends of the file'
+        search.next( lineStart( file, 1000 ) ).get().lineNumber == 10
+        search.previous( lineStart( file, 10 ) ).get().lineNumber == 1000
+        search.next( -1L ).get().lineNumber == 10
+
+        and: 'the index of a match to be its position among all matches'
+        search.indexOf( search.next( lineStart( file, 500 ) ).get() ) == 50
+        search.indexOf( new FileSearch.Match( lineStart( file, 501 ), 501 ) ) == -1
+
+        when: 'the file window is moved to a match'
+        def result = search.moveTo( search.next( lineStart( file, 500 ) ).get() )
+
+        then: 'the line is the first line of the window'
+        result.success
+        result.fileLineNumber() == 1
+        reader.refresh().get()[ 0 ] == 'ERROR message 510'
+
+        and: 'the matches next to the match the window was moved to to be found'
+        search.next().get().lineNumber == 520
+        search.previous().get().lineNumber == 500
+
+        when: 'the file window is moved to a line without a match'
+        reader.moveToLine( 701 )
+
+        then: 'the matches next to the window are found'
+        search.next().get().lineNumber == 710
+        search.previous().get().lineNumber == 700
+
+        when: 'the file window is moved to a match close to the end of the file'
+        result = search.moveTo( search.previous( file.length() ).get() )
+
+        then: 'the window is filled with the lines before the line, which is shown at its position'
+        result.success
+        result.fileLineNumber() == 10
+        reader.refresh().get()[ 9 ] == 'ERROR message 1000'
+    }
+
+    def "A search is cancelled when a new one starts, and its results are discarded"() {
+        given: 'a search which runs its tasks only when requested'
+        writeLines( 1000 )
+        List<Runnable> tasks = [ ]
+        def search = createSearch( FileSearch.DEFAULT_MAX_MATCHES, { Runnable task -> tasks << task } as Executor )
+
+        when: 'a search is started, then another one before the first one runs'
+        def firstReports = [ ]
+        def secondReports = [ ]
+        search.start( { it.startsWith( 'ERROR' ) } as Predicate<String>, { firstReports << it } )
+        search.start( { it.endsWith( '7' ) } as Predicate<String>, { secondReports << it } )
+        tasks.each { it.run() }
+
+        then: 'only the second search runs and reports its progress'
+        firstReports.empty
+        secondReports.last().done
+        search.matchCount == 100
+        search.matches.every { it.lineNumber % 10 == 7 }
+
+        when: 'a search is cancelled while it runs'
+        tasks.clear()
+        def cancelledReports = [ ]
+        def testedLines = new AtomicInteger()
+        search.start( { String line ->
+            if ( testedLines.incrementAndGet() >= 100 ) {
+                search.cancel()
+            }
+            line.startsWith( 'ERROR' )
+        } as Predicate<String>, { cancelledReports << it } )
+        tasks.each { it.run() }
+
+        then: 'it stops soon after being cancelled, without reporting anything after that'
+        testedLines.get() < 200
+        cancelledReports.every { !it.done }
+        search.matchCount == 0
+        !search.next( 0L ).isPresent()
+    }
+
+    def "A search stops when it finds the maximum number of matches"() {
+        given: 'a search which keeps at most 25 matches'
+        writeLines( 1000 )
+        def search = createSearch( 25 )
+        def reports = [ ]
+
+        when: 'a search for ERROR lines is started'
+        search.start( { it.startsWith( 'ERROR' ) } as Predicate<String>, { reports << it } )
+
+        then: 'it stops after finding the maximum number of matches'
+        search.matchCount == 25
+        search.matches*.lineNumber == ( 1..25 ).collect { it * 10L }
+        reports.last().done
+        reports.last().limitReached
+        reports.last().scannedBytes < file.length()
+    }
+
+    def "Lines longer than a step of the search and the last line of the file are searched"() {
+        given: 'a file with a line much longer than a step of the search, and a last line without a new-line'
+        file.text = "INFO first\nERROR ${'x' * 5000}\nINFO third\nERROR last"
+        def search = createSearch()
+
+        when: 'a search for ERROR lines is started'
+        search.start( { it.startsWith( 'ERROR' ) } as Predicate<String>, {} )
+
+        then: 'all lines are found'
+        search.matches == [ new FileSearch.Match( 11L, 2L ), new FileSearch.Match( 5029L, 4L ) ]
+    }
+
+    def "A search finds the date-times of the first and last matches in the file"() {
+        given: 'a file with dated lines, and lines without a date-time'
+        file.withWriter { writer ->
+            ( 1..1000 ).each { i ->
+                def dateTime = i % 10 == 1 ? '' : "${START_TIME.plusSeconds( i )} "
+                writer.write( "${dateTime}${i % 10 < 2 ? 'ERROR' : 'INFO'} message $i\n" )
+            }
+        }
+
+        and: 'a search that can extract the date-times of the lines, whose window is in the middle of the file'
+        def search = createSearch( FileSearch.DEFAULT_MAX_MATCHES, SAME_THREAD, ISO_DATE_EXTRACTOR )
+        reader.moveToLine( 501 )
+
+        when: 'a search for ERROR lines, the first of which has no date-time, is started'
+        def reports = [ ]
+        search.start( { it.contains( 'ERROR' ) } as Predicate<String>, { reports << it } )
+
+        then: 'the date-times of the first and last matches with a date-time are found'
+        reports.last().matchCount == 200
+        reports.last().firstDateTime == Optional.of( START_TIME.plusSeconds( 10 ) )
+        reports.last().lastDateTime == Optional.of( START_TIME.plusSeconds( 1000 ) )
+
+        when: 'the whole file is searched from the top'
+        reports.clear()
+        search.startFromTop( { it.contains( 'INFO message 5' ) } as Predicate<String>, { reports << it } )
+
+        then: 'the date-times of the first and last matches are found'
+        reports.last().matchCount == 1 + 8 + 80
+        reports.last().firstDateTime == Optional.of( START_TIME.plusSeconds( 5 ) )
+        reports.last().lastDateTime == Optional.of( START_TIME.plusSeconds( 599 ) )
+        reports.every { it.scannedBytes <= file.length() }
+    }
+
+}
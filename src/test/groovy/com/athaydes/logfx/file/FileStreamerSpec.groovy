@@ -0,0 +1,185 @@
+package com.athaydes.logfx.file
+
+import spock.util.concurrent.PollingConditions
+
+import java.nio.channels.Channels
+import java.util.function.Predicate
+import java.util.zip.GZIPOutputStream
+
+class FileStreamerSpec extends LogFileSpecification {
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream()
+
+    /**
+     * Lines dated one second apart, starting at the given second, with an ERROR level in every 10th line,
+     * which is followed by a line without a date-time.
+     */
+    static List<String> datedLines( int from, int to ) {
+        ( from..to ).collectMany { i ->
+            def line = "${START_TIME.plusSeconds( i )} ${i % 10 == 0 ? 'ERROR' : 'INFO'} message $i".toString()
+            i % 10 == 0 ? [ line, "    at stack trace of message $i".toString() ] : [ line ]
+        }
+    }
+
+    FileStreamer createStreamer( boolean readRotatedFiles = false ) {
+        // small regions, steps and batches, so that streams take many of each
+        new FileStreamer( file, readRotatedFiles, 4096, 256, 1000, 64 )
+    }
+
+    List<String> getWrittenLines() {
+        out.toString( 'UTF-8' ).readLines()
+    }
+
+    def "All lines of a file and of the files rotated from it are written, from the oldest file"() {
+        given: 'a log file and two files rotated from it, one of them compressed with gzip'
+        new File( dir, 'app.log.2.gz' ).withOutputStream { stream ->
+            new GZIPOutputStream( stream ).withStream { it.write( ( datedLines( 1, 100 ).join( '\n' ) + '\n' ).bytes ) }
+        }
+        new File( dir, 'app.log.1' ).write( datedLines( 101, 200 ).join( '\n' ) + '\n' )
+        file.write( datedLines( 201, 300 ).join( '\n' ) )
+
+        when: 'the log file is streamed with its rotated files'
+        def streamer = createStreamer( true )
+        streamer.stream( Channels.newChannel( out ) )
+
+        then: 'all files are written in order, including the last line of the log file'
+        streamer.files*.name == [ 'app.log.2.gz', 'app.log.1', 'app.log' ]
+        writtenLines == datedLines( 1, 300 )
+
+        when: 'only the log file is streamed'
+        out.reset()
+        createStreamer( false ).stream( Channels.newChannel( out ) )
+
+        then: 'the log file is written exactly as it is'
+        out.toByteArray() == file.bytes
+    }
+
+    def "Only the lines accepted by a filter are written"() {
+        given:
+        file.write( datedLines( 1, 1000 ).join( '\r\n' ) + '\r\n' )
+        def streamer = createStreamer()
+
+        when:
+        streamer.lineFilter = { String line -> line.contains( 'ERROR' ) } as Predicate<String>
+        streamer.stream( Channels.newChannel( out ) )
+
+        then: 'the lines are written with their own new-lines'
+        out.toString( 'UTF-8' ) == datedLines( 1, 1000 ).findAll { it.contains( 'ERROR' ) }.join( '\r\n' ) + '\r\n'
+    }
+
+    def "Decorated lines are written with a prefix and a suffix before their new-line"() {
+        given:
+        file.write( datedLines( 1, 100 ).join( '\n' ) )
+        def streamer = createStreamer()
+        def decorator = [
+                prefixOf: { LineHandle line -> line.text.contains( 'ERROR' ) ? '<'.bytes : null },
+                suffix  : { '>'.bytes }
+        ] as FileStreamer.LineDecorator
+
+        when: 'the file is streamed with a decorator'
+        streamer.decorator = decorator
+        streamer.stream( Channels.newChannel( out ) )
+
+        then: 'only the decorated lines are changed'
+        writtenLines == datedLines( 1, 100 ).collect { it.contains( 'ERROR' ) ? "<$it>".toString() : it }
+
+        when: 'the file is streamed with a decorator and a filter'
+        out.reset()
+        streamer.lineFilter = { String line -> line.contains( ' 1' ) } as Predicate<String>
+        streamer.stream( Channels.newChannel( out ) )
+
+        then: 'only the accepted lines are written, with their decorations'
+        writtenLines == datedLines( 1, 100 ).findAll { it.contains( ' 1' ) }
+                .collect { it.contains( 'ERROR' ) ? "<$it>".toString() : it }
+    }
+
+    def "The lines logged within a range of date-times are written"() {
+        given: 'a log file and a file rotated from it'
+        new File( dir, 'app.log.1' ).write( datedLines( 1, 500 ).join( '\n' ) + '\n' )
+        file.write( datedLines( 501, 1000 ).join( '\n' ) + '\n' )
+        def allLines = datedLines( 1, 1000 )
+
+        when: 'a range of date-times crossing both files is streamed'
+        def streamer = createStreamer( true )
+        streamer.setTimeRange( START_TIME.plusSeconds( 400 ), START_TIME.plusSeconds( 600 ), ISO_DATE_EXTRACTOR )
+        streamer.stream( Channels.newChannel( out ) )
+
+        then: 'the lines dated within the range, and the lines without a date-time after them, are written'
+        def from = allLines.findIndexOf { it.endsWith( 'message 400' ) }
+        def to = allLines.findIndexOf { it.endsWith( 'stack trace of message 600' ) }
+        writtenLines == allLines[ from..to ]
+
+        when: 'a range of date-times with only a start is streamed with a filter'
+        out.reset()
+        streamer = createStreamer( true )
+        streamer.setTimeRange( START_TIME.plusSeconds( 950 ), null, ISO_DATE_EXTRACTOR )
+        streamer.lineFilter = { String line -> line.contains( 'ERROR' ) } as Predicate<String>
+        streamer.stream( Channels.newChannel( out ) )
+
+        then: 'the accepted lines after the start of the range are written'
+        writtenLines == datedLines( 950, 1000 ).findAll { it.contains( 'ERROR' ) }
+
+        when: 'a range of date-times before the first line is streamed'
+        out.reset()
+        streamer = createStreamer( true )
+        streamer.setTimeRange( null, START_TIME, ISO_DATE_EXTRACTOR )
+        streamer.stream( Channels.newChannel( out ) )
+
+        then: 'nothing is written'
+        out.size() == 0
+    }
+
+    def "The lines appended to a followed log file are written until the streamer is stopped"() {
+        given: 'a log file whose last line is incomplete'
+        file.write( datedLines( 1, 100 ).join( '\n' ) + '\n' + 'incomplete' )
+        def streamer = createStreamer()
+        streamer.lineFilter = { String line -> !line.contains( 'INFO' ) } as Predicate<String>
+        def expectedLines = { List<String> lines -> lines.findAll { !it.contains( 'INFO' ) } }
+        def conditions = new PollingConditions( timeout: 5 )
+
+        when: 'the log file is followed'
+        def thread = Thread.start { streamer.follow( Channels.newChannel( out ), 10L ) }
+
+        then: 'the lines of the file are written, except the incomplete one'
+        conditions.eventually {
+            assert writtenLines == expectedLines( datedLines( 1, 100 ) )
+        }
+
+        when: 'the incomplete line is completed, and more lines are appended'
+        file << '\n' + datedLines( 101, 200 ).join( '\n' ) + '\n'
+
+        then: 'the new lines are written'
+        conditions.eventually {
+            assert writtenLines == expectedLines( datedLines( 1, 100 ) + [ 'incomplete' ] + datedLines( 101, 200 ) )
+        }
+
+        when: 'the log file is truncated, as when rotated with copytruncate'
+        out.reset()
+        file.write( datedLines( 201, 210 ).join( '\n' ) + '\n' )
+
+        then: 'the file is followed again from its first line'
+        conditions.eventually {
+            assert writtenLines == expectedLines( datedLines( 201, 210 ) )
+        }
+
+        when: 'the log file is replaced by a new file'
+        out.reset()
+        assert file.renameTo( new File( dir, 'app.log.1' ) )
+        def newFile = new File( dir, 'app.log.tmp' )
+        newFile.write( datedLines( 211, 220 ).join( '\n' ) + '\n' )
+        assert newFile.renameTo( file )
+
+        then: 'the new log file is followed from its first line'
+        conditions.eventually {
+            assert writtenLines == expectedLines( datedLines( 211, 220 ) )
+        }
+
+        when: 'the streamer is stopped'
+        streamer.stop()
+        thread.join( 5000 )
+
+        then: 'it stops following the file'
+        !thread.alive
+    }
+
+}
@@ -0,0 +1,171 @@
+package com.athaydes.logfx.file
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import static com.athaydes.logfx.file.FilterBlockSummary.BLOCK_SIZE
+
+@Unroll
+class FilterBlockSummarySpec extends Specification {
+
+    File file = File.createTempFile( 'filter-block-summary', '.log' )
+
+    def cleanup() {
+        file.delete()
+    }
+
+    /**
+     * Filter accepting lines containing the given text, which counts how many lines it tests.
+     */
+    static class CountingFilter implements LineFilter {
+        final String text
+        int testedLines = 0
+
+        CountingFilter( String text ) {
+            this.text = text
+        }
+
+        @Override
+        boolean test( String line ) {
+            testedLines++
+            line.contains( text )
+        }
+
+        @Override
+        Optional<Object> getFingerprint() {
+            Optional.of( text )
+        }
+    }
+
+    def "Only blocks fully within a scanned range are marked as scanned"() {
+        given:
+        def summary = new FilterBlockSummary()
+
+        when:
+        summary.markScanned( from, to )
+
+        then:
+        ( 0..4 ).findAll { summary.isEmpty( it ) } == expectedEmptyBlocks
+
+        where:
+        from           | to                   | expectedEmptyBlocks
+        0              | BLOCK_SIZE - 1       | [ ]
+        0              | BLOCK_SIZE           | [ 0 ]
+        1              | BLOCK_SIZE * 2       | [ 1 ]
+        BLOCK_SIZE     | BLOCK_SIZE * 3 + 10  | [ 1, 2 ]
+        BLOCK_SIZE - 1 | BLOCK_SIZE * 5       | [ 1, 2, 3, 4 ]
+    }
+
+    def "Blocks with matches are never empty, and the next and previous non-empty blocks can be found"() {
+        given:
+        def summary = new FilterBlockSummary()
+        summary.markScanned( 0, BLOCK_SIZE * 8 )
+        summary.markMatch( BLOCK_SIZE * 2 + 100 )
+        summary.markMatch( BLOCK_SIZE * 5 )
+
+        expect:
+        ( 0..9 ).findAll { summary.isEmpty( it ) } == [ 0, 1, 3, 4, 6, 7 ]
+        summary.nextNonEmptyBlock( 0 ) == 2
+        summary.nextNonEmptyBlock( 2 ) == 2
+        summary.nextNonEmptyBlock( 3 ) == 5
+        summary.nextNonEmptyBlock( 6 ) == 8
+        summary.previousNonEmptyBlock( 7 ) == 5
+        summary.previousNonEmptyBlock( 4 ) == 2
+        summary.previousNonEmptyBlock( 1 ) == -1
+        summary.previousNonEmptyBlock( 9 ) == 9
+
+        when:
+        summary.clear()
+
+        then:
+        ( 0..9 ).every { !summary.isEmpty( it ) }
+    }
+
+    def "Moving through a file with a filter again skips the blocks without matches"() {
+        given: 'a file of several blocks, with matches in only a few of them'
+        def lines = ( 1..200_000 ).collect { i -> "$i ${i % 50_000 == 25_000 ? 'ERROR' : 'INFO'} message".toString() }
+        file.write( lines.join( '\n' ) + '\n' )
+        def errors = lines.findAll { it.contains( 'ERROR' ) }
+        assert file.length() > BLOCK_SIZE * 50
+
+        and: 'a reader with a filter that counts how many lines it tests'
+        def reader = new FileReader( file, 2, 4096 )
+        def filter = new CountingFilter( 'ERROR' )
+        reader.lineFilter = filter
+
+        when: 'the reader moves through the whole file'
+        def firstPass = reader.refresh().get() + reader.moveDown( 2 ).get() + reader.moveDown( 2 ).get()
+        def firstPassTests = filter.testedLines
+
+        then: 'all errors are found, and every line is tested'
+        firstPass == errors
+        firstPassTests >= lines.size()
+
+        when: 'the reader moves through the whole file again, with a new filter instance with the same fingerprint'
+        reader.top()
+        filter = new CountingFilter( 'ERROR' )
+        reader.lineFilter = filter
+        def secondPass = reader.refresh().get() + reader.moveDown( 2 ).get() + reader.moveDown( 2 ).get()
+
+        then: 'the same errors are found, but only the lines in blocks containing errors are tested'
+        secondPass == errors
+        filter.testedLines < firstPassTests / 5
+
+        when: 'the reader moves back up'
+        filter.testedLines = 0
+        def movedUp = reader.moveUp( 2 ).get()
+
+        then: 'the errors above the window are found, skipping blocks without matches'
+        movedUp == errors.take( 2 )
+        filter.testedLines < firstPassTests / 5
+
+        cleanup:
+        reader?.close()
+    }
+
+    def "Lines appended to a file are scanned even if its last block was already scanned"() {
+        given: 'a file without matches'
+        file.write( ( 1..20_000 ).collect { "line $it INFO" }.join( '\n' ) + '\n' )
+
+        and: 'a reader that has scanned the whole file with a filter'
+        def reader = new FileReader( file, 2, 4096 )
+        reader.lineFilter = new CountingFilter( 'ERROR' )
+        assert reader.refresh().get().isEmpty()
+
+        when: 'lines are appended to the file, one of them containing a match'
+        file << ( 1..3000 ).collect { "new line $it ${it == 2000 ? 'ERROR' : 'INFO'}" }.join( '\n' ) + '\n'
+
+        and: 'the file is read again from the top'
+        reader.top()
+        def result = reader.refresh().get()
+
+        then: 'the new match is found'
+        result == [ 'new line 2000 ERROR' ]
+
+        cleanup:
+        reader?.close()
+    }
+
+    def "Filters with different fingerprints do not share summaries"() {
+        given:
+        file.write( ( 1..20_000 ).collect { "line $it ${it == 15_000 ? 'WARN' : 'INFO'}" }.join( '\n' ) + '\n' )
+        def reader = new FileReader( file, 2, 4096 )
+
+        when: 'the file is scanned with a filter that accepts no lines'
+        reader.lineFilter = new CountingFilter( 'ERROR' )
+        def errors = reader.refresh().get()
+
+        and: 'the file is scanned again with a different filter'
+        reader.top()
+        reader.lineFilter = new CountingFilter( 'WARN' )
+        def warnings = reader.refresh().get()
+
+        then:
+        errors.isEmpty()
+        warnings == [ 'line 15000 WARN' ]
+
+        cleanup:
+        reader?.close()
+    }
+
+}
@@ -0,0 +1,228 @@
+package com.athaydes.logfx.file
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.zip.GZIPOutputStream
+
+@Unroll
+class GzipFileReaderSpec extends Specification {
+
+    static final List<String> WORDS = [ 'request', 'handled', 'user', 'session', 'cache', 'miss', 'hit',
+                                        'timeout', 'connection', 'closed', 'retrying', 'ok', 'error', 'done' ]
+
+    File dir = Files.createTempDirectory( 'gzip-reader' ).toFile()
+    Path indexDir = new File( dir, 'index' ).toPath()
+    File file = new File( dir, 'app.log.gz' )
+
+    def cleanup() {
+        dir.deleteDir()
+    }
+
+    static List<String> logLines( int count, long seed = 42L ) {
+        def random = new Random( seed )
+        ( 1..count ).collect { i ->
+            def words = ( 1..( 1 + random.nextInt( 12 ) ) ).collect { WORDS[ random.nextInt( WORDS.size() ) ] }
+            "line $i thread-${random.nextInt( 8 )} ${words.join( ' ' )} ${random.nextInt( 100000 )}".toString()
+        }
+    }
+
+    static void writeGzip( File file, List<String> lines, boolean append = false ) {
+        new GZIPOutputStream( new FileOutputStream( file, append ) ).withStream { out ->
+            out.write( lines.join( '\n' ).getBytes( 'UTF-8' ) )
+        }
+    }
+
+    static byte[] readAll( FileChunks chunks ) {
+        def out = new ByteArrayOutputStream()
+        long position = 0
+        while ( true ) {
+            ByteBuffer buffer = chunks.chunkFrom( position, 1000 )
+            if ( buffer.limit() == 0 ) {
+                break
+            }
+            byte[] bytes = new byte[ buffer.limit() ]
+            buffer.get( bytes )
+            out.write( bytes )
+            position += bytes.length
+        }
+        out.toByteArray()
+    }
+
+    def "A gzip file is indexed with checkpoints at deflate block boundaries"() {
+        given: 'a gzip file with many deflate blocks'
+        def lines = logLines( 20_000 )
+        writeGzip( file, lines )
+        def expectedBytes = lines.join( '\n' ).getBytes( 'UTF-8' )
+
+        when: 'the file is indexed with a small spacing between checkpoints'
+        def contents = new GzipFileContents( file, indexDir, 64 * 1024 )
+        def chunks = contents.open()
+        def index = contents.index.get()
+
+        then: 'there are many checkpoints, not all of them at a byte boundary'
+        index.checkpointCount() > 5
+        ( 0..<index.checkpointCount() ).any { index.bitOffset( it ) % 8 != 0 }
+        index.uncompressedLength == expectedBytes.length
+        chunks.length() == expectedBytes.length
+
+        and: 'the whole file can be read'
+        readAll( chunks ) == expectedBytes
+
+        and: 'each span can be read starting at its checkpoint'
+        ( 0..<index.checkpointCount() ).every { int checkpoint ->
+            contents.clear()
+            long start = index.uncompressedOffset( checkpoint )
+            def buffer = chunks.chunkFrom( start, 100 )
+            byte[] bytes = new byte[ buffer.limit() ]
+            buffer.get( bytes )
+            bytes == Arrays.copyOfRange( expectedBytes, start as int, ( start as int ) + bytes.length )
+        }
+
+        and: 'bytes can be read backwards from any position'
+        [ 1, 100, 65_536, 65_537, 300_000, expectedBytes.length - 1, expectedBytes.length ].every { int end ->
+            def buffer = chunks.chunkBefore( end, 5000 )
+            byte[] bytes = new byte[ buffer.limit() ]
+            buffer.get( bytes )
+            bytes.length > 0 && bytes == Arrays.copyOfRange( expectedBytes, end - bytes.length, end )
+        }
+    }
+
+    def "A gzip file made of several members, including stored blocks, can be read"() {
+        given: 'a gzip file with several members'
+        def lines1 = logLines( 3_000, 1L )
+        def lines2 = logLines( 100, 2L )
+        writeGzip( file, lines1 )
+        writeGzip( file, [ '\n' ], true )
+        new GZIPOutputStream( new FileOutputStream( file, true ), true ).withStream { out ->
+            // flushing creates empty stored blocks
+            lines2.each { line -> out.write( "$line\n".getBytes( 'UTF-8' ) ); out.flush() }
+        }
+        def expectedBytes = ( lines1.join( '\n' ) + '\n' + lines2.collect { "$it\n" }.join( '' ) ).getBytes( 'UTF-8' )
+
+        when:
+        def contents = new GzipFileContents( file, indexDir, 16 * 1024 )
+        def chunks = contents.open()
+
+        then:
+        contents.index.get().checkpointCount() > 3
+        chunks.length() == expectedBytes.length
+        readAll( chunks ) == expectedBytes
+    }
+
+    def "A file that is not gzip-compressed cannot be read"() {
+        given:
+        file.write( 'not a gzip file\n' )
+        def reader = new GzipFileReader( file, 10, indexDir, 1024, 64 )
+
+        when:
+        def lines = reader.refresh()
+
+        then:
+        !lines.isPresent()
+
+        cleanup:
+        reader?.close()
+    }
+
+    def "The #type reads the same lines from a gzip file as from the uncompressed file"() {
+        given: 'a gzip file and the same file, uncompressed'
+        def lines = logLines( 5_000 )
+        writeGzip( file, lines )
+        def plainFile = new File( dir, 'app.log' )
+        plainFile.write( lines.join( '\n' ) )
+
+        and: 'readers for both files'
+        def gzipReader = new GzipFileReader( file, 20, indexDir, 32 * 1024, bufferSize )
+        def plainReader = new FileReader( plainFile, 20, bufferSize )
+
+        expect: 'both readers see the same lines at the top'
+        gzipReader.refresh() == plainReader.refresh()
+
+        and: 'when moving down'
+        ( 1..10 ).every { gzipReader.moveDown( 15 ) == plainReader.moveDown( 15 ) }
+
+        and: 'at the tail'
+        gzipReader.tail(); plainReader.tail()
+        gzipReader.refresh() == plainReader.refresh()
+        gzipReader.refresh().get().last() == lines.last()
+
+        and: 'when moving up'
+        ( 1..10 ).every { gzipReader.moveUp( 15 ) == plainReader.moveUp( 15 ) }
+
+        and: 'when moving to a line'
+        gzipReader.moveToLine( 2_500 ).fileLineNumber() == plainReader.moveToLine( 2_500 ).fileLineNumber()
+        gzipReader.refresh() == plainReader.refresh()
+        gzipReader.refresh().get().first() == lines[ 2_499 ]
+        gzipReader.lineNumbers == plainReader.lineNumbers
+
+        cleanup:
+        gzipReader?.close()
+        plainReader?.close()
+
+        where:
+        bufferSize | type
+        64         | 'reader with a small buffer'
+        64 * 1024  | 'reader with a large buffer'
+    }
+
+    def "The index of a gzip file is stored and only built again if the file changes"() {
+        given: 'a gzip file'
+        writeGzip( file, logLines( 1_000 ) )
+        def indexPath = GzipIndex.pathFor( indexDir, file )
+
+        when: 'the file is read'
+        def reader = new GzipFileReader( file, 10, indexDir, 16 * 1024, 1024 )
+        reader.refresh()
+        reader.close()
+
+        then: 'its index is stored'
+        Files.isRegularFile( indexPath )
+        def storedIndex = GzipIndex.readFrom( indexPath, file )
+        storedIndex.isPresent()
+        storedIndex.get().isUpToDate( file )
+
+        when: 'the file is read again by another reader'
+        def indexModified = Files.getLastModifiedTime( indexPath )
+        sleep 50
+        reader = new GzipFileReader( file, 10, indexDir, 16 * 1024, 1024 )
+        def lines = reader.refresh()
+        reader.close()
+
+        then: 'the stored index is used'
+        lines.get().first() == logLines( 1_000 ).first()
+        Files.getLastModifiedTime( indexPath ) == indexModified
+
+        when: 'the file is replaced and read again'
+        writeGzip( file, [ 'new contents', 'of the file' ] )
+        file.setLastModified( System.currentTimeMillis() + 2000 )
+        reader = new GzipFileReader( file, 10, indexDir, 16 * 1024, 1024 )
+        lines = reader.refresh()
+
+        then: 'the file is indexed again'
+        lines.get() == [ 'new contents', 'of the file' ]
+        GzipIndex.readFrom( indexPath, file ).get().isUpToDate( file )
+
+        cleanup:
+        reader?.close()
+    }
+
+    def "A corrupt stored index is ignored"() {
+        given:
+        writeGzip( file, [ 'a', 'b', 'c' ] )
+        def indexPath = GzipIndex.pathFor( indexDir, file )
+        Files.createDirectories( indexDir )
+        indexPath.toFile().bytes = [ 1, 2, 3 ] as byte[]
+        def reader = new GzipFileReader( file, 10, indexDir, 16 * 1024, 1024 )
+
+        expect:
+        reader.refresh().get() == [ 'a', 'b', 'c' ]
+
+        cleanup:
+        reader?.close()
+    }
+
+}
@@ -0,0 +1,104 @@
+package com.athaydes.logfx.file
+
+import com.athaydes.logfx.text.HighlightExpression
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.file.Files
+
+@Unroll
+class LineHandleSpec extends Specification {
+
+    File file = Files.createTempFile( 'line-handle', '.log' ).toFile()
+
+    def cleanup() {
+        file.delete()
+    }
+
+    def "Lines are not decoded when the file window is read unless their text is requested"() {
+        given: 'a file with a few lines'
+        file.write( 'first line\nsecond\r\nthird line\n' )
+        def reader = new FileReader( file, 5, 8 )
+
+        when: 'the file window is read as line handles'
+        def lines = reader.refreshLines().get()
+
+        then: 'the lines are not decoded'
+        lines.size() == 3
+        lines.every { !it.decoded }
+
+        and: 'their position and length in the file are known'
+        lines*.offset == [ 0L, 11L, 19L ]
+        lines*.length == [ 10L, 6L, 10L ]
+
+        and: 'their text is decoded when requested'
+        lines*.text == [ 'first line', 'second', 'third line' ]
+        lines.every { it.decoded }
+
+        cleanup:
+        reader?.close()
+    }
+
+    def "A LineFilter can reject lines based only on their bytes"() {
+        given: 'a file with many lines'
+        ( 1..200 ).each { file << "line $it ${it % 50 == 0 ? 'ERROR' : 'INFO'}\n" }
+
+        and: 'a reader with a filter that only looks at the bytes of lines'
+        def testedLines = 0
+        def decodedLines = 0
+        def reader = new FileReader( file, 10, 64 )
+        reader.lineFilter = new LineFilter() {
+            boolean test( String line ) { throw new UnsupportedOperationException() }
+
+            boolean test( LineHandle line ) {
+                testedLines++
+                if ( line.decoded ) decodedLines++
+                line.containsBytes( 'ERROR'.bytes )
+            }
+        }
+
+        when: 'the file window is read'
+        def lines = reader.refreshLines().get()
+
+        then: 'every line was tested, but none was decoded'
+        testedLines == 200
+        decodedLines == 0
+        lines.every { !it.decoded }
+
+        and: 'the accepted lines are correct'
+        lines*.text == [ 'line 50 ERROR', 'line 100 ERROR', 'line 150 ERROR', 'line 200 ERROR' ]
+        reader.refresh().get() == lines*.text
+
+        cleanup:
+        reader?.close()
+    }
+
+    def "Highlight expression '#expression' matches the same lines via their bytes as via their text"() {
+        given:
+        def highlightExpression = new HighlightExpression( expression, null, null, true )
+        file.write( lines.join( '\n' ) )
+        def reader = new FileReader( file, 10, 16 )
+
+        when:
+        def handles = reader.refreshLines().get()
+
+        then:
+        handles.collect { highlightExpression.matches( it ) } == lines.collect { highlightExpression.matches( it ) }
+
+        and: 'only lines that need to be matched as text are decoded'
+        handles.every { it.decoded } == decodesLines
+
+        cleanup:
+        reader?.close()
+
+        where:
+        expression  | decodesLines
+        'ERROR'     | false
+        'ERR.R'     | true
+        'user=john' | false
+        '^line'     | true
+
+        lines = [ 'line 1 ERROR', 'line 2 err', 'line 3 user=john', 'user=joh', 'ERR', '', 'ERROR' ]
+    }
+
+}
@@ -0,0 +1,90 @@
+package com.athaydes.logfx.file
+
+import spock.lang.Requires
+import spock.lang.Specification
+import spock.lang.Unroll
+import spock.util.concurrent.PollingConditions
+
+import java.nio.file.Files
+
+/**
+ * Measures how many lines per second a {@link LineListener} receives and writes to disk from a sender on the
+ * loopback interface.
+ * <p>
+ * Run with {@code ./gradlew benchmark}. The number of lines sent, in thousands, can be set with the
+ * {@code logfx.benchmark.size} system property.
+ */
+@Requires( { System.getProperty( 'logfx.benchmark' ) } )
+class LineListenerBenchmark extends Specification {
+
+    static final int MIN_LINES_PER_SECOND = 100_000
+
+    File spillsDir = Files.createTempDirectory( 'listener-benchmark' ).toFile()
+    int lineCount = ( System.getProperty( 'logfx.benchmark.size' ) ?: '1000' ).toInteger() * 1000
+    LineListener listener
+    StreamSpill spill
+
+    def cleanup() {
+        listener?.close()
+        spill?.close()
+        spillsDir.deleteDir()
+    }
+
+    static byte[] line( int i ) {
+        "<134>1 2017-09-01T10:00:00.${i % 1000}Z host app 42 - - processing request id=$i took ${i % 500}ms".bytes
+    }
+
+    @Unroll
+    def "Throughput of lines received over #protocol"() {
+        given:
+        listener = new LineListener( [ ListenerEndpoint.parse( "$protocol:127.0.0.1:0" ) ] )
+        spill = StreamSpill.create( spillsDir, 'benchmark', Long.MAX_VALUE, 64 * 1024 * 1024 )
+        listener.start( spill )
+        def address = listener.boundAddresses.first()
+
+        when: 'lines are sent as fast as possible'
+        long start = System.nanoTime()
+        send( address, lineCount )
+        new PollingConditions( timeout: 60, delay: 0.01 ).eventually {
+            assert listener.receivedLines == lineCount
+            assert spill.bytesWritten > 0L
+            assert spill.segments.sum { it.length() } == spill.bytesWritten
+        }
+        long nanos = System.nanoTime() - start
+        double linesPerSecond = lineCount / ( nanos / 1_000_000_000.0 )
+
+        then:
+        println String.format( '%-12s %,d lines in %,d ms: %,.0f lines/s, %,d dropped',
+                protocol, lineCount, nanos.intdiv( 1_000_000 ), linesPerSecond, listener.droppedLines )
+        linesPerSecond >= MIN_LINES_PER_SECOND
+
+        where:
+        protocol     | send
+        'tcp'        | this.&sendOverTcp
+        'syslog-tcp' | this.&sendFramesOverTcp
+    }
+
+    static void sendOverTcp( InetSocketAddress address, int lineCount ) {
+        new Socket( address.address, address.port ).withCloseable { socket ->
+            def output = new BufferedOutputStream( socket.outputStream, 64 * 1024 )
+            for ( i in 1..lineCount ) {
+                output.write( line( i ) )
+                output.write( ( int ) '\n' )
+            }
+            output.flush()
+        }
+    }
+
+    static void sendFramesOverTcp( InetSocketAddress address, int lineCount ) {
+        new Socket( address.address, address.port ).withCloseable { socket ->
+            def output = new BufferedOutputStream( socket.outputStream, 64 * 1024 )
+            for ( i in 1..lineCount ) {
+                def bytes = line( i )
+                output.write( "${bytes.length} ".bytes )
+                output.write( bytes )
+            }
+            output.flush()
+        }
+    }
+
+}
@@ -0,0 +1,259 @@
+package com.athaydes.logfx.file
+
+import spock.lang.Specification
+import spock.lang.Unroll
+import spock.util.concurrent.PollingConditions
+
+import java.nio.file.Files
+
+import static com.athaydes.logfx.file.ListenerEndpoint.Protocol.SYSLOG_TCP
+import static com.athaydes.logfx.file.ListenerEndpoint.Protocol.SYSLOG_UDP
+import static com.athaydes.logfx.file.ListenerEndpoint.Protocol.TCP
+
+class LineListenerSpec extends Specification {
+
+    File spillsDir = Files.createTempDirectory( 'line-listener' ).toFile()
+    def conditions = new PollingConditions( timeout: 5 )
+    LineListener listener
+    StreamSpill spill
+
+    def cleanup() {
+        listener?.close()
+        spill?.close()
+        spillsDir.deleteDir()
+    }
+
+    void listen( List<String> endpoints, int queueCapacity = LineListener.DEFAULT_QUEUE_CAPACITY ) {
+        listener = new LineListener( endpoints.collect { ListenerEndpoint.parse( it ) }, queueCapacity )
+        spill = StreamSpill.create( spillsDir, 'listener', 1024 * 1024, 1024 * 1024 )
+        listener.start( spill )
+    }
+
+    List<String> getSpilledLines() {
+        spill.segments.collectMany { it.readLines() }
+    }
+
+    Socket connect( int endpointIndex ) {
+        def address = listener.boundAddresses[ endpointIndex ]
+        new Socket( address.address, address.port )
+    }
+
+    static List<String> lines( int from, int to ) {
+        ( from..to ).collect { "<34>1 2017-09-01T10:00:00Z host app - - - message $it".toString() }
+    }
+
+    @Unroll
+    def "Listener endpoints can be parsed: #value"() {
+        when:
+        def endpoint = ListenerEndpoint.parse( value )
+
+        then:
+        endpoint.protocol == protocol
+        endpoint.address.address.hostAddress == host
+        endpoint.address.port == port
+        endpoint.toString() == text
+
+        where:
+        value                    | protocol   | host              | port | text
+        'syslog-udp:5514'        | SYSLOG_UDP | '127.0.0.1'       | 5514 | 'syslog-udp:127.0.0.1:5514'
+        'syslog-tcp:0.0.0.0:514' | SYSLOG_TCP | '0.0.0.0'         | 514  | 'syslog-tcp:0.0.0.0:514'
+        'tcp:127.0.0.1:0'        | TCP        | '127.0.0.1'       | 0    | 'tcp:127.0.0.1:0'
+        'tcp:[::1]:5000'         | TCP        | '0:0:0:0:0:0:0:1' | 5000 | 'tcp:[0:0:0:0:0:0:0:1]:5000'
+    }
+
+    @Unroll
+    def "Invalid listener endpoints are rejected: #value"() {
+        when:
+        ListenerEndpoint.parse( value )
+
+        then:
+        def error = thrown( IllegalArgumentException )
+        error.message.startsWith( message )
+
+        where:
+        value                 | message
+        '5514'                | 'Invalid endpoint: 5514'
+        'http:8080'           | 'Unknown protocol: http'
+        'tcp:'                | 'Invalid port: '
+        'syslog-udp:70000'    | 'Invalid port: 70000'
+        'syslog-tcp:host:abc' | 'Invalid port: abc'
+    }
+
+    def "Syslog messages received over UDP are written one per line"() {
+        given:
+        listen( [ 'syslog-udp:127.0.0.1:0' ] )
+        def address = listener.boundAddresses.first()
+
+        when: 'a few datagrams are sent, some of them ending with a new-line'
+        def socket = new DatagramSocket()
+        lines( 1, 10 ).eachWithIndex { line, i ->
+            def bytes = ( i % 2 == 0 ? line + '\n' : line ).bytes
+            socket.send( new DatagramPacket( bytes, bytes.length, address ) )
+        }
+
+        then:
+        conditions.eventually {
+            assert spilledLines == lines( 1, 10 )
+        }
+        listener.receivedLines == 10L
+        listener.droppedLines == 0L
+
+        cleanup:
+        socket?.close()
+    }
+
+    def "Syslog messages received over TCP can be framed with octet-counting or with new-lines"() {
+        given:
+        listen( [ 'syslog-tcp:127.0.0.1:0' ] )
+
+        when: 'octet-counted frames are sent, with frames split across writes'
+        def socket = connect( 0 )
+        def frames = lines( 1, 5 ).collect { "${it.bytes.length} $it" }.join( '' ).bytes
+        socket.outputStream.with {
+            write( frames, 0, 7 )
+            flush()
+            Thread.sleep( 50 )
+            write( frames, 7, frames.length - 7 )
+            flush()
+        }
+
+        then:
+        conditions.eventually {
+            assert spilledLines == lines( 1, 5 )
+        }
+
+        when: 'messages framed with new-lines are sent on another connection, which is closed after the last one'
+        def otherSocket = connect( 0 )
+        otherSocket.outputStream.write( ( lines( 6, 9 ).join( '\n' ) + '\n' + lines( 10, 10 ).first() ).bytes )
+        otherSocket.close()
+
+        then: 'all messages are written, including the one without a new-line'
+        conditions.eventually {
+            assert spilledLines == lines( 1, 10 )
+        }
+
+        cleanup:
+        socket?.close()
+        otherSocket?.close()
+    }
+
+    def "Lines received over raw TCP are only separated by new-lines, and longer lines are split"() {
+        given:
+        listen( [ 'tcp:127.0.0.1:0', 'syslog-udp:127.0.0.1:0' ] )
+        def longLine = 'x' * ( LineListener.MAX_LINE_LENGTH + 10 )
+
+        when: 'lines looking like octet-counted frames, and a line longer than the maximum, are sent'
+        def socket = connect( 0 )
+        socket.outputStream.write( "12 not a frame\r\n2017-09-01 10:00:00 INFO ok\n$longLine\nlast\n".bytes )
+        socket.outputStream.flush()
+
+        then:
+        conditions.eventually {
+            assert spilledLines == [ '12 not a frame', '2017-09-01 10:00:00 INFO ok',
+                                     'x' * LineListener.MAX_LINE_LENGTH, 'x' * 10, 'last' ]
+        }
+
+        cleanup:
+        socket?.close()
+    }
+
+    def "Lines are dropped and counted when they cannot be written to disk fast enough"() {
+        given: 'a listener that can only keep a single batch of lines waiting to be written'
+        listen( [ 'tcp:127.0.0.1:0' ], 1 )
+        def socket = connect( 0 )
+
+        when: 'lines are received while the spill file cannot be written to, as if the disk was too slow'
+        synchronized ( spill ) {
+            def remainingLines = lines( 1, 1000 ).iterator()
+            while ( listener.droppedLines == 0L && remainingLines.hasNext() ) {
+                socket.outputStream.write( ( remainingLines.next() + '\n' ).bytes )
+                socket.outputStream.flush()
+                Thread.sleep( 5 )
+            }
+        }
+
+        then: 'only the lines that were not dropped are written'
+        listener.droppedLines > 0L
+        conditions.eventually {
+            assert spilledLines.size() + listener.droppedLines == listener.receivedLines
+        }
+        spilledLines.every { it ==~ /.* message \d+/ }
+
+        when: 'the spill file can be written to again'
+        long received = listener.receivedLines
+        socket.outputStream.write( ( lines( 2001, 2010 ).join( '\n' ) + '\n' ).bytes )
+
+        then: 'new lines are written again'
+        conditions.eventually {
+            assert listener.receivedLines == received + 10
+            assert spilledLines.takeRight( 10 ) == lines( 2001, 2010 )
+        }
+
+        cleanup:
+        socket?.close()
+    }
+
+    def "The lines waiting to be written when a listener is closed are still written"() {
+        given: 'a listener'
+        listen( [ 'tcp:127.0.0.1:0' ] )
+        def socket = connect( 0 )
+
+        when: 'lines are received while the spill file cannot be written to, and the listener is closed'
+        synchronized ( spill ) {
+            lines( 1, 50 ).each { line ->
+                socket.outputStream.write( ( line + '\n' ).bytes )
+                socket.outputStream.flush()
+                Thread.sleep( 5 )
+            }
+            conditions.eventually {
+                assert listener.receivedLines == 50L
+            }
+            listener.close()
+        }
+
+        then: 'all lines received before the listener was closed are written once the spill file can be written to'
+        listener.ended
+        conditions.eventually {
+            assert spilledLines == lines( 1, 50 )
+        }
+        listener.droppedLines == 0L
+
+        cleanup:
+        socket?.close()
+    }
+
+    def "The lines received by a listener can be read with a StreamReader"() {
+        given:
+        def endpoints = [ ListenerEndpoint.parse( 'syslog-tcp:127.0.0.1:0' ) ]
+        def lineListener = new LineListener( endpoints )
+        def reader = new StreamReader( 'syslog-tcp:127.0.0.1:0', lineListener, spillsDir,
+                1024 * 1024, 1024 * 1024, 5, 64 )
+        def address = lineListener.boundAddresses.first()
+
+        when:
+        def socket = new Socket( address.address, address.port )
+        socket.outputStream.write( ( lines( 1, 20 ).join( '\n' ) + '\n' ).bytes )
+        socket.outputStream.flush()
+
+        then:
+        conditions.eventually {
+            assert reader.refreshTail().get().lines == lines( 16, 20 )
+        }
+        reader.droppedLines == 0L
+        !reader.ended
+
+        when: 'the reader is closed'
+        reader.close()
+
+        then: 'the listener stops listening'
+        reader.ended
+        conditions.eventually {
+            new ServerSocket().withCloseable { it.reuseAddress = true; it.bind( address ) }
+        }
+
+        cleanup:
+        socket?.close()
+        reader?.close()
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.athaydes.logfx.file
+
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.time.ZonedDateTime
+import java.time.format.DateTimeFormatter
+import java.util.concurrent.Executor
+import java.util.function.Function
+
+/**
+ * Base of the specifications that read log files written to a temporary directory, which is deleted after each
+ * feature.
+ * <p>
+ * Log lines start either with an ISO date-time, as in {@code 2017-09-01T10:00:00Z}, or with a date-time in the
+ * {@link #DATE_FORMAT} format, as in {@code 2017-09-01 10:00:00}. Each format has its own date extractor.
+ */
+abstract class LogFileSpecification extends Specification {
+
+    // runs background tasks immediately, so that they are complete when they are started
+    protected static final Executor SAME_THREAD = { Runnable runnable -> runnable.run() } as Executor
+
+    protected static final ZonedDateTime START_TIME = ZonedDateTime.parse( '2017-09-01T10:00:00Z' )
+    protected static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern( 'yyyy-MM-dd HH:mm:ss' )
+            .withZone( START_TIME.zone )
+
+    protected static final Function<String, Optional<ZonedDateTime>> DATE_EXTRACTOR =
+            LogFileSpecification.&extractDate
+    protected static final Function<String, Optional<ZonedDateTime>> ISO_DATE_EXTRACTOR =
+            LogFileSpecification.&extractIsoDate
+
+    File dir = Files.createTempDirectory( getClass().simpleName ).toFile()
+    File file = new File( dir, 'app.log' )
+
+    def cleanup() {
+        dir.deleteDir()
+    }
+
+    static Optional<ZonedDateTime> extractDate( String line ) {
+        if ( line.size() < 19 || !Character.isDigit( line.charAt( 0 ) ) ) {
+            return Optional.empty()
+        }
+        Optional.of( ZonedDateTime.parse( line.substring( 0, 19 ), DATE_FORMAT ) )
+    }
+
+    static Optional<ZonedDateTime> extractIsoDate( String line ) {
+        line.startsWith( '2017' ) ? Optional.of( ZonedDateTime.parse( line.split( ' ' )[ 0 ] ) ) : Optional.empty()
+    }
+
+    /**
+     * Write lines numbered from 1, with an ERROR level in every 10th line.
+     */
+    void writeLines( int count ) {
+        file.withWriter { writer ->
+            ( 1..count ).each { i ->
+                writer.write( "${i % 10 == 0 ? 'ERROR' : 'INFO'} message $i\n" )
+            }
+        }
+    }
+
+}
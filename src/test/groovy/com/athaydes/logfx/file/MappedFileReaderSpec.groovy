@@ -0,0 +1,71 @@
+package com.athaydes.logfx.file
+
+import com.athaydes.logfx.config.Properties
+
+/**
+ * Runs all of the {@link FileContentReaderSpec} features against a {@link MappedFileReader},
+ * using the buffer size of each feature also as the size of the mapped segments.
+ */
+class MappedFileReaderSpec extends FileContentReaderSpec {
+
+    @Override
+    FileReader createReader( File file, int fileWindowSize, Integer bufferSize = null ) {
+        bufferSize == null ?
+                new MappedFileReader( file, fileWindowSize ) :
+                new MappedFileReader( file, fileWindowSize, bufferSize, bufferSize, Properties.maxLineLength )
+    }
+
+    @Override
+    FileReader createReader( File file, int fileWindowSize, int bufferSize, int maxLineLength ) {
+        new MappedFileReader( file, fileWindowSize, bufferSize, bufferSize, maxLineLength )
+    }
+
+    def "Can read lines spanning several mapped segments"() {
+        given: 'a mapped file reader with tiny segments'
+        FileContentReader reader = createReader( file, 3, 4 )
+
+        and: 'a file with lines much longer than a segment'
+        file << ( 'abcdefghij' * 3 ) << '\n' << 'xyz' << '\n' << ( '0123456789' * 2 )
+
+        when: 'the reader refreshes from the top'
+        def top = reader.refresh()
+
+        then: 'the lines are read correctly, in the right order'
+        top.isPresent()
+        top.get() == [ 'abcdefghij' * 3, 'xyz', '0123456789' * 2 ]
+
+        when: 'the reader goes to the tail'
+        reader.tail()
+        def tail = reader.refresh()
+
+        then: 'the same lines are read from the bottom'
+        tail.isPresent()
+        tail.get() == [ 'abcdefghij' * 3, 'xyz', '0123456789' * 2 ]
+    }
+
+    def "Segments are remapped after the file grows"() {
+        given: 'a mapped file reader'
+        FileContentReader reader = createReader( file, 3, 8 )
+
+        and: 'a file with 2 lines'
+        file << 'line 1\nline 2'
+
+        when: 'the file tail is read'
+        reader.tail()
+        def tail = reader.refresh()
+
+        then: 'the 2 lines are read'
+        tail.get() == [ 'line 1', 'line 2' ]
+
+        when: 'the file grows'
+        file << '\nline 3'
+
+        and: 'the reader moves down'
+        def lines = reader.moveDown( 1 )
+
+        then: 'the new line is read'
+        lines.isPresent()
+        lines.get() == [ 'line 3' ]
+    }
+
+}
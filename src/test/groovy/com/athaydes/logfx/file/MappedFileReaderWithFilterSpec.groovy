@@ -0,0 +1,17 @@
+package com.athaydes.logfx.file
+
+import com.athaydes.logfx.config.Properties
+
+/**
+ * Runs all of the {@link FileContentReaderWithFilterSpec} features against a {@link MappedFileReader}.
+ */
+class MappedFileReaderWithFilterSpec extends FileContentReaderWithFilterSpec {
+
+    @Override
+    FileReader createReader( File file, int fileWindowSize, Integer bufferSize = null ) {
+        bufferSize == null ?
+                new MappedFileReader( file, fileWindowSize ) :
+                new MappedFileReader( file, fileWindowSize, bufferSize, bufferSize, Properties.maxLineLength )
+    }
+
+}
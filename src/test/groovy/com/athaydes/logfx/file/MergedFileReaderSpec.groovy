@@ -0,0 +1,202 @@
+package com.athaydes.logfx.file
+
+import spock.lang.Unroll
+
+@Unroll
+class MergedFileReaderSpec extends LogFileSpecification {
+
+    static String line( int second, String name, int index ) {
+        "${DATE_FORMAT.format( START_TIME.plusSeconds( second ) )} $name $index"
+    }
+
+    File writeFile( String name, List<String> lines ) {
+        def file = new File( dir, name )
+        file.text = lines.collect { it + '\n' }.join( '' )
+        file
+    }
+
+    MergedFileReader readerOf( File... files ) {
+        new MergedFileReader( files.collect { new MergedFileReader.Source( it, DATE_EXTRACTOR ) }, 5 )
+    }
+
+    def "Lines of several files are merged by date-time"() {
+        given: 'two files with interleaved date-times'
+        def a = writeFile( 'a.log', [ line( 0, 'a', 1 ), line( 2, 'a', 2 ), line( 4, 'a', 3 ), line( 6, 'a', 4 ) ] )
+        def b = writeFile( 'b.log', [ line( 1, 'b', 1 ), line( 2, 'b', 2 ), line( 3, 'b', 3 ) ] )
+        def reader = readerOf( a, b )
+
+        when: 'the file window is read from the top'
+        reader.top()
+        def lines = reader.refresh()
+
+        then: 'the first lines of the merged files are returned in date-time order'
+        lines.isPresent()
+        lines.get() == [ line( 0, 'a', 1 ), line( 1, 'b', 1 ), line( 2, 'a', 2 ), line( 2, 'b', 2 ), line( 3, 'b', 3 ) ]
+
+        and: 'the file and line number of each line are known'
+        reader.lineSources.toList() == [ 0, 1, 0, 1, 1 ]
+        reader.lineNumbers.toList() == [ 1L, 1L, 2L, 2L, 3L ]
+
+        when: 'the file window moves down'
+        def moreLines = reader.moveDown( 5 )
+
+        then: 'the remaining lines are returned'
+        moreLines.get() == [ line( 4, 'a', 3 ), line( 6, 'a', 4 ) ]
+        reader.lineSources.toList() == [ 0, 1, 1, 0, 0 ]
+    }
+
+    def "Lines without a date-time stay after the line they belong to"() {
+        given: 'a file with a stack-trace and another file with lines logged during the stack-trace'
+        def a = writeFile( 'a.log', [ line( 0, 'a', 1 ), line( 2, 'a', 2 ),
+                                      '    at A.b(A.java:1)', '    at C.d(C.java:2)', line( 5, 'a', 3 ) ] )
+        def b = writeFile( 'b.log', [ line( 1, 'b', 1 ), line( 3, 'b', 2 ), line( 4, 'b', 3 ) ] )
+        def reader = readerOf( a, b )
+
+        when: 'the whole merged timeline is read'
+        def lines = readAllDown( reader )
+
+        then: 'the stack-trace is kept with the line before it'
+        lines == [ line( 0, 'a', 1 ), line( 1, 'b', 1 ), line( 2, 'a', 2 ),
+                   '    at A.b(A.java:1)', '    at C.d(C.java:2)',
+                   line( 3, 'b', 2 ), line( 4, 'b', 3 ), line( 5, 'a', 3 ) ]
+
+        and: 'reading the timeline upwards from the tail gives the same lines'
+        readAllUp( reader ) == lines
+    }
+
+    def "Moving up and down through many files gives the same timeline (#sources files of #size lines)"() {
+        given: 'several files with lines at different intervals, some with stack-traces'
+        def files = ( 1..sources ).collect { int n ->
+            int second = 0
+            writeFile( "file-${n}.log", ( 1..size ).collectMany { int i ->
+                second += n
+                ( i % 11 == 0 ) ? [ line( second, "f$n", i ), '    at X.y(X.java:1)' ] : [ line( second, "f$n", i ) ]
+            } )
+        }
+        def reader = readerOf( *files )
+
+        and: 'the expected timeline, where lines of the same date-time are ordered by file'
+        def expected = files.withIndex().collectMany { File file, int index ->
+            def currentDate = Long.MIN_VALUE
+            file.readLines().collect { String text ->
+                extractDate( text ).ifPresent { currentDate = it.toInstant().toEpochMilli() }
+                [ currentDate, index, text ]
+            }
+        }.withIndex().sort { a, b ->
+            ( a[ 0 ][ 0 ] <=> b[ 0 ][ 0 ] ) ?: ( a[ 0 ][ 1 ] <=> b[ 0 ][ 1 ] ) ?: ( a[ 1 ] <=> b[ 1 ] )
+        }.collect { it[ 0 ][ 2 ] }
+
+        expect: 'reading down from the top gives the whole timeline'
+        readAllDown( reader ) == expected
+
+        and: 'reading up from the tail gives the whole timeline'
+        readAllUp( reader ) == expected
+
+        where:
+        sources | size
+        3       | 20
+        12      | MergedFileReader.BATCH_SIZE * 3
+    }
+
+    def "Can move to a date-time in the merged files"() {
+        given: 'two files with interleaved date-times'
+        def a = writeFile( 'a.log', ( 0..<200 ).collect { line( it * 2, 'a', it ) } )
+        def b = writeFile( 'b.log', ( 0..<200 ).collect { line( it * 2 + 1, 'b', it ) } )
+        def reader = readerOf( a, b )
+
+        when: 'moving to a date-time in the middle of the files'
+        def result = reader.moveTo( START_TIME.plusSeconds( 101 ), DATE_EXTRACTOR )
+        def lines = reader.refresh()
+
+        then: 'the first line is the one at the date-time, followed by the lines after it'
+        result.success
+        !result.beforeRange
+        !result.afterRange
+        lines.get() == [ line( 101, 'b', 50 ), line( 102, 'a', 51 ), line( 103, 'b', 51 ),
+                         line( 104, 'a', 52 ), line( 105, 'b', 52 ) ]
+
+        when: 'moving to a date-time between lines'
+        reader.moveTo( START_TIME.plusSeconds( 50 ).plusNanos( 500_000_000 ), DATE_EXTRACTOR )
+
+        then: 'the first line is the last one before the date-time'
+        reader.refresh().get().first() == line( 50, 'a', 25 )
+
+        when: 'moving up from there'
+        def linesAbove = reader.moveUp( 2 )
+
+        then: 'the lines before the date-time are returned'
+        linesAbove.get() == [ line( 48, 'a', 24 ), line( 49, 'b', 24 ) ]
+
+        when: 'moving to a date-time before all files'
+        result = reader.moveTo( START_TIME.minusSeconds( 10 ), DATE_EXTRACTOR )
+
+        then: 'the result is before the range and the file window is at the top'
+        result.beforeRange
+        reader.refresh().get().first() == line( 0, 'a', 0 )
+
+        when: 'moving to a date-time after all files'
+        result = reader.moveTo( START_TIME.plusDays( 1 ), DATE_EXTRACTOR )
+
+        then: 'the result is after the range and the file window is at the tail'
+        result.afterRange
+        reader.refresh().get().last() == line( 399, 'b', 199 )
+    }
+
+    def "The line filter applies to all merged files"() {
+        given: 'two files with interleaved date-times'
+        def a = writeFile( 'a.log', ( 0..<20 ).collect { line( it * 2, 'a', it ) } )
+        def b = writeFile( 'b.log', ( 0..<20 ).collect { line( it * 2 + 1, 'b', it ) } )
+        def reader = readerOf( a, b )
+
+        when: 'a filter accepting only lines ending with 3 is set'
+        reader.setLineFilter( { String text -> text.endsWith( '3' ) } )
+        reader.top()
+        def lines = reader.refresh()
+
+        then: 'only the accepted lines are merged'
+        lines.get() == [ line( 6, 'a', 3 ), line( 7, 'b', 3 ), line( 26, 'a', 13 ), line( 27, 'b', 13 ) ]
+    }
+
+    def "Lines appended to any of the files are shown when following the tail"() {
+        given: 'two files with interleaved date-times'
+        def a = writeFile( 'a.log', ( 0..<10 ).collect { line( it * 2, 'a', it ) } )
+        def b = writeFile( 'b.log', ( 0..<10 ).collect { line( it * 2 + 1, 'b', it ) } )
+        def reader = readerOf( a, b )
+
+        when: 'the tail is followed'
+        def update = reader.refreshTail()
+
+        then: 'the last lines are shown'
+        update.get().lines == [ line( 15, 'b', 7 ), line( 16, 'a', 8 ), line( 17, 'b', 8 ),
+                                line( 18, 'a', 9 ), line( 19, 'b', 9 ) ]
+
+        when: 'lines are appended to the first file'
+        a << line( 20, 'a', 10 ) + '\n' + line( 22, 'a', 11 ) + '\n'
+        update = reader.refreshTail()
+
+        then: 'the new lines are shown at the tail'
+        update.get().lines == [ line( 17, 'b', 8 ), line( 18, 'a', 9 ), line( 19, 'b', 9 ),
+                                line( 20, 'a', 10 ), line( 22, 'a', 11 ) ]
+    }
+
+    static List<String> readAllDown( MergedFileReader reader ) {
+        reader.top()
+        List<String> result = [ ]
+        result.addAll( reader.refresh().get() )
+        List<String> next
+        while ( !( next = reader.moveDown( 3 ).get() ).isEmpty() ) {
+            result.addAll( next )
+        }
+        result
+    }
+
+    static List<String> readAllUp( MergedFileReader reader ) {
+        reader.tail()
+        LinkedList<String> result = new LinkedList<>( reader.refresh().get() )
+        List<String> next
+        while ( !( next = reader.moveUp( 3 ).get() ).isEmpty() ) {
+            result.addAll( 0, next )
+        }
+        result
+    }
+}
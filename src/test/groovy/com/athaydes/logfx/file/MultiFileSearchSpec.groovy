@@ -0,0 +1,99 @@
+package com.athaydes.logfx.file
+
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.util.concurrent.Executor
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+import java.util.function.Predicate
+
+class MultiFileSearchSpec extends Specification {
+
+    File dir = Files.createTempDirectory( 'multi-file-search' ).toFile()
+    List<FileReader> readers = [ ]
+    ExecutorService executor = Executors.newFixedThreadPool( 2 )
+
+    def cleanup() {
+        executor.shutdownNow()
+        readers*.close()
+        dir.deleteDir()
+    }
+
+    FileSearch createSearch( String name, int lineCount, String correlationId, int idEvery,
+                             Executor searchExecutor = executor ) {
+        def file = new File( dir, name )
+        file.withWriter { writer ->
+            ( 1..lineCount ).each { i ->
+                writer.write( "INFO message $i${i % idEvery == 0 ? " id=$correlationId" : ''}\n" )
+            }
+        }
+        def reader = new FileReader( file, 10, 4096 )
+        reader.refresh()
+        readers << reader
+        new FileSearch( reader, null, 4096, 256, 1000, FileSearch.DEFAULT_MAX_MATCHES, searchExecutor )
+    }
+
+    def "All files are searched concurrently, with the matches and bytes scanned aggregated"() {
+        given: 'searches of several files of different sizes'
+        def searches = [
+                createSearch( 'a.log', 1000, 'abc', 10 ),
+                createSearch( 'b.log', 3000, 'abc', 100 ),
+                createSearch( 'c.log', 500, 'xyz', 5 ),
+                createSearch( 'd.log', 2000, 'abc', 1 ) ]
+        def multiFileSearch = new MultiFileSearch( searches )
+        def summaries = new LinkedBlockingQueue<MultiFileSearch.Summary>()
+
+        when: 'all files are searched for a correlation ID'
+        multiFileSearch.start( { it.endsWith( 'id=abc' ) } as Predicate<String>, { summaries << it } )
+
+        and: 'we wait for the searches to finish'
+        def summary = summaries.poll( 10, TimeUnit.SECONDS )
+        while ( summary != null && !summary.done ) {
+            summary = summaries.poll( 10, TimeUnit.SECONDS )
+        }
+
+        then: 'the matches of each file are found'
+        summary != null
+        summary.fileProgress*.matchCount == [ 100, 30, 0, 2000 ]
+        summary.matchCount == 2130
+        searches*.matchCount == [ 100, 30, 0, 2000 ]
+
+        and: 'all bytes of all files are scanned'
+        summary.scannedBytes == readers.sum { it.file.length() }
+        summary.bytesPerSecond > 0.0
+
+        and: 'no summaries are reported after the one of the finished searches'
+        summaries.empty
+    }
+
+    def "No summaries are reported after the searches are cancelled"() {
+        given: 'searches of several files, whose tasks only run when requested'
+        def tasks = [ ]
+        def searches = ( 1..3 ).collect { i ->
+            createSearch( "file-${i}.log", 1000, 'abc', 10, { Runnable task -> tasks << task } as Executor )
+        }
+        def multiFileSearch = new MultiFileSearch( searches )
+        def summaries = [ ]
+
+        when: 'the searches are started, then cancelled before they run'
+        multiFileSearch.start( { it.endsWith( 'id=abc' ) } as Predicate<String>, { summaries << it } )
+        multiFileSearch.cancel()
+        tasks.each { it.run() }
+
+        then: 'nothing is reported'
+        summaries.empty
+
+        when: 'the searches are started again and run'
+        tasks.clear()
+        multiFileSearch.start( { it.endsWith( 'id=abc' ) } as Predicate<String>, { summaries << it } )
+        tasks.each { it.run() }
+
+        then: 'the summaries of the new searches are reported'
+        summaries.last().done
+        summaries.last().matchCount == 300
+    }
+
+}
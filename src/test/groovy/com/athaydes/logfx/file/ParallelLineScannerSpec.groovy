@@ -0,0 +1,275 @@
+package com.athaydes.logfx.file
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.Predicate
+
+@Unroll
+class ParallelLineScannerSpec extends Specification {
+
+    File file = File.createTempFile( 'parallel-scanner', '.log' )
+
+    def cleanup() {
+        file.delete()
+    }
+
+    static List<String> logLines( int count ) {
+        ( 1..count ).collect { i ->
+            def level = i % 97 == 0 ? 'ERROR' : 'INFO'
+            // some lines are much longer than others, so they cross many region boundaries
+            def message = i % 13 == 0 ? 'x' * ( i % 500 ) : "message $i"
+            "$i $level $message".toString()
+        }
+    }
+
+    static Predicate<LineHandle> containing( String text ) {
+        { LineHandle line -> line.text.contains( text ) } as Predicate<LineHandle>
+    }
+
+    def "Scanning a file in regions of #regionSize bytes finds the same lines as a sequential scan (newLine=#newLineName)"() {
+        given: 'a file with rare errors'
+        def lines = logLines( 2000 )
+        file.write( lines.join( newLine ) + ( endsWithNewLine ? newLine : '' ) )
+
+        and: 'the expected lines and their line numbers'
+        def expectedIndexes = lines.findIndexValues { it.contains( 'ERROR' ) }
+        def expectedLines = expectedIndexes.collect { lines[ it as int ] }
+        def expectedLineNumbers = expectedIndexes.collect { it + 1L }
+
+        when: 'the file is scanned in parallel'
+        def channel = new SharedFileChannel( file, ByteBufferPool.globalInstance )
+        def scanner = new ParallelLineScanner( channel, FileEncoding.UTF_8, 4096,
+                containing( 'ERROR' ), { false }, regionSize )
+        def result = scanner.scan( 0L, file.length(), Integer.MAX_VALUE, 1L )
+
+        then: 'all matching lines are found in order'
+        result.matches*.line*.text == expectedLines
+        result.matches*.lineNumber == expectedLineNumbers
+        result.reachedEnd
+        !result.cancelled
+
+        and: 'the positions of the lines are correct'
+        result.matches.every { match ->
+            def bytes = new byte[ match.end - match.start ]
+            new RandomAccessFile( file, 'r' ).withCloseable { it.seek( match.start ); it.readFully( bytes ) }
+            new String( bytes, 'UTF-8' ).trim() == match.line.text
+        }
+
+        cleanup:
+        channel?.close()
+
+        where:
+        regionSize | newLine | endsWithNewLine
+        1          | '\n'    | true
+        7          | '\n'    | false
+        100        | '\r\n'  | true
+        1024       | '\n'    | true
+        4096       | '\r\n'  | false
+        1 << 20    | '\n'    | false
+
+        newLineName = newLine == '\n' ? 'LF' : 'CRLF'
+    }
+
+    def "Scanning a UTF-16 file in regions of #regionSize bytes finds the same lines as a sequential scan"() {
+        given: 'a UTF-16 file with rare errors and non-ASCII text'
+        def lines = logLines( 500 ).collect { it + ' \u4e2d\u0a0a' }
+        file.bytes = lines.join( '\r\n' ).getBytes( 'UTF-16LE' )
+
+        when:
+        def channel = new SharedFileChannel( file, ByteBufferPool.globalInstance )
+        def scanner = new ParallelLineScanner( channel, FileEncoding.of( java.nio.charset.Charset.forName( 'UTF-16LE' ) ),
+                4096, containing( 'ERROR' ), { false }, regionSize )
+        def result = scanner.scan( 0L, file.length(), Integer.MAX_VALUE, 1L )
+
+        then:
+        result.matches*.line*.text == lines.findAll { it.contains( 'ERROR' ) }
+        result.matches*.lineNumber == lines.findIndexValues { it.contains( 'ERROR' ) }.collect { it + 1L }
+
+        cleanup:
+        channel?.close()
+
+        where:
+        regionSize << [ 2, 10, 512 ]
+    }
+
+    def "A scan stops once it finds enough lines, and line numbers are unknown if the first one is not known"() {
+        given:
+        def lines = logLines( 2000 )
+        file.write( lines.join( '\n' ) )
+
+        when:
+        def channel = new SharedFileChannel( file, ByteBufferPool.globalInstance )
+        def scanner = new ParallelLineScanner( channel, FileEncoding.UTF_8, 4096,
+                containing( 'ERROR' ), { false }, 256 )
+        def result = scanner.scan( 0L, file.length(), 3, 0L )
+
+        then:
+        result.matches*.line*.text == lines.findAll { it.contains( 'ERROR' ) }.take( 3 )
+        result.matches*.lineNumber == [ 0L, 0L, 0L ]
+        !result.reachedEnd
+        !result.cancelled
+
+        cleanup:
+        channel?.close()
+    }
+
+    def "A scan only tests the lines containing one of the required texts of the filter (newLine=#newLineName)"() {
+        given: 'a file with rare errors, large enough to have lines crossing the chunks read by the scanner'
+        def lines = logLines( 20000 )
+        file.write( lines.join( newLine ) )
+
+        and: 'a filter counting the lines it tests'
+        def testedLines = new AtomicInteger()
+        def filter = { LineHandle line ->
+            testedLines.incrementAndGet()
+            line.text.contains( 'ERROR' ) || line.text.contains( 'x' * 400 )
+        } as Predicate<LineHandle>
+        def expectedIndexes = lines.findIndexValues { it.contains( 'ERROR' ) || it.contains( 'x' * 400 ) }
+
+        when: 'the file is scanned with the texts required by the filter'
+        def channel = new SharedFileChannel( file, ByteBufferPool.globalInstance )
+        def scanner = new ParallelLineScanner( channel, FileEncoding.UTF_8, 4096,
+                filter, [ 'ERROR', 'x' * 400 ], { false }, 4096 )
+        def result = scanner.scan( 0L, file.length(), Integer.MAX_VALUE, 1L )
+
+        then: 'the same lines are found as by a scan testing every line'
+        result.matches*.line*.text == expectedIndexes.collect { lines[ it as int ] }
+        result.matches*.lineNumber == expectedIndexes.collect { it + 1L }
+        result.reachedEnd
+
+        and: 'only a few lines other than the accepted ones are tested by the filter'
+        testedLines.get() < 2 * expectedIndexes.size()
+
+        cleanup:
+        channel?.close()
+
+        where:
+        newLine << [ '\n', '\r\n' ]
+        newLineName = newLine == '\n' ? 'LF' : 'CRLF'
+    }
+
+    def "A scan can be cancelled"() {
+        given:
+        file.write( logLines( 2000 ).join( '\n' ) )
+
+        when:
+        def channel = new SharedFileChannel( file, ByteBufferPool.globalInstance )
+        def scanner = new ParallelLineScanner( channel, FileEncoding.UTF_8, 4096,
+                containing( 'ERROR' ), { true }, 256 )
+        def result = scanner.scan( 0L, file.length(), Integer.MAX_VALUE, 1L )
+
+        then:
+        result.cancelled
+        result.matches.isEmpty()
+        !result.reachedEnd
+
+        cleanup:
+        channel?.close()
+    }
+
+    def "A FileReader moving through a file with a filter returns the same lines whether or not it scans in parallel"() {
+        given: 'a file with rare errors'
+        def lines = logLines( 3000 )
+        file.write( lines.join( '\n' ) + '\n' )
+        def errors = lines.findAll { it.contains( 'ERROR' ) }
+
+        and: 'a reader that scans in parallel after a few KB, and another that never does'
+        def parallelReader = new FileReader( file, 5, 1024 )
+        parallelReader.parallelScanRegionSize = 2048
+        def sequentialReader = new FileReader( file, 5, 1024 )
+        [ parallelReader, sequentialReader ]*.lineFilter = { String line -> line.contains( 'ERROR' ) } as Predicate<String>
+
+        when: 'both readers move through the whole file'
+        def parallelResult = [ parallelReader.refresh().get() ]
+        def sequentialResult = [ sequentialReader.refresh().get() ]
+        10.times {
+            parallelResult << parallelReader.moveDown( 5 ).get()
+            sequentialResult << sequentialReader.moveDown( 5 ).get()
+        }
+
+        then: 'they return the same lines'
+        parallelResult.flatten() == errors
+        sequentialResult.flatten() == errors
+        parallelResult == sequentialResult
+
+        and: 'they can move back up'
+        parallelReader.moveUp( 5 ).get() == sequentialReader.moveUp( 5 ).get()
+
+        cleanup:
+        parallelReader?.close()
+        sequentialReader?.close()
+    }
+
+    def "A FileReader move can be cancelled while it is scanning the file"() {
+        given: 'a file with an error at the start, and one at the end'
+        def lines = ( 1..5000 ).collect { "line $it ${it == 1 || it == 5000 ? 'ERROR' : 'INFO'}".toString() }
+        file.write( lines.join( '\n' ) + '\n' )
+
+        and: 'a reader with a filter that cancels the read in progress when it reaches the middle of the file'
+        def reader = new FileReader( file, 1, 1024 )
+        reader.parallelScanRegionSize = parallelScanRegionSize
+        reader.lineFilter = { String line ->
+            if ( line == 'line 2500 INFO' ) reader.cancelCurrentRead()
+            line.contains( 'ERROR' )
+        } as Predicate<String>
+
+        when: 'the reader moves down from the first error'
+        reader.refresh()
+        def cancelledMove = reader.moveDown( 1 ).get()
+
+        then: 'the move is cancelled before reaching the end of the file'
+        cancelledMove.isEmpty()
+
+        when: 'the reader moves down again, without being cancelled'
+        reader.lineFilter = { String line -> line.contains( 'ERROR' ) } as Predicate<String>
+        def move = reader.moveDown( 1 ).get()
+
+        then: 'the last error is found'
+        move == [ 'line 5000 ERROR' ]
+
+        cleanup:
+        reader?.close()
+
+        where:
+        parallelScanRegionSize << [ 1024, Integer.MAX_VALUE ]
+    }
+
+    def "Scans in the interactive pool are not delayed by background scans"() {
+        given: 'a file with rare errors'
+        file.write( logLines( 2000 ).join( '\n' ) )
+        def channel = new SharedFileChannel( file, ByteBufferPool.globalInstance )
+
+        and: 'all Threads of the background pool are busy'
+        def release = new CountDownLatch( 1 )
+        def busyThreads = new CountDownLatch( ParallelLineScanner.BACKGROUND_POOL.parallelism )
+        ParallelLineScanner.BACKGROUND_POOL.parallelism.times {
+            ParallelLineScanner.BACKGROUND_POOL.execute {
+                busyThreads.countDown()
+                release.await()
+            }
+        }
+        assert busyThreads.await( 5, TimeUnit.SECONDS )
+
+        when: 'the file is scanned in the interactive pool'
+        def scanner = new ParallelLineScanner( channel, FileEncoding.UTF_8, 4096,
+                containing( 'ERROR' ), { false }, 1024 )
+        def result = scanner.scan( 0L, file.length(), Integer.MAX_VALUE, 1L )
+
+        then: 'the scan completes'
+        result.reachedEnd
+        result.matches.size() == 2000.intdiv( 97 )
+
+        and: 'the background pool leaves a core free for the interactive pool, and runs at a lower priority'
+        ParallelLineScanner.BACKGROUND_POOL.parallelism == Math.max( 1, ParallelLineScanner.PARALLELISM - 1 )
+        ParallelLineScanner.INTERACTIVE_POOL.parallelism == ParallelLineScanner.PARALLELISM
+
+        cleanup:
+        release.countDown()
+        channel?.close()
+    }
+
+}
@@ -0,0 +1,214 @@
+package com.athaydes.logfx.file
+
+import spock.lang.Unroll
+
+@Unroll
+class RecordModeSpec extends LogFileSpecification {
+
+    static final RecordMode RECORDS_BY_DATE = new RecordMode( DATE_EXTRACTOR, null )
+
+    static String line( int second, String message = "message $second" ) {
+        "${DATE_FORMAT.format( START_TIME.plusSeconds( second ) )} $message"
+    }
+
+    static List<String> stackTrace( int frames ) {
+        [ 'java.lang.RuntimeException: error' ] + ( 1..frames ).collect { "    at A.m$it(A.java:$it)" }
+    }
+
+    FileReader readerOf( int windowSize, int bufferSize = 32, RecordMode recordMode = RECORDS_BY_DATE ) {
+        def reader = new FileReader( file, windowSize, bufferSize )
+        reader.recordMode = recordMode
+        reader
+    }
+
+    def "Lines without a date-time are read together with the line before them"() {
+        given: 'a file with a stack-trace'
+        file.text = [ line( 0 ), line( 1 ), *stackTrace( 2 ), line( 2 ), line( 3 ) ].join( '\n' ) + '\n'
+
+        when: 'the file is read in record mode'
+        def reader = readerOf( 3 )
+        reader.top()
+        def records = reader.refresh()
+
+        then: 'the stack-trace is part of the record of the line before it'
+        records.get() == [ line( 0 ), ( [ line( 1 ) ] + stackTrace( 2 ) ).join( '\n' ), line( 2 ) ]
+
+        and: 'the line numbers are the numbers of the first line of each record'
+        reader.lineNumbers.toList() == [ 1L, 2L, 6L ]
+
+        when: 'moving down'
+        def more = reader.moveDown( 2 )
+
+        then: 'the next record is returned'
+        more.get() == [ line( 3 ) ]
+    }
+
+    def "Reading records down from the top and up from the tail gives the same records (window: #windowSize, buffer: #bufferSize, ends with new-line: #endsWithNewLine)"() {
+        given: 'a file with stack-traces of different sizes, and lines without a date-time at the start'
+        def fileLines = [ '  header', 'another header' ]
+        ( 0..<40 ).each { int i ->
+            fileLines << line( i )
+            if ( i % 3 == 0 ) {
+                fileLines.addAll( stackTrace( i % 7 ) )
+            }
+            if ( i % 10 == 0 ) {
+                fileLines << ''
+            }
+        }
+        file.text = fileLines.join( '\n' ) + ( endsWithNewLine ? '\n' : '' )
+
+        and: 'the expected records'
+        List<String> expected = [ ]
+        fileLines.each { String text ->
+            if ( expected.isEmpty() || extractDate( text ).isPresent() ) {
+                expected << text
+            } else {
+                expected[ -1 ] = expected[ -1 ] + '\n' + text
+            }
+        }
+
+        when: 'the file is read in record mode from the top and from the tail'
+        def reader = readerOf( windowSize, bufferSize )
+        def down = readAllDown( reader )
+        def up = readAllUp( reader )
+
+        then: 'all records are found in both directions'
+        down == expected
+        up == expected
+
+        where:
+        windowSize | bufferSize | endsWithNewLine
+        3          | 16         | true
+        7          | 64         | false
+        100        | 4096       | true
+    }
+
+    def "Filters accept whole records when any of their lines matches (#description)"() {
+        given: 'a file with stack-traces'
+        file.text = [ line( 0 ), line( 1 ), *stackTrace( 3 ), line( 2 ), line( 3, 'other' ),
+                      '    at B.n(B.java:1)', line( 4 ) ].join( '\n' ) + '\n'
+
+        when: 'a filter matching a line inside a stack-trace is set'
+        def reader = readerOf( 5 )
+        reader.lineFilter = { String text -> text.contains( 'A.m2' ) || text.contains( 'B.n' ) }
+        reader.top()
+        def fromTop = reader.refresh()
+
+        and: 'the file is also read from the tail'
+        reader.tail()
+        def fromTail = reader.refresh()
+
+        then: 'the whole records containing the matching lines are returned'
+        fromTop.get() == [ ( [ line( 1 ) ] + stackTrace( 3 ) ).join( '\n' ),
+                           [ line( 3, 'other' ), '    at B.n(B.java:1)' ].join( '\n' ) ]
+        fromTail.get() == fromTop.get()
+
+        where:
+        description << [ 'any window size' ]
+    }
+
+    def "Moving to a date-time or to a line moves to the start of the record"() {
+        given: 'a file with a stack-trace after each line'
+        file.text = ( 0..<50 ).collectMany { [ line( it ), *stackTrace( 2 ) ] }.join( '\n' ) + '\n'
+        def reader = readerOf( 4 )
+
+        when: 'moving to a date-time'
+        def result = reader.moveTo( START_TIME.plusSeconds( 20 ), DATE_EXTRACTOR )
+        def records = reader.refresh()
+
+        then: 'the record with the date-time is found'
+        result.success
+        records.get()[ result.fileLineNumber() - 1 ] == ( [ line( 20 ) ] + stackTrace( 2 ) ).join( '\n' )
+
+        when: 'moving to a line in the middle of a stack-trace'
+        result = reader.moveToLine( 4 * 30 + 3 )
+        records = reader.refresh()
+
+        then: 'the window shows the whole record containing the line'
+        result.success
+        records.get()[ result.fileLineNumber() - 1 ] == ( [ line( 30 ) ] + stackTrace( 2 ) ).join( '\n' )
+
+        when: 'the window is positioned in the middle of a record and refreshed'
+        reader.positionAt( file.text.indexOf( line( 40 ) ) + line( 40 ).size() + 5 )
+        records = reader.refresh()
+
+        then: 'the window starts at the start of the record'
+        records.get().first() == ( [ line( 40 ) ] + stackTrace( 2 ) ).join( '\n' )
+    }
+
+    def "Records can be told apart by a continuation pattern only"() {
+        given: 'a file without date-times, with indented lines'
+        file.text = [ 'first', '  a', '  b', 'second', 'third', '\tc', 'Caused by: x', '... 3 more' ].join( '\n' ) + '\n'
+
+        when: 'the file is read with a record mode using only a continuation pattern'
+        def reader = readerOf( 10, 32, new RecordMode( null, RecordMode.DEFAULT_CONTINUATION_PATTERN ) )
+        reader.top()
+        def records = reader.refresh()
+
+        then: 'lines matching the pattern are part of the record of the line before them'
+        records.get() == [ 'first\n  a\n  b', 'second', 'third\n\tc\nCaused by: x\n... 3 more' ]
+    }
+
+    def "Lines appended to the last record are shown when following the tail"() {
+        given: 'a file whose last record is being written'
+        file.text = [ line( 0 ), line( 1 ), 'java.lang.RuntimeException: error' ].join( '\n' ) + '\n'
+        def reader = readerOf( 3 )
+
+        when: 'the tail is followed'
+        def update = reader.refreshTail()
+
+        then: 'the last record has the lines written so far'
+        update.get().lines == [ line( 0 ), line( 1 ) + '\njava.lang.RuntimeException: error' ]
+
+        when: 'more lines of the record and a new record are appended'
+        file << '    at A.b(A.java:1)\n' + line( 2 ) + '\n'
+        update = reader.refreshTail()
+
+        then: 'the last record includes the new lines, followed by the new record'
+        update.get().lines == [ line( 0 ), line( 1 ) + '\njava.lang.RuntimeException: error\n    at A.b(A.java:1)',
+                                line( 2 ) ]
+    }
+
+    def "Records are read from files with Windows new-lines and in UTF-16"() {
+        given: 'a file with a stack-trace, with the given charset and new-lines'
+        file.setText( [ line( 0 ), *stackTrace( 2 ), line( 1 ) ].join( newLine ) + newLine, charset )
+
+        when: 'the file is read in record mode'
+        def reader = readerOf( 5, 16 )
+        reader.top()
+        def down = reader.refresh()
+        reader.tail()
+        def up = reader.refresh()
+
+        then: 'the lines of each record are separated by a new-line only'
+        down.get() == [ ( [ line( 0 ) ] + stackTrace( 2 ) ).join( '\n' ), line( 1 ) ]
+        up.get() == down.get()
+
+        where:
+        charset    | newLine
+        'UTF-8'    | '\r\n'
+        'UTF-16BE' | '\n'
+        'UTF-16LE' | '\n'
+    }
+
+    static List<String> readAllDown( FileReader reader ) {
+        reader.top()
+        List<String> result = [ ]
+        result.addAll( reader.refresh().get() )
+        List<String> next
+        while ( !( next = reader.moveDown( 2 ).get() ).isEmpty() ) {
+            result.addAll( next )
+        }
+        result
+    }
+
+    static List<String> readAllUp( FileReader reader ) {
+        reader.tail()
+        LinkedList<String> result = new LinkedList<>( reader.refresh().get() )
+        List<String> next
+        while ( !( next = reader.moveUp( 2 ).get() ).isEmpty() ) {
+            result.addAll( 0, next )
+        }
+        result
+    }
+}
@@ -0,0 +1,309 @@
+package com.athaydes.logfx.file
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.file.Files
+import java.time.Instant
+import java.time.ZoneOffset
+import java.time.ZonedDateTime
+
+class RotatedFileChainReaderSpec extends Specification {
+
+    File dir = Files.createTempDirectory( 'rotated-files' ).toFile()
+    File file = new File( dir, 'app.log' )
+
+    def setup() {
+        // each file contains 5 lines whose "timestamps" are the seconds since the epoch
+        new File( dir, 'app.log.2' ).write( ( 100..104 ).collect { "$it old" }.join( '\n' ) + '\n' )
+        new File( dir, 'app.log.1' ).write( ( 200..204 ).collect { "$it older" }.join( '\n' ) + '\n' )
+        file.write( ( 300..304 ).collect { "$it new" }.join( '\n' ) )
+        new File( dir, 'app.log.old' ).write( 'not part of the chain' )
+        new File( dir, 'other.log.1' ).write( 'not part of the chain either' )
+    }
+
+    def cleanup() {
+        dir.deleteDir()
+    }
+
+    static final dateExtractor = { String line ->
+        def seconds = line.find( /^\d+/ )
+        seconds ? Optional.of( ZonedDateTime.ofInstant( Instant.ofEpochSecond( seconds as long ), ZoneOffset.UTC ) )
+                : Optional.empty()
+    }
+
+    static ZonedDateTime time( long seconds ) {
+        ZonedDateTime.ofInstant( Instant.ofEpochSecond( seconds ), ZoneOffset.UTC )
+    }
+
+    static List<String> times( List<String> lines ) {
+        lines.collect { it.find( /^\d+/ ) ?: it }
+    }
+
+    def "The files rotated from a log file can be found"() {
+        expect:
+        RotatedFileChainReader.hasRotatedFiles( file )
+        RotatedFileChainReader.findFileChain( file )*.name == [ 'app.log.2', 'app.log.1', 'app.log' ]
+
+        and:
+        !RotatedFileChainReader.hasRotatedFiles( new File( dir, 'app.log.old' ) )
+        RotatedFileChainReader.findFileChain( new File( dir, 'app.log.old' ) )*.name == [ 'app.log.old' ]
+    }
+
+    def "The top and the tail of the chain are the top of the oldest file and the tail of the log file"() {
+        given:
+        def reader = new RotatedFileChainReader( file, 4, 16 )
+
+        when:
+        reader.top()
+        def lines = reader.refresh()
+
+        then:
+        times( lines.get() ) == [ '100', '101', '102', '103' ]
+        reader.lineNumbers == [ 1L, 2L, 3L, 4L ] as long[]
+
+        when:
+        reader.tail()
+        lines = reader.refresh()
+
+        then:
+        times( lines.get() ) == [ '301', '302', '303', '304' ]
+        reader.lineNumbers == [ 2L, 3L, 4L, 5L ] as long[]
+
+        cleanup:
+        reader?.close()
+    }
+
+    def "Moving down crosses file boundaries without showing the empty line at the end of a file"() {
+        given:
+        def reader = new RotatedFileChainReader( file, 4, 16 )
+        reader.top()
+        reader.refresh()
+
+        when:
+        def lines = reader.moveDown( 3 )
+
+        then:
+        times( lines.get() ) == [ '104', '200', '201' ]
+        times( reader.refresh().get() ) == [ '103', '104', '200', '201' ]
+        reader.lineNumbers == [ 4L, 5L, 1L, 2L ] as long[]
+
+        when:
+        lines = reader.moveDown( 4 )
+
+        then:
+        times( lines.get() ) == [ '202', '203', '204', '300' ]
+
+        when:
+        lines = reader.moveDown( 4 )
+
+        then:
+        times( lines.get() ) == [ '301', '302', '303', '304' ]
+
+        and: 'there is nothing else to read'
+        reader.moveDown( 4 ).get().isEmpty()
+        times( reader.refresh().get() ) == [ '301', '302', '303', '304' ]
+
+        cleanup:
+        reader?.close()
+    }
+
+    def "Moving up crosses file boundaries without showing the empty line at the end of a file"() {
+        given:
+        def reader = new RotatedFileChainReader( file, 4, 16 )
+        reader.tail()
+        reader.refresh()
+
+        when:
+        def lines = reader.moveUp( 2 )
+
+        then:
+        times( lines.get() ) == [ '204', '300' ]
+        times( reader.refresh().get() ) == [ '204', '300', '301', '302' ]
+        reader.lineNumbers == [ 5L, 1L, 2L, 3L ] as long[]
+
+        when:
+        lines = reader.moveUp( 4 )
+
+        then:
+        times( lines.get() ) == [ '200', '201', '202', '203' ]
+
+        when:
+        lines = reader.moveUp( 4 )
+
+        then:
+        times( lines.get() ) == [ '101', '102', '103', '104' ]
+
+        and: 'only the top line is left'
+        times( reader.moveUp( 4 ).get() ) == [ '100' ]
+        reader.moveUp( 4 ).get().isEmpty()
+        times( reader.refresh().get() ) == [ '100', '101', '102', '103' ]
+
+        cleanup:
+        reader?.close()
+    }
+
+    def "Only the files with lines in the file window are kept open"() {
+        given:
+        def reader = new RotatedFileChainReader( file, 4, 16 )
+
+        when:
+        reader.tail()
+        reader.refresh()
+
+        then:
+        reader.openFiles*.name == [ 'app.log' ]
+
+        when:
+        reader.moveUp( 2 )
+
+        then:
+        reader.openFiles*.name.toSet() == [ 'app.log.1', 'app.log' ] as Set
+
+        when:
+        reader.top()
+        reader.refresh()
+
+        then:
+        reader.openFiles*.name == [ 'app.log.2' ]
+
+        when:
+        reader.close()
+
+        then:
+        reader.openFiles.isEmpty()
+    }
+
+    @Unroll
+    def "Moving to date-time #seconds picks the right file and line (#expectedLines)"() {
+        given:
+        def reader = new RotatedFileChainReader( file, 3, 16 )
+
+        when:
+        def result = reader.moveTo( time( seconds ), dateExtractor )
+        def lines = reader.refresh()
+
+        then:
+        result.isSuccess()
+        !result.isBeforeRange() && !result.isAfterRange()
+        times( lines.get() ) == expectedLines
+
+        cleanup:
+        reader?.close()
+
+        where:
+        seconds | expectedLines
+        100     | [ '100', '101', '102' ]
+        102     | [ '102', '103', '104' ]
+        150     | [ '200', '201', '202' ]
+        201     | [ '201', '202', '203' ]
+        203     | [ '202', '203', '204' ]
+        302     | [ '302', '303', '304' ]
+    }
+
+    def "A date-time before the chain moves to the top, reporting it is before the range"() {
+        given:
+        def reader = new RotatedFileChainReader( file, 3, 16 )
+
+        when:
+        def result = reader.moveTo( time( 10 ), dateExtractor )
+
+        then:
+        result.isBeforeRange()
+        times( reader.refresh().get() ) == [ '100', '101', '102' ]
+    }
+
+    def "The date-times of the files in the chain do not depend on the line filter"() {
+        given: 'a filter that only accepts the lines of the log file itself'
+        def reader = new RotatedFileChainReader( file, 3, 16 )
+        reader.lineFilter = { String line -> line.endsWith( 'new' ) }
+
+        when: 'moving to a date-time within the rotated files'
+        def result = reader.moveTo( time( 150 ), dateExtractor )
+
+        then: 'the date-time is not before the range of the chain'
+        result.isSuccess()
+        !result.isBeforeRange()
+
+        when: 'a filter that only accepts some of the lines of a rotated file is used'
+        reader.lineFilter = { String line -> line ==~ /20[0-2] .*/ }
+        reader.moveTo( time( 201 ), dateExtractor )
+
+        and: 'the filter is removed, then the file window is moved to a later date-time of the same file'
+        reader.lineFilter = { String line -> true }
+        result = reader.moveTo( time( 203 ), dateExtractor )
+
+        then: 'the file window is moved within that file'
+        result.isSuccess()
+        times( reader.refresh().get() ) == [ '202', '203', '204' ]
+
+        cleanup:
+        reader?.close()
+    }
+
+    def "Moving to a line moves within the file at the top of the file window"() {
+        given:
+        def reader = new RotatedFileChainReader( file, 3, 16 )
+        reader.moveTo( time( 200 ), dateExtractor )
+
+        when:
+        def result = reader.moveToLine( 2 )
+
+        then:
+        result.isSuccess()
+        times( reader.refresh().get() ) == [ '201', '202', '203' ]
+        reader.lineNumbers == [ 2L, 3L, 4L ] as long[]
+
+        when: 'moving down into the next file and then to a line'
+        reader.moveDown( 3 )
+        reader.moveDown( 1 )
+        result = reader.moveToLine( 1 )
+
+        then:
+        result.isSuccess()
+        times( reader.refresh().get() ) == [ '300', '301', '302' ]
+        reader.lineNumbers == [ 1L, 2L, 3L ] as long[]
+
+        cleanup:
+        reader?.close()
+    }
+
+    def "A rotation of the log file moves the file window to the tail of the new chain"() {
+        given:
+        def reader = new RotatedFileChainReader( file, 3, 16 )
+        reader.top()
+        reader.refresh()
+
+        when: 'the files are rotated'
+        Files.move( new File( dir, 'app.log.2' ).toPath(), new File( dir, 'app.log.3' ).toPath() )
+        Files.move( new File( dir, 'app.log.1' ).toPath(), new File( dir, 'app.log.2' ).toPath() )
+        Files.move( file.toPath(), new File( dir, 'app.log.1' ).toPath() )
+        file.write( '400 newest\n401 newest' )
+
+        then:
+        times( reader.refresh().get() ) == [ '304', '400', '401' ]
+        reader.files*.name == [ 'app.log.3', 'app.log.2', 'app.log.1', 'app.log' ]
+
+        cleanup:
+        reader?.close()
+    }
+
+    def "Following the tail reads lines appended to the log file"() {
+        given:
+        def reader = new RotatedFileChainReader( file, 3, 16 )
+        reader.refreshTail()
+
+        when:
+        file << '\n305 new'
+        def update = reader.refreshTail()
+
+        then:
+        update.isPresent()
+        update.get().fullWindow
+        times( update.get().lines ) == [ '303', '304', '305' ]
+
+        cleanup:
+        reader?.close()
+    }
+
+}
@@ -0,0 +1,194 @@
+package com.athaydes.logfx.file
+
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.nio.file.Files
+
+class StreamReaderSpec extends Specification {
+
+    File spillsDir = Files.createTempDirectory( 'stream-spills' ).toFile()
+    def conditions = new PollingConditions( timeout: 5 )
+
+    def cleanup() {
+        spillsDir.deleteDir()
+    }
+
+    static List<String> lines( int from, int to ) {
+        ( from..to ).collect { "line $it of the stream".toString() }
+    }
+
+    static InputStream streamOf( List<String> lines ) {
+        new ByteArrayInputStream( ( lines.join( '\n' ) + '\n' ).bytes )
+    }
+
+    StreamReader createReader( InputStream input, int fileWindowSize,
+                               long maxSize = 1024 * 1024, long segmentSize = 1024 * 1024 ) {
+        new StreamReader( 'test', input, spillsDir, maxSize, segmentSize, fileWindowSize, 64 )
+    }
+
+    def "The lines of a stream can be read from the top and from the tail"() {
+        given:
+        def reader = createReader( streamOf( lines( 1, 100 ) ), 5 )
+
+        when: 'the whole stream has been read'
+        conditions.eventually {
+            assert reader.ended
+        }
+
+        then:
+        reader.bytesRead == ( lines( 1, 100 ).join( '\n' ) + '\n' ).size()
+        reader.bytesEvicted == 0L
+
+        when:
+        reader.top()
+
+        then:
+        reader.refresh().get() == lines( 1, 5 )
+        reader.moveDown( 3 ).get() == lines( 6, 8 )
+
+        and:
+        reader.refreshTail().get().lines == lines( 96, 100 )
+        reader.moveUp( 2 ).get() == lines( 94, 95 )
+
+        cleanup:
+        reader?.close()
+    }
+
+    def "The lines of a stream are read while the producer writes them, without waiting for the reader"() {
+        given: 'a pipe whose producer would block if its small buffer was not emptied'
+        def output = new PipedOutputStream()
+        def input = new PipedInputStream( output, 64 )
+        def reader = createReader( input, 3 )
+
+        when: 'many lines are written, and nothing is read from the reader'
+        def producer = Thread.start {
+            output.withStream { it.write( ( lines( 1, 10_000 ).join( '\n' ) + '\n' ).bytes ) }
+        }
+        producer.join( 5000 )
+
+        then: 'the producer is not blocked'
+        !producer.alive
+
+        and: 'all lines end up in the spill file'
+        conditions.eventually {
+            assert reader.ended
+            assert reader.refreshTail().get().lines == lines( 9998, 10_000 )
+        }
+
+        cleanup:
+        reader?.close()
+    }
+
+    def "The spill file is split into segments at the end of lines, and the oldest segments are evicted"() {
+        given: 'a reader keeping at most 4 segments of around 1000 bytes'
+        def allLines = lines( 1, 1000 )
+        def reader = createReader( streamOf( allLines ), 10, 4000, 1000 )
+
+        when:
+        conditions.eventually {
+            assert reader.ended
+        }
+        def segments = reader.segments
+
+        then: 'no more than the maximum size is kept'
+        segments.size() <= 5
+        segments.sum { it.length() } <= 4000 + 1000
+        reader.bytesEvicted == reader.bytesRead - segments.sum { it.length() }
+
+        and: 'each segment only has complete lines, starting from the first line after the evicted ones'
+        segments.every { it.text.endsWith( '\n' ) }
+        def keptLines = segments.collectMany { it.readLines() }
+        keptLines == allLines.drop( allLines.size() - keptLines.size() )
+
+        and: 'the evicted segments were deleted'
+        segments.first().parentFile.listFiles().findAll { it.name.endsWith( '.log' ) } as Set == segments as Set
+
+        when: 'the reader moves to the top'
+        reader.top()
+
+        then: 'the oldest line that was kept is shown'
+        reader.refresh().get() == keptLines.take( 10 )
+
+        cleanup:
+        reader?.close()
+    }
+
+    def "The file window is kept while the stream grows, unless its lines are evicted"() {
+        given: 'a stream being written to'
+        def output = new PipedOutputStream()
+        def input = new PipedInputStream( output )
+        def reader = createReader( input, 5, 4000, 1000 )
+        def write = { List<String> lines ->
+            long expectedBytes = reader.bytesRead + ( lines.join( '\n' ) + '\n' ).size()
+            output.write( ( lines.join( '\n' ) + '\n' ).bytes )
+            output.flush()
+            conditions.eventually {
+                assert reader.bytesRead == expectedBytes
+            }
+        }
+
+        when: 'a few lines are written, and the reader shows the top of the stream'
+        write( lines( 1, 30 ) )
+        reader.top()
+
+        then:
+        reader.refresh().get() == lines( 1, 5 )
+
+        when: 'more lines are written, creating new segments'
+        write( lines( 31, 60 ) )
+
+        then: 'the file window does not move'
+        reader.segments.size() > 1
+        reader.refresh().get() == lines( 1, 5 )
+        reader.moveDown( 2 ).get() == lines( 6, 7 )
+
+        when: 'enough lines are written for the lines in the file window to be evicted'
+        write( lines( 61, 400 ) )
+        def firstKeptLine = reader.segments.first().readLines().first()
+
+        then: 'the file window moves to the oldest line that was kept'
+        reader.refresh().get().first() == firstKeptLine
+
+        cleanup:
+        output?.close()
+        reader?.close()
+    }
+
+    def "Closing a reader deletes its spill file, and stale spill files are deleted"() {
+        given: 'a spill file left behind by another process'
+        def staleDir = new File( spillsDir, 'stale-123' )
+        staleDir.mkdirs()
+        new File( staleDir, 'segment-0000000001.log' ).write( 'old' )
+
+        when:
+        def reader = createReader( streamOf( lines( 1, 10 ) ), 5 )
+        def spillDir = reader.segments.first().parentFile
+
+        then: 'the stale spill file is deleted, but not the new one'
+        !staleDir.exists()
+        spillDir.isDirectory()
+        spillDir.parentFile == spillsDir
+
+        when: 'another reader is created while the first one is open'
+        def otherReader = createReader( streamOf( lines( 1, 10 ) ), 5 )
+
+        then: 'the spill file in use is not deleted'
+        spillDir.isDirectory()
+
+        when:
+        conditions.eventually {
+            assert reader.ended
+        }
+        reader.close()
+
+        then: 'its spill file is deleted'
+        !spillDir.exists()
+        !reader.refresh().isPresent()
+
+        cleanup:
+        reader?.close()
+        otherReader?.close()
+    }
+
+}
@@ -0,0 +1,167 @@
+package com.athaydes.logfx.file
+
+import java.nio.charset.StandardCharsets
+import java.util.function.ToIntFunction
+
+class TimeHistogramScannerSpec extends LogFileSpecification {
+
+    // WARN lines are category 0, ERROR lines category 1, all others category 2
+    static final ToIntFunction<LineHandle> CLASSIFIER = this.&classify
+
+    static int classify( LineHandle line ) {
+        def text = line.text
+        if ( text.contains( ' WARN ' ) ) {
+            return 0
+        }
+        text.contains( ' ERROR ' ) ? 1 : 2
+    }
+
+    static String line( int second, String level = 'INFO' ) {
+        "${DATE_FORMAT.format( START_TIME.plusSeconds( second ) )} $level message $second\n"
+    }
+
+    TimeHistogramScanner createScanner( int maxBuckets = 100 ) {
+        def channel = new SharedFileChannel( file, ByteBufferPool.globalInstance )
+        new TimeHistogramScanner( file, channel, StandardCharsets.UTF_8, 4096,
+                DATE_EXTRACTOR, CLASSIFIER, 3, maxBuckets, 1.0 )
+    }
+
+    static TimeHistogram scan( TimeHistogramScanner scanner ) {
+        scanner.scan( { false }, {} )
+    }
+
+    static long total( TimeHistogram histogram ) {
+        ( 0..<histogram.bucketCount ).sum { histogram.getTotal( it as int ) } as long
+    }
+
+    def "Lines are counted by second, split by category"() {
+        given: 'a file with lines in 3 different seconds, with different levels'
+        file.text = line( 0 ) + line( 0, 'WARN' ) + line( 0 ) +
+                line( 1, 'ERROR' ) +
+                line( 3 ) + line( 3, 'WARN' )
+
+        when: 'the file is scanned'
+        def histogram = scan( createScanner() )
+
+        then: 'the histogram has one bucket per second, from the first to the last line'
+        histogram.bucketCount == 4
+        histogram.bucketWidth == 1000L
+        histogram.getBucketStartDateTime( 0 ) == START_TIME
+        histogram.getBucketStartDateTime( 3 ) == START_TIME.plusSeconds( 3 )
+
+        and: 'lines are counted in the right bucket and category'
+        ( 0..3 ).collect { b -> ( 0..2 ).collect { c -> histogram.getCount( b, c ) } } == [
+                [ 1L, 0L, 2L ],
+                [ 0L, 1L, 0L ],
+                [ 0L, 0L, 0L ],
+                [ 1L, 0L, 1L ] ]
+        histogram.maxTotal == 3L
+    }
+
+    def "Lines without a date are counted at the date of the previous line"() {
+        given: 'a file with a stack-trace, and undated lines before the first date'
+        file.text = '    header\n' + line( 0, 'ERROR' ) + '    at A.b(A.java:1)\n' + '    at C.d(C.java:2)\n' + line( 1 )
+
+        when: 'the file is scanned'
+        def histogram = scan( createScanner() )
+
+        then: 'the lines of the stack-trace are counted with the error, lines before the first date are ignored'
+        histogram.bucketCount == 2
+        histogram.getTotal( 0 ) == 3L
+        histogram.getTotal( 1 ) == 1L
+    }
+
+    def "The width of the buckets is doubled when the lines span too much time"() {
+        given: 'a file with lines over 100 seconds'
+        file.text = ( 0..<100 ).collect { line( it ) }.join( '' )
+
+        when: 'the file is scanned with at most 30 buckets'
+        def histogram = scan( createScanner( 30 ) )
+
+        then: 'buckets are 4 seconds wide so that 100 seconds fit in less than 30 buckets'
+        histogram.bucketWidth == 4000L
+        histogram.bucketCount <= 30
+
+        and: 'all lines are counted'
+        total( histogram ) == 100L
+        histogram.getBucketStart( 0 ) <= START_TIME.toInstant().toEpochMilli()
+    }
+
+    def "Only lines appended since the last scan are counted, and only once they are complete"() {
+        given: 'a file with a complete line and an incomplete line'
+        file.text = line( 0 ) + line( 1 ).trim()
+        def scanner = createScanner()
+
+        when: 'the file is scanned'
+        def histogram = scan( scanner )
+
+        then: 'only the complete line is counted'
+        total( histogram ) == 1L
+        scanner.scannedTo == line( 0 ).size()
+
+        when: 'the incomplete line is completed and another line is appended'
+        file << '\n' + line( 2, 'WARN' )
+
+        and: 'the file is scanned again'
+        histogram = scan( scanner )
+
+        then: 'the new lines are counted, without counting the first line again'
+        total( histogram ) == 3L
+        histogram.getCount( 2, 0 ) == 1L
+        scanner.scannedTo == file.length()
+    }
+
+    def "The file is scanned again from the start if it is replaced"() {
+        given: 'a scanned file'
+        file.text = ( 0..<10 ).collect { line( it ) }.join( '' )
+        def scanner = createScanner()
+        scan( scanner )
+
+        when: 'the file is truncated and written again'
+        new FileOutputStream( file ).close()
+        file.text = line( 50, 'ERROR' ) + line( 51, 'ERROR' )
+
+        and: 'the file is scanned again'
+        def histogram = scan( scanner )
+
+        then: 'only the new contents are counted'
+        total( histogram ) == 2L
+        histogram.getBucketStartDateTime( 0 ) == START_TIME.plusSeconds( 50 )
+        histogram.getCount( 0, 1 ) == 1L
+        histogram.getCount( 1, 1 ) == 1L
+    }
+
+    def "A scan can be cancelled and continued later"() {
+        given: 'a file with many lines'
+        file.text = ( 0..<20_000 ).collect { line( it ) }.join( '' )
+        def scanner = createScanner()
+
+        when: 'a scan is cancelled after the first check'
+        int checks = 0
+        def histogram = scanner.scan( { checks++ > 0 }, {} )
+
+        then: 'only part of the file was scanned'
+        scanner.scannedTo > 0L
+        scanner.scannedTo < file.length()
+        total( histogram ) < 20_000L
+
+        when: 'the file is scanned again'
+        histogram = scan( scanner )
+
+        then: 'all lines are counted exactly once'
+        scanner.scannedTo == file.length()
+        total( histogram ) == 20_000L
+    }
+
+    def "The CPU budget must be a fraction of one CPU"() {
+        when: 'a scanner is created with an invalid budget'
+        new TimeHistogramScanner( file, new SharedFileChannel( file, ByteBufferPool.globalInstance ),
+                StandardCharsets.UTF_8, 4096, DATE_EXTRACTOR, CLASSIFIER, 3, 100, budget )
+
+        then: 'an error is thrown'
+        thrown IllegalArgumentException
+
+        where:
+        budget << [ 0.0d, -0.5d, 1.5d, Double.NaN ]
+    }
+}
@@ -0,0 +1,291 @@
+package com.athaydes.logfx.file
+
+import spock.lang.Unroll
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.time.ZoneOffset
+import java.time.ZonedDateTime
+import java.util.function.Function
+
+@Unroll
+class TimestampIndexSpec extends LogFileSpecification {
+
+    static final long SAMPLE_INTERVAL = 4096
+
+    Path indexDir = new File( dir, 'index' ).toPath()
+
+    static void writeLines( File file, int from, int count, boolean append = false ) {
+        new FileWriter( file, append ).withWriter { writer ->
+            ( from..<( from + count ) ).each { i ->
+                writer.write( "${DATE_FORMAT.format( START_TIME.plusSeconds( i ) )} INFO message $i\n" )
+                if ( i % 7 == 0 ) {
+                    writer.write( "    at com.acme.Service.call(Service.java:$i)\n" )
+                }
+            }
+        }
+    }
+
+    static Function<String, Optional<ZonedDateTime>> dateExtractor( Closure onCall = {} ) {
+        { String line ->
+            onCall()
+            extractDate( line )
+        } as Function<String, Optional<ZonedDateTime>>
+    }
+
+    TimestampIndexer createIndexer( SharedFileChannel channel ) {
+        new TimestampIndexer( file, channel, indexDir, 4096, SAMPLE_INTERVAL, 0L, SAME_THREAD )
+    }
+
+    static FileIdentity identityOf( File file, SharedFileChannel channel ) {
+        channel.open( 4096 ).withCloseable { FileIdentity.of( file, it ) }
+    }
+
+    def "The index samples the dates of a file and is stored on disk"() {
+        given: 'a file with lines one second apart'
+        writeLines( file, 0, 5000 )
+        def channel = new SharedFileChannel( file, ByteBufferPool.globalInstance )
+        def indexer = createIndexer( channel )
+
+        when: 'the index is requested for the first time'
+        def firstRequest = indexer.indexFor( identityOf( file, channel ), dateExtractor() )
+
+        then: 'it is not available yet, but has been built in the background'
+        !firstRequest.isPresent()
+        Files.isRegularFile( indexer.indexPath )
+
+        when: 'the index is requested again'
+        def index = indexer.indexFor( identityOf( file, channel ), dateExtractor() ).get()
+
+        then: 'it covers the whole file, with one sample per sample interval'
+        index.length == file.length()
+        index.sampleCount == ( file.length() + SAMPLE_INTERVAL - 1 ).intdiv( SAMPLE_INTERVAL )
+        index.firstDateTime.get() == START_TIME
+        index.lastDateTime.get() == START_TIME.plusSeconds( 4999 )
+
+        and: 'each sample is the position of a line with the sampled date'
+        def lines = file.readLines()
+        ( 0..<index.sampleCount ).every { sample ->
+            def offset = index.getOffset( sample )
+            def line = new String( file.bytes, offset as int, 19, 'UTF-8' )
+            ZonedDateTime.parse( line, DATE_FORMAT ).toInstant().toEpochMilli() == index.getEpochMillis( sample )
+        }
+        lines.size() > 0
+
+        and: 'the index is read back from disk exactly as it was built'
+        def readIndex = TimestampIndex.readFrom( indexer.indexPath, file ).get()
+        readIndex.length == index.length
+        ( 0..<index.sampleCount ).collect { readIndex.getOffset( it ) } ==
+                ( 0..<index.sampleCount ).collect { index.getOffset( it ) }
+        ( 0..<index.sampleCount ).collect { readIndex.getEpochMillis( it ) } ==
+                ( 0..<index.sampleCount ).collect { index.getEpochMillis( it ) }
+
+        and: 'a new indexer for the same file uses the stored index immediately'
+        createIndexer( channel ).indexFor( identityOf( file, channel ), dateExtractor() ).isPresent()
+
+        cleanup:
+        channel?.close()
+    }
+
+    def "The index narrows down the range of bytes where a date-time (#seconds) may be found"() {
+        given:
+        writeLines( file, 0, 5000 )
+        def channel = new SharedFileChannel( file, ByteBufferPool.globalInstance )
+        def indexer = createIndexer( channel )
+        indexer.indexFor( identityOf( file, channel ), dateExtractor() )
+        def index = indexer.indexFor( identityOf( file, channel ), dateExtractor() ).get()
+        def dateTime = START_TIME.plusSeconds( seconds )
+
+        and: 'the position of the line with the date-time'
+        def position = file.text.indexOf( DATE_FORMAT.format( dateTime ) )
+
+        when:
+        def low = index.offsetBefore( dateTime ).orElse( 0L )
+        def high = index.offsetAfter( dateTime ).orElse( file.length() )
+
+        then:
+        low < position || position == 0
+        position < high
+        high - low <= 2 * SAMPLE_INTERVAL
+
+        cleanup:
+        channel?.close()
+
+        where:
+        seconds << [ 0, 1, 100, 2500, 4998, 4999 ]
+    }
+
+    def "A corrupt index is ignored and built again"() {
+        given: 'a file and its stored index'
+        writeLines( file, 0, 2000 )
+        def channel = new SharedFileChannel( file, ByteBufferPool.globalInstance )
+        createIndexer( channel ).indexFor( identityOf( file, channel ), dateExtractor() )
+        def indexPath = createIndexer( channel ).indexPath
+        assert TimestampIndex.readFrom( indexPath, file ).isPresent()
+
+        when: 'the stored index is corrupted'
+        indexPath.bytes = corrupt( indexPath.bytes )
+
+        then: 'it cannot be read anymore'
+        !TimestampIndex.readFrom( indexPath, file ).isPresent()
+
+        when: 'a new indexer requests the index'
+        def indexer = createIndexer( channel )
+        def firstRequest = indexer.indexFor( identityOf( file, channel ), dateExtractor() )
+
+        then: 'the index is not available, but is built again'
+        !firstRequest.isPresent()
+        TimestampIndex.readFrom( indexPath, file ).isPresent()
+        indexer.indexFor( identityOf( file, channel ), dateExtractor() ).isPresent()
+
+        cleanup:
+        channel?.close()
+
+        where:
+        corruption     | corrupt
+        'truncated'    | { byte[] bytes -> bytes[ 0..<( bytes.length / 2 ) ] as byte[] }
+        'garbage'      | { byte[] bytes -> new byte[ bytes.length ].with { new Random( 1 ).nextBytes( it ); it } }
+        'flipped byte' | { byte[] bytes -> bytes[ bytes.length - 3 ] ^= 0x10; bytes }
+    }
+
+    def "An index is extended incrementally when the file grows, and built again when it is #change"() {
+        given: 'a file and its index'
+        writeLines( file, 0, 2000 )
+        def channel = new SharedFileChannel( file, ByteBufferPool.globalInstance )
+        def indexer = createIndexer( channel )
+        indexer.indexFor( identityOf( file, channel ), dateExtractor() )
+        def index = indexer.indexFor( identityOf( file, channel ), dateExtractor() ).get()
+
+        when: 'lines are appended to the file'
+        writeLines( file, 2000, 2000, true )
+        def identity = identityOf( file, channel )
+
+        then: 'the index only covers the start of the file, but can still be used'
+        index.checkAgainst( identity, file.lastModified() ) == TimestampIndex.Status.PARTIAL
+        indexer.indexFor( identity, dateExtractor() ).get().is( index )
+
+        and: 'it has been extended to cover the whole file, keeping the existing samples'
+        def extendedIndex = indexer.indexFor( identity, dateExtractor() ).get()
+        extendedIndex.length == file.length()
+        extendedIndex.lastDateTime.get() == START_TIME.plusSeconds( 3999 )
+        ( 0..<index.sampleCount ).every { extendedIndex.getOffset( it ) == index.getOffset( it ) }
+        extendedIndex.sampleCount > index.sampleCount * 1.5
+
+        when: 'the file is changed'
+        modify( file )
+        identity = identityOf( file, channel )
+
+        then: 'the index is found to be stale, and is built again'
+        extendedIndex.checkAgainst( identity, file.lastModified() ) == TimestampIndex.Status.STALE
+        !indexer.indexFor( identity, dateExtractor() ).isPresent()
+
+        and: 'the new index matches the new contents of the file'
+        def newIndex = indexer.indexFor( identity, dateExtractor() ).get()
+        newIndex.length == file.length()
+        newIndex.firstDateTime.get() == START_TIME.plusSeconds( 10_000 )
+
+        cleanup:
+        channel?.close()
+
+        where:
+        change                  | modify
+        'truncated'             | { File f -> writeLines( f, 10_000, 1000 ) }
+        'rewritten, and larger' | { File f -> writeLines( f, 10_000, 5000 ) }
+    }
+
+    def "An index is built again if the dates found in the file change"() {
+        given: 'a file and its index'
+        writeLines( file, 0, 2000 )
+        def channel = new SharedFileChannel( file, ByteBufferPool.globalInstance )
+        def indexer = createIndexer( channel )
+        indexer.indexFor( identityOf( file, channel ), dateExtractor() )
+        assert indexer.indexFor( identityOf( file, channel ), dateExtractor() ).isPresent()
+
+        and: 'a function that extracts dates in a different time zone'
+        def otherFormat = DATE_FORMAT.withZone( ZoneOffset.ofHours( 2 ) )
+        Function<String, Optional<ZonedDateTime>> otherExtractor = { String line ->
+            line.startsWith( ' ' ) ?
+                    Optional.empty() :
+                    Optional.of( ZonedDateTime.parse( line.substring( 0, 19 ), otherFormat ) )
+        }
+
+        when: 'the index is requested with the new function'
+        def firstRequest = indexer.indexFor( identityOf( file, channel ), otherExtractor )
+
+        then: 'the existing index is not used, but a new one is built'
+        !firstRequest.isPresent()
+        indexer.indexFor( identityOf( file, channel ), otherExtractor ).get().firstDateTime.get() ==
+                START_TIME.minusHours( 2 )
+
+        cleanup:
+        channel?.close()
+    }
+
+    def "FileReader uses the timestamp index to move to a date-time (#seconds) reading only a few lines"() {
+        given: 'a large file'
+        writeLines( file, 0, 50_000 )
+
+        and: 'a reader using a timestamp index'
+        def reader = new FileReader( file, 5 )
+        def channel = new SharedFileChannel( file, ByteBufferPool.globalInstance )
+        reader.timestampIndexer = new TimestampIndexer( file, channel, indexDir, 4096,
+                SAMPLE_INTERVAL, 0L, SAME_THREAD )
+
+        and: 'the reader has already moved to some date-time, so the file has been indexed'
+        reader.moveTo( START_TIME.plusSeconds( 10 ), dateExtractor() )
+
+        and: 'a reader that does not use a timestamp index'
+        def bisectingReader = new FileReader( file, 5 )
+
+        when: 'both readers move to a date-time, counting how many lines are checked for dates'
+        def extractedLines = 0
+        def result = reader.moveTo( START_TIME.plusSeconds( seconds ), dateExtractor { extractedLines++ } )
+        def lines = reader.refresh()
+        def bisectingExtractedLines = 0
+        bisectingReader.moveTo( START_TIME.plusSeconds( seconds ), dateExtractor { bisectingExtractedLines++ } )
+
+        then: 'the reader moves to the line with the given date-time'
+        result.isSuccess()
+        lines.get()[ result.fileLineNumber() - 1 ].endsWith( "INFO message $seconds" )
+
+        and: 'fewer lines are checked than when bisecting the whole file'
+        extractedLines < bisectingExtractedLines
+
+        cleanup:
+        reader?.close()
+        bisectingReader?.close()
+        channel?.close()
+
+        where:
+        seconds << [ 0, 7, 12_345, 49_999 ]
+    }
+
+    def "The time range of a rotated file is read from its timestamp index"() {
+        given: 'a file and a reader using a timestamp index'
+        writeLines( file, 0, 5000 )
+        def reader = new FileReader( file, 5 )
+        def channel = new SharedFileChannel( file, ByteBufferPool.globalInstance )
+        reader.timestampIndexer = new TimestampIndexer( file, channel, indexDir, 4096,
+                SAMPLE_INTERVAL, 0L, SAME_THREAD )
+
+        when: 'the complete index is requested twice'
+        def first = reader.getCompleteTimestampIndex( dateExtractor() )
+        def second = reader.getCompleteTimestampIndex( dateExtractor() )
+
+        then: 'the index is built the first time, and gives the time range of the file the second time'
+        !first.isPresent()
+        second.get().firstDateTime.get() == START_TIME
+        second.get().lastDateTime.get() == START_TIME.plusSeconds( 4999 )
+
+        when: 'lines are appended to the file'
+        writeLines( file, 5000, 10, true )
+
+        then: 'the index does not cover the whole file anymore'
+        !reader.getCompleteTimestampIndex( dateExtractor() ).isPresent()
+
+        cleanup:
+        reader?.close()
+        channel?.close()
+    }
+
+}
@@ -0,0 +1,273 @@
+package com.athaydes.logfx.file
+
+import spock.lang.Unroll
+
+import java.nio.file.Files
+import java.nio.file.Path
+
+import static com.athaydes.logfx.file.FilterBlockSummary.BLOCK_SIZE
+
+@Unroll
+class TrigramIndexSpec extends LogFileSpecification {
+
+    static final long LARGE_MEMORY_BUDGET = 64 * 1024 * 1024
+
+    Path indexDir = new File( dir, 'index' ).toPath()
+
+    /**
+     * Filter accepting lines containing the given text, which counts how many lines it tests.
+     */
+    static class CountingFilter implements LineFilter {
+        final String text
+        final boolean knowsRequiredText
+        int testedLines = 0
+
+        CountingFilter( String text, boolean knowsRequiredText = true ) {
+            this.text = text
+            this.knowsRequiredText = knowsRequiredText
+        }
+
+        @Override
+        boolean test( String line ) {
+            testedLines++
+            line.contains( text )
+        }
+
+        @Override
+        Optional<Object> getFingerprint() {
+            Optional.of( text )
+        }
+
+        @Override
+        Optional<List<String>> getRequiredTexts() {
+            knowsRequiredText ? Optional.of( [ text ] ) : Optional.empty()
+        }
+    }
+
+    /**
+     * Write lines with random request IDs, made of lower-case letters and digits only, so that IDs containing
+     * other characters are only found where they are explicitly written.
+     */
+    static void writeLines( File file, int from, int count, Map<Integer, String> specialLines = [ : ],
+                            boolean append = false ) {
+        def random = new Random( from )
+        new FileWriter( file, append ).withWriter { writer ->
+            ( from..<( from + count ) ).each { i ->
+                writer.write( specialLines[ i ] ?: "INFO request ${Long.toString( random.nextLong() >>> 1, 36 )} done $i" )
+                writer.write( '\n' )
+            }
+        }
+    }
+
+    TrigramIndexer createIndexer( SharedFileChannel channel, long memoryBudget = LARGE_MEMORY_BUDGET,
+                                  Path indexDir = this.indexDir ) {
+        new TrigramIndexer( file, channel, indexDir, BLOCK_SIZE, 0L, BLOCK_SIZE * 2, memoryBudget, SAME_THREAD )
+    }
+
+    static FileIdentity identityOf( File file, SharedFileChannel channel ) {
+        channel.open( 4096 ).withCloseable { FileIdentity.of( file, it ) }
+    }
+
+    static List<Long> blocksWith( File file, String text ) {
+        def blocks = new TreeSet<Long>()
+        long position = 0
+        file.eachLine { line ->
+            if ( line.contains( text ) ) {
+                blocks << ( position / BLOCK_SIZE as long )
+            }
+            position += line.size() + 1
+        }
+        blocks.toList()
+    }
+
+    static List<Long> toList( BitSet bitSet ) {
+        bitSet.stream().collect { it as long }
+    }
+
+    def "The index finds the blocks where texts may be found and is stored on disk"() {
+        given: 'a file with a few special lines'
+        writeLines( file, 0, 20_000, [ 100: 'ERROR request req-zz-1 failed', 9_000: 'ERROR request req-zz-2 failed',
+                                       19_000: 'WARN slow request req-zz-2' ] )
+        def channel = new SharedFileChannel( file, ByteBufferPool.globalInstance )
+        def indexer = createIndexer( channel )
+
+        when: 'the index is requested for the first time'
+        def firstRequest = indexer.indexFor( identityOf( file, channel ) )
+
+        then: 'it is not available yet, but has been built in the background'
+        !firstRequest.isPresent()
+        Files.isRegularFile( indexer.indexPath )
+
+        when: 'the index is requested again'
+        def index = indexer.indexFor( identityOf( file, channel ) ).get()
+
+        then: 'it covers all the complete blocks of the file'
+        index.length == file.length()
+        index.blockCount == file.length().intdiv( BLOCK_SIZE )
+        index.segments.size() == 1
+
+        and: 'texts are only found in the blocks where they are'
+        toList( index.candidateBlocks( [ 'req-zz-1' ], 0 ).get() ) == blocksWith( file, 'req-zz-1' )
+        toList( index.candidateBlocks( [ 'req-zz-2' ], 0 ).get() ) == blocksWith( file, 'req-zz-2' )
+                .findAll { it < index.blockCount }
+        toList( index.candidateBlocks( [ 'req-zz-1', 'req-zz-2' ], 0 ).get() ) ==
+                ( blocksWith( file, 'req-zz-1' ) + blocksWith( file, 'req-zz-2' ) )
+                        .findAll { it < index.blockCount }.sort()
+        toList( index.candidateBlocks( [ 'req-zz-2' ], blocksWith( file, 'req-zz-1' )[ 0 ] + 1 ).get() ) ==
+                blocksWith( file, 'req-zz-2' ).findAll { it < index.blockCount }
+
+        and: 'texts whose trigrams exist in the file, but not together, are not found'
+        index.candidateBlocks( [ 'zz-3' ], 0 ).get().isEmpty()
+        index.candidateBlocks( [ 'not in file' ], 0 ).get().isEmpty()
+
+        and: 'texts found in every line are found in every block'
+        index.candidateBlocks( [ 'INFO request' ], 0 ).get().cardinality() == index.blockCount
+
+        and: 'short texts cannot be looked up'
+        !index.candidateBlocks( [ 'zz' ], 0 ).isPresent()
+        !index.candidateBlocks( [ 'req-zz-1', 'ab' ], 0 ).isPresent()
+
+        when: 'the index is loaded by a new indexer'
+        def loaded = createIndexer( channel ).getIndex()
+
+        then: 'it is the same as the index that was built'
+        loaded.length == index.length
+        loaded.blockCount == index.blockCount
+        toList( loaded.candidateBlocks( [ 'req-zz-2' ], 0 ).get() ) ==
+                toList( index.candidateBlocks( [ 'req-zz-2' ], 0 ).get() )
+    }
+
+    def "Building an index with a small memory budget writes several segments with the same contents"() {
+        given: 'a file with lines containing IDs that are mostly unique'
+        writeLines( file, 0, 50_000, ( 0..<50 ).collectEntries { [ it * 997, "DEBUG id-${it}-${it % 7}-x" ] } )
+        def channel = new SharedFileChannel( file, ByteBufferPool.globalInstance )
+
+        when: 'the file is indexed with a large and with the minimum memory budget'
+        def largeBudgetIndexer = createIndexer( channel )
+        largeBudgetIndexer.update( file.length() )
+        def largeBudgetIndex = largeBudgetIndexer.index
+        def smallBudgetIndexer = createIndexer( channel, TrigramIndexer.minMemoryBudget( BLOCK_SIZE ),
+                new File( dir, 'small-budget-index' ).toPath() )
+        smallBudgetIndexer.update( file.length() )
+        def smallBudgetIndex = smallBudgetIndexer.index
+
+        then: 'with the small budget, the index has several segments'
+        largeBudgetIndex.segments.size() == 1
+        smallBudgetIndex.segments.size() > 2
+        smallBudgetIndex.blockCount == largeBudgetIndex.blockCount
+
+        and: 'the same blocks are found with both indexes, including all blocks where the texts are'
+        for ( text in [ 'id-3-3-x', 'id-10-', 'DEBUG', 'id-49-0', 'id-1', 'done 1', 'none' ] ) {
+            def blocks = toList( smallBudgetIndex.candidateBlocks( [ text ], 0 ).get() )
+            assert blocks == toList( largeBudgetIndex.candidateBlocks( [ text ], 0 ).get() )
+            assert blocks.containsAll( blocksWith( file, text ).findAll { it < largeBudgetIndex.blockCount } )
+        }
+    }
+
+    def "An index is extended incrementally when the file grows, and built again when it is truncated"() {
+        given: 'an index of a file'
+        writeLines( file, 0, 10_000, [ 10: 'id-abc' ] )
+        def channel = new SharedFileChannel( file, ByteBufferPool.globalInstance )
+        def indexer = createIndexer( channel )
+        indexer.update( file.length() )
+        def index = indexer.index
+        def firstSegmentPath = index.segments.first().path
+        def firstSegmentBytes = firstSegmentPath.bytes
+
+        when: 'lines are appended to the file and the index is requested'
+        writeLines( file, 10_000, 10_000, [ 15_000: 'id-abc again' ], true )
+        def partial = indexer.indexFor( identityOf( file, channel ) )
+
+        then: 'the previous index is still usable, but it has been extended in the background'
+        partial.get().is( index )
+        def extended = indexer.indexFor( identityOf( file, channel ) ).get()
+        extended.blockCount == file.length().intdiv( BLOCK_SIZE )
+        extended.segments.size() == 2
+
+        and: 'the existing segment was not written again'
+        extended.segments.first().path == firstSegmentPath
+        firstSegmentPath.bytes == firstSegmentBytes
+
+        and: 'texts are found in both segments'
+        toList( extended.candidateBlocks( [ 'id-abc' ], 0 ).get() ) == blocksWith( file, 'id-abc' )
+
+        when: 'the file is truncated and written again'
+        writeLines( file, 0, 10_000, [ 5_000: 'id-def' ] )
+        def stale = indexer.indexFor( identityOf( file, channel ) )
+
+        then: 'the index is not used, but it is built again'
+        !stale.isPresent()
+        def rebuilt = indexer.indexFor( identityOf( file, channel ) ).get()
+        rebuilt.segments.size() == 1
+        rebuilt.candidateBlocks( [ 'id-abc' ], 0 ).get().isEmpty()
+        toList( rebuilt.candidateBlocks( [ 'id-def' ], 0 ).get() ) == blocksWith( file, 'id-def' )
+
+        and: 'the segments of the old index were deleted'
+        !Files.exists( extended.segments.last().path )
+    }
+
+    def "An index with a missing or modified segment is ignored"() {
+        given: 'an index of a file'
+        writeLines( file, 0, 10_000 )
+        def channel = new SharedFileChannel( file, ByteBufferPool.globalInstance )
+        def indexer = createIndexer( channel )
+        indexer.update( file.length() )
+        def segmentPath = indexer.index.segments.first().path
+
+        when: 'a segment of the index is changed'
+        change( segmentPath )
+
+        then: 'the index can no longer be read'
+        !TrigramIndex.readFrom( indexer.indexPath, file ).isPresent()
+
+        where:
+        change << [ { Path path -> Files.delete( path ) },
+                    { Path path -> path.bytes = path.bytes[ 0..-2 ] as byte[] } ]
+    }
+
+    def "FileReader only reads the blocks where the texts required by a filter may be found (#description)"() {
+        given: 'a large file with a few matching lines'
+        def matchingLines = [ 50, 21_000, 21_001, 40_500, 59_990 ]
+        writeLines( file, 0, 60_000, matchingLines.collectEntries { [ it, "ERROR request req-zz-$it failed" ] } )
+        def expectedLines = matchingLines.collect { "ERROR request req-zz-$it failed".toString() }
+
+        and: 'a reader with a trigram index of the file'
+        def reader = new FileReader( file, 3, 4096 )
+        def channel = new SharedFileChannel( file, ByteBufferPool.globalInstance )
+        def indexer = new TrigramIndexer( file, channel, indexDir, BLOCK_SIZE,
+                0L, BLOCK_SIZE * 2, LARGE_MEMORY_BUDGET, SAME_THREAD )
+        reader.trigramIndexer = indexer
+        reader.refreshTail()
+        indexer.update( file.length() )
+
+        when: 'a filter is set and the file is read from the top, then from the tail'
+        def filter = new CountingFilter( 'req-zz-', knowsRequiredText )
+        reader.lineFilter = filter
+        reader.top()
+        def fromTop = reader.refresh().get() + reader.moveDown( 3 ).get()
+        reader.tail()
+        def tailWindow = reader.refresh().get()
+        def fromTail = reader.moveUp( 2 ).get() + tailWindow
+
+        then: 'all matching lines are found'
+        fromTop == expectedLines
+        fromTail == expectedLines
+
+        and: 'only the lines in the blocks where the text may be found are tested, if the filter tells what it is'
+        if ( knowsRequiredText ) {
+            assert filter.testedLines < 60_000 / 4
+        } else {
+            assert filter.testedLines >= 60_000
+        }
+
+        cleanup:
+        reader.close()
+        channel.close()
+
+        where:
+        knowsRequiredText | description
+        true              | 'the filter requires some text'
+        false             | 'the filter does not require any text'
+    }
+
+}
@@ -0,0 +1,58 @@
+package com.athaydes.logfx.text
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.util.regex.Pattern
+
+class HighlightExpressionSpec extends Specification {
+
+    @Unroll
+    def "The text required by the expression '#expression' (flags: #flags) is #expectedText"() {
+        given: 'a highlight expression'
+        def highlight = new HighlightExpression( Pattern.compile( expression, flags ), null, null, true )
+
+        when: 'the text that all its matches must contain is requested'
+        def requiredText = highlight.requiredText
+
+        then: 'the longest literal text found in all matches is returned, if any'
+        requiredText == Optional.ofNullable( expectedText )
+
+        and: 'every match of the expression contains the text'
+        if ( expectedText != null ) {
+            samples.each { String sample ->
+                assert !highlight.matches( sample ) || sample.contains( expectedText )
+            }
+        }
+
+        where:
+        expression                  | flags                    | expectedText
+        'req-1234'                  | 0                        | 'req-1234'
+        'a.b|c'                     | Pattern.LITERAL          | 'a.b|c'
+        'ERROR \\d+ request'        | 0                        | ' request'
+        'user=\\w+ id=abc'          | 0                        | ' id=abc'
+        'abcd?ef'                   | 0                        | 'abc'
+        'abc*defg'                  | 0                        | 'defg'
+        'abc{2}de'                  | 0                        | 'ab'
+        'ab+cd'                     | 0                        | 'ab'
+        'x(abcdef)?yz'              | 0                        | 'yz'
+        '[abcdef]+gh'               | 0                        | 'gh'
+        '[]abcdef]gh'               | 0                        | 'gh'
+        '1\\.2\\.3'                 | 0                        | '1.2.3'
+        '\\x41\\u0042CD'            | 0                        | 'CD'
+        '\\p{Alpha}xyz'             | 0                        | 'xyz'
+        '\\Qa.b\\Ec'                | 0                        | 'c'
+        '^start.*end$'              | 0                        | 'start'
+        '(?:a|b)common'             | 0                        | 'common'
+        'abc|def'                   | 0                        | null
+        '(?i)abc'                   | 0                        | null
+        'abc'                       | Pattern.CASE_INSENSITIVE | null
+        '.*'                        | 0                        | null
+        'café'                 | 0                        | 'caf'
+
+        samples = [ 'req-1234', 'a.b|c', 'ERROR 12 request', 'user=joe id=abc', 'abcef', 'abdefg', 'abccde',
+                    'abbbcd', 'xabcdefyz', 'xyz', 'aagh', ']gh', '1.2.3', 'ABCD', 'Axyz', 'a.bc', 'start end',
+                    'acommon', 'café' ]
+    }
+
+}